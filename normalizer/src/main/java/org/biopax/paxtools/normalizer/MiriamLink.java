@@ -7,6 +7,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.*;
 import java.util.*;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 
 import javax.xml.bind.JAXBContext;
@@ -40,8 +41,13 @@ public class MiriamLink
     /** object of the generated from the Miriam schema type */
     private static final Miriam miriam;
     
-
-    private static final Map<String,Datatype> datatypesHash = new HashMap<String, Miriam.Datatype>();
+    // immutable indices (built once), incl. compiled patterns and resolved URIs;
+    // datatypes by ID, name or synonym (as is, upper and lower case)
+    private static final Map<String,Entry> datatypesByName;
+    // datatypes by URI (case sensitive)
+    private static final Map<String,Entry> datatypesByUri;
+    // all resources by ID (upper case)
+    private static final Map<String,Resource> resourcesById;
 
     public static boolean useObsoleteDatatypes = true;
     public static boolean useObsoleteResources = true;
@@ -90,29 +96,38 @@ public class MiriamLink
 //		}
 	    
 	    // build the name-datatype static hash (once!)
+		Map<String,Entry> byName = new HashMap<String, Entry>();
+		Map<String,Entry> byUri = new HashMap<String, Entry>();
+		Map<String,Resource> resources = new HashMap<String, Resource>();
 		for(Datatype dt : miriam.getDatatype()) {
-			// index by name
-			datatypesHash.put(dt.getName().toUpperCase(), dt);
-			
-			// by identifier
-			datatypesHash.put(dt.getId().toUpperCase(), dt);
+			Entry entry = new Entry(dt);
 			
-			// index by each synonym
+			// index by identifier, name, and each synonym
 			// (Miriam must guarantee: different datatypes cannot have the same synonym!)
-			Synonyms synonyms = dt.getSynonyms();
-			if (synonyms != null) {
-				for (String syn : synonyms.getSynonym()) {
-					datatypesHash.put(syn.toUpperCase(), dt);
-				}
-			}
+			putName(byName, dt.getId(), entry);
+			for(String name : entry.names)
+				putName(byName, name, entry);
 			
 			// index by each URI
-			for(Uris uris : dt.getUris()) {
-				for(Uri uri : uris.getUri()) {
-					datatypesHash.put(uri.getValue(), dt);
-				}
+			for(String uri : entry.uris)
+				byUri.put(uri, entry);
+			
+			Resources res = dt.getResources();
+			if (res != null) {
+				for (Resource resource : res.getResource())
+					resources.put(resource.getId().toUpperCase(), resource);
 			}
 		}
+		datatypesByName = Collections.unmodifiableMap(byName);
+		datatypesByUri = Collections.unmodifiableMap(byUri);
+		resourcesById = Collections.unmodifiableMap(resources);
+	}
+	
+	private static void putName(Map<String,Entry> byName, String name, Entry entry) {
+		byName.put(name.toUpperCase(), entry);
+		// the other forms are for lookups that do not need to convert the key
+		byName.put(name, entry);
+		byName.put(name.toLowerCase(), entry);
 	}
 
 	
@@ -138,8 +153,7 @@ public class MiriamLink
      */
     public static String getDataTypeURI(String datatypeKey)
     {
-    	Datatype datatype = getDatatype(datatypeKey);
-    	return getOfficialDataTypeURI(datatype); 
+    	return getEntry(datatypeKey).officialUri; 
     }
      
      
@@ -154,14 +168,7 @@ public class MiriamLink
      */
     public static String[] getDataTypeURIs(String datatypeKey)
     {
-       	Set<String> alluris = new HashSet<String>();
-    	Datatype datatype = getDatatype(datatypeKey);
-    	for(Uris uris : datatype.getUris()) {
-    		for(Uri uri : uris.getUri()) {
-    			alluris.add(uri.getValue());
-    		}
-    	}
-    	return alluris.toArray(ARRAY_OF_STRINGS);
+    	return getEntry(datatypeKey).uris.clone();
     }
 	
 	
@@ -202,11 +209,12 @@ public class MiriamLink
      */
     public static String getURI(String name, String id)
     {
-    	Datatype datatype = getDatatype(name);
+    	Entry entry = getEntry(name);
+    	Datatype datatype = entry.datatype;
     	String db = datatype.getName();
-    	if(checkRegExp(id, db)) {
+    	if(entry.matches(id)) {
     		try {
-				return getOfficialDataTypeURI(datatype)	+ ":" + URLEncoder.encode(id, "UTF-8");
+				return entry.officialUri + ":" + URLEncoder.encode(id, "UTF-8");
 			} catch (UnsupportedEncodingException e) {
 				throw new RuntimeException("UTF-8 encoding error of id=" + id, e);
 			}
@@ -286,8 +294,8 @@ public class MiriamLink
 	 */
     public static boolean isDeprecated(String uri)
     {
-    	Datatype datatype = datatypesHash.get(uri);
-    	String urn = getOfficialDataTypeURI(datatype);
+    	Entry entry = datatypesByUri.get(uri);
+    	String urn = (entry == null) ? null : entry.officialUri;
     	return !uri.equalsIgnoreCase(urn);
     }
     
@@ -330,15 +338,7 @@ public class MiriamLink
 	 */
     public static String[] getNames(String datatypeKey)
     {
-    	Set<String> names = new HashSet<String>();
-    	Datatype datatype = getDatatype(datatypeKey);
-    	names.add(datatype.getName());
-    	Synonyms synonyms = datatype.getSynonyms();
-    	if(synonyms != null)
-    	  for(String name : synonyms.getSynonym()) {
-    		names.add(name);
-    	  }
-    	return names.toArray(ARRAY_OF_STRINGS);
+    	return getEntry(datatypeKey).names.clone();
     }
 
     
@@ -399,8 +399,7 @@ public class MiriamLink
      */
     public static boolean checkRegExp(String identifier, String datatype)
     {
-    	Datatype dt = getDatatype(datatype);
-    	return Pattern.compile(dt.getPattern()).matcher(identifier).find();
+    	return getEntry(datatype).matches(identifier);
     } 
         
 
@@ -443,14 +442,21 @@ public class MiriamLink
      */
 	public static Datatype getDatatype(String datatypeKey) 
 	{	
-		Datatype dt = null;
-		if(containsIdOrName(datatypeKey))
-			dt = datatypesHash.get(datatypeKey.toUpperCase());
-		else if(containsUri(datatypeKey)) 
-			dt = datatypesHash.get(datatypeKey);
-		else
+		return getEntry(datatypeKey).datatype;
+	}
+	
+	
+	private static Entry getEntry(String datatypeKey) 
+	{
+		Entry entry = datatypesByName.get(datatypeKey);
+		if(entry == null)
+			entry = datatypesByName.get(datatypeKey.toUpperCase());
+		if(entry == null)
+			entry = datatypesByUri.get(datatypeKey);
+		if(entry == null)
 			throw new IllegalArgumentException("Datatype not found : " + datatypeKey);
 		
+		Datatype dt = entry.datatype;
 		if(!useObsoleteDatatypes 
 				&& dt.isObsolete() != null 
 				&& dt.isObsolete().booleanValue() == true)
@@ -458,8 +464,7 @@ public class MiriamLink
 				datatypeKey + "(" + dt.getName() + ") is obsolete" +
 					" (and useObsoleteDatatypes=false)");
 		
-		// return 
-		return dt;
+		return entry;
 	}
 
 
@@ -489,12 +494,10 @@ public class MiriamLink
      */
     public static Resource getResource(String resourceId)
     {
-        for(Datatype datatype : miriam.getDatatype()) {
-			for (Resource resource : getResources(datatype)) {
-				if (resource.getId().equalsIgnoreCase(resourceId))
-					return resource;
-			}
-        }
+        Resource resource = resourcesById.get(resourceId.toUpperCase());
+        if(resource != null && (useObsoleteResources 
+        		|| resource.isObsolete() == null || !resource.isObsolete().booleanValue()))
+        	return resource;
         
         throw new IllegalArgumentException("Resource not found : " + resourceId);
     }
@@ -508,7 +511,8 @@ public class MiriamLink
      * @return true/false
      */
     public static boolean containsIdOrName(String searchKey) {
-    	return datatypesHash.keySet().contains(searchKey.toUpperCase());
+    	return datatypesByName.containsKey(searchKey) 
+    		|| datatypesByName.containsKey(searchKey.toUpperCase());
     }
  
     
@@ -520,7 +524,7 @@ public class MiriamLink
      * @return true/false
      */
     public static boolean containsUri(String searchUri) {
-    	return datatypesHash.keySet().contains(searchUri);
+    	return datatypesByUri.containsKey(searchUri);
     }
     
     
@@ -579,24 +583,65 @@ public class MiriamLink
      */
     public static String getIdentifiersOrgURI(String name, String id)
     {
-    	String url = null;
-    	Datatype datatype = getDatatype(name);
-    	String db = datatype.getName();
-    	if(checkRegExp(id, db)) {
-   			uris: 
-   			for(Uris uris : datatype.getUris()) {
-   				for(Uri uri : uris.getUri()) {
-   					if(uri.getValue().startsWith("http://identifiers.org/")) {
-   						url = uri.getValue() + id;
-   						break uris;
-   					}
-   				}
-   			}
+    	Entry entry = getEntry(name);
+    	if(entry.matches(id)) {
+    		return (entry.identifiersOrgUri != null) ? entry.identifiersOrgUri + id : null;
     	} else 
     		throw new IllegalArgumentException(
-				"ID pattern mismatch. db=" + db + ", id=" + id
-				+ ", regexp: " + datatype.getPattern());
+				"ID pattern mismatch. db=" + entry.datatype.getName() + ", id=" + id
+				+ ", regexp: " + entry.datatype.getPattern());
+    }
+    
+    
+    /**
+     * A datatype with its compiled ID pattern, names and URIs (immutable).
+     */
+    private static final class Entry 
+    {
+    	final Datatype datatype;
+    	final Pattern pattern;
+    	final String[] names; // preferred name and synonyms
+    	final String[] uris; // all, incl. deprecated ones
+    	final String officialUri; // URN
+    	final String identifiersOrgUri; // prefix
     	
-    	return url;
+    	Entry(Datatype datatype) {
+    		this.datatype = datatype;
+    		Pattern p = null;
+    		try {
+    			p = Pattern.compile(datatype.getPattern());
+    		} catch (PatternSyntaxException e) {
+    			log.warn("Invalid ID pattern of " + datatype.getName() + ": " + e.getMessage());
+    		}
+    		this.pattern = p;
+    		
+    		Set<String> n = new LinkedHashSet<String>();
+    		n.add(datatype.getName().intern());
+    		Synonyms synonyms = datatype.getSynonyms();
+    		if(synonyms != null)
+    			for(String name : synonyms.getSynonym())
+    				n.add(name.intern());
+    		this.names = n.toArray(ARRAY_OF_STRINGS);
+    		
+    		Set<String> u = new LinkedHashSet<String>();
+    		String identifiersOrg = null;
+    		for(Uris uris : datatype.getUris()) {
+    			for(Uri uri : uris.getUri()) {
+    				u.add(uri.getValue());
+    				if(identifiersOrg == null && uri.getValue().startsWith("http://identifiers.org/"))
+    					identifiersOrg = uri.getValue();
+    			}
+    		}
+    		this.uris = u.toArray(ARRAY_OF_STRINGS);
+    		this.officialUri = getOfficialDataTypeURI(datatype);
+    		this.identifiersOrgUri = identifiersOrg;
+    	}
+    	
+    	boolean matches(String id) {
+    		if(pattern == null)
+    			throw new IllegalArgumentException("Invalid ID pattern of " + datatype.getName() 
+    				+ ": " + datatype.getPattern());
+    		return pattern.matcher(id).find();
+    	}
     }
 }
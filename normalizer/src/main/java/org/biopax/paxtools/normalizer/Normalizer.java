@@ -2,7 +2,10 @@ package org.biopax.paxtools.normalizer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.biopax.paxtools.controller.ModelUtils;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
 import org.biopax.paxtools.controller.ShallowCopy;
+import org.biopax.paxtools.controller.SimpleEditorMap;
 import org.biopax.paxtools.converter.LevelUpgrader;
 import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.BioPAXElement;
@@ -19,6 +22,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * BioPAX (Level 3) Normalizer, an advanced BioPAX utility 
@@ -33,6 +40,8 @@ public final class Normalizer {
 	private String description = "";
 	private boolean fixDisplayName;
 	private String xmlBase;
+	private int threads;
+	private boolean replacePerPhase;
 	
 	// Normalizer will generate URIs using a strategy specified by the system property
 	// (the default is biopax.normalizer.uri.strategy=md5, to generate 32-byte digest hex string for xrefs's uris)
@@ -48,6 +57,7 @@ public final class Normalizer {
 		biopaxReader.mergeDuplicates(true);
 		fixDisplayName = true;
 		xmlBase = "";
+		threads = Runtime.getRuntime().availableProcessors();
 	}
 	
 	
@@ -103,87 +113,85 @@ public final class Normalizer {
 	 * are in fact to be used for other biopax types (e.g., CV or ProteinReference); therefore
 	 * this method will replace URI also for "bad" xrefs, i.e., those with empty/illegal 'db' or 'id' values.
 	 * 
+	 * Xrefs are updated in place (db, id), and their new URIs are computed in parallel.
+	 * 
 	 * @param model biopax model to update
+	 * @param map to shelve the replacements
+	 * @param exec to compute the new URIs with (null - in this thread)
 	 */
-	private void normalizeXrefs(Model model) {
+	private void normalizeXrefs(Model model, NormalizerMap map, ExecutorService exec) {
 		
-		final NormalizerMap map = new NormalizerMap(model);
 		final String xmlBase = getXmlBase(model); //current base, the default or model's one, if set.
 		
-		// use a copy of the xrefs set (to avoid concurrent modif. exception)
-		Set<? extends Xref> xrefs = new HashSet<Xref>(model.getObjects(Xref.class));
-		for(Xref ref : xrefs)
-		{
-			//skip not well-defined ones (incl. PublicationXrefs w/o db/id - won't normalize)
-			if(ref.getDb() == null || ref.getId() == null)
-				continue;
-
-			ref.setDb(ref.getDb().toLowerCase()); //set lowercase
-			String idPart = ref.getId();
-
-			if(ref instanceof RelationshipXref) {
-				// only normalize (replace URI of) RXs that could potentially clash with other RX, CVs, ERs;
-				// skip, won't bother, for all other RXs...
-				if(!ref.getUri().startsWith("http://identifiers.org/"))
-					continue;
-
-				//RXs might have the same db, id but different rel. type.
-				RelationshipTypeVocabulary cv = ((RelationshipXref) ref).getRelationshipType();
-				if(ref.getIdVersion()!=null) {
-					idPart += "_" + ref.getIdVersion();
-				}
-				if(cv != null && !cv.getTerm().isEmpty()) {
-					idPart += "_" + StringUtils.join(cv.getTerm(), '_').toLowerCase();
-				}
-			}
-			else if(ref instanceof UnificationXref) {
-				// first, try to normalize the db name (using MIRIAM EBI registry)
-				try {
-					ref.setDb(MiriamLink.getName(ref.getDb()).toLowerCase());
-				} catch (IllegalArgumentException e) {
-					// - unknown/unmatched db name (normalize using defaults)
+		putAll(model.getObjects(Xref.class), new UriMaker<Xref>() {
+			public String newUri(Xref ref) {
+				//skip not well-defined ones (incl. PublicationXrefs w/o db/id - won't normalize)
+				if(ref.getDb() == null || ref.getId() == null)
+					return null;
+
+				ref.setDb(ref.getDb().toLowerCase()); //set lowercase
+				String idPart = ref.getId();
+
+				if(ref instanceof RelationshipXref) {
+					// only normalize (replace URI of) RXs that could potentially clash with other RX, CVs, ERs;
+					// skip, won't bother, for all other RXs...
+					if(!ref.getUri().startsWith("http://identifiers.org/"))
+						return null;
+
+					//RXs might have the same db, id but different rel. type.
+					RelationshipTypeVocabulary cv = ((RelationshipXref) ref).getRelationshipType();
 					if(ref.getIdVersion()!=null) {
 						idPart += "_" + ref.getIdVersion();
 					}
-					map.put(ref, Normalizer.uri(xmlBase, ref.getDb(), idPart, ref.getModelInterface()));
-					continue; //shortcut (non-standard db name)
+					if(cv != null && !cv.getTerm().isEmpty()) {
+						idPart += "_" + StringUtils.join(cv.getTerm(), '_').toLowerCase();
+					}
 				}
-			
-				// a hack for uniprot/isoform xrefs
-				if (ref.getDb().startsWith("uniprot")) {
-					//auto-fix (guess) for possibly incorrect db/id (can be 'uniprot isoform' with/no idVersion, etc..)
-					if (isValidDbId("uniprot isoform", ref.getId())
-							&& ref.getId().contains("-")) //the second condition is important
-					{	//then it's certainly an isoform id; so - fix the db name
-						ref.setDb("uniprot isoform"); //fix the db
+				else if(ref instanceof UnificationXref) {
+					// first, try to normalize the db name (using MIRIAM EBI registry)
+					try {
+						ref.setDb(MiriamLink.getName(ref.getDb()).toLowerCase());
+					} catch (IllegalArgumentException e) {
+						// - unknown/unmatched db name (normalize using defaults)
+						if(ref.getIdVersion()!=null) {
+							idPart += "_" + ref.getIdVersion();
+						}
+						return Normalizer.uri(xmlBase, ref.getDb(), idPart, ref.getModelInterface()); //shortcut (non-standard db name)
 					}
-					else {
-						//id does not end with "-\\d+", i.e., not a isoform id
-						//(idVersion is a different thing, but id db was "uniprot isoform" they probably misused idVersion)
-						if(ref.getDb().equals("uniprot isoform"))
-						{
-							if(ref.getIdVersion() != null && ref.getIdVersion().matches("^\\d+$"))
-								idPart = ref.getId()+"-"+ref.getIdVersion(); //guess, by idVersion, they actually meant isoform
-							if(isValidDbId(ref.getDb(), idPart)) {
-								ref.setId(idPart); //moved the isoform # to the ID
-								ref.setIdVersion(null);
-							}
-							else if(!isValidDbId(ref.getDb(), ref.getId())) {
-								//certainly not isoform (might not even uniprot, but try...)
-								ref.setDb("uniprot knowledgebase"); //guess, fix
+				
+					// a hack for uniprot/isoform xrefs
+					if (ref.getDb().startsWith("uniprot")) {
+						//auto-fix (guess) for possibly incorrect db/id (can be 'uniprot isoform' with/no idVersion, etc..)
+						if (isValidDbId("uniprot isoform", ref.getId())
+								&& ref.getId().contains("-")) //the second condition is important
+						{	//then it's certainly an isoform id; so - fix the db name
+							ref.setDb("uniprot isoform"); //fix the db
+						}
+						else {
+							//id does not end with "-\\d+", i.e., not a isoform id
+							//(idVersion is a different thing, but id db was "uniprot isoform" they probably misused idVersion)
+							if(ref.getDb().equals("uniprot isoform"))
+							{
+								if(ref.getIdVersion() != null && ref.getIdVersion().matches("^\\d+$"))
+									idPart = ref.getId()+"-"+ref.getIdVersion(); //guess, by idVersion, they actually meant isoform
+								if(isValidDbId(ref.getDb(), idPart)) {
+									ref.setId(idPart); //moved the isoform # to the ID
+									ref.setIdVersion(null);
+								}
+								else if(!isValidDbId(ref.getDb(), ref.getId())) {
+									//certainly not isoform (might not even uniprot, but try...)
+									ref.setDb("uniprot knowledgebase"); //guess, fix
+								}
+								idPart = ref.getId();
 							}
-							idPart = ref.getId();
 						}
 					}
 				}
-			}
 
-			// shelve it for URI replace
-			map.put(ref, Normalizer.uri(xmlBase, ref.getDb(), idPart, ref.getModelInterface()));
-		}
-		
-		// execute replace xrefs
-		map.doSubs();
+				// shelve it for URI replace
+				return Normalizer.uri(xmlBase, ref.getDb(), idPart, ref.getModelInterface());
+			}
+		}, map, exec);
 	}
 
 	/*
@@ -330,21 +338,20 @@ public final class Normalizer {
 
 	private Collection<UnificationXref> getUnificationXrefsSorted(XReferrable r) {
 
-		List<UnificationXref> urefs = new ArrayList<UnificationXref>();
-		for(UnificationXref ux : new ClassFilterSet<Xref,UnificationXref>(r.getXref(), UnificationXref.class))
-		{
-			if(ux.getDb() != null && ux.getId() != null) {
-				urefs.add(ux);
-			} 
-		}
-
-		Collections.sort(urefs, new Comparator<UnificationXref>() {
+		//xrefs with the same db and id count once (they are to become the same normalized xref)
+		SortedSet<UnificationXref> urefs = new TreeSet<UnificationXref>(new Comparator<UnificationXref>() {
 			public int compare(UnificationXref o1, UnificationXref o2) {
 				String s1 = o1.getDb() + o1.getId();
 				String s2 = o2.getDb() + o2.getId();
 				return s1.compareTo(s2);
 			}
 		});
+		for(UnificationXref ux : new ClassFilterSet<Xref,UnificationXref>(r.getXref(), UnificationXref.class))
+		{
+			if(ux.getDb() != null && ux.getId() != null) {
+				urefs.add(ux);
+			} 
+		}
 
 		return urefs;
 	}
@@ -439,141 +446,214 @@ public final class Normalizer {
 		// Normalize/merge xrefs, first, and then CVs
 		// (also because some of original xrefs might have "normalized" URIs 
 		// that, in fact, must be used for other biopax types, such as CV or ProteinReference)
-		log.info("Normalizing xrefs..." + description);
-		normalizeXrefs(model);
+		// all the replacements are collected first, and then done at once (the new URIs
+		// only depend on the data properties, e.g., xref db/id, which are fixed in place)
+		NormalizerMap map = new NormalizerMap(model);
 		
-		// fix displayName where possible
-		if(fixDisplayName) {
-			log.info("Normalizing display names..." + description);
-			fixDisplayName(model);
-		}
+		// one thread pool for all the phases
+		final ExecutorService exec = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			log.info("Normalizing xrefs..." + description);
+			normalizeXrefs(model, map, exec);
+			map = nextPhase(model, map);
 			
-		log.info("Normalizing CVs..." + description);
-		normalizeCVs(model);
-		
-		//normalize BioSource objects (better, as it is here, go after Xrefs and CVs)
-		log.info("Normalizing organisms..." + description);
-		normalizeBioSources(model);
+			// fix displayName where possible
+			if(fixDisplayName) {
+				log.info("Normalizing display names..." + description);
+				fixDisplayName(model);
+			}
+			
+			log.info("Normalizing CVs..." + description);
+			normalizeCVs(model, map, exec);
+			map = nextPhase(model, map);
+			
+			//normalize BioSource objects (better, as it is here, go after Xrefs and CVs)
+			log.info("Normalizing organisms..." + description);
+			normalizeBioSources(model, map, exec);
+			map = nextPhase(model, map);
+
+			// auto-generate missing entity references:
+			for(SimplePhysicalEntity spe : new HashSet<SimplePhysicalEntity>(model.getObjects(SimplePhysicalEntity.class))) {
+				//it skips if spe has entityReference or memberPE already
+				if(spe.getEntityReference() == null) {
+					ModelUtils.addMissingEntityReference(model, spe);
+					if(spe.getEntityReference() != null)
+						map.touched(spe.getEntityReference());
+				}
+			}
 
-		// auto-generate missing entity references:
-		for(SimplePhysicalEntity spe : new HashSet<SimplePhysicalEntity>(model.getObjects(SimplePhysicalEntity.class))) {
-			//it skips if spe has entityReference or memberPE already
-			ModelUtils.addMissingEntityReference(model, spe);
+			log.info("Normalizing entity references..." + description);
+			normalizeERs(model, map, exec);
+		} finally {
+			if(exec != null)
+				exec.shutdown();
 		}
-
-		log.info("Normalizing entity references..." + description);
-		normalizeERs(model);
 		
-		// find/add lost (in replace) children
-		log.info("Repairing..." + description);
-		model.repair(); // it does not remove dangling utility class objects (can be done separately, later, if needed)
+		// replace all, then find/add lost (in replace) children of the new and changed objects only
+		log.info("Replacing " + map.size() + " objects..." + description);
+		map.doSubs(); // it does not remove dangling utility class objects (can be done separately, later, if needed)
+		if(replacePerPhase)
+			model.repair();
 		
 		log.info("Optional tasks (reasoning)..." + description);
 	}
 
 	
-	private void normalizeCVs(Model model) {
-		
-		NormalizerMap map = new NormalizerMap(model);
-		
-		// process ControlledVocabulary objects (all sub-classes)
-		for(ControlledVocabulary cv : model.getObjects(ControlledVocabulary.class))
-		{
-			//it does not check/fix the CV terms though (but a validation rule can do if run before the normalizer)...
-			UnificationXref uref = findPreferredUnificationXref(cv); //usually, there's only one such xref
-			if (uref != null) {
-				// so let's generate a consistent URI
-				map.put(cv, uri(xmlBase, uref.getDb(), uref.getId(), cv.getModelInterface()));
-			} else if(!cv.getTerm().isEmpty()) {
-				map.put(cv, uri(xmlBase, null, cv.getTerm().iterator().next(), cv.getModelInterface()));
-			} else log.info("Cannot normalize " + cv.getModelInterface().getSimpleName() 
-				+ " : no unification xrefs nor terms found in " + cv.getUri()
-				+ ". " + description);
-		} 
-		
-		// replace/update elements in the model
+	/*
+	 * Replaces the objects shelved by the phase and starts a new map,
+	 * if the replacements are done per phase (otherwise, keeps collecting them).
+	 */
+	private NormalizerMap nextPhase(Model model, NormalizerMap map) {
+		if(!replacePerPhase)
+			return map;
 		map.doSubs();
+		return new NormalizerMap(model);
 	}
 	
 	
-	private void normalizeBioSources(Model model) {
+	private void normalizeCVs(Model model, NormalizerMap map, ExecutorService exec) {
 		
-		NormalizerMap map = new NormalizerMap(model);
-		
-		for(BioSource bs : model.getObjects(BioSource.class))
-		{
-			UnificationXref uref = findPreferredUnificationXref(bs);
-			//normally, the xref db is 'Taxonomy' (or a valid synonym)
-			if (uref != null
-				&& (uref.getDb().toLowerCase().contains("taxonomy") || uref.getDb().equalsIgnoreCase("newt")))
-			{	
-				String 	idPart = uref.getId();
-
-				//tissue/cellType terms can be added below:
-				if(bs.getTissue()!=null && !bs.getTissue().getTerm().isEmpty()) 
-					idPart += "_" + bs.getTissue().getTerm().iterator().next();
-				if(bs.getCellType()!=null && !bs.getCellType().getTerm().isEmpty()) 
-					idPart += "_" + bs.getCellType().getTerm().iterator().next();
-				
-				String uri = (idPart.equals(uref.getId()) //- no tissue or celltype were attached
-						&& idPart.matches("^\\d+$")) //- is positive integer id
-					? uri(xmlBase, uref.getDb(), idPart, BioSource.class)
-						: "http://identifiers.org/taxonomy/" + idPart;
-					// the latter is intentionally invalid identifiers.org/taxonomy URI - good (and important) for merging
-				map.put(bs, uri);
-
-			} else 
-				log.debug("Won't normalize BioSource" 
-					+ " : no taxonomy unification xref found in " + bs.getUri()
+		// process ControlledVocabulary objects (all sub-classes)
+		putAll(model.getObjects(ControlledVocabulary.class), new UriMaker<ControlledVocabulary>() {
+			public String newUri(ControlledVocabulary cv) {
+				//it does not check/fix the CV terms though (but a validation rule can do if run before the normalizer)...
+				UnificationXref uref = findPreferredUnificationXref(cv); //usually, there's only one such xref
+				if (uref != null) {
+					// so let's generate a consistent URI
+					return uri(xmlBase, uref.getDb(), uref.getId(), cv.getModelInterface());
+				} else if(!cv.getTerm().isEmpty()) {
+					return uri(xmlBase, null, cv.getTerm().iterator().next(), cv.getModelInterface());
+				} else log.info("Cannot normalize " + cv.getModelInterface().getSimpleName() 
+					+ " : no unification xrefs nor terms found in " + cv.getUri()
 					+ ". " + description);
-		} 
-		
-		map.doSubs();
+				return null;
+			}
+		}, map, exec);
+	}
+	
+	
+	private void normalizeBioSources(Model model, NormalizerMap map, ExecutorService exec) {
+		
+		putAll(model.getObjects(BioSource.class), new UriMaker<BioSource>() {
+			public String newUri(BioSource bs) {
+				UnificationXref uref = findPreferredUnificationXref(bs);
+				//normally, the xref db is 'Taxonomy' (or a valid synonym)
+				if (uref != null
+					&& (uref.getDb().toLowerCase().contains("taxonomy") || uref.getDb().equalsIgnoreCase("newt")))
+				{	
+					String 	idPart = uref.getId();
+
+					//tissue/cellType terms can be added below:
+					if(bs.getTissue()!=null && !bs.getTissue().getTerm().isEmpty()) 
+						idPart += "_" + bs.getTissue().getTerm().iterator().next();
+					if(bs.getCellType()!=null && !bs.getCellType().getTerm().isEmpty()) 
+						idPart += "_" + bs.getCellType().getTerm().iterator().next();
+					
+					return (idPart.equals(uref.getId()) //- no tissue or celltype were attached
+							&& idPart.matches("^\\d+$")) //- is positive integer id
+						? uri(xmlBase, uref.getDb(), idPart, BioSource.class)
+							: "http://identifiers.org/taxonomy/" + idPart;
+						// the latter is intentionally invalid identifiers.org/taxonomy URI - good (and important) for merging
+				} else 
+					log.debug("Won't normalize BioSource" 
+						+ " : no taxonomy unification xref found in " + bs.getUri()
+						+ ". " + description);
+				return null;
+			}
+		}, map, exec);
 	}
 
-	private void normalizeERs(Model model) {
-		
-		NormalizerMap map = new NormalizerMap(model);
+	private void normalizeERs(Model model, NormalizerMap map, ExecutorService exec) {
 		
 		// process the rest of utility classes (selectively though)
-		for (EntityReference bpe : model.getObjects(EntityReference.class)) {
-			
-			//skip those with already normalized URIs
-			if(bpe.getUri().startsWith("http://identifiers.org/")) {
-				log.info("Skip already normalized: " + bpe.getUri());
-				continue;
-			}			
-			
-			UnificationXref uref = findPreferredUnificationXref(bpe);
-			if (uref != null) {
-				// Create (with a new URI made from a unif. xref) 
-				// and save the replacement object, if possible, 
-				// but do not replace yet (will call doSubs later, for all).
-				final String db = uref.getDb();
-				final String id = uref.getId();
-				// get the standard ID
-				String uri = null;
-				try { // make a new ID for the element
-					uri = MiriamLink.getIdentifiersOrgURI(db, id);
-				} catch (Exception e) {
-					log.error("Cannot get a Miriam standard ID for " + bpe 
-							+ " (" + bpe.getModelInterface().getSimpleName()
-							+ ") " + ", using " + db + ":" + id 
-							+ ". " + e.getMessage());
-					return;
+		putAll(model.getObjects(EntityReference.class), new UriMaker<EntityReference>() {
+			public String newUri(EntityReference bpe) {
+				//skip those with already normalized URIs
+				if(bpe.getUri().startsWith("http://identifiers.org/")) {
+					log.info("Skip already normalized: " + bpe.getUri());
+					return null;
+				}			
+				
+				UnificationXref uref = findPreferredUnificationXref(bpe);
+				if (uref != null) {
+					// make a new URI from a unif. xref, if possible 
+					// (the replacement object is created and saved later, for all)
+					final String db = uref.getDb();
+					final String id = uref.getId();
+					// get the standard ID
+					try { // make a new ID for the element
+						return MiriamLink.getIdentifiersOrgURI(db, id);
+					} catch (Exception e) {
+						log.error("Cannot get a Miriam standard ID for " + bpe 
+								+ " (" + bpe.getModelInterface().getSimpleName()
+								+ ") " + ", using " + db + ":" + id 
+								+ ". " + e.getMessage());
+					}
+				} else
+					log.info("Cannot normalize EntityReference: "
+						+ "no unification xrefs found in " + bpe.getUri()
+						+ ". " + description);
+				return null;
+			}
+		}, map, exec);
+	}
+	
+	
+	/**
+	 * Computes the new URIs of the elements (null - no change)
+	 * using several threads.
+	 */
+	private interface UriMaker<T extends BioPAXElement> {
+		String newUri(T bpe);
+	}
+	
+	
+	/**
+	 * Computes the new URIs of the elements in parallel (the elements must be 
+	 * independent), then shelves the replacements, in the elements' order.
+	 * 
+	 * @param elements biopax objects to normalize
+	 * @param uriMaker makes the new URI of an element
+	 * @param map to shelve the replacements
+	 * @param exec to compute the new URIs with (null - in this thread)
+	 */
+	private <T extends BioPAXElement> void putAll(Collection<T> elements, 
+		final UriMaker<T> uriMaker, NormalizerMap map, ExecutorService exec) 
+	{
+		final List<T> list = new ArrayList<T>(elements);
+		final String[] uris = new String[list.size()];
+		
+		if (exec == null || list.size() < 2) {
+			for (int i = 0; i < uris.length; i++)
+				uris[i] = uriMaker.newUri(list.get(i));
+		} else {
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				int chunk = (list.size() + threads - 1) / threads;
+				for (int i = 0; i < list.size(); i += chunk) {
+					final int from = i;
+					final int to = Math.min(i + chunk, list.size());
+					futures.add(exec.submit(new Runnable() {
+						public void run() {
+							for (int j = from; j < to; j++)
+								uris[j] = uriMaker.newUri(list.get(j));
+						}
+					}));
 				}
-
-				if(uri != null) {
-					map.put(bpe, uri);
-				}	
-			} else
-				log.info("Cannot normalize EntityReference: "
-					+ "no unification xrefs found in " + bpe.getUri()
-					+ ". " + description);
+				for (Future<?> future : futures)
+					future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted! " + description, e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Failed to normalize. " + description, e.getCause());
+			}
 		}
 		
-		// replace/update elements in the model
-		map.doSubs();
+		for (int i = 0; i < uris.length; i++) {
+			if (uris[i] != null)
+				map.put(list.get(i), uris[i]);
+		}
 	}
 	
 	
@@ -706,6 +786,31 @@ public final class Normalizer {
 		this.xmlBase = xmlBase;
 	}
 
+	public int getThreads() {
+		return threads;
+	}
+	/**
+	 * Sets the number of threads to compute the new URIs with.
+	 * 
+	 * @param threads positive int value (1 - no extra threads)
+	 */
+	public void setThreads(int threads) {
+		if(threads < 1)
+			throw new IllegalArgumentException("threads must be positive");
+		this.threads = threads;
+	}
+	
+	/**
+	 * Makes each phase replace its objects right away, and then repairs
+	 * the model, as the normalizer used to do (slower; to check the results of
+	 * the single bulk replace against).
+	 * 
+	 * @param replacePerPhase true - replace after each phase
+	 */
+	void setReplacePerPhase(boolean replacePerPhase) {
+		this.replacePerPhase = replacePerPhase;
+	}
+
 	
 	/**
 	 * Helper class, to associate original 
@@ -726,11 +831,15 @@ public final class Normalizer {
 		//the next map is to make sure the subs.values()  all have different URIs
 		final Map<String,BioPAXElement> uriToSub;
 		
+		//other new or modified objects, to check for lost children after the replace
+		final List<BioPAXElement> touched;
+		
 		final ShallowCopy copier;
 				
 		NormalizerMap(Model model) {
 			subs = BPCollections.I.createMap();
 			uriToSub = BPCollections.I.createMap();
+			touched = new ArrayList<BioPAXElement>();
 			this.model = model;
 			copier = new ShallowCopy();
 		}
@@ -745,49 +854,130 @@ public final class Normalizer {
 		 */
 		void put(BioPAXElement bpe, String newUri)
 		{
-			if(model.containsID(newUri)) {
+			BioPAXElement existing = model.getByID(newUri);
+			if(existing == bpe) {
+				// nothing to replace
+			} else if(existing != null && !subs.containsKey(existing)) {
 				// will use existing original (model) object that has the new Uri
-				map(bpe, model.getByID(newUri));
+				map(bpe, existing);
 			} else if(uriToSub.containsKey(newUri)) {
 				// re-use the new object that's already added to replace another original
 				map(bpe, uriToSub.get(newUri));
 			} else {
 				// will use the object's shallow copy that gets new Uri
+				// (the existing object, if any, is going to be replaced anyway)
 				BioPAXElement copy = copier.copy(bpe, newUri);
 				map(bpe, copy);
 			}
 		}		
 		
+		void touched(BioPAXElement bpe) {
+			touched.add(bpe);
+		}
+		
+		int size() {
+			return subs.size();
+		}
+		
 		/**
 		 * Executes the batch replace - migrating  
 		 * to the normalized equivalent objects.
+		 * 
+		 * Object properties of all the objects (incl. the old and new ones) are updated
+		 * in one pass; then, only the children of the old objects and new objects are fixed,
+		 * rather than repairing the entire model.
 		 */
 		void doSubs() {
-			for(BioPAXElement e : subs.keySet()) {
-				model.remove(e);
+			// an original can be replaced with an object that is replaced too (later)
+			for(BioPAXElement e : new ArrayList<BioPAXElement>(subs.keySet())) {
+				BioPAXElement sub = subs.get(e);
+				Set<BioPAXElement> seen = new HashSet<BioPAXElement>();
+				while(subs.containsKey(sub) && seen.add(sub))
+					sub = subs.get(sub);
+				subs.put(e, sub);
+			}
+			
+			final Set<BioPAXElement> added = Collections.newSetFromMap(new IdentityHashMap<BioPAXElement, Boolean>());
+			for(BioPAXElement e : subs.values()) {
+				if(model.getByID(e.getUri()) != e)
+					added.add(e);
 			}
 			
+			final List<BioPAXElement> elements = new ArrayList<BioPAXElement>(model.getObjects());
+			elements.addAll(added);
 			try {
-				ModelUtils.replace(model, subs);
+				ModelUtils.replace(elements, subs);
 			} catch (Exception e) {
 				log.error("Failed to replace BioPAX elements.", e);
 				return;
 			}
 			
-			for(BioPAXElement e : subs.values()) {
-				if(!model.contains(e))
+			// the old objects' children may still refer back to them
+			final Set<BioPAXElement> children = Collections.newSetFromMap(new IdentityHashMap<BioPAXElement, Boolean>());
+			for(BioPAXElement e : subs.keySet()) {
+				children.addAll(getChildren(e));
+			}
+			
+			for(BioPAXElement e : subs.keySet()) {
+				model.remove(e);
+			}
+			
+			for(BioPAXElement e : added) {
+				if(!model.containsID(e.getUri()))
 					model.add(e);
 			}
 		
-			for(BioPAXElement e : model.getObjects()) {
-				ModelUtils.fixDanglingInverseProperties(e, model);
+			for(BioPAXElement e : children) {
+				if(model.contains(e))
+					ModelUtils.fixDanglingInverseProperties(e, model);
 			}
+			
+			added.addAll(touched);
+			addMissingChildren(added);
 		}
 
 		private void map(BioPAXElement bpe, BioPAXElement newBpe) {
 			subs.put(bpe, newBpe);
 			uriToSub.put(newBpe.getUri(), newBpe);
 		}
+		
+		/*
+		 * Adds the children (recursively) of the new objects that are not in the model,
+		 * or uses the model's objects with the same URI instead
+		 * (what model.repair() would do with these objects).
+		 */
+		private void addMissingChildren(Collection<BioPAXElement> elements) {
+			final LinkedList<BioPAXElement> queue = new LinkedList<BioPAXElement>(elements);
+			while(!queue.isEmpty()) {
+				BioPAXElement bpe = queue.poll();
+				for(PropertyEditor editor : SimpleEditorMap.L3.getEditorsOf(bpe)) {
+					if(!(editor instanceof ObjectPropertyEditor))
+						continue;
+					for(Object value : new ArrayList<Object>(editor.getValueFromBean(bpe))) {
+						BioPAXElement child = (BioPAXElement) value;
+						BioPAXElement inModel = model.getByID(child.getUri());
+						if(inModel == null) {
+							model.add(child);
+							queue.add(child);
+						} else if(inModel != child && editor.getRange().isInstance(inModel)) {
+							editor.removeValueFromBean(child, bpe);
+							editor.setValueToBean(inModel, bpe);
+						}
+					}
+				}
+			}
+		}
+		
+		private static Collection<BioPAXElement> getChildren(BioPAXElement bpe) {
+			final Collection<BioPAXElement> children = new ArrayList<BioPAXElement>();
+			for(PropertyEditor editor : SimpleEditorMap.L3.getEditorsOf(bpe)) {
+				if(editor instanceof ObjectPropertyEditor) {
+					for(Object value : editor.getValueFromBean(bpe))
+						children.add((BioPAXElement) value);
+				}
+			}
+			return children;
+		}
 	}
 	
 }
@@ -3,10 +3,16 @@ package org.biopax.paxtools.normalizer;
 import static org.junit.Assert.*;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.biomodels.miriam.Resource;
 import net.biomodels.miriam.Miriam.Datatype;
 
+import org.biopax.paxtools.model.level3.UnificationXref;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -180,5 +186,58 @@ public class MiriamLinkTest {
 		assertEquals("http://identifiers.org/go/GO:0045202", MiriamLink.getIdentifiersOrgURI("urn:miriam:obo.go", "GO:0045202"));
 		assertEquals("http://identifiers.org/go/GO:0045202", MiriamLink.getIdentifiersOrgURI("go", "GO:0045202"));
 	}
+	
+	@Test
+	public final void testConcurrentXrefNormalization() throws Exception {
+		//typical xref db, id values (incl. synonyms in different case, and an unknown db)
+		final String[][] xrefs = {
+			{"UniProt", "P62158"}, {"uniprotkb", "Q0VCL1"}, {"uniprot isoform", "P68250-2"},
+			{"ChEBI", "CHEBI:15422"}, {"chebi", "CHEBI:28"}, {"Entrez Gene", "7157"},
+			{"ncbi gene", "672"}, {"RefSeq", "NP_001734"}, {"Gene Ontology", "GO:0005737"},
+			{"taxonomy", "9606"}, {"pubmed", "2549346"}, {"foo", "bar"}
+		};
+		final int threads = 4;
+		final int n = 10 * xrefs.length;
+		
+		//reference values
+		final String[] expected = new String[xrefs.length];
+		for(int i = 0; i < xrefs.length; i++)
+			expected[i] = normalize(xrefs[i]);
+		
+		//the same values, when several threads use MiriamLink at once
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for(int t = 0; t < threads; t++) {
+				final int offset = t;
+				futures.add(exec.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						for(int j = 0; j < n; j++) {
+							int i = (j + offset) % xrefs.length;
+							if(!expected[i].equals(normalize(xrefs[i])))
+								return false;
+						}
+						return true;
+					}
+				}));
+			}
+			for(Future<Boolean> f : futures)
+				assertTrue(f.get());
+		} finally {
+			exec.shutdown();
+		}
+	}
+	
+	//what Normalizer does for a unification xref: db name, ID check, URI
+	private static String normalize(String[] xref) {
+		String db = xref[0];
+		try {
+			db = MiriamLink.getName(db).toLowerCase();
+			MiriamLink.checkRegExp(xref[1], db);
+		} catch (IllegalArgumentException e) {
+			//unknown db
+		}
+		return Normalizer.uri("", db, xref[1], UnificationXref.class);
+	}
 
 }
@@ -1,6 +1,9 @@
 package org.biopax.paxtools.normalizer;
 
 
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
 import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.BioPAXLevel;
@@ -10,6 +13,8 @@ import org.junit.Test;
 
 //import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -366,6 +371,65 @@ public class NormalizerTest {
 				.getModelInterface().getSimpleName());
 	}
 	
+	@Test
+	public final void testNormalizeInParallel() {
+		Model model = simpleIO.convertFromOWL(getClass().getResourceAsStream("/test-inoh.owl"));
+		Normalizer normalizer = new Normalizer();
+		normalizer.setThreads(1);
+		normalizer.normalize(model);
+		
+		//the same as replacing after each phase and repairing the model, one thread
+		Model model0 = simpleIO.convertFromOWL(getClass().getResourceAsStream("/test-inoh.owl"));
+		normalizer = new Normalizer();
+		normalizer.setThreads(1);
+		normalizer.setReplacePerPhase(true);
+		normalizer.normalize(model0);
+		assertSameObjects(model0, model);
+		
+		Model model2 = simpleIO.convertFromOWL(getClass().getResourceAsStream("/test-inoh.owl"));
+		normalizer = new Normalizer();
+		normalizer.setThreads(4);
+		normalizer.normalize(model2);
+		
+		//same result
+		assertSameObjects(model0, model2);
+		
+		//no references to the replaced objects
+		for(Xref x : model2.getObjects(Xref.class)) {
+			for(XReferrable r : x.getXrefOf())
+				assertSame(r, model2.getByID(r.getUri()));
+		}
+		for(XReferrable r : model2.getObjects(XReferrable.class)) {
+			for(Xref x : r.getXref())
+				assertSame(x, model2.getByID(x.getUri()));
+		}
+	}
+	
+	/*
+	 * Checks that the models have the objects with the same URIs,
+	 * and that these refer to the same (by URI) objects.
+	 */
+	private void assertSameObjects(Model expected, Model actual) {
+		assertEquals(expected.getObjects().size(), actual.getObjects().size());
+		for(BioPAXElement bpe : expected.getObjects()) {
+			BioPAXElement other = actual.getByID(bpe.getUri());
+			assertNotNull(bpe.getUri(), other);
+			for(PropertyEditor editor : SimpleEditorMap.L3.getEditorsOf(bpe)) {
+				if(editor instanceof ObjectPropertyEditor) {
+					assertEquals(bpe.getUri() + " " + editor.getProperty(), 
+						uris(editor.getValueFromBean(bpe)), uris(editor.getValueFromBean(other)));
+				}
+			}
+		}
+	}
+	
+	private Set<String> uris(Set<?> values) {
+		Set<String> uris = new HashSet<String>();
+		for(Object value : values)
+			uris.add(((BioPAXElement) value).getUri());
+		return uris;
+	}
+	
 	private void print(XReferrable xr, Model m) {
 		System.out.println();
 		System.out.println("model=" + m.contains(xr) + ":\t" 
@@ -0,0 +1,275 @@
+package org.biopax.paxtools.pattern;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.pattern.constraint.AND;
+
+import java.util.*;
+
+/**
+ * A pattern compiled into a flat list of steps for searching from starting elements. The decision
+ * of each step, whether to generate or to check, is made once at compile time, since only the
+ * first element of the match is assigned when the search starts. Index mappings are resolved to
+ * the match slots, so there is no index translation during the search, and the conjunctions that
+ * are used as checks are broken into their members, so their members are not called through an
+ * extra mapping either.
+ *
+ * A single match frame is reused for all the starting elements of a search call. The sink
+ * receives this frame, so it has to clone the match if it needs to keep it.
+ *
+ * The compiled pattern does not follow the changes in the pattern; compile it again after
+ * modifying the pattern.
+ */
+public class CompiledPattern
+{
+	/**
+	 * The compiled pattern.
+	 */
+	private final Pattern pattern;
+
+	/**
+	 * Constraints of the steps.
+	 */
+	private final Constraint[] constraints;
+
+	/**
+	 * Match slots of the steps.
+	 */
+	private final int[][] slots;
+
+	/**
+	 * Slot that each step assigns, or -1 if the step only checks.
+	 */
+	private final int[] targets;
+
+	/**
+	 * Size of the match.
+	 */
+	private final int size;
+
+	/**
+	 * Compiles the pattern.
+	 * @param pattern pattern to compile
+	 */
+	public CompiledPattern(Pattern pattern)
+	{
+		this.pattern = pattern;
+		this.size = pattern.size();
+
+		List<Constraint> cons = new ArrayList<Constraint>();
+		List<int[]> inds = new ArrayList<int[]>();
+		List<Integer> targs = new ArrayList<Integer>();
+
+		boolean[] assigned = new boolean[size];
+		assigned[0] = true;
+
+		for (MappedConst mc : pattern.getConstraints())
+		{
+			Constraint con = mc.getConstr();
+			int[] ind = mc.getInds();
+			int last = ind[ind.length - 1];
+
+			if (con.canGenerate() && !assigned[last])
+			{
+				cons.add(con);
+				inds.add(ind.clone());
+				targs.add(last);
+				assigned[last] = true;
+			}
+			else addCheck(con, ind.clone(), cons, inds, targs);
+		}
+
+		int n = cons.size();
+		this.constraints = cons.toArray(new Constraint[n]);
+		this.slots = inds.toArray(new int[n][]);
+		this.targets = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			targets[i] = targs.get(i);
+		}
+	}
+
+	/**
+	 * Adds a checking step, breaking the conjunctions into their members.
+	 * @param con the constraint
+	 * @param ind resolved match slots of the constraint
+	 * @param cons constraints of the steps
+	 * @param inds match slots of the steps
+	 * @param targs assigned slots of the steps
+	 */
+	private static void addCheck(Constraint con, int[] ind, List<Constraint> cons,
+		List<int[]> inds, List<Integer> targs)
+	{
+		// subclasses may change the meaning, so only AND itself is broken
+		if (con.getClass() == AND.class)
+		{
+			for (MappedConst member : ((AND) con).getMembers())
+			{
+				int[] inner = member.getInds();
+				int[] resolved = new int[inner.length];
+				for (int i = 0; i < inner.length; i++)
+				{
+					resolved[i] = ind[inner[i]];
+				}
+				addCheck(member.getConstr(), resolved, cons, inds, targs);
+			}
+		}
+		else
+		{
+			cons.add(con);
+			inds.add(ind);
+			targs.add(-1);
+		}
+	}
+
+	/**
+	 * @return the compiled pattern
+	 */
+	public Pattern getPattern()
+	{
+		return pattern;
+	}
+
+	/**
+	 * Gets the number of steps. This can be more than the number of constraints in the pattern,
+	 * because of the broken conjunctions.
+	 * @return number of steps
+	 */
+	public int getStepCount()
+	{
+		return constraints.length;
+	}
+
+	/**
+	 * Gets the number of the steps that generate elements.
+	 * @return number of generating steps
+	 */
+	public int getGeneratingStepCount()
+	{
+		int cnt = 0;
+		for (int target : targets)
+		{
+			if (target >= 0) cnt++;
+		}
+		return cnt;
+	}
+
+	/**
+	 * @param step index of the step
+	 * @return constraint of the step
+	 */
+	Constraint getConstraint(int step)
+	{
+		return constraints[step];
+	}
+
+	/**
+	 * @param step index of the step
+	 * @return match slots of the step
+	 */
+	int[] getSlots(int step)
+	{
+		return slots[step];
+	}
+
+	/**
+	 * @param step index of the step
+	 * @return slot that the step assigns, or -1 if the step only checks
+	 */
+	int getTarget(int step)
+	{
+		return targets[step];
+	}
+
+	/**
+	 * Searches the pattern starting from the given element.
+	 * @param ele element to start from
+	 * @return matching results
+	 */
+	public List<Match> search(BioPAXElement ele)
+	{
+		final List<Match> result = new ArrayList<Match>();
+
+		search(Collections.singleton(ele), new MatchSink()
+		{
+			@Override
+			public boolean accept(Match m)
+			{
+				result.add((Match) m.clone());
+				return true;
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Searches the pattern in the model, and passes the results to the sink as they are found.
+	 * @param model model to search in
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	public boolean search(Model model, MatchSink sink)
+	{
+		return search(model.getObjects(pattern.getStartingClass()), sink);
+	}
+
+	/**
+	 * Searches the pattern starting from the given elements, and passes the results to the sink as
+	 * they are found, in the calling thread. Elements that are not of the starting class of the
+	 * pattern are skipped. The sink receives the same match object for all results.
+	 * @param eles elements to start from
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	public boolean search(Collection<? extends BioPAXElement> eles, MatchSink sink)
+	{
+		Match frame = new Match(size);
+
+		for (BioPAXElement ele : eles)
+		{
+			if (!pattern.getStartingClass().isAssignableFrom(ele.getModelInterface())) continue;
+
+			frame.set(ele, 0);
+			boolean goOn = constraints.length == 0 ? sink.accept(frame) : run(frame, 0, sink);
+			frame.set(null, 0);
+
+			if (!goOn) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the step at the given index and continues with the next steps.
+	 * @param match the match frame
+	 * @param step index of the step
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	boolean run(Match match, int step, MatchSink sink)
+	{
+		Constraint con = constraints[step];
+		int[] ind = slots[step];
+		int target = targets[step];
+		boolean last = step == constraints.length - 1;
+
+		if (target >= 0)
+		{
+			for (BioPAXElement ele : con.generate(match, ind))
+			{
+				match.set(ele, target);
+
+				boolean goOn = last ? sink.accept(match) : run(match, step + 1, sink);
+
+				match.set(null, target);
+
+				if (!goOn) return false;
+			}
+		}
+		else if (con.satisfies(match, ind))
+		{
+			return last ? sink.accept(match) : run(match, step + 1, sink);
+		}
+		return true;
+	}
+}
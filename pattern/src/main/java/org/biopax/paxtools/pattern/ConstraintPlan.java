@@ -0,0 +1,209 @@
+package org.biopax.paxtools.pattern;
+
+import org.biopax.paxtools.model.BioPAXElement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An order of the constraints of a pattern, with the estimated number of partial matches per
+ * starting element after each step. Created by {@link ConstraintPlanner}.
+ */
+public class ConstraintPlan
+{
+	/**
+	 * The planned pattern.
+	 */
+	private final Pattern pattern;
+
+	/**
+	 * Constraints in the planned order.
+	 */
+	private final List<MappedConst> order;
+
+	/**
+	 * Estimated partial matches per starting element after each step.
+	 */
+	private final double[] estimated;
+
+	/**
+	 * Measured partial matches per starting element after each step, null if not measured.
+	 */
+	private double[] actual;
+
+	/**
+	 * Number of starting elements used in the measurement.
+	 */
+	private int measuredSeeds;
+
+	/**
+	 * Constructor with the order and the estimates.
+	 * @param pattern the planned pattern
+	 * @param order constraints in the planned order
+	 * @param estimated estimated partial matches per starting element after each step
+	 */
+	ConstraintPlan(Pattern pattern, List<MappedConst> order, double[] estimated)
+	{
+		this.pattern = pattern;
+		this.order = order;
+		this.estimated = estimated;
+	}
+
+	/**
+	 * @return constraints in the planned order
+	 */
+	public List<MappedConst> getConstraints()
+	{
+		return Collections.unmodifiableList(order);
+	}
+
+	/**
+	 * @return estimated partial matches per starting element after each step
+	 */
+	public double[] getEstimated()
+	{
+		return estimated.clone();
+	}
+
+	/**
+	 * @return measured partial matches per starting element after each step, or null
+	 */
+	public double[] getActual()
+	{
+		return actual == null ? null : actual.clone();
+	}
+
+	/**
+	 * Applies the planned order to the pattern.
+	 */
+	public void apply()
+	{
+		pattern.constraints = new ArrayList<MappedConst>(order);
+	}
+
+	/**
+	 * Runs the planned order from the given starting elements, and records the number of partial
+	 * matches that pass each step. These are reported by {@link #explain()} next to the estimates.
+	 * @param seeds starting elements
+	 */
+	public void measure(Collection<? extends BioPAXElement> seeds)
+	{
+		long[] counts = new long[order.size()];
+		int n = 0;
+
+		for (BioPAXElement seed : seeds)
+		{
+			if (!pattern.getStartingClass().isAssignableFrom(seed.getModelInterface())) continue;
+
+			Match m = new Match(pattern.size());
+			m.set(seed, 0);
+			if (!order.isEmpty()) count(m, 0, counts);
+			n++;
+		}
+
+		actual = new double[counts.length];
+		for (int i = 0; i < counts.length; i++)
+		{
+			actual[i] = n == 0 ? 0 : counts[i] / (double) n;
+		}
+		measuredSeeds = n;
+	}
+
+	/**
+	 * Same recursion with the Searcher, counting partial matches at each step.
+	 */
+	private void count(Match match, int index, long[] counts)
+	{
+		MappedConst mc = order.get(index);
+		int[] ind = mc.getInds();
+		int lastInd = ind[ind.length - 1];
+		boolean last = index == order.size() - 1;
+
+		if (mc.canGenerate() && match.get(lastInd) == null)
+		{
+			for (BioPAXElement ele : mc.getConstr().generate(match, ind))
+			{
+				counts[index]++;
+				if (!last)
+				{
+					match.set(ele, lastInd);
+					count(match, index + 1, counts);
+					match.set(null, lastInd);
+				}
+			}
+		}
+		else if (mc.getConstr().satisfies(match, ind))
+		{
+			counts[index]++;
+			if (!last) count(match, index + 1, counts);
+		}
+	}
+
+	/**
+	 * Tells whether the constraint at the given step generates its last element.
+	 * @param step index in the planned order
+	 * @return true if the step generates
+	 */
+	public boolean isGenerating(int step)
+	{
+		MappedConst mc = order.get(step);
+		if (!mc.canGenerate()) return false;
+
+		int target = mc.getInds()[mc.getInds().length - 1];
+		if (target == 0) return false;
+
+		for (int i = 0; i < step; i++)
+		{
+			MappedConst prev = order.get(i);
+			if (prev.canGenerate() && prev.getInds()[prev.getInds().length - 1] == target)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Describes the plan as a table, in the style of a query optimizer. Each row is a step with
+	 * its operation, constraint, mapped labels, and the estimated and measured partial matches
+	 * per starting element after the step.
+	 * @return the description
+	 */
+	public String explain()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-4s %-8s %-28s %-50s %12s %12s%n",
+			"step", "op", "constraint", "elements", "estimated", "actual"));
+
+		for (int i = 0; i < order.size(); i++)
+		{
+			MappedConst mc = order.get(i);
+
+			StringBuilder labels = new StringBuilder();
+			for (int ind : mc.getInds())
+			{
+				if (labels.length() > 0) labels.append(", ");
+				String label = pattern.getLabel(ind);
+				labels.append(label == null ? "#" + ind : label);
+			}
+
+			String name = mc.getConstr().getClass().getSimpleName();
+			if (name.length() == 0) name = mc.getConstr().getClass().getName();
+
+			sb.append(String.format("%-4d %-8s %-28s %-50s %12.2f %12s%n", i,
+				isGenerating(i) ? "GENERATE" : "FILTER", name, labels, estimated[i],
+				actual == null ? "-" : String.format("%.2f", actual[i])));
+		}
+
+		if (actual != null) sb.append("measured on ").append(measuredSeeds)
+			.append(" starting elements\n");
+
+		return sb.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return explain();
+	}
+}
@@ -0,0 +1,272 @@
+package org.biopax.paxtools.pattern;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.util.*;
+
+/**
+ * Orders the constraints of a pattern using statistics sampled from a model. The planner takes a
+ * random sample of the starting elements and runs the pattern on them step by step, keeping a
+ * bounded sample of the partial matches. At each step it measures, on the current sample, the
+ * pass rate of the constraints that can filter and the fan-out of the constraints that can
+ * generate, then:
+ * <ul>
+ * <li>applies the applicable filters, the most selective first,</li>
+ * <li>otherwise applies the generator with the smallest fan-out.</li>
+ * </ul>
+ * The element each constraint generates is not changed, only the order in which elements are
+ * generated and where the filters are placed, so the search results are the same.
+ */
+public class ConstraintPlanner
+{
+	/**
+	 * Model to take the samples from.
+	 */
+	private final Model model;
+
+	/**
+	 * Number of starting elements to sample.
+	 */
+	private int sampleSize;
+
+	/**
+	 * Max number of partial matches to keep in the sample.
+	 */
+	private int maxRows;
+
+	/**
+	 * Random generator for sampling.
+	 */
+	private final Random random;
+
+	/**
+	 * Constructor with the model.
+	 * @param model model to sample
+	 */
+	public ConstraintPlanner(Model model)
+	{
+		this.model = model;
+		this.sampleSize = 200;
+		this.maxRows = 2000;
+		this.random = new Random(0);
+	}
+
+	/**
+	 * Sets the sample sizes.
+	 * @param sampleSize number of starting elements to sample
+	 * @param maxRows max number of partial matches to keep in the sample
+	 */
+	public void setSampleSize(int sampleSize, int maxRows)
+	{
+		this.sampleSize = sampleSize;
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * Plans the order of the constraints of the pattern. The pattern is not modified.
+	 * @param pattern pattern to plan
+	 * @return the plan
+	 */
+	public ConstraintPlan plan(Pattern pattern)
+	{
+		List<MappedConst> remaining = new ArrayList<MappedConst>(pattern.getConstraints());
+		Map<MappedConst, Integer> position = new HashMap<MappedConst, Integer>();
+		for (int i = 0; i < remaining.size(); i++)
+		{
+			position.put(remaining.get(i), i);
+		}
+
+		// The first constraint that generates an element keeps generating it
+
+		Set<MappedConst> generators = new HashSet<MappedConst>();
+		Set<Integer> generated = new HashSet<Integer>();
+		generated.add(0);
+		for (MappedConst mc : remaining)
+		{
+			if (mc.canGenerate() && generated.add(getTarget(mc))) generators.add(mc);
+		}
+
+		List<Match> rows = sampleSeeds(pattern);
+		double perSeed = 1;
+
+		Set<Integer> bound = new HashSet<Integer>();
+		bound.add(0);
+
+		List<MappedConst> order = new ArrayList<MappedConst>();
+		List<Double> estimates = new ArrayList<Double>();
+
+		while (!remaining.isEmpty())
+		{
+			MappedConst best = null;
+			double bestScore = Double.MAX_VALUE;
+			boolean bestIsFilter = false;
+
+			for (MappedConst mc : remaining)
+			{
+				boolean filter = !generators.contains(mc);
+				if (filter ? !allBound(mc, bound) : !prerequisitesBound(mc, bound)) continue;
+
+				// filters always come before generators
+				if (bestIsFilter && !filter) continue;
+
+				double score = filter ? passRate(mc, rows) : fanOut(mc, rows);
+
+				if (best == null || (filter && !bestIsFilter) || score < bestScore ||
+					(score == bestScore && position.get(mc) < position.get(best)))
+				{
+					best = mc;
+					bestScore = score;
+					bestIsFilter = filter;
+				}
+			}
+
+			if (best == null)
+			{
+				// should not happen for a valid pattern; keep the rest in the given order
+				order.addAll(remaining);
+				for (int i = 0; i < remaining.size(); i++) estimates.add(perSeed);
+				break;
+			}
+
+			int before = rows.size();
+			rows = apply(best, rows, !bestIsFilter);
+			if (before > 0) perSeed *= rows.size() / (double) before;
+			rows = cap(rows);
+
+			if (!bestIsFilter) bound.add(getTarget(best));
+
+			remaining.remove(best);
+			order.add(best);
+			estimates.add(perSeed);
+		}
+
+		double[] estimated = new double[estimates.size()];
+		for (int i = 0; i < estimated.length; i++)
+		{
+			estimated[i] = estimates.get(i);
+		}
+		return new ConstraintPlan(pattern, order, estimated);
+	}
+
+	/**
+	 * Takes a random sample of the starting elements.
+	 * @param pattern the pattern
+	 * @return partial matches with only the first element
+	 */
+	private List<Match> sampleSeeds(Pattern pattern)
+	{
+		List<BioPAXElement> seeds = new ArrayList<BioPAXElement>(
+			model.getObjects(pattern.getStartingClass()));
+
+		// sort first so that the sample is the same for the same model
+		Collections.sort(seeds, new Comparator<BioPAXElement>()
+		{
+			@Override
+			public int compare(BioPAXElement o1, BioPAXElement o2)
+			{
+				return o1.getUri().compareTo(o2.getUri());
+			}
+		});
+		Collections.shuffle(seeds, random);
+
+		List<Match> rows = new ArrayList<Match>();
+		for (BioPAXElement seed : seeds.subList(0, Math.min(sampleSize, seeds.size())))
+		{
+			Match m = new Match(pattern.size());
+			m.set(seed, 0);
+			rows.add(m);
+		}
+		return rows;
+	}
+
+	/**
+	 * Measures the fraction of the rows that satisfy the constraint.
+	 */
+	private double passRate(MappedConst mc, List<Match> rows)
+	{
+		if (rows.isEmpty()) return 1;
+
+		int pass = 0;
+		for (Match m : rows)
+		{
+			if (mc.getConstr().satisfies(m, mc.getInds())) pass++;
+		}
+		return pass / (double) rows.size();
+	}
+
+	/**
+	 * Measures the average number of elements the constraint generates for the rows.
+	 */
+	private double fanOut(MappedConst mc, List<Match> rows)
+	{
+		if (rows.isEmpty()) return 0;
+
+		long total = 0;
+		for (Match m : rows)
+		{
+			total += mc.getConstr().generate(m, mc.getInds()).size();
+		}
+		return total / (double) rows.size();
+	}
+
+	/**
+	 * Applies the constraint to the rows.
+	 */
+	private List<Match> apply(MappedConst mc, List<Match> rows, boolean generate)
+	{
+		List<Match> result = new ArrayList<Match>();
+		int[] ind = mc.getInds();
+		int target = ind[ind.length - 1];
+
+		for (Match m : rows)
+		{
+			if (generate)
+			{
+				for (BioPAXElement ele : mc.getConstr().generate(m, ind))
+				{
+					Match copy = (Match) m.clone();
+					copy.set(ele, target);
+					result.add(copy);
+				}
+			}
+			else if (mc.getConstr().satisfies(m, ind)) result.add(m);
+		}
+		return result;
+	}
+
+	/**
+	 * Keeps a random subset of the rows if they are too many.
+	 */
+	private List<Match> cap(List<Match> rows)
+	{
+		if (rows.size() <= maxRows) return rows;
+
+		Collections.shuffle(rows, random);
+		return new ArrayList<Match>(rows.subList(0, maxRows));
+	}
+
+	private int getTarget(MappedConst mc)
+	{
+		return mc.getInds()[mc.getInds().length - 1];
+	}
+
+	private boolean allBound(MappedConst mc, Set<Integer> bound)
+	{
+		for (int ind : mc.getInds())
+		{
+			if (!bound.contains(ind)) return false;
+		}
+		return true;
+	}
+
+	private boolean prerequisitesBound(MappedConst mc, Set<Integer> bound)
+	{
+		int[] ind = mc.getInds();
+		for (int i = 0; i < ind.length - 1; i++)
+		{
+			if (!bound.contains(ind[i])) return false;
+		}
+		return !bound.contains(ind[ind.length - 1]);
+	}
+}
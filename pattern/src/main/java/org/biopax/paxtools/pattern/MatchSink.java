@@ -0,0 +1,18 @@
+package org.biopax.paxtools.pattern;
+
+/**
+ * Receives the matches of a search as they are found, so that the results do not need to be
+ * collected in memory.
+ *
+ * The search passes its working match object to the sink, and continues modifying it after the
+ * call returns. Sinks that keep the match should keep a clone of it.
+ */
+public interface MatchSink
+{
+	/**
+	 * Receives a match.
+	 * @param match the match, valid only during the call
+	 * @return false to stop the search, true to continue
+	 */
+	boolean accept(Match match);
+}
@@ -0,0 +1,167 @@
+package org.biopax.paxtools.pattern;
+
+import org.biopax.paxtools.model.BioPAXElement;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a pattern search that runs in a background thread. The search thread puts the
+ * matches into a bounded queue, and waits when the queue is full, so memory use is limited by the
+ * capacity of the queue regardless of the number of results.
+ *
+ * If the consumer does not read all the results, it should close the stream to stop the search.
+ */
+public class MatchStream implements Iterator<Match>
+{
+	/**
+	 * Marks the end of the results in the queue.
+	 */
+	private static final Match END = new Match(0);
+
+	/**
+	 * Found matches waiting to be read.
+	 */
+	private final BlockingQueue<Match> queue;
+
+	/**
+	 * Set when the consumer closes the stream.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Exception thrown by the search, if any.
+	 */
+	private volatile RuntimeException failure;
+
+	/**
+	 * Next match to return.
+	 */
+	private Match next;
+
+	/**
+	 * Whether all the results are read.
+	 */
+	private boolean finished;
+
+	/**
+	 * Starts the search.
+	 * @param eles elements to start from
+	 * @param pattern pattern to search for
+	 * @param capacity max number of matches to keep waiting
+	 */
+	MatchStream(final Collection<? extends BioPAXElement> eles, final Pattern pattern,
+		int capacity)
+	{
+		queue = new ArrayBlockingQueue<Match>(capacity);
+
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Searcher.search(eles, pattern, new MatchSink()
+					{
+						@Override
+						public boolean accept(Match match)
+						{
+							return put((Match) match.clone());
+						}
+					});
+				}
+				catch (RuntimeException e)
+				{
+					failure = e;
+				}
+				finally
+				{
+					put(END);
+				}
+			}
+		}, "MatchStream");
+
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * Puts the match into the queue, waiting for space unless the stream is closed.
+	 * @param match match to put
+	 * @return false if the stream is closed
+	 */
+	private boolean put(Match match)
+	{
+		try
+		{
+			while (!closed)
+			{
+				if (queue.offer(match, 100, TimeUnit.MILLISECONDS)) return true;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (next != null) return true;
+		if (finished) return false;
+
+		try
+		{
+			next = queue.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			close();
+			throw new RuntimeException("Interrupted while waiting for search results.", e);
+		}
+
+		if (next == END)
+		{
+			next = null;
+			finished = true;
+			if (failure != null) throw failure;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Match next()
+	{
+		if (!hasNext()) throw new NoSuchElementException();
+
+		Match m = next;
+		next = null;
+		return m;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops the search and discards the waiting results.
+	 */
+	public void close()
+	{
+		closed = true;
+		finished = true;
+		next = null;
+		queue.clear();
+	}
+}
@@ -0,0 +1,514 @@
+package org.biopax.paxtools.pattern;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Searches several patterns in one pass. The patterns are merged into a tree of their constraints,
+ * where the patterns that start with the same constraints share a branch. A shared constraint is
+ * evaluated once for each partial match, and the search branches where the patterns differ.
+ *
+ * Two constraints are considered the same when they are equal and are mapped to the same indices.
+ * See ConstraintAdapter for which constraints are equal. Patterns whose optimized constraint orders
+ * differ early share less.
+ *
+ * Matches are passed to the sink of their pattern. Starting elements are searched in parallel, and
+ * divided into parts like in ParallelSearcher, so the sinks have to be thread-safe. The search can
+ * be cancelled or limited with a timeout, and the returned report tells whether the results are
+ * complete.
+ */
+public class MultiPatternSearcher
+{
+	/**
+	 * Patterns to search.
+	 */
+	private final List<Pattern> patterns;
+
+	/**
+	 * Roots of the constraint trees, one for each starting class.
+	 */
+	private final List<Node> roots;
+
+	/**
+	 * Number of nodes in the trees, other than the roots.
+	 */
+	private int nodeCount;
+
+	/**
+	 * Executor that runs the tasks.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Max running time in milliseconds. Zero or negative means no limit.
+	 */
+	private long timeout;
+
+	/**
+	 * Number of generated candidates above which an element is divided into parts.
+	 */
+	private int splitThreshold;
+
+	/**
+	 * Number of candidates in each part of a divided element.
+	 */
+	private int partSize;
+
+	/**
+	 * If set, only these elements are mapped to the pattern variables.
+	 */
+	private Set<? extends BioPAXElement> scope;
+
+	/**
+	 * The running search, to be cancelled.
+	 */
+	private volatile Run current;
+
+	/**
+	 * Constructor with the patterns. The patterns should not be modified afterwards.
+	 * @param patterns patterns to search
+	 */
+	public MultiPatternSearcher(List<Pattern> patterns)
+	{
+		this.patterns = new ArrayList<Pattern>(patterns);
+		this.roots = new ArrayList<Node>();
+		this.splitThreshold = 64;
+		this.partSize = 16;
+
+		for (int i = 0; i < this.patterns.size(); i++)
+		{
+			Pattern p = this.patterns.get(i);
+			Node node = getRoot(p.getStartingClass());
+			node.addPattern(i, p.size());
+
+			for (MappedConst mc : p.getConstraints())
+			{
+				Node child = node.getChild(mc);
+				if (child == null)
+				{
+					child = new Node(mc);
+					node.children.add(child);
+					nodeCount++;
+				}
+				child.addPattern(i, p.size());
+				node = child;
+			}
+			node.ending.add(i);
+		}
+	}
+
+	/**
+	 * Gets the root for the starting class, creating it if needed.
+	 * @param clazz starting class
+	 * @return the root
+	 */
+	private Node getRoot(Class<? extends BioPAXElement> clazz)
+	{
+		for (Node root : roots)
+		{
+			if (root.startingClass == clazz) return root;
+		}
+		Node root = new Node(null);
+		root.startingClass = clazz;
+		roots.add(root);
+		return root;
+	}
+
+	/**
+	 * Sets the executor to run the tasks on. If not set, the shared pool of ParallelSearcher is
+	 * used. The executor is not shut down by the searcher.
+	 * @param executor executor to use
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the max running time of a search. When the time is up, the search stops and reports
+	 * incomplete results.
+	 * @param timeout max running time in milliseconds, zero for no limit
+	 */
+	public void setTimeout(long timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets when and how a productive starting element is divided into parts.
+	 * @param splitThreshold number of generated candidates above which the element is divided
+	 * @param partSize number of candidates in each part
+	 */
+	public void setSplitting(int splitThreshold, int partSize)
+	{
+		if (partSize < 1) throw new IllegalArgumentException("Part size has to be positive.");
+		this.splitThreshold = splitThreshold;
+		this.partSize = partSize;
+	}
+
+	/**
+	 * Restricts the search to the given elements. Generated candidates outside the scope are
+	 * dropped, so the search does not go through them, and all elements of a match are in the
+	 * scope. Constraints may still look outside the scope while checking a link.
+	 * @param scope elements that can be matched, or null for no restriction
+	 */
+	public void setScope(Set<? extends BioPAXElement> scope)
+	{
+		this.scope = scope;
+	}
+
+	/**
+	 * Stops the running search. The search returns after its running tasks notice this.
+	 */
+	public void cancel()
+	{
+		Run run = current;
+		if (run != null) run.cancel();
+	}
+
+	/**
+	 * Gets the number of distinct constraints that are evaluated. Compare to the total size of the
+	 * constraint lists of the patterns to see how much is shared.
+	 * @return number of constraints after sharing the common prefixes
+	 */
+	public int getSharedConstraintCount()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Searches the patterns in the model.
+	 * @param model model to search
+	 * @param sinks receivers of the matches, in the order of the patterns
+	 * @return report of the completeness of the results
+	 */
+	public SearchReport search(Model model, List<? extends MatchSink> sinks)
+	{
+		Set<BioPAXElement> seeds = new LinkedHashSet<BioPAXElement>();
+		for (Node root : roots)
+		{
+			seeds.addAll(model.getObjects(root.startingClass));
+		}
+		return search(seeds, sinks);
+	}
+
+	/**
+	 * Searches the patterns starting from the given elements, in parallel. Elements are used only
+	 * for the patterns with a compatible starting class. If a sink returns false, its pattern is not
+	 * searched any further, and the search is reported as cancelled.
+	 * @param eles elements to start from
+	 * @param sinks receivers of the matches, in the order of the patterns
+	 * @return report of the completeness of the results
+	 */
+	public SearchReport search(Collection<? extends BioPAXElement> eles,
+		List<? extends MatchSink> sinks)
+	{
+		if (sinks.size() != patterns.size()) throw new IllegalArgumentException(
+			"There should be a sink for each pattern.");
+
+		List<BioPAXElement> seeds = new ArrayList<BioPAXElement>();
+		for (BioPAXElement ele : eles)
+		{
+			if (getRoots(ele).iterator().hasNext()) seeds.add(ele);
+		}
+
+		Run run = new Run(sinks);
+		current = run;
+		try
+		{
+			for (BioPAXElement seed : seeds)
+			{
+				if (run.shouldStop()) break;
+				run.submit(new SeedTask(run, seed));
+			}
+			run.await();
+		}
+		finally
+		{
+			current = null;
+		}
+
+		return new SearchReport(seeds.size(), run.completedSeeds.get(),
+			run.isCancelled() || run.stoppedBySink, run.isTimedOut());
+	}
+
+	/**
+	 * Gets the roots whose starting class is compatible with the element.
+	 * @param ele starting element
+	 * @return compatible roots
+	 */
+	private List<Node> getRoots(BioPAXElement ele)
+	{
+		List<Node> list = new ArrayList<Node>(roots.size());
+		for (Node root : roots)
+		{
+			if (root.startingClass.isAssignableFrom(ele.getModelInterface())) list.add(root);
+		}
+		return list;
+	}
+
+	/**
+	 * Reports the patterns that end at the node and continues with the children. The candidates of
+	 * the first generating constraint on the way are divided into parts if a seed is given and they
+	 * are many.
+	 * @param node current node, whose constraint is satisfied
+	 * @param m current match
+	 * @param run state of the search
+	 * @param seed the starting element to divide, or null if it is already divided
+	 * @return false if the search is stopped
+	 */
+	private boolean visit(Node node, Match m, Run run, SearchTasks.Seed seed)
+	{
+		for (Integer i : node.ending)
+		{
+			run.report(i, m, patterns.get(i).size());
+		}
+
+		for (Node child : node.children)
+		{
+			if (run.shouldStop()) return false;
+			if (!run.isActive(child)) continue;
+
+			Constraint con = child.mc.getConstr();
+			int[] ind = child.mc.getInds();
+			int lastInd = ind[ind.length - 1];
+
+			if (con.canGenerate() && m.get(lastInd) == null)
+			{
+				List<BioPAXElement> gen = new ArrayList<BioPAXElement>(con.generate(m, ind));
+				if (scope != null) gen.retainAll(scope);
+
+				if (seed != null && gen.size() > splitThreshold)
+				{
+					for (int i = partSize; i < gen.size(); i += partSize)
+					{
+						seed.parts.incrementAndGet();
+						run.submit(new PartTask(run, seed, (Match) m.clone(), child,
+							gen.subList(i, Math.min(gen.size(), i + partSize))));
+					}
+					gen = gen.subList(0, partSize);
+				}
+
+				if (!process(child, m, run, gen)) return false;
+			}
+			else if (con.satisfies(m, ind))
+			{
+				if (!visit(child, m, run, seed)) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Continues the search with the generated candidates of the node.
+	 * @param node node whose constraint generated the candidates
+	 * @param m current match
+	 * @param run state of the search
+	 * @param elements candidates to process
+	 * @return false if the search is stopped
+	 */
+	private boolean process(Node node, Match m, Run run, List<BioPAXElement> elements)
+	{
+		int[] ind = node.mc.getInds();
+		int lastInd = ind[ind.length - 1];
+
+		for (BioPAXElement ele : elements)
+		{
+			if (run.shouldStop()) return false;
+
+			m.set(ele, lastInd);
+			boolean goOn = visit(node, m, run, null);
+			m.set(null, lastInd);
+
+			if (!goOn) return false;
+			if (!run.isActive(node)) break;
+		}
+		return true;
+	}
+
+	/**
+	 * A constraint in the tree, with the patterns that go through it.
+	 */
+	private static class Node
+	{
+		final MappedConst mc;
+		final List<Node> children;
+		final List<Integer> patterns;
+		final List<Integer> ending;
+		Class<? extends BioPAXElement> startingClass;
+		int matchSize;
+
+		Node(MappedConst mc)
+		{
+			this.mc = mc;
+			this.children = new ArrayList<Node>();
+			this.patterns = new ArrayList<Integer>();
+			this.ending = new ArrayList<Integer>();
+		}
+
+		void addPattern(int index, int size)
+		{
+			patterns.add(index);
+			matchSize = Math.max(matchSize, size);
+		}
+
+		/**
+		 * Gets the child with the same constraint, mapped to the same indices.
+		 * @param mc mapped constraint
+		 * @return the child, or null if there is none
+		 */
+		Node getChild(MappedConst mc)
+		{
+			for (Node child : children)
+			{
+				if (child.mc.getConstr().equals(mc.getConstr()) &&
+					Arrays.equals(child.mc.getInds(), mc.getInds())) return child;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * State of a search call.
+	 */
+	private class Run extends SearchTasks
+	{
+		final List<? extends MatchSink> sinks;
+
+		/**
+		 * 1 for the patterns whose sink wants no more matches.
+		 */
+		final AtomicIntegerArray stopped;
+		final AtomicInteger stoppedCount = new AtomicInteger();
+		volatile boolean stoppedBySink;
+
+		Run(List<? extends MatchSink> sinks)
+		{
+			super(executor, timeout, null);
+			this.sinks = sinks;
+			this.stopped = new AtomicIntegerArray(sinks.size());
+		}
+
+		/**
+		 * Passes the match to the sink of the pattern, resized to the pattern.
+		 */
+		void report(int pattern, Match m, int size)
+		{
+			if (stopped.get(pattern) == 1) return;
+
+			Match out = new Match(size);
+			for (int i = 0; i < size; i++)
+			{
+				out.set(m.get(i), i);
+			}
+
+			if (!sinks.get(pattern).accept(out)) stopPattern(pattern);
+		}
+
+		void stopPattern(int pattern)
+		{
+			if (stopped.compareAndSet(pattern, 0, 1))
+			{
+				stoppedBySink = true;
+				if (stoppedCount.incrementAndGet() == stopped.length()) stop();
+			}
+		}
+
+		/**
+		 * Checks if any pattern through the node is still searched.
+		 */
+		boolean isActive(Node node)
+		{
+			if (stoppedCount.get() == 0) return true;
+			for (Integer i : node.patterns)
+			{
+				if (stopped.get(i) == 0) return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Searches the patterns from a starting element.
+	 */
+	private class SeedTask implements Runnable
+	{
+		final Run run;
+		final BioPAXElement ele;
+
+		SeedTask(Run run, BioPAXElement ele)
+		{
+			this.run = run;
+			this.ele = ele;
+		}
+
+		@Override
+		public void run()
+		{
+			SearchTasks.Seed seed = new SearchTasks.Seed();
+			boolean ok = false;
+			try
+			{
+				ok = !run.shouldStop() && expand(seed) && !run.stoppedBySink;
+			}
+			finally
+			{
+				run.partDone(seed, ok);
+			}
+		}
+
+		private boolean expand(SearchTasks.Seed seed)
+		{
+			for (Node root : getRoots(ele))
+			{
+				if (!run.isActive(root)) continue;
+
+				Match m = new Match(root.matchSize);
+				m.set(ele, 0);
+				if (!visit(root, m, run, seed)) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Searches a part of a divided starting element.
+	 */
+	private class PartTask implements Runnable
+	{
+		final Run run;
+		final SearchTasks.Seed seed;
+		final Match match;
+		final Node node;
+		final List<BioPAXElement> elements;
+
+		PartTask(Run run, SearchTasks.Seed seed, Match match, Node node,
+			List<BioPAXElement> elements)
+		{
+			this.run = run;
+			this.seed = seed;
+			this.match = match;
+			this.node = node;
+			this.elements = elements;
+		}
+
+		@Override
+		public void run()
+		{
+			boolean ok = false;
+			try
+			{
+				ok = process(node, match, run, elements) && !run.stoppedBySink;
+			}
+			finally
+			{
+				run.partDone(seed, ok);
+			}
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package org.biopax.paxtools.pattern;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.pattern.util.ProgressWatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches a pattern from many starting elements in parallel, passing the matches to a sink.
+ *
+ * Each starting element is a task. When the first generating constraint of a pattern produces
+ * many candidates for an element, the candidates are divided into parts that run as separate
+ * tasks, so that a few very productive elements do not keep the other threads idle.
+ *
+ * The search can be cancelled or limited with a timeout. It waits for its tasks to stop before
+ * returning, so the sink is not called after the search returns, and the returned report tells
+ * whether the results are complete.
+ */
+public class ParallelSearcher
+{
+	/**
+	 * Executor used when none is given.
+	 */
+	private static ExecutorService sharedExecutor;
+
+	/**
+	 * The pattern to search.
+	 */
+	private final Pattern pattern;
+
+	/**
+	 * Executor that runs the tasks.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Max running time in milliseconds. Zero or negative means no limit.
+	 */
+	private long timeout;
+
+	/**
+	 * Number of generated candidates above which an element is divided into parts.
+	 */
+	private int splitThreshold;
+
+	/**
+	 * Number of candidates in each part of a divided element.
+	 */
+	private int partSize;
+
+	/**
+	 * Optional progress watcher, ticked once per starting element.
+	 */
+	private ProgressWatcher progressWatcher;
+
+	/**
+	 * The running search, to be cancelled.
+	 */
+	private volatile Run current;
+
+	/**
+	 * Constructor with the pattern.
+	 * @param pattern pattern to search
+	 */
+	public ParallelSearcher(Pattern pattern)
+	{
+		this.pattern = pattern;
+		this.splitThreshold = 64;
+		this.partSize = 16;
+	}
+
+	/**
+	 * Sets the executor to run the tasks on. If not set, a shared pool with a thread per processor
+	 * is used. The executor is not shut down by the searcher.
+	 * @param executor executor to use
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the max running time of a search. When the time is up, the search stops and reports
+	 * incomplete results.
+	 * @param timeout max running time in milliseconds, zero for no limit
+	 */
+	public void setTimeout(long timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets when and how a productive starting element is divided into parts.
+	 * @param splitThreshold number of generated candidates above which the element is divided
+	 * @param partSize number of candidates in each part
+	 */
+	public void setSplitting(int splitThreshold, int partSize)
+	{
+		if (partSize < 1) throw new IllegalArgumentException("Part size has to be positive.");
+		this.splitThreshold = splitThreshold;
+		this.partSize = partSize;
+	}
+
+	/**
+	 * Sets the progress watcher, which is ticked when a starting element is done.
+	 * @param progressWatcher progress watcher
+	 */
+	public void setProgressWatcher(ProgressWatcher progressWatcher)
+	{
+		this.progressWatcher = progressWatcher;
+	}
+
+	/**
+	 * Stops the running search. The search returns after its running tasks notice this.
+	 */
+	public void cancel()
+	{
+		Run run = current;
+		if (run != null) run.cancel();
+	}
+
+	/**
+	 * Searches the pattern in the model.
+	 * @param model model to search in
+	 * @param sink receiver of the matches, called from multiple threads
+	 * @return report of the completeness of the results
+	 */
+	public SearchReport search(Model model, MatchSink sink)
+	{
+		return search(model.getObjects(pattern.getStartingClass()), sink);
+	}
+
+	/**
+	 * Searches the pattern starting from the given elements. Elements that are not of the starting
+	 * class of the pattern are skipped. The sink has to be thread-safe. If it returns false, the
+	 * search is stopped.
+	 * @param eles elements to start from
+	 * @param sink receiver of the matches, called from multiple threads
+	 * @return report of the completeness of the results
+	 */
+	public SearchReport search(Collection<? extends BioPAXElement> eles, MatchSink sink)
+	{
+		List<BioPAXElement> seeds = new ArrayList<BioPAXElement>();
+		for (BioPAXElement ele : eles)
+		{
+			if (pattern.getStartingClass().isAssignableFrom(ele.getModelInterface())) seeds.add(ele);
+		}
+
+		if (progressWatcher != null) progressWatcher.setTotalTicks(seeds.size());
+
+		Run run = new Run(sink);
+		current = run;
+		try
+		{
+			for (BioPAXElement seed : seeds)
+			{
+				if (run.shouldStop()) break;
+				run.submit(new SeedTask(run, seed));
+			}
+			run.await();
+		}
+		finally
+		{
+			current = null;
+		}
+
+		return new SearchReport(seeds.size(), run.completedSeeds.get(),
+			run.isCancelled() || run.stoppedBySink, run.isTimedOut());
+	}
+
+	/**
+	 * Gets the default executor. It is shared by the searches and the caches of this library, and
+	 * its daemon threads are never shut down.
+	 * @return the shared executor
+	 */
+	public static synchronized ExecutorService getSharedExecutor()
+	{
+		if (sharedExecutor == null)
+		{
+			sharedExecutor = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+			{
+				final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "pattern-search-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * State of a single search call.
+	 */
+	private class Run extends SearchTasks
+	{
+		final MatchSink sink;
+		final CompiledPattern plan = new CompiledPattern(pattern);
+
+		volatile boolean stoppedBySink;
+
+		/**
+		 * Passes the matches to the user sink unless the search is stopped.
+		 */
+		final MatchSink guard = new MatchSink()
+		{
+			@Override
+			public boolean accept(Match match)
+			{
+				if (shouldStop()) return false;
+
+				if (!sink.accept(match))
+				{
+					stoppedBySink = true;
+					stop();
+					return false;
+				}
+				return true;
+			}
+		};
+
+		Run(MatchSink sink)
+		{
+			super(executor, timeout, ParallelSearcher.this.progressWatcher);
+			this.sink = sink;
+		}
+
+		/**
+		 * Runs the search for a part of the candidates of a generating step.
+		 * @param m match to extend
+		 * @param index index of the generating step
+		 * @param elements candidates to process
+		 * @return false if the search is stopped
+		 */
+		boolean process(Match m, int index, List<BioPAXElement> elements)
+		{
+			int target = plan.getTarget(index);
+			boolean last = index == plan.getStepCount() - 1;
+
+			for (BioPAXElement ele : elements)
+			{
+				if (shouldStop()) return false;
+
+				m.set(ele, target);
+				boolean goOn = last ? guard.accept(m) : plan.run(m, index + 1, guard);
+				m.set(null, target);
+
+				if (!goOn) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Searches from a starting element. Divides the candidates of the first generating step into
+	 * parts if they are many.
+	 */
+	private class SeedTask implements Runnable
+	{
+		final Run run;
+		final BioPAXElement ele;
+
+		SeedTask(Run run, BioPAXElement ele)
+		{
+			this.run = run;
+			this.ele = ele;
+		}
+
+		@Override
+		public void run()
+		{
+			SearchTasks.Seed seed = new SearchTasks.Seed();
+			boolean ok = false;
+			try
+			{
+				ok = !run.shouldStop() && expand(seed);
+			}
+			finally
+			{
+				run.partDone(seed, ok);
+			}
+		}
+
+		private boolean expand(SearchTasks.Seed seed)
+		{
+			Match m = new Match(pattern.size());
+			m.set(ele, 0);
+
+			CompiledPattern plan = run.plan;
+
+			for (int index = 0; index < plan.getStepCount(); index++)
+			{
+				Constraint con = plan.getConstraint(index);
+				int[] ind = plan.getSlots(index);
+
+				if (plan.getTarget(index) >= 0)
+				{
+					List<BioPAXElement> gen = new ArrayList<BioPAXElement>(con.generate(m, ind));
+
+					if (gen.size() <= splitThreshold) return run.process(m, index, gen);
+
+					for (int i = partSize; i < gen.size(); i += partSize)
+					{
+						seed.parts.incrementAndGet();
+						run.submit(new PartTask(run, seed, (Match) m.clone(), index,
+							gen.subList(i, Math.min(gen.size(), i + partSize))));
+					}
+					return run.process(m, index, gen.subList(0, partSize));
+				}
+				else if (!con.satisfies(m, ind)) return true;
+			}
+
+			// all steps are satisfied without generating
+			return run.guard.accept(m);
+		}
+	}
+
+	/**
+	 * Searches a part of a divided starting element.
+	 */
+	private class PartTask implements Runnable
+	{
+		final Run run;
+		final SearchTasks.Seed seed;
+		final Match match;
+		final int index;
+		final List<BioPAXElement> elements;
+
+		PartTask(Run run, SearchTasks.Seed seed, Match match, int index,
+			List<BioPAXElement> elements)
+		{
+			this.run = run;
+			this.seed = seed;
+			this.match = match;
+			this.index = index;
+			this.elements = elements;
+		}
+
+		@Override
+		public void run()
+		{
+			boolean ok = false;
+			try
+			{
+				ok = run.process(match, index, elements);
+			}
+			finally
+			{
+				run.partDone(seed, ok);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.biopax.paxtools.pattern;
 
 import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
 
 import java.util.*;
 
@@ -191,6 +192,20 @@ public class Pattern
 		this.constraints = newList;
 	}
 
+	/**
+	 * Orders the constraints using statistics sampled from the given model, so that selective
+	 * constraints are applied early. The results of the search do not change.
+	 * @param model model that will be searched
+	 * @return the applied plan, which can explain the estimated costs
+	 * @see ConstraintPlanner
+	 */
+	public ConstraintPlan optimizeConstraintOrder(Model model)
+	{
+		ConstraintPlan plan = new ConstraintPlanner(model).plan(this);
+		plan.apply();
+		return plan;
+	}
+
 	/**
 	 * Creates a mapped constraint with the given generative constraint and the indexes it applies.
 	 * Also labels the last given index.
@@ -293,9 +308,9 @@ public class Pattern
 	/**
 	 * Gets the label for the element at the specified index.
 	 * @param i index
-	 * @return label for the element at the specified index
+	 * @return label for the element at the specified index, or null if there is no label
 	 */
-	private String getLabel(int i)
+	public String getLabel(int i)
 	{
 		for (String label : labelMap.keySet())
 		{
@@ -330,6 +345,16 @@ public class Pattern
 		}
 	}
 
+	/**
+	 * Compiles the pattern for searching from starting elements. Later changes in the pattern are
+	 * not reflected in the compiled pattern.
+	 * @return the compiled pattern
+	 */
+	public CompiledPattern compile()
+	{
+		return new CompiledPattern(this);
+	}
+
 	/**
 	 * Getter for the constraint list.
 	 * @return constraints
@@ -0,0 +1,89 @@
+package org.biopax.paxtools.pattern;
+
+/**
+ * Tells how complete the results of a parallel search are.
+ */
+public class SearchReport
+{
+	/**
+	 * Number of starting elements of the search.
+	 */
+	private final int totalSeeds;
+
+	/**
+	 * Number of starting elements that are searched completely.
+	 */
+	private final int completedSeeds;
+
+	/**
+	 * Whether the search was cancelled, or stopped by the sink.
+	 */
+	private final boolean cancelled;
+
+	/**
+	 * Whether the search hit its deadline.
+	 */
+	private final boolean timedOut;
+
+	/**
+	 * Constructor with the counts.
+	 * @param totalSeeds number of starting elements
+	 * @param completedSeeds number of completely searched starting elements
+	 * @param cancelled whether the search was cancelled
+	 * @param timedOut whether the search hit its deadline
+	 */
+	public SearchReport(int totalSeeds, int completedSeeds, boolean cancelled, boolean timedOut)
+	{
+		this.totalSeeds = totalSeeds;
+		this.completedSeeds = completedSeeds;
+		this.cancelled = cancelled;
+		this.timedOut = timedOut;
+	}
+
+	/**
+	 * @return number of starting elements of the search
+	 */
+	public int getTotalSeeds()
+	{
+		return totalSeeds;
+	}
+
+	/**
+	 * @return number of starting elements whose results are all produced
+	 */
+	public int getCompletedSeeds()
+	{
+		return completedSeeds;
+	}
+
+	/**
+	 * @return true if the search was cancelled or stopped by the sink
+	 */
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * @return true if the search hit its deadline
+	 */
+	public boolean isTimedOut()
+	{
+		return timedOut;
+	}
+
+	/**
+	 * @return true if all results are produced
+	 */
+	public boolean isComplete()
+	{
+		return completedSeeds == totalSeeds;
+	}
+
+	@Override
+	public String toString()
+	{
+		return completedSeeds + " of " + totalSeeds + " starting elements searched" +
+			(cancelled ? ", cancelled" : "") + (timedOut ? ", timed out" : "");
+	}
+}
@@ -0,0 +1,219 @@
+package org.biopax.paxtools.pattern;
+
+import org.biopax.paxtools.pattern.util.ProgressWatcher;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks of a single parallel search on an executor, and waits for them to stop. The
+ * search stops early when it is cancelled, when its deadline passes, or when a task fails.
+ *
+ * A starting element can be divided into parts that run as separate tasks. The element counts as
+ * completed when all its parts are searched without stopping early.
+ *
+ * Used by ParallelSearcher and MultiPatternSearcher.
+ */
+class SearchTasks
+{
+	/**
+	 * Executor that runs the tasks.
+	 */
+	final ExecutorService exec;
+
+	/**
+	 * Time to stop the search, or zero for no limit.
+	 */
+	final long deadline;
+
+	/**
+	 * Optional progress watcher, ticked once per starting element.
+	 */
+	final ProgressWatcher progressWatcher;
+
+	/**
+	 * Number of starting elements that are completely searched.
+	 */
+	final AtomicInteger completedSeeds = new AtomicInteger();
+
+	private final Object lock = new Object();
+	private int pending;
+	private RuntimeException failure;
+
+	private volatile boolean cancelled;
+	private volatile boolean stopped;
+	private volatile boolean timedOut;
+
+	/**
+	 * Constructor with the settings of the search.
+	 * @param executor executor to run the tasks, or null to use the shared one
+	 * @param timeout max running time in milliseconds, zero or negative for no limit
+	 * @param progressWatcher progress watcher, may be null
+	 */
+	SearchTasks(ExecutorService executor, long timeout, ProgressWatcher progressWatcher)
+	{
+		this.exec = executor == null ? ParallelSearcher.getSharedExecutor() : executor;
+		this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+		this.progressWatcher = progressWatcher;
+	}
+
+	/**
+	 * Stops the search. Running tasks stop when they notice it.
+	 */
+	void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * Stops the search without marking it cancelled, for example when the sink wants no more.
+	 */
+	void stop()
+	{
+		stopped = true;
+	}
+
+	/**
+	 * Checks if the tasks should stop, noticing a cancel or the deadline.
+	 * @return true if the search is stopped
+	 */
+	boolean shouldStop()
+	{
+		if (stopped) return true;
+
+		if (cancelled)
+		{
+			stopped = true;
+		}
+		else if (deadline > 0 && System.currentTimeMillis() > deadline)
+		{
+			timedOut = true;
+			stopped = true;
+		}
+		return stopped;
+	}
+
+	/**
+	 * @return true if the search was cancelled
+	 */
+	boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * @return true if the search hit its deadline
+	 */
+	boolean isTimedOut()
+	{
+		return timedOut;
+	}
+
+	/**
+	 * Runs the task on the executor. A failing task stops the search, and its exception is thrown
+	 * from await.
+	 * @param task task to run
+	 */
+	void submit(final Runnable task)
+	{
+		synchronized (lock)
+		{
+			pending++;
+		}
+
+		Runnable wrapped = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					task.run();
+				}
+				catch (RuntimeException e)
+				{
+					synchronized (lock)
+					{
+						if (failure == null) failure = e;
+					}
+					stopped = true;
+				}
+				finally
+				{
+					done();
+				}
+			}
+		};
+
+		try
+		{
+			exec.execute(wrapped);
+		}
+		catch (RejectedExecutionException e)
+		{
+			done();
+			throw e;
+		}
+	}
+
+	private void done()
+	{
+		synchronized (lock)
+		{
+			pending--;
+			if (pending == 0) lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until all tasks stop. Wakes up periodically to notice a cancel or the deadline. An
+	 * interrupt cancels the search.
+	 */
+	void await()
+	{
+		synchronized (lock)
+		{
+			while (pending > 0)
+			{
+				try
+				{
+					lock.wait(100);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					cancel();
+				}
+				shouldStop();
+			}
+
+			if (failure != null) throw failure;
+		}
+	}
+
+	/**
+	 * Keeps track of the parts of a starting element.
+	 */
+	static class Seed
+	{
+		final AtomicInteger parts = new AtomicInteger(1);
+		volatile boolean aborted;
+	}
+
+	/**
+	 * Records that a part of a starting element is finished.
+	 * @param seed the starting element
+	 * @param ok whether the part is completely searched
+	 */
+	void partDone(Seed seed, boolean ok)
+	{
+		if (!ok) seed.aborted = true;
+
+		if (seed.parts.decrementAndGet() == 0)
+		{
+			if (!seed.aborted) completedSeeds.incrementAndGet();
+			if (progressWatcher != null) progressWatcher.tick(1);
+		}
+	}
+}
@@ -17,9 +17,6 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Searcher for searching a given pattern in a model.
@@ -57,6 +54,38 @@ public class Searcher
 		return search(m, pattern);
 	}
 
+	/**
+	 * Searches the pattern starting from the given match, and passes the results to the sink as
+	 * they are found. The first element of the match should be assigned. Others are optional.
+	 * @param m match to start from
+	 * @param pattern pattern to search
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	public static boolean search(Match m, Pattern pattern, MatchSink sink)
+	{
+		assert pattern.getStartingClass().isAssignableFrom(m.get(0).getModelInterface());
+
+		return searchRecursive(m, pattern.getConstraints(), 0, sink);
+	}
+
+	/**
+	 * Searches the pattern starting from the given element, and passes the results to the sink as
+	 * they are found.
+	 * @param ele element to start from
+	 * @param pattern pattern to search
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	public static boolean search(BioPAXElement ele, Pattern pattern, MatchSink sink)
+	{
+		assert pattern.getStartingClass().isAssignableFrom(ele.getModelInterface());
+
+		Match m = new Match(pattern.size());
+		m.set(ele, 0);
+		return search(m, pattern, sink);
+	}
+
 	/**
 	 * Continues searching with the mapped constraint at the given index.
 	 * @param match match to start from
@@ -66,11 +95,37 @@ public class Searcher
 	 */
 	public static List<Match> searchRecursive(Match match, List<MappedConst> mc, int index) 
 	{
-		List<Match> result = new ArrayList<Match>();
+		final List<Match> result = new ArrayList<Match>();
+
+		searchRecursive(match, mc, index, new MatchSink()
+		{
+			@Override
+			public boolean accept(Match m)
+			{
+				result.add((Match) m.clone());
+				return true;
+			}
+		});
+
+		return result;
+	}
 
+	/**
+	 * Continues searching with the mapped constraint at the given index, and passes the results to
+	 * the sink without collecting them.
+	 * @param match match to start from
+	 * @param mc mapped constraints of the pattern
+	 * @param index index of the current mapped constraint
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	public static boolean searchRecursive(Match match, List<MappedConst> mc, int index,
+		MatchSink sink)
+	{
 		Constraint con = mc.get(index).getConstr();
 		int[] ind = mc.get(index).getInds();
 		int lastInd = ind[ind.length-1];
+		boolean last = mc.size() == index + 1;
 
 		if (con.canGenerate() && match.get(lastInd) == null)
 		{
@@ -79,34 +134,66 @@ public class Searcher
 			for (BioPAXElement ele : elements)
 			{
 				match.set(ele, lastInd);
-				
-				if (mc.size() == index + 1)
-				{
-					result.add((Match) match.clone());
-				}
-				else
-				{
-					result.addAll(searchRecursive(match, mc, index + 1));
-				}
-				
+
+				boolean goOn = last ? sink.accept(match) : searchRecursive(match, mc, index + 1, sink);
+
 				match.set(null, lastInd);
+
+				if (!goOn) return false;
 			}
 		}
 		else
 		{
 			if (con.satisfies(match, ind))
 			{
-				if (mc.size() == index + 1)
-				{
-					result.add((Match) match.clone());
-				}
-				else
-				{
-					result.addAll(searchRecursive(match, mc, index + 1));
-				}
+				return last ? sink.accept(match) : searchRecursive(match, mc, index + 1, sink);
 			}
 		}
-		return result;
+		return true;
+	}
+
+	/**
+	 * Searches the pattern in the given model and passes the results to the sink as they are
+	 * found, in the calling thread. Nothing is kept in memory, so this can be used for patterns
+	 * with a very large number of matches.
+	 * @param model model to search in
+	 * @param pattern pattern to search for
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	public static boolean search(Model model, Pattern pattern, MatchSink sink)
+	{
+		return search(model.getObjects(pattern.getStartingClass()), pattern, sink);
+	}
+
+	/**
+	 * Searches the pattern starting from the given elements and passes the results to the sink as
+	 * they are found, in the calling thread. Elements that are not of the starting class of the
+	 * pattern are skipped.
+	 * @param eles elements to start from
+	 * @param pattern pattern to search for
+	 * @param sink receiver of the results
+	 * @return false if the sink stopped the search
+	 */
+	public static boolean search(Collection<? extends BioPAXElement> eles, Pattern pattern,
+		MatchSink sink)
+	{
+		return pattern.compile().search(eles, sink);
+	}
+
+	/**
+	 * Starts searching the pattern in a background thread, and returns the results as an iterator.
+	 * At most the given number of found matches wait in memory; the search is paused until the
+	 * consumer takes them. Close the stream if it is not read to the end.
+	 * @param eles elements to start from
+	 * @param pattern pattern to search for
+	 * @param capacity max number of matches to keep waiting
+	 * @return the results
+	 */
+	public static MatchStream stream(Collection<? extends BioPAXElement> eles, Pattern pattern,
+		int capacity)
+	{
+		return new MatchStream(eles, pattern, capacity);
 	}
 
 	/**
@@ -155,7 +242,7 @@ public class Searcher
 	 */
 	public static Map<BioPAXElement, List<Match>> search(Model model, Pattern pattern)
 	{
-		return search(model, pattern, null);
+		return search(model, pattern, (ProgressWatcher) null);
 	}
 
 	/**
@@ -169,32 +256,10 @@ public class Searcher
 														 final ProgressWatcher prg)
 	{
 		final Map<BioPAXElement, List<Match>> map = new ConcurrentHashMap<BioPAXElement, List<Match>>();
-		final ExecutorService exec = Executors.newFixedThreadPool(20);
 
-		Set<? extends BioPAXElement> eles = model.getObjects(pattern.getStartingClass());
-		if (prg != null) prg.setTotalTicks(eles.size());
-
-		for (final BioPAXElement ele : eles)
-		{
-			exec.execute(new Runnable() {
-				@Override
-				public void run() {
-					List<Match> matches = search(ele, pattern);
-					if (!matches.isEmpty())
-					{
-						map.put(ele, matches);
-					}
-					if (prg != null) prg.tick(1);
-				}
-			});
-		}
-
-		exec.shutdown();
-		try {
-			exec.awaitTermination(10, TimeUnit.MINUTES);
-		} catch (InterruptedException e) {
-			throw new RuntimeException("search, failed due to exec timed out.", e);
-		}
+		ParallelSearcher searcher = new ParallelSearcher(pattern);
+		searcher.setProgressWatcher(prg);
+		searcher.search(model, new MapSink(map));
 
 		return Collections.unmodifiableMap(map);
 	}
@@ -209,31 +274,43 @@ public class Searcher
 														 final Pattern pattern)
 	{
 		final Map<BioPAXElement, List<Match>> map = new ConcurrentHashMap<BioPAXElement, List<Match>>();
-		final ExecutorService exec = Executors.newFixedThreadPool(10);
 
-		for (final BioPAXElement ele : eles)
+		new ParallelSearcher(pattern).search(eles, new MapSink(map));
+
+		return Collections.unmodifiableMap(new HashMap<BioPAXElement, List<Match>>(map));
+	}
+
+	/**
+	 * Collects clones of the matches into a map from their starting elements. Thread-safe.
+	 */
+	private static class MapSink implements MatchSink
+	{
+		private final Map<BioPAXElement, List<Match>> map;
+
+		MapSink(Map<BioPAXElement, List<Match>> map)
 		{
-			if (!pattern.getStartingClass().isAssignableFrom(ele.getModelInterface())) continue;
-			
-			exec.execute(new Runnable() {
-				@Override
-				public void run() {
-					List<Match> matches = search(ele, pattern);
-					if (!matches.isEmpty()) {
-						map.put(ele, matches);
-					}
-				}
-			});
+			this.map = map;
 		}
 
-		exec.shutdown();
-		try {
-			exec.awaitTermination(10, TimeUnit.MINUTES);
-		} catch (InterruptedException e) {
-			throw new RuntimeException("search, failed due to exec timed out.", e);
-		}
+		@Override
+		public boolean accept(Match match)
+		{
+			BioPAXElement ele = match.get(0);
+			List<Match> list;
 
-		return Collections.unmodifiableMap(new HashMap<BioPAXElement, List<Match>>(map));
+			synchronized (this)
+			{
+				list = map.get(ele);
+				if (list == null)
+				{
+					list = Collections.synchronizedList(new ArrayList<Match>());
+					map.put(ele, list);
+				}
+			}
+
+			list.add((Match) match.clone());
+			return true;
+		}
 	}
 
 	/**
@@ -268,11 +345,7 @@ public class Searcher
 		Collection<? extends BioPAXElement> eles, Pattern pattern, int index, Class<T> c)
 	{
 		Set<T> set = new HashSet<T>();
-
-		for (Match match : searchPlain(eles, pattern))
-		{
-			set.add((T) match.get(index));
-		}
+		search(eles, pattern, new CollectingSink<T>(set, index));
 		return set;
 	}
 
@@ -291,11 +364,7 @@ public class Searcher
 		BioPAXElement ele, Pattern pattern, int index, Class<T> c)
 	{
 		Set<T> set = new HashSet<T>();
-
-		for (Match match : search(ele, pattern))
-		{
-			set.add((T) match.get(index));
-		}
+		search(ele, pattern, new CollectingSink<T>(set, index));
 		return set;
 	}
 
@@ -313,7 +382,38 @@ public class Searcher
 			m.set(ele[i], i);
 		}
 
-		return !search(m, p).isEmpty();
+		// the sink stops the search at the first match
+		return !search(m, p, new MatchSink()
+		{
+			@Override
+			public boolean accept(Match match)
+			{
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Collects the element at an index of the matches.
+	 * @param <T> type of the collected elements
+	 */
+	private static class CollectingSink<T extends BioPAXElement> implements MatchSink
+	{
+		private final Set<T> set;
+		private final int index;
+
+		CollectingSink(Set<T> set, int index)
+		{
+			this.set = set;
+			this.index = index;
+		}
+
+		@Override
+		public boolean accept(Match match)
+		{
+			set.add((T) match.get(index));
+			return true;
+		}
 	}
 
 	/**
@@ -347,46 +447,48 @@ public class Searcher
 		SimpleIOHandler h = new SimpleIOHandler();
 		Model model = h.convertFromOWL(new FileInputStream(inFile));
 
-		Map<BioPAXElement,List<Match>> matchMap = Searcher.search(model, p);
+		final List<Set<Interaction>> inters = new LinkedList<Set<Interaction>>();
+		final Set<Integer> encountered = new HashSet<Integer>();
 
-		System.out.println("matching groups size = " + matchMap.size());
+		final Set<BioPAXElement> toExise = new HashSet<BioPAXElement>();
 
-		List<Set<Interaction>> inters = new LinkedList<Set<Interaction>>();
-		Set<Integer> encountered = new HashSet<Integer>();
-
-		Set<BioPAXElement> toExise = new HashSet<BioPAXElement>();
+		// matches are processed as they are found, without keeping them
 
 		int seedCounter = 0;
-		for (BioPAXElement ele : matchMap.keySet())
+		for (BioPAXElement ele : model.getObjects(p.getStartingClass()))
 		{
 			if (seedCounter >= seedLimit) break;
 
-			int matchCounter = 0;
-
-			List<Match> matches = matchMap.get(ele);
+			final int[] matchCounter = new int[]{0};
+			final int limit = graphPerSeed;
 
-			if (!matches.isEmpty()) seedCounter++;
-
-			for (Match match : matches)
+			search(ele, p, new MatchSink()
 			{
-				matchCounter++;
-				
-				if (matchCounter > graphPerSeed) break;
+				@Override
+				public boolean accept(Match match)
+				{
+					if (++matchCounter[0] > limit) return false;
 
-				Set<Interaction> ints = getInter(match);
+					Set<Interaction> ints = getInter(match);
 
-				toExise.addAll(Arrays.asList(match.getVariables()));
-				toExise.addAll(ints);
+					toExise.addAll(Arrays.asList(match.getVariables()));
+					toExise.addAll(ints);
 
-				Integer hash = hashSum(ints);
-				if (!encountered.contains(hash))
-				{
-					encountered.add(hash);
-					inters.add(ints);
+					Integer hash = hashSum(ints);
+					if (!encountered.contains(hash))
+					{
+						encountered.add(hash);
+						inters.add(ints);
+					}
+					return true;
 				}
-			}
+			});
+
+			if (matchCounter[0] > 0) seedCounter++;
 		}
 
+		System.out.println("matching groups size = " + seedCounter);
+
 		System.out.println("created pathways = " + inters.size());
 
 		Model clonedModel = excise(model, toExise);
@@ -23,6 +23,15 @@ public class AND extends OR
 		super(con);
 	}
 
+	/**
+	 * Gets the conjoined constraints, so that a compiled pattern can check them as separate steps.
+	 * @return copy of the conjoined constraints
+	 */
+	public MappedConst[] getMembers()
+	{
+		return con.clone();
+	}
+
 	/**
 	 * Checks if all the constraints satisfy.
 	 * @param match match to validate
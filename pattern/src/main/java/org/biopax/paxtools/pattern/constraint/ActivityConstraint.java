@@ -25,6 +25,16 @@ public class ActivityConstraint extends ConstraintAdapter
 		this.active = active;
 	}
 
+	/**
+	 * Parameters for equality: the desired activity.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{active};
+	}
+
 	/**
 	 * Checks if the PhysicalEntity controls anything.
 	 * @param match current match to validate
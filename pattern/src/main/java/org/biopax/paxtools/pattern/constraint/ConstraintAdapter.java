@@ -121,6 +121,47 @@ public abstract class ConstraintAdapter implements Constraint
 		return size;
 	}
 
+	/**
+	 * Gets the parameters that define what the constraint does. Two constraints of the same class,
+	 * size and blacklist are equal if their parameters are equal. Arrays in the parameters are
+	 * compared by their contents. Constraints that return null, which is the default, are equal
+	 * only to themselves.
+	 * @return parameters of the constraint, or null to use identity
+	 */
+	protected Object[] getParameters()
+	{
+		return null;
+	}
+
+	/**
+	 * Checks if the other object is the same kind of constraint with the same parameters.
+	 * @param o object to compare
+	 * @return true if the constraints are equivalent
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || o.getClass() != getClass()) return false;
+
+		ConstraintAdapter that = (ConstraintAdapter) o;
+		Object[] params = getParameters();
+		return params != null && size == that.size && blacklist == that.blacklist &&
+			Arrays.deepEquals(params, that.getParameters());
+	}
+
+	/**
+	 * Hash code consistent with equals.
+	 * @return hash code
+	 */
+	@Override
+	public int hashCode()
+	{
+		Object[] params = getParameters();
+		if (params == null) return System.identityHashCode(this);
+		return getClass().hashCode() * 31 + Arrays.deepHashCode(params);
+	}
+
 	//----- Section: Common BioPAX Operations -----------------------------------------------------|
 
 	/**
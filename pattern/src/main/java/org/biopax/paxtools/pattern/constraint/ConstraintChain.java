@@ -46,6 +46,16 @@ public class ConstraintChain extends ConstraintAdapter
 		setSize(con[0].getVariableSize());
 	}
 
+	/**
+	 * Parameters for equality: the chained constraints.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{con};
+	}
+
 	/**
 	 * Chains the member constraints and returns the output of the last constraint.
 	 * @param match match to process
@@ -24,6 +24,16 @@ public class ControlsNotParticipant extends ConstraintAdapter
 		super(1);
 	}
 
+	/**
+	 * This constraint has no parameters.
+	 * @return empty array
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[0];
+	}
+
 	/**
 	 * Checks if the controlled Interaction contains a controller as a participant. This constraint
 	 * filters out such cases.
@@ -68,6 +68,16 @@ public class ConversionSide extends ConstraintAdapter
 		this.relType = relType;
 	}
 
+	/**
+	 * Parameters for equality: the side and the relation type.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{sideType, relType};
+	}
+
 	/**
 	 * This is a generative constraint.
 	 * @return true
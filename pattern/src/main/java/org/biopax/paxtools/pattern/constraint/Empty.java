@@ -27,6 +27,16 @@ public class Empty extends ConstraintAdapter
 		this.con = con;
 	}
 
+	/**
+	 * Parameters for equality: the wrapped constraint.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{con};
+	}
+
 	/**
 	 * Variable size is one less than the wrapped Constraint.
 	 * @return one less than the size of teh wrapped constraint
@@ -26,6 +26,16 @@ public class Equality extends ConstraintAdapter
 		this.equals = equals;
 	}
 
+	/**
+	 * Parameters for equality: the desired equality.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{equals};
+	}
+
 	/**
 	 * Checks if the two elements are identical or not identical as desired.
 	 * @param match current pattern match
@@ -41,6 +41,16 @@ public class Field extends ConstraintAdapter
 	 */
 	PathAccessor pa2;
 
+	/**
+	 * Accessor string for the first element, to compare constraints.
+	 */
+	String accessorString1;
+
+	/**
+	 * Accessor string for the second element, to compare constraints.
+	 */
+	String accessorString2;
+
 	/**
 	 * The kind of check.
 	 */
@@ -61,6 +71,7 @@ public class Field extends ConstraintAdapter
 		super(value == USE_SECOND_ARG ? 2 : 1);
 		this.value = value;
 		this.pa1 = new PathAccessor(accessorString);
+		this.accessorString1 = accessorString;
 		this.oper = oper;
 
 		if (value instanceof Collection && ((Collection) value).isEmpty())
@@ -80,9 +91,21 @@ public class Field extends ConstraintAdapter
 		super(2);
 		this.pa1 = new PathAccessor(accessorString1);
 		this.pa2 = new PathAccessor(accessorString2);
+		this.accessorString1 = accessorString1;
+		this.accessorString2 = accessorString2;
 		this.oper = oper;
 	}
 
+	/**
+	 * Parameters for equality: the desired value, the paths and the operation.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{value, accessorString1, accessorString2, oper};
+	}
+
 	/**
 	 * Checks if the element in the first index has the desired value.
 	 * @param match current pattern match
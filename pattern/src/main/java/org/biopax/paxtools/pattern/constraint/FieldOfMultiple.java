@@ -62,6 +62,17 @@ public class FieldOfMultiple extends Field
 		this.con2 = con2;
 	}
 
+	/**
+	 * Parameters for equality: those of Field, and the wrapped constraints with their indices.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{super.getParameters(), con1.getConstr(), con1.getInds(),
+			con2 == null ? null : con2.getConstr(), con2 == null ? null : con2.getInds()};
+	}
+
 	/**
 	 * Size of this constraint is one less than con1 if con2 is null, otherwise it is two less than
 	 * the total of size of con1 and con2.
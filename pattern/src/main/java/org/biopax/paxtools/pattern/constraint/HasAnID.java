@@ -2,6 +2,7 @@ package org.biopax.paxtools.pattern.constraint;
 
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.pattern.Match;
+import org.biopax.paxtools.pattern.miner.IDCache;
 import org.biopax.paxtools.pattern.miner.IDFetcher;
 
 import java.util.Map;
@@ -53,6 +54,13 @@ public class HasAnID extends ConstraintAdapter
 	{
 		BioPAXElement ele = match.get(ind[0]);
 
+		// an IDCache already memoizes, without locking
+		if (idFetcher instanceof IDCache)
+		{
+			Set<String> ids = idFetcher.fetchID(ele);
+			return ids != null && !ids.isEmpty();
+		}
+
 		if (!idMap.containsKey(ele))
 			idMap.put(ele, idFetcher.fetchID(ele));
 
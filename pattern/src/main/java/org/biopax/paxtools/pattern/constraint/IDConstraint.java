@@ -26,6 +26,16 @@ public class IDConstraint extends ConstraintAdapter
 		this.ids = ids;
 	}
 
+	/**
+	 * Parameters for equality: the IDs.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{ids};
+	}
+
 	/**
 	 * Returns 1.
 	 * @return 1
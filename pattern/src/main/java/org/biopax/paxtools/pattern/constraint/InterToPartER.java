@@ -87,6 +87,16 @@ public class InterToPartER extends ConstraintAdapter
 		this.direction = direction;
 	}
 
+	/**
+	 * Parameters for equality: the direction.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{direction};
+	}
+
 	/**
 	 * This is a generative constraint.
 	 * @return true if the constraint can generate candidates
@@ -5,6 +5,7 @@ import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.level3.PhysicalEntity;
 import org.biopax.paxtools.pattern.Match;
 import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.pattern.util.PhysicalEntityClosureCache;
 
 import java.util.Collection;
 import java.util.HashSet;
@@ -75,6 +76,16 @@ public class LinkedPE extends ConstraintAdapter
 		this.type = type;
 	}
 
+	/**
+	 * Parameters for equality: the linking type.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{type};
+	}
+
 	/**
 	 * This is a generative constraint.
 	 * @return true
@@ -100,7 +111,33 @@ public class LinkedPE extends ConstraintAdapter
 		return set;
 	}
 
+	/**
+	 * Gets the elements linked to the given PhysicalEntity, including itself. Uses the closure
+	 * cache of the model if one is registered.
+	 * @param pe entity to link from
+	 * @return linked elements
+	 * @see PhysicalEntityClosureCache
+	 */
 	public Set<BioPAXElement> getLinkedElements(PhysicalEntity pe)
+	{
+		// subclasses may change the linking, so only this class uses the cache
+		PhysicalEntityClosureCache cache =
+			getClass() == LinkedPE.class ? PhysicalEntityClosureCache.find(pe) : null;
+
+		if (cache != null)
+		{
+			return new HashSet<BioPAXElement>(cache.getLinkedElements(pe, type, blacklist));
+		}
+		return collectLinkedElements(pe);
+	}
+
+	/**
+	 * Traverses the relations of the given PhysicalEntity to collect the linked elements, without
+	 * using a cache.
+	 * @param pe entity to link from
+	 * @return linked elements
+	 */
+	public Set<BioPAXElement> collectLinkedElements(PhysicalEntity pe)
 	{
 		Set<BioPAXElement> set = new HashSet<BioPAXElement>();
 		set.add(pe);
@@ -50,6 +50,16 @@ public class ModificationChangeConstraint extends ConstraintAdapter
 		this.featureSubstring = featureSubstring;
 	}
 
+	/**
+	 * Parameters for equality: the feature substrings and the change type.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{featureSubstring, type};
+	}
+
 	/**
 	 * Checks the any of the changed modifications match to any of the desired modifications.
 	 * @param match current pattern match
@@ -24,6 +24,16 @@ public class NOT extends ConstraintAdapter
 		this.con = con;
 	}
 
+	/**
+	 * Parameters for equality: the negated constraint.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{con};
+	}
+
 	/**
 	 * Size is equal to the of the negated constraint
 	 * @return size of the wrapped constraint
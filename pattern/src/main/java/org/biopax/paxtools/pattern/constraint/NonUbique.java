@@ -19,6 +19,16 @@ public class NonUbique extends ConstraintAdapter
 		super(1, blacklist);
 	}
 
+	/**
+	 * This constraint has no parameters other than its blacklist.
+	 * @return empty array
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[0];
+	}
+
 	@Override
 	public boolean satisfies(Match match, int... ind)
 	{
@@ -30,6 +30,22 @@ public class OR extends ConstraintAdapter
 		this.con = con;
 	}
 
+	/**
+	 * Parameters for equality: the wrapped constraints with their indices.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		Object[] params = new Object[con.length * 2];
+		for (int i = 0; i < con.length; i++)
+		{
+			params[i * 2] = con[i].getConstr();
+			params[i * 2 + 1] = con[i].getInds();
+		}
+		return params;
+	}
+
 	/**
 	 * Checks if any of the wrapped constraints satisfy.
 	 * @param match current pattern match
@@ -47,6 +47,16 @@ public class PEChainsIntersect extends ConstraintAdapter
 		this.ignoreEndPoints = ignoreEndPoints;
 	}
 
+	/**
+	 * Parameters for equality: the desired intersection and the end point handling.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{intersectionDesired, ignoreEndPoints};
+	}
+
 	/**
 	 * Creates two PhysicalEntity chains with the given endpoints, and checks if they are
 	 * intersecting.
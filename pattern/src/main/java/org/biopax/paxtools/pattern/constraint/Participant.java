@@ -126,6 +126,16 @@ public class Participant extends ConstraintAdapter
 		this(type, null, considerControl, considerPathway);
 	}
 
+	/**
+	 * Parameters for equality: the participant type and the control and pathway flags.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{type, considerControl, considerPathway};
+	}
+
 	/**
 	 * This is a generative constraint.
 	 * @return true
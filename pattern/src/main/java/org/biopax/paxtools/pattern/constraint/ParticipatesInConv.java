@@ -48,6 +48,16 @@ public class ParticipatesInConv extends ConstraintAdapter
 		this(type, null);
 	}
 
+	/**
+	 * Parameters for equality: the participant type.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{type};
+	}
+
 	/**
 	 * This is a generative constraint.
 	 * @return true
@@ -22,6 +22,11 @@ public class PathConstraint extends ConstraintAdapter
 	 */
 	PathAccessor pa;
 
+	/**
+	 * The path string, to compare constraints.
+	 */
+	String path;
+
 	/**
 	 * Constructor with the constructor String of PathAccessor.
 	 * @param path constructor String of PathAccessor
@@ -30,6 +35,17 @@ public class PathConstraint extends ConstraintAdapter
 	{
 		super(2);
 		this.pa = new PathAccessor(path, BioPAXLevel.L3);
+		this.path = path;
+	}
+
+	/**
+	 * Parameters for equality: the path.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{path};
 	}
 
 	/**
@@ -54,6 +54,16 @@ public class RelatedControl extends ConstraintAdapter
 		this.peType = peType;
 	}
 
+	/**
+	 * Parameters for equality: the type of the participant.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{peType};
+	}
+
 	/**
 	 * This is a generative constraint.
 	 * @return true
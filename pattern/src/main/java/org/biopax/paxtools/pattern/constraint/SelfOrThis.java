@@ -47,6 +47,16 @@ public class SelfOrThis extends ConstraintAdapter
 				selfIndex + ", size = " + con.getVariableSize());
 	}
 
+	/**
+	 * Parameters for equality: the self index and the wrapped constraint.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{selfIndex, con};
+	}
+
 	/**
 	 * Returns size of the wrapped constraint.
 	 * @return size of the wrapped constraint
@@ -44,6 +44,16 @@ public class Size extends ConstraintAdapter
 		this.type = type;
 	}
 
+	/**
+	 * Parameters for equality: the generative constraint, the size and the comparison type.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{con, size, type};
+	}
+
 	/**
 	 * Size is one less than the size of wrapped constraint.
 	 * @return one less than the size of wrapped constraint
@@ -25,6 +25,16 @@ public class Type extends ConstraintAdapter
 		this.clazz = clazz;
 	}
 
+	/**
+	 * Parameters for equality: the class.
+	 * @return parameters of the constraint
+	 */
+	@Override
+	protected Object[] getParameters()
+	{
+		return new Object[]{clazz};
+	}
+
 	/**
 	 * Checks if the element is assignable to a variable of the desired type.
 	 * @param match current pattern match
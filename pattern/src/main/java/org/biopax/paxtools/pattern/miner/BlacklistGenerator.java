@@ -1,5 +1,6 @@
 package org.biopax.paxtools.pattern.miner;
 
+import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.SmallMoleculeReference;
@@ -7,6 +8,7 @@ import org.biopax.paxtools.pattern.util.Blacklist;
 import org.biopax.paxtools.pattern.util.ChemicalNameNormalizer;
 import org.biopax.paxtools.pattern.util.RelType;
 
+import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -71,45 +73,10 @@ public class BlacklistGenerator
 		ChemicalNameNormalizer normalizer = new ChemicalNameNormalizer(model);
 		SIFSearcher searcher = new SIFSearcher(new Fetcher(normalizer), SIFEnum.USED_TO_PRODUCE);
 
-		Set<SIFInteraction> sifs = searcher.searchSIF(model);
+		// count the neighbors of molecules while the search finds the interactions
 
-		// read interactions into maps
-
-		Map<String, Set<String>> upstrMap = new HashMap<String, Set<String>>();
-		Map<String, Set<String>> dwstrMap = new HashMap<String, Set<String>>();
-		Map<String, Set<String>> neighMap = new HashMap<String, Set<String>>();
-
-		for (SIFInteraction sif : sifs)
-		{
-			String source = sif.sourceID;
-			String target = sif.targetID;
-
-			if (!neighMap.containsKey(source)) neighMap.put(source, new HashSet<String>());
-			if (!neighMap.containsKey(target)) neighMap.put(target, new HashSet<String>());
-			if (!dwstrMap.containsKey(source)) dwstrMap.put(source, new HashSet<String>());
-			if (!dwstrMap.containsKey(target)) dwstrMap.put(target, new HashSet<String>());
-			if (!upstrMap.containsKey(source)) upstrMap.put(source, new HashSet<String>());
-			if (!upstrMap.containsKey(target)) upstrMap.put(target, new HashSet<String>());
-
-			neighMap.get(source).add(target);
-			neighMap.get(target).add(source);
-			dwstrMap.get(source).add(target);
-			upstrMap.get(target).add(source);
-		}
-
-		// remove intersection of upstream and downstream
-
-		for (String name : neighMap.keySet())
-		{
-			if (!upstrMap.containsKey(name) || !dwstrMap.containsKey(name)) continue;
-
-			Set<String> upstr = upstrMap.get(name);
-			Set<String> dwstr = dwstrMap.get(name);
-
-			Set<String> temp = new HashSet<String>(upstr);
-			upstr.removeAll(dwstr);
-			dwstr.removeAll(temp);
-		}
+		UbiqueStatistics stats = new UbiqueStatistics();
+		searcher.searchSIF(model, stats);
 
 
 		Blacklist blacklist = new Blacklist();
@@ -120,9 +87,9 @@ public class BlacklistGenerator
 		{
 			String name = normalizer.getName(smr);
 
-			int neighSize = neighMap.containsKey(name) ? neighMap.get(name).size() : 0;
-			int upstrOnly = upstrMap.containsKey(name) ? upstrMap.get(name).size() : 0;
-			int dwstrOnly = dwstrMap.containsKey(name) ? dwstrMap.get(name).size() : 0;
+			int neighSize = stats.getNeighborSize(name);
+			int upstrOnly = stats.getUpstreamOnly(name);
+			int dwstrOnly = stats.getDownstreamOnly(name);
 
 //			if (neighSize > 30) System.out.println(name + "\t" + neighSize + "\t" + upstrOnly + "\t" + dwstrOnly);
 
@@ -137,6 +104,17 @@ public class BlacklistGenerator
 		return blacklist;
 	}
 
+	/**
+	 * Generates the blacklist of the model that is read from the given BioPAX OWL stream. The
+	 * model is kept in memory during the search, but the found interactions are only counted.
+	 * @param owl BioPAX OWL input
+	 * @return the blacklist
+	 */
+	public Blacklist generateBlacklist(InputStream owl)
+	{
+		return generateBlacklist(new SimpleIOHandler().convertFromOWL(owl));
+	}
+
 	/**
 	 * Class to fetch the ID of the small molecule.
 	 */
@@ -1,5 +1,6 @@
 package org.biopax.paxtools.pattern.miner;
 
+import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.SimplePhysicalEntity;
 import org.biopax.paxtools.model.level3.SmallMoleculeReference;
@@ -83,4 +84,14 @@ public class BlacklistGenerator3
 
 		return blacklist;
 	}
+
+	/**
+	 * Generates the blacklist of the model that is read from the given BioPAX OWL stream.
+	 * @param owl BioPAX OWL input
+	 * @return the blacklist
+	 */
+	public Blacklist generateBlacklist(InputStream owl)
+	{
+		return generateBlacklist(new SimpleIOHandler().convertFromOWL(owl));
+	}
 }
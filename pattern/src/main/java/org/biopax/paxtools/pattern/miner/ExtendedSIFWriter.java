@@ -26,6 +26,25 @@ public class ExtendedSIFWriter
 		new PathAccessor("XReferrable/xref:UnificationXref"),
 		new PathAccessor("XReferrable/xref:RelationshipXref")};
 
+	/**
+	 * Column headers of the interactions section.
+	 */
+	static final String INTERACTION_HEADER = "PARTICIPANT_A\tINTERACTION_TYPE\tPARTICIPANT_B\t" +
+		"INTERACTION_DATA_SOURCE\tINTERACTION_PUBMED_ID\tPATHWAY_NAMES\tMEDIATOR_IDS";
+
+	/**
+	 * Creates the converter for the lines of the interactions section.
+	 * @return sif to text converter
+	 */
+	static SIFToText createInteractionFormat()
+	{
+		return new CustomFormat(
+			OutputColumn.Type.RESOURCE.name(),
+			OutputColumn.Type.PUBMED.name(),
+			OutputColumn.Type.PATHWAY.name(),
+			OutputColumn.Type.MEDIATOR.name());
+	}
+
 	/**
 	 * Writes down the given inferred binary interactions into the output stream
 	 * using the Pathway Commons one-file EXTENDED_BINARY_SIF format,
@@ -38,11 +57,7 @@ public class ExtendedSIFWriter
 	 */
 	public static boolean write(Set<SIFInteraction> inters, OutputStream out)
 	{
-		SIFToText stt = new CustomFormat(
-			OutputColumn.Type.RESOURCE.name(),
-			OutputColumn.Type.PUBMED.name(),
-			OutputColumn.Type.PATHWAY.name(),
-			OutputColumn.Type.MEDIATOR.name());
+		SIFToText stt = createInteractionFormat();
 
 		if (!inters.isEmpty())
 		{
@@ -50,8 +65,7 @@ public class ExtendedSIFWriter
 			Collections.sort(interList);
 			try {
 				OutputStreamWriter writer = new OutputStreamWriter(out);
-				writer.write("PARTICIPANT_A\tINTERACTION_TYPE\tPARTICIPANT_B\t" +
-								"INTERACTION_DATA_SOURCE\tINTERACTION_PUBMED_ID\tPATHWAY_NAMES\tMEDIATOR_IDS");
+				writer.write(INTERACTION_HEADER);
 				for (SIFInteraction inter : interList) {
 					writer.write("\n" + stt.convert(inter));
 				}
@@ -78,11 +92,7 @@ public class ExtendedSIFWriter
 	 */
 	public static boolean writeInteractions(Set<SIFInteraction> inters, OutputStream out)
 	{
-		SIFToText stt = new CustomFormat(
-				OutputColumn.Type.RESOURCE.name(),
-				OutputColumn.Type.PUBMED.name(),
-				OutputColumn.Type.PATHWAY.name(),
-				OutputColumn.Type.MEDIATOR.name());
+		SIFToText stt = createInteractionFormat();
 
 		if (!inters.isEmpty())
 		{
@@ -91,8 +101,7 @@ public class ExtendedSIFWriter
 			try
 			{
 				OutputStreamWriter writer = new OutputStreamWriter(out);
-				writer.write("PARTICIPANT_A\tINTERACTION_TYPE\tPARTICIPANT_B\t" +
-						"INTERACTION_DATA_SOURCE\tINTERACTION_PUBMED_ID\tPATHWAY_NAMES\tMEDIATOR_IDS");
+				writer.write(INTERACTION_HEADER);
 				for (SIFInteraction inter : interList)
 				{
 					writer.write("\n" + stt.convert(inter));
@@ -138,7 +147,18 @@ public class ExtendedSIFWriter
 	private static void writeSourceAndTargetDetails(Collection<SIFInteraction> inters, Writer writer)
 		throws IOException
 	{
-		Map<String, Set<BioPAXElement>> map = collectEntityRefs(inters);
+		writeSourceAndTargetDetails(collectEntityRefs(inters), writer);
+	}
+
+	/**
+	 * Writes down the participants section.
+	 * @param map entity references of the participants, by participant ID
+	 * @param writer writer to use
+	 * @throws IOException if writing fails
+	 */
+	static void writeSourceAndTargetDetails(Map<String, Set<BioPAXElement>> map, Writer writer)
+		throws IOException
+	{
 		//write the column headers row first
 		writer.write("PARTICIPANT\tPARTICIPANT_TYPE\tPARTICIPANT_NAME\tUNIFICATION_XREF\tRELATIONSHIP_XREF");
 		for (String id : map.keySet())
@@ -0,0 +1,304 @@
+package org.biopax.paxtools.pattern.miner;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.EntityReference;
+import org.biopax.paxtools.pattern.ParallelSearcher;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizing ID fetcher. IDs are fetched once for each element with the wrapped fetcher and then
+ * shared by all the miners and threads that use this cache. Reads do not lock, so the cache can
+ * be used from parallel searches. When several threads ask for a new element at the same time,
+ * only one of them fetches it and the others wait for its result.
+ *
+ * The cache is bound to one model at a time. Call build to clear it and to fetch the IDs of the
+ * entity references of the model in parallel, before the search. IDs of other elements are
+ * fetched when they are first asked. The cache does not follow changes in the model; build it
+ * again after editing the model.
+ */
+public class IDCache implements IDFetcher
+{
+	/**
+	 * Marker for the elements that the wrapped fetcher returns null for.
+	 */
+	private static final Set<String> NO_ID = Collections.unmodifiableSet(new HashSet<String>());
+
+	/**
+	 * The wrapped fetcher.
+	 */
+	private final IDFetcher fetcher;
+
+	/**
+	 * Fetched IDs, or the fetches in progress.
+	 */
+	private final ConcurrentMap<BioPAXElement, FutureTask<Set<String>>> ids;
+
+	/**
+	 * Number of requests answered from the cache.
+	 */
+	private final AtomicLong hits;
+
+	/**
+	 * Number of requests that needed fetching.
+	 */
+	private final AtomicLong misses;
+
+	/**
+	 * Constructor with the fetcher to wrap.
+	 * @param fetcher ID fetcher whose results are cached
+	 */
+	public IDCache(IDFetcher fetcher)
+	{
+		if (fetcher == null) throw new IllegalArgumentException("Fetcher cannot be null.");
+
+		this.fetcher = fetcher;
+		this.ids = new ConcurrentHashMap<BioPAXElement, FutureTask<Set<String>>>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * @return the wrapped fetcher
+	 */
+	public IDFetcher getFetcher()
+	{
+		return fetcher;
+	}
+
+	/**
+	 * Gets the IDs of the element, fetching them if they are not in the cache. The returned set is
+	 * shared, so it cannot be modified.
+	 * @param ele element to fetch the ID from
+	 * @return unmodifiable set of IDs, or null if the wrapped fetcher returns null
+	 */
+	@Override
+	public Set<String> fetchID(BioPAXElement ele)
+	{
+		FutureTask<Set<String>> task = ids.get(ele);
+		if (task == null)
+		{
+			FutureTask<Set<String>> created = createTask(ele);
+			task = ids.putIfAbsent(ele, created);
+			if (task == null)
+			{
+				misses.incrementAndGet();
+				task = created;
+				task.run();
+			}
+			else hits.incrementAndGet();
+		}
+		else hits.incrementAndGet();
+
+		Set<String> set = getResult(ele, task);
+		return set == NO_ID ? null : set;
+	}
+
+	/**
+	 * Creates the task that fetches the IDs with the wrapped fetcher.
+	 * @param ele the element
+	 * @return task that returns unmodifiable IDs, or the marker for null
+	 */
+	private FutureTask<Set<String>> createTask(final BioPAXElement ele)
+	{
+		return new FutureTask<Set<String>>(new Callable<Set<String>>()
+		{
+			@Override
+			public Set<String> call()
+			{
+				Set<String> set = fetcher.fetchID(ele);
+				return set == null ? NO_ID : Collections.unmodifiableSet(set);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the fetch of the element. If the fetch failed, it is removed from the cache so
+	 * the next request tries again, and the failure is thrown.
+	 * @param ele the element
+	 * @param task the fetch
+	 * @return unmodifiable IDs, or the marker for null
+	 */
+	private Set<String> getResult(BioPAXElement ele, FutureTask<Set<String>> task)
+	{
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return task.get();
+				}
+				catch (InterruptedException e)
+				{
+					// the fetch is short; finish waiting and keep the interrupt for the caller
+					interrupted = true;
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			ids.remove(ele, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+		finally
+		{
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Clears the cache and fetches the IDs of all entity references of the model, using the given
+	 * executor. Statistics are reset. If the thread is interrupted, the remaining fetches are
+	 * cancelled and a RuntimeException is thrown, with the interrupt status kept.
+	 * @param model model to prepare the cache for
+	 * @param executor executor to run the fetches
+	 */
+	public void build(Model model, ExecutorService executor)
+	{
+		clear();
+
+		final List<EntityReference> ers =
+			new ArrayList<EntityReference>(model.getObjects(EntityReference.class));
+
+		int parts = Runtime.getRuntime().availableProcessors();
+		if (parts <= 1 || ers.size() < 2)
+		{
+			for (EntityReference er : ers)
+			{
+				put(er);
+			}
+			return;
+		}
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try
+		{
+			int chunk = (ers.size() + parts - 1) / parts;
+
+			for (int i = 0; i < ers.size(); i += chunk)
+			{
+				final List<EntityReference> part = ers.subList(i, Math.min(i + chunk, ers.size()));
+
+				futures.add(executor.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						for (EntityReference er : part)
+						{
+							if (Thread.currentThread().isInterrupted()) return;
+							put(er);
+						}
+					}
+				}));
+			}
+
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			for (Future<?> future : futures)
+			{
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while fetching the IDs.", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Fetches the IDs of the element and puts them in the cache.
+	 * @param ele the element
+	 */
+	private void put(BioPAXElement ele)
+	{
+		FutureTask<Set<String>> task = createTask(ele);
+		task.run();
+		ids.put(ele, task);
+		getResult(ele, task);
+	}
+
+	/**
+	 * Clears the cache and fetches the IDs of the entity references of the model, using the shared
+	 * executor of the parallel searches.
+	 * @param model model to prepare the cache for
+	 */
+	public void build(Model model)
+	{
+		build(model, ParallelSearcher.getSharedExecutor());
+	}
+
+	/**
+	 * Removes all cached IDs and resets the statistics.
+	 */
+	public void clear()
+	{
+		ids.clear();
+		resetStatistics();
+	}
+
+	/**
+	 * Sets the hit and miss counts to zero.
+	 */
+	public void resetStatistics()
+	{
+		hits.set(0);
+		misses.set(0);
+	}
+
+	/**
+	 * @return number of elements with cached IDs
+	 */
+	public int size()
+	{
+		return ids.size();
+	}
+
+	/**
+	 * @return number of requests answered from the cache
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return number of requests that needed fetching
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return ratio of the requests answered from the cache, or 0 if there is no request
+	 */
+	public double getHitRate()
+	{
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : h / (double) total;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "IDCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() +
+			"]";
+	}
+}
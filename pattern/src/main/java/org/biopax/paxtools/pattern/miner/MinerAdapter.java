@@ -819,6 +819,8 @@ public abstract class MinerAdapter implements Miner
 
 	protected Set<String> fetchIDs(BioPAXElement ele, IDFetcher fetcher)
 	{
+		if (fetcher instanceof IDCache) return fetcher.fetchID(ele);
+
 		if (!idMap.containsKey(ele))
 		{
 			Set<String> ids = fetcher.fetchID(ele);
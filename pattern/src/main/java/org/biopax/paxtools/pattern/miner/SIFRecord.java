@@ -0,0 +1,190 @@
+package org.biopax.paxtools.pattern.miner;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.util.*;
+
+/**
+ * A SIF interaction with the URIs of its elements in place of the elements, so it can be kept
+ * in text form and restored on a model later.
+ */
+class SIFRecord
+{
+	final String type;
+	final String sourceID;
+	final String targetID;
+	final List<String> sourceERs;
+	final List<String> targetERs;
+	final List<String> sourcePEs;
+	final List<String> targetPEs;
+	final List<String> mediators;
+
+	SIFRecord(SIFInteraction sif)
+	{
+		type = sif.type.getTag();
+		sourceID = sif.sourceID;
+		targetID = sif.targetID;
+		sourceERs = uris(sif.sourceERs);
+		targetERs = uris(sif.targetERs);
+		sourcePEs = uris(sif.sourcePEs);
+		targetPEs = uris(sif.targetPEs);
+		mediators = uris(sif.mediators);
+	}
+
+	SIFRecord(String[] token)
+	{
+		type = token[0];
+		sourceID = token[1];
+		targetID = token[2];
+		sourceERs = parse(token[3]);
+		targetERs = parse(token[4]);
+		sourcePEs = parse(token[5]);
+		targetPEs = parse(token[6]);
+		mediators = parse(token[7]);
+	}
+
+	/**
+	 * Reads a record from its string form.
+	 * @param line output of toString
+	 * @return the record
+	 * @throws IllegalArgumentException if the line is malformed
+	 */
+	static SIFRecord fromString(String line)
+	{
+		String[] token = line.split("\t", -1);
+		if (token.length != 8) throw new IllegalArgumentException("Malformed record: " + line);
+		return new SIFRecord(token);
+	}
+
+	/**
+	 * Gets the key that orders the records in the same way SIFInteraction.compareTo orders the
+	 * interactions. Equivalent interactions have the same key.
+	 * @return sort key
+	 */
+	String getSortKey()
+	{
+		return sourceID + targetID + type;
+	}
+
+	/**
+	 * Gets the sorted URIs of the elements. Null elements are kept as null.
+	 */
+	private static List<String> uris(Set<BioPAXElement> eles)
+	{
+		if (eles == null) return null;
+		List<String> list = new ArrayList<String>();
+		for (BioPAXElement ele : eles)
+		{
+			list.add(ele == null ? null : ele.getUri());
+		}
+		Collections.sort(list, NULL_FIRST);
+		return list;
+	}
+
+	private static List<String> parse(String s)
+	{
+		if (s.equals("-")) return null;
+		List<String> list = new ArrayList<String>();
+		if (!s.isEmpty()) for (String uri : s.split(" "))
+		{
+			list.add(uri.equals("-") ? null : uri);
+		}
+		return list;
+	}
+
+	private static String format(List<String> list)
+	{
+		if (list == null) return "-";
+		StringBuilder sb = new StringBuilder();
+		for (String uri : list)
+		{
+			if (sb.length() > 0) sb.append(" ");
+			sb.append(uri == null ? "-" : uri);
+		}
+		return sb.toString();
+	}
+
+	boolean refersTo(Set<String> uris)
+	{
+		return intersects(sourceERs, uris) || intersects(targetERs, uris) ||
+			intersects(sourcePEs, uris) || intersects(targetPEs, uris) ||
+			intersects(mediators, uris);
+	}
+
+	private static boolean intersects(List<String> list, Set<String> uris)
+	{
+		if (list != null) for (String uri : list)
+		{
+			if (uris.contains(uri)) return true;
+		}
+		return false;
+	}
+
+	SIFInteraction restore(Model model, Map<String, SIFType> types)
+	{
+		SIFType sifType = SIFEnum.typeOf(type);
+		if (sifType == null) sifType = types.get(type);
+		if (sifType == null) throw new IllegalArgumentException("Unknown SIF type: " + type);
+
+		SIFInteraction sif = new SIFInteraction(sourceID, targetID, null, null, sifType,
+			elements(model, mediators), elements(model, sourcePEs), elements(model, targetPEs));
+
+		sif.sourceERs = elements(model, sourceERs);
+		sif.targetERs = elements(model, targetERs);
+		return sif;
+	}
+
+	private static Set<BioPAXElement> elements(Model model, List<String> uris)
+	{
+		if (uris == null) return null;
+		Set<BioPAXElement> set = new HashSet<BioPAXElement>();
+		for (String uri : uris)
+		{
+			if (uri == null) set.add(null);
+			else
+			{
+				BioPAXElement ele = model.getByID(uri);
+				if (ele == null) throw new IllegalArgumentException(
+					"Stored element is not in the model: " + uri);
+				set.add(ele);
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof SIFRecord)) return false;
+		return toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return toString().hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return type + "\t" + sourceID + "\t" + targetID + "\t" + format(sourceERs) + "\t" +
+			format(targetERs) + "\t" + format(sourcePEs) + "\t" + format(targetPEs) + "\t" +
+			format(mediators);
+	}
+
+	/**
+	 * Orders strings with nulls first.
+	 */
+	private static final Comparator<String> NULL_FIRST = new Comparator<String>()
+	{
+		@Override
+		public int compare(String s1, String s2)
+		{
+			if (s1 == null) return s2 == null ? 0 : -1;
+			if (s2 == null) return 1;
+			return s1.compareTo(s2);
+		}
+	};
+}
@@ -0,0 +1,272 @@
+package org.biopax.paxtools.pattern.miner;
+
+import org.biopax.paxtools.model.Model;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Persistable SIF results, kept separately for each miner and each starting element of the
+ * miner's pattern. The interactions are stored with URIs of their elements, so they can be
+ * restored on a newer version of the model, and the results of only the affected starting
+ * elements can be replaced after the model is updated.
+ *
+ * @see SIFSearcher#updateStore(Model, SIFResultStore, Collection, Collection)
+ */
+public class SIFResultStore
+{
+	/**
+	 * Records, by miner key and then by the URI of the starting element.
+	 */
+	private final Map<String, Map<String, List<SIFRecord>>> results;
+
+	/**
+	 * Empty store.
+	 */
+	public SIFResultStore()
+	{
+		results = new HashMap<String, Map<String, List<SIFRecord>>>();
+	}
+
+	/**
+	 * @return keys of the miners in the store
+	 */
+	public synchronized Set<String> getMinerNames()
+	{
+		return new HashSet<String>(results.keySet());
+	}
+
+	/**
+	 * Checks if the store contains the results of the miner.
+	 * @param miner key of the miner
+	 * @return true if the miner is in the store
+	 */
+	public synchronized boolean containsMiner(String miner)
+	{
+		return results.containsKey(miner);
+	}
+
+	/**
+	 * Adds the miner with no results, if it is not already in the store.
+	 * @param miner key of the miner
+	 */
+	public synchronized void addMiner(String miner)
+	{
+		if (!results.containsKey(miner)) results.put(miner, new HashMap<String, List<SIFRecord>>());
+	}
+
+	/**
+	 * Gets the starting elements that have results for the miner.
+	 * @param miner key of the miner
+	 * @return URIs of the starting elements
+	 */
+	public synchronized Set<String> getStarts(String miner)
+	{
+		Map<String, List<SIFRecord>> map = results.get(miner);
+		return map == null ? new HashSet<String>() : new HashSet<String>(map.keySet());
+	}
+
+	/**
+	 * Adds an interaction that is mined starting from the given element.
+	 * @param miner key of the miner
+	 * @param start URI of the starting element
+	 * @param sif the interaction
+	 */
+	public synchronized void add(String miner, String start, SIFInteraction sif)
+	{
+		addMiner(miner);
+		Map<String, List<SIFRecord>> map = results.get(miner);
+		List<SIFRecord> list = map.get(start);
+		if (list == null)
+		{
+			list = new ArrayList<SIFRecord>();
+			map.put(start, list);
+		}
+		list.add(new SIFRecord(sif));
+	}
+
+	/**
+	 * Removes the results of the given starting elements.
+	 * @param miner key of the miner
+	 * @param starts URIs of the starting elements
+	 */
+	public synchronized void remove(String miner, Collection<String> starts)
+	{
+		Map<String, List<SIFRecord>> map = results.get(miner);
+		if (map != null) map.keySet().removeAll(starts);
+	}
+
+	/**
+	 * Finds the starting elements whose results refer to any of the given elements.
+	 * @param miner key of the miner
+	 * @param uris URIs of the elements
+	 * @return URIs of the starting elements
+	 */
+	public synchronized Set<String> getStartsReferring(String miner, Set<String> uris)
+	{
+		Set<String> starts = new HashSet<String>();
+		Map<String, List<SIFRecord>> map = results.get(miner);
+		if (map == null) return starts;
+
+		for (String start : map.keySet())
+		{
+			for (SIFRecord record : map.get(start))
+			{
+				if (record.refersTo(uris))
+				{
+					starts.add(start);
+					break;
+				}
+			}
+		}
+		return starts;
+	}
+
+	/**
+	 * Compares the results with another store.
+	 * @param other the store to compare
+	 * @return keys (miner key and starting element URI, separated with a tab) of the results
+	 * that differ
+	 */
+	public synchronized Set<String> getDifferences(SIFResultStore other)
+	{
+		Set<String> diff = new HashSet<String>();
+
+		Set<String> miners = new HashSet<String>(results.keySet());
+		miners.addAll(other.getMinerNames());
+
+		for (String miner : miners)
+		{
+			Map<String, Set<SIFRecord>> mine = getSIFRecordSets(miner);
+			Map<String, Set<SIFRecord>> theirs = other.getSIFRecordSets(miner);
+
+			Set<String> starts = new HashSet<String>(mine.keySet());
+			starts.addAll(theirs.keySet());
+
+			for (String start : starts)
+			{
+				if (!equal(mine.get(start), theirs.get(start))) diff.add(miner + "\t" + start);
+			}
+		}
+		return diff;
+	}
+
+	/**
+	 * Checks if two record sets are equal, treating null as empty.
+	 * @param s1 first set
+	 * @param s2 second set
+	 * @return true if they contain the same records
+	 */
+	private boolean equal(Set<SIFRecord> s1, Set<SIFRecord> s2)
+	{
+		if (s1 == null || s2 == null) return (s1 == null || s1.isEmpty()) &&
+			(s2 == null || s2.isEmpty());
+		return s1.equals(s2);
+	}
+
+	/**
+	 * Gets the records of the miner as sets.
+	 * @param miner key of the miner
+	 * @return record sets by starting element
+	 */
+	private synchronized Map<String, Set<SIFRecord>> getSIFRecordSets(String miner)
+	{
+		Map<String, Set<SIFRecord>> sets = new HashMap<String, Set<SIFRecord>>();
+		Map<String, List<SIFRecord>> map = results.get(miner);
+		if (map != null) for (String start : map.keySet())
+		{
+			sets.put(start, new HashSet<SIFRecord>(map.get(start)));
+		}
+		return sets;
+	}
+
+	/**
+	 * Restores the interactions on the given model and merges the equivalent ones.
+	 * @param model model that contains the elements of the interactions
+	 * @param types known SIF types, by their tags, for the types that are not in SIFEnum
+	 * @return sif interactions
+	 */
+	public synchronized Set<SIFInteraction> getInteractions(Model model, Map<String, SIFType> types)
+	{
+		Map<SIFInteraction, SIFInteraction> map = new HashMap<SIFInteraction, SIFInteraction>();
+
+		for (Map<String, List<SIFRecord>> starts : results.values())
+		{
+			for (List<SIFRecord> records : starts.values())
+			{
+				for (SIFRecord record : records)
+				{
+					SIFInteraction sif = record.restore(model, types);
+					SIFInteraction existing = map.get(sif);
+					if (existing != null) existing.mergeWith(sif);
+					else map.put(sif, sif);
+				}
+			}
+		}
+		return new HashSet<SIFInteraction>(map.values());
+	}
+
+	/**
+	 * Writes the store in a tab-delimited text format. Does not close the stream.
+	 * @param out stream to write
+	 * @throws IOException if writing fails
+	 */
+	public synchronized void write(OutputStream out) throws IOException
+	{
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+		for (String miner : results.keySet())
+		{
+			writer.write(miner + "\n");
+			Map<String, List<SIFRecord>> map = results.get(miner);
+			for (String start : map.keySet())
+			{
+				for (SIFRecord record : map.get(start))
+				{
+					writer.write("\t" + start + "\t" + record + "\n");
+				}
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Reads a store that is written with the write method. Does not close the stream.
+	 * @param in stream to read
+	 * @return the store
+	 * @throws IOException if reading fails
+	 */
+	public static SIFResultStore read(InputStream in) throws IOException
+	{
+		SIFResultStore store = new SIFResultStore();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+
+		String miner = null;
+		for (String line = reader.readLine(); line != null; line = reader.readLine())
+		{
+			if (line.isEmpty()) continue;
+
+			if (!line.startsWith("\t"))
+			{
+				miner = line;
+				store.addMiner(miner);
+			}
+			else
+			{
+				if (miner == null) throw new IOException("Record without a miner: " + line);
+
+				String[] token = line.substring(1).split("\t", -1);
+				if (token.length != 9) throw new IOException("Malformed record: " + line);
+
+				Map<String, List<SIFRecord>> map = store.results.get(miner);
+				List<SIFRecord> list = map.get(token[0]);
+				if (list == null)
+				{
+					list = new ArrayList<SIFRecord>();
+					map.put(token[0], list);
+				}
+				list.add(new SIFRecord(Arrays.copyOfRange(token, 1, token.length)));
+			}
+		}
+		return store;
+	}
+}
@@ -1,12 +1,27 @@
 package org.biopax.paxtools.pattern.miner;
 
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.controller.TraverserBilinked;
+import org.biopax.paxtools.controller.Visitor;
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Entity;
+import org.biopax.paxtools.model.level3.EntityFeature;
+import org.biopax.paxtools.model.level3.EntityReference;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.SimplePhysicalEntity;
 import org.biopax.paxtools.pattern.Match;
-import org.biopax.paxtools.pattern.Searcher;
+import org.biopax.paxtools.pattern.MatchSink;
+import org.biopax.paxtools.pattern.MultiPatternSearcher;
+import org.biopax.paxtools.pattern.ParallelSearcher;
+import org.biopax.paxtools.pattern.Pattern;
 import org.biopax.paxtools.pattern.util.AdjacencyMatrix;
 import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.pattern.util.PhysicalEntityClosureCache;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -38,11 +53,45 @@ public class SIFSearcher
 	 */
 	private IDFetcher idFetcher;
 
+	/**
+	 * Memoizes the IDs of the ID fetcher. It is shared by the miners, and is built again for each
+	 * search.
+	 */
+	private IDCache idCache;
+
 	/**
 	 * Blacklist used for detecting ubiquitous molecules.
 	 */
 	private Blacklist blacklist;
 
+	/**
+	 * Maximum number of interactions to keep in memory while writing to a stream. Zero means no
+	 * limit.
+	 */
+	private int spillSize;
+
+	/**
+	 * Directory for the spilled interactions.
+	 */
+	private File spillDir;
+
+	/**
+	 * Distance around the changed elements to search again in incremental updates.
+	 */
+	private int updateRadius = 10;
+
+	/**
+	 * Number of starting elements searched again in the last incremental update.
+	 */
+	private int updatedStartCount;
+
+	/**
+	 * Properties that link complexes to components and generics to members. They are traversed
+	 * recursively by the patterns, so they do not count in the update radius.
+	 */
+	private static final Set<String> FREE_LINKS = new HashSet<String>(Arrays.asList(
+		"component", "memberPhysicalEntity"));
+
 	/**
 	 * Constructor with binary interaction types.
 	 * @param types sif types
@@ -73,6 +122,7 @@ public class SIFSearcher
 		this.types = new HashSet<SIFType>(Arrays.asList(types));
 
 		if (idFetcher == null) this.idFetcher = new SimpleIDFetcher();//gets URIs
+		initIDCache();
 	}
 
 	/**
@@ -87,6 +137,25 @@ public class SIFSearcher
 		this.miners = Arrays.asList(miners);
 
 		if (idFetcher == null) this.idFetcher = new SimpleIDFetcher();
+		initIDCache();
+	}
+
+	/**
+	 * Wraps the ID fetcher with a cache, unless it is already a cache.
+	 */
+	private void initIDCache()
+	{
+		idCache = idFetcher instanceof IDCache ? (IDCache) idFetcher : new IDCache(idFetcher);
+	}
+
+	/**
+	 * Gets the ID cache that is used in the searches. Its statistics show the use of the cache in
+	 * the last search.
+	 * @return the ID cache
+	 */
+	public IDCache getIDCache()
+	{
+		return idCache;
 	}
 
 	private void initMiners()
@@ -101,7 +170,7 @@ public class SIFSearcher
 				{
 					SIFMiner miner = clazz.newInstance();
 					miner.setBlacklist(blacklist);
-					miner.setIDFetcher(idFetcher);
+					miner.setIDFetcher(idCache);
 					miners.add(miner);
 				}
 			}
@@ -145,41 +214,455 @@ public class SIFSearcher
 	 * @return sif interactions
 	 */
 	public Set<SIFInteraction> searchSIF(final Model model)
+	{
+		return search(model, null, null);
+	}
+
+	/**
+	 * Searches the given model with the contained miners, and passes the interactions to the sink
+	 * as they are found, from the search threads. Equivalent interactions are not merged.
+	 * @param model model to search
+	 * @param sink receives the interactions
+	 */
+	void searchSIF(Model model, SIFSink sink)
+	{
+		search(model, null, sink);
+	}
+
+	/**
+	 * Searches the given elements with the contained miners. The search starts only from these
+	 * elements, and maps only these elements to the pattern variables, without cloning them to a
+	 * new model. The set is expected to be closed under completion (see
+	 * {@link org.biopax.paxtools.controller.Completer}). Note that constraints may still look at
+	 * elements outside the set while checking a link, for example a generic parent of a member, so
+	 * the result can be larger than searching a model cloned from the set.
+	 * @param elements elements to search in
+	 * @return sif interactions
+	 */
+	public Set<SIFInteraction> searchSIF(Collection<? extends BioPAXElement> elements)
+	{
+		Set<? extends BioPAXElement> scope = (elements instanceof Set) ?
+			(Set<? extends BioPAXElement>) elements : new HashSet<BioPAXElement>(elements);
+
+		return search(null, scope, null);
+	}
+
+	/**
+	 * Searches the model, or only the scope if it is given.
+	 * @param model model to search, used if scope is null
+	 * @param scope elements to search in
+	 * @param sink if given, the interactions are passed to this sink instead of being collected
+	 * in memory
+	 * @return sif interactions, or an empty set if a sink is given
+	 */
+	private Set<SIFInteraction> search(Model model, Set<? extends BioPAXElement> scope,
+		final SIFSink sink)
 	{
 		if (miners == null) initMiners();
 
-		final Map<SIFInteraction, SIFInteraction> map = new ConcurrentHashMap<SIFInteraction, SIFInteraction>();
+		final ConcurrentHashMap<SIFInteraction, SIFInteraction> map =
+			new ConcurrentHashMap<SIFInteraction, SIFInteraction>();
+
+		// all miners link the same entities, so their closures are computed once for the model
+
+		boolean ownCache = model != null && PhysicalEntityClosureCache.lookup(model) == null;
+		if (ownCache) PhysicalEntityClosureCache.forModel(model).build(blacklist);
 
-		for (final SIFMiner miner : miners)
+		// IDs are fetched once for the search, and shared by the miners
+
+		if (model != null) idCache.build(model);
+		else idCache.clear();
+
+		try
 		{
-			if (miner instanceof MinerAdapter)
-				((MinerAdapter) miner).setIdMap(new HashMap<BioPAXElement, Set<String>>());
+			// the miners' patterns are searched together, sharing their common constraints
+
+			List<Pattern> patterns = new ArrayList<Pattern>();
+			List<MatchSink> sinks = new ArrayList<MatchSink>();
 
-			Map<BioPAXElement,List<Match>> matches = Searcher.search(model, miner.getPattern());
-			for (final List<Match> matchList : matches.values())
+			for (final SIFMiner miner : miners)
 			{
-				for (Match m : matchList)
+				patterns.add(miner.getPattern());
+
+				// matches are converted as they are found; each miner converts one match at a time
+				// since the miners are not thread-safe, but different miners run concurrently
+
+				sinks.add(new MatchSink()
 				{
-					Set<SIFInteraction> sifs = miner.createSIFInteraction(m, idFetcher);
-					for (SIFInteraction sif : sifs)
+					@Override
+					public boolean accept(Match m)
 					{
-						if ( sif != null && sif.hasIDs() && !sif.sourceID.equals(sif.targetID)
-								&& (types == null || types.contains(sif.type)) )
+						List<SIFInteraction> sifs;
+						synchronized (miner)
 						{
-							SIFInteraction existing = map.get(sif);
-							if(existing != null)
-								existing.mergeWith(sif);
-							else
-								map.put(sif, sif);
+							sifs = createSIFInteractions(miner, m);
 						}
+
+						for (SIFInteraction sif : sifs)
+						{
+							if (sink != null)
+							{
+								sink.add(sif);
+								continue;
+							}
+
+							SIFInteraction existing = map.putIfAbsent(sif, sif);
+							if (existing != null)
+							{
+								synchronized (existing)
+								{
+									existing.mergeWith(sif);
+								}
+							}
+						}
+						return true;
 					}
-				}
+				});
+			}
+
+			MultiPatternSearcher searcher = new MultiPatternSearcher(patterns);
+			if (scope == null) searcher.search(model, sinks);
+			else
+			{
+				searcher.setScope(scope);
+				searcher.search(scope, sinks);
 			}
 		}
+		finally
+		{
+			if (ownCache) PhysicalEntityClosureCache.release(model);
+		}
 
 		return new HashSet<SIFInteraction>(map.values());
 	}
 
+	/**
+	 * Converts the match to SIF interactions, leaving out the ones that are not valid or not of the
+	 * desired types.
+	 * @param miner miner that found the match
+	 * @param m the match
+	 * @return sif interactions
+	 */
+	private List<SIFInteraction> createSIFInteractions(SIFMiner miner, Match m)
+	{
+		List<SIFInteraction> list = new ArrayList<SIFInteraction>();
+		for (SIFInteraction sif : miner.createSIFInteraction(m, idCache))
+		{
+			if ( sif != null && sif.hasIDs() && !sif.sourceID.equals(sif.targetID)
+					&& (types == null || types.contains(sif.type)) )
+			{
+				list.add(sif);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Sets the distance to search for affected starting elements around the changed elements
+	 * during an incremental update. Links between complexes and their components, and between
+	 * generic entities and their members are not counted. Larger values are safer but slower; use
+	 * verifyStore to check if the value is large enough for the miners in use.
+	 * @param updateRadius number of links
+	 */
+	public void setUpdateRadius(int updateRadius)
+	{
+		this.updateRadius = updateRadius;
+	}
+
+	/**
+	 * Searches the model with the contained miners, and keeps the results by their starting
+	 * elements so they can be updated incrementally later.
+	 * @param model model to search
+	 * @return the results
+	 * @see #updateStore(Model, SIFResultStore, Collection, Collection)
+	 */
+	public SIFResultStore createStore(Model model)
+	{
+		if (miners == null) initMiners();
+
+		SIFResultStore store = new SIFResultStore();
+
+		boolean ownCache = PhysicalEntityClosureCache.lookup(model) == null;
+		if (ownCache) PhysicalEntityClosureCache.forModel(model).build(blacklist);
+		idCache.build(model);
+
+		try
+		{
+			List<String> keys = getStoreKeys();
+			for (int i = 0; i < miners.size(); i++)
+			{
+				SIFMiner miner = miners.get(i);
+				store.addMiner(keys.get(i));
+				searchInto(store, keys.get(i), miner,
+					model.getObjects(miner.getPattern().getStartingClass()));
+			}
+		}
+		finally
+		{
+			if (ownCache) PhysicalEntityClosureCache.release(model);
+		}
+		return store;
+	}
+
+	/**
+	 * Updates the stored results after the model is edited. Only the starting elements that are
+	 * near the changed elements, and the ones whose results refer to the changed elements, are
+	 * searched again. Miners that are not in the store are run on the whole model.
+	 *
+	 * Changed elements should include the added elements, the elements whose properties are edited,
+	 * and the elements that referred to the removed elements. The results are not updated for
+	 * changes in the ID fetcher or in the blacklist.
+	 * @param model the edited model
+	 * @param store results of a previous search, which are updated
+	 * @param changed added or edited elements
+	 * @param removed URIs of the removed elements
+	 * @return the updated sif interactions
+	 */
+	public Set<SIFInteraction> updateStore(Model model, SIFResultStore store,
+		Collection<? extends BioPAXElement> changed, Collection<String> removed)
+	{
+		if (miners == null) initMiners();
+
+		updatedStartCount = 0;
+		Set<String> near = new HashSet<String>(removed);
+		for (BioPAXElement ele : getNeighborhood(model, changed, updateRadius))
+		{
+			near.add(ele.getUri());
+		}
+
+		boolean ownCache = PhysicalEntityClosureCache.lookup(model) == null;
+		if (ownCache) PhysicalEntityClosureCache.forModel(model);
+		idCache.build(model);
+
+		try
+		{
+			List<String> keys = getStoreKeys();
+			for (int i = 0; i < miners.size(); i++)
+			{
+				SIFMiner miner = miners.get(i);
+				String name = keys.get(i);
+				Class<? extends BioPAXElement> startClass = miner.getPattern().getStartingClass();
+
+				if (!store.containsMiner(name))
+				{
+					store.addMiner(name);
+					searchInto(store, name, miner, model.getObjects(startClass));
+					updatedStartCount += model.getObjects(startClass).size();
+					continue;
+				}
+
+				Set<String> starts = store.getStartsReferring(name, near);
+				starts.addAll(near);
+				store.remove(name, starts);
+
+				List<BioPAXElement> seeds = new ArrayList<BioPAXElement>();
+				for (String uri : starts)
+				{
+					BioPAXElement ele = model.getByID(uri);
+					if (ele != null && startClass.isAssignableFrom(ele.getModelInterface()))
+						seeds.add(ele);
+				}
+				searchInto(store, name, miner, seeds);
+				updatedStartCount += seeds.size();
+			}
+		}
+		finally
+		{
+			if (ownCache) PhysicalEntityClosureCache.release(model);
+		}
+
+		return store.getInteractions(model, getTypesByTag());
+	}
+
+	/**
+	 * Gets the number of starting elements that the last incremental update searched again,
+	 * summed over the miners. Use this to see how local an update was.
+	 * @return number of starting elements searched again
+	 */
+	public int getUpdatedStartCount()
+	{
+		return updatedStartCount;
+	}
+
+	/**
+	 * Compares the stored results with a full search of the model. Use this to check the
+	 * correctness of incremental updates.
+	 * @param model model to search
+	 * @param store stored results
+	 * @return keys of the differing results, as miner key and starting element URI separated with
+	 * a tab. Empty if the store is up to date.
+	 */
+	public Set<String> verifyStore(Model model, SIFResultStore store)
+	{
+		return store.getDifferences(createStore(model));
+	}
+
+	/**
+	 * Gets the keys of the miners in the result store. Several miners produce the same SIF type
+	 * under the same name, so the keys are made of class names, numbered if they repeat.
+	 * @return keys in the order of the miners
+	 */
+	private List<String> getStoreKeys()
+	{
+		List<String> keys = new ArrayList<String>();
+		Map<String, Integer> count = new HashMap<String, Integer>();
+		for (SIFMiner miner : miners)
+		{
+			String key = miner.getClass().getName();
+			Integer cnt = count.get(key);
+			count.put(key, cnt == null ? 1 : cnt + 1);
+			keys.add(cnt == null ? key : key + "#" + cnt);
+		}
+		return keys;
+	}
+
+	/**
+	 * Searches the miner's pattern from the given elements and records the results in the store.
+	 * @param store store to fill
+	 * @param name key of the miner in the store
+	 * @param miner the miner
+	 * @param seeds starting elements
+	 */
+	private void searchInto(final SIFResultStore store, final String name, final SIFMiner miner,
+		Collection<? extends BioPAXElement> seeds)
+	{
+		if (seeds.isEmpty()) return;
+
+		MatchSink sink = new MatchSink()
+		{
+			@Override
+			public synchronized boolean accept(Match m)
+			{
+				String start = m.getFirst().getUri();
+				for (SIFInteraction sif : createSIFInteractions(miner, m))
+				{
+					store.add(name, start, sif);
+				}
+				return true;
+			}
+		};
+
+		new ParallelSearcher(miner.getPattern()).search(seeds, sink);
+	}
+
+	/**
+	 * Gets the SIF types of the miners by their tags.
+	 * @return types by tag
+	 */
+	private Map<String, SIFType> getTypesByTag()
+	{
+		Map<String, SIFType> map = new HashMap<String, SIFType>();
+		for (SIFMiner miner : miners)
+		{
+			map.put(miner.getSIFType().getTag(), miner.getSIFType());
+		}
+		if (types != null) for (SIFType type : types)
+		{
+			map.put(type.getTag(), type);
+		}
+		return map;
+	}
+
+	/**
+	 * Collects the elements within the given distance of the changed elements, following object
+	 * properties in both directions. Apart from the changed elements, only entities, entity
+	 * references and features are passed through; links between complexes and components, and
+	 * between generics and members have no length. Pathways are collected but not passed through,
+	 * and the molecules that are blacklisted in both contexts lead only to their references. They
+	 * link large parts of the model, and the patterns do not link other molecules through them.
+	 * @param model the model
+	 * @param changed changed elements
+	 * @param radius maximum distance
+	 * @return elements in the neighborhood, including the changed ones
+	 */
+	private Set<BioPAXElement> getNeighborhood(Model model,
+		Collection<? extends BioPAXElement> changed, int radius)
+	{
+		final Map<BioPAXElement, Integer> dist = new HashMap<BioPAXElement, Integer>();
+		final LinkedList<BioPAXElement> queue = new LinkedList<BioPAXElement>();
+
+		for (BioPAXElement ele : changed)
+		{
+			if (!dist.containsKey(ele))
+			{
+				dist.put(ele, 0);
+				queue.add(ele);
+			}
+		}
+
+		final List<BioPAXElement> neighbors = new ArrayList<BioPAXElement>();
+		final List<Boolean> free = new ArrayList<Boolean>();
+
+		TraverserBilinked traverser = new TraverserBilinked(
+			SimpleEditorMap.get(model.getLevel()), new Visitor()
+		{
+			@Override
+			public void visit(BioPAXElement domain, Object range, Model model,
+				PropertyEditor<?, ?> editor)
+			{
+				if (range instanceof BioPAXElement)
+				{
+					neighbors.add((BioPAXElement) range);
+					free.add(FREE_LINKS.contains(editor.getProperty()));
+				}
+			}
+		});
+
+		while (!queue.isEmpty())
+		{
+			BioPAXElement ele = queue.removeFirst();
+			int d = dist.get(ele);
+
+			if (d > 0 && (!(ele instanceof Entity || ele instanceof EntityReference ||
+				ele instanceof EntityFeature) || ele instanceof Pathway)) continue;
+
+			neighbors.clear();
+			free.clear();
+
+			if (d > 0 && isUbique(ele))
+			{
+				// a ubiquitous molecule can start a match itself, but does not link others
+				if (ele instanceof SimplePhysicalEntity &&
+					((SimplePhysicalEntity) ele).getEntityReference() != null)
+				{
+					neighbors.add(((SimplePhysicalEntity) ele).getEntityReference());
+					free.add(false);
+				}
+			}
+			else traverser.traverse(ele, model);
+
+			for (int i = 0; i < neighbors.size(); i++)
+			{
+				BioPAXElement neigh = neighbors.get(i);
+				int nd = free.get(i) ? d : d + 1;
+				if (nd > radius) continue;
+
+				Integer prev = dist.get(neigh);
+				if (prev == null || prev > nd)
+				{
+					dist.put(neigh, nd);
+					if (nd == d) queue.addFirst(neigh);
+					else queue.addLast(neigh);
+				}
+			}
+		}
+		return dist.keySet();
+	}
+
+	/**
+	 * Checks if the element is a molecule that is blacklisted in both contexts, or its reference.
+	 * Molecules that are ubiquitous in only one context are still linked in the other.
+	 * @param ele element to check
+	 * @return true if the element is ubiquitous
+	 */
+	private boolean isUbique(BioPAXElement ele)
+	{
+		if (blacklist == null) return false;
+		if (ele instanceof PhysicalEntity) return blacklist.isUbiqueInBothContexts((PhysicalEntity) ele);
+		return ele instanceof EntityReference && blacklist.getListed().contains(ele.getUri()) &&
+			blacklist.getContext(ele.getUri()) == null;
+	}
+
 	/**
 	 * Searches the given model with the contained miners.
 	 * Writes the textual result to the given output stream.
@@ -212,8 +695,90 @@ public class SIFSearcher
 	 */
 	public boolean searchSIF(Model model, OutputStream out, SIFToText stt)
 	{
-		Set<SIFInteraction> inters = searchSIF(model);
+		if (spillSize > 0)
+		{
+			return createSortedWriter(model).write(out, stt);
+		}
+		return writeSIF(searchSIF(model), out, stt);
+	}
+
+	/**
+	 * Searches the given model with the contained miners, and writes the result in the Pathway
+	 * Commons EXTENDED_BINARY_SIF format. Closes the stream at the end.
+	 * @param model model to search
+	 * @param out stream to write
+	 * @return true if any output produced successfully
+	 * @see ExtendedSIFWriter#write(Set, OutputStream)
+	 */
+	public boolean searchExtendedSIF(Model model, OutputStream out)
+	{
+		if (spillSize > 0)
+		{
+			return createSortedWriter(model).writeExtended(out);
+		}
+		return ExtendedSIFWriter.write(searchSIF(model), out);
+	}
+
+	/**
+	 * Searches the model into a writer that spills sorted runs to disk.
+	 * @param model model to search
+	 * @return the writer, ready to write the output
+	 */
+	private SortedSIFWriter createSortedWriter(Model model)
+	{
+		if (miners == null) initMiners();
+
+		SortedSIFWriter sorted = new SortedSIFWriter(model, getTypesByTag(), spillSize, spillDir);
+		try
+		{
+			search(model, null, sorted);
+		}
+		catch (RuntimeException e)
+		{
+			sorted.dispose();
+			throw e;
+		}
+		return sorted;
+	}
 
+	/**
+	 * Limits the memory used by the methods that write the search results to a stream. When the
+	 * given number of distinct interactions are collected, they are sorted and spilled to a
+	 * temporary file, and the files are merged at the end. The output does not change.
+	 * @param spillSize maximum number of interactions to keep in memory, or zero to keep all
+	 * @param spillDir directory for the temporary files, or null for the default
+	 * @see SortedSIFWriter
+	 */
+	public void setSpilling(int spillSize, File spillDir)
+	{
+		this.spillSize = spillSize;
+		this.spillDir = spillDir;
+	}
+
+	/**
+	 * Searches the given elements with the contained miners. Writes the textual result to the
+	 * given output stream. Closes the stream at the end.
+	 * @param elements elements to search in
+	 * @param out stream to write
+	 * @param stt sif to text converter
+	 * @return true if any output produced successfully
+	 * @see #searchSIF(Collection)
+	 */
+	public boolean searchSIF(Collection<? extends BioPAXElement> elements, OutputStream out,
+		SIFToText stt)
+	{
+		return writeSIF(searchSIF(elements), out, stt);
+	}
+
+	/**
+	 * Writes the interactions in sorted order. Closes the stream at the end.
+	 * @param inters interactions to write
+	 * @param out stream to write
+	 * @param stt sif to text converter
+	 * @return true if any output produced successfully
+	 */
+	private boolean writeSIF(Set<SIFInteraction> inters, OutputStream out, SIFToText stt)
+	{
 		if (!inters.isEmpty())
 		{
 			List<SIFInteraction> interList = new ArrayList<SIFInteraction>(inters);
@@ -0,0 +1,15 @@
+package org.biopax.paxtools.pattern.miner;
+
+/**
+ * Receives the SIF interactions as a search finds them, instead of collecting them in memory. The
+ * search threads call it concurrently, and an interaction can be received more than once, so the
+ * implementations have to be thread-safe and tolerate duplicates.
+ */
+interface SIFSink
+{
+	/**
+	 * Takes the interaction.
+	 * @param sif the interaction
+	 */
+	void add(SIFInteraction sif);
+}
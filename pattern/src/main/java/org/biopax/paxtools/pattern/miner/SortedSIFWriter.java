@@ -0,0 +1,478 @@
+package org.biopax.paxtools.pattern.miner;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Collects SIF interactions with a bounded memory, and writes them in sorted order. Equivalent
+ * interactions are merged in memory until the buffer is full; then the thread that filled the
+ * buffer sorts and spills it to a temporary file, while the other threads continue with a new
+ * buffer. At the end, the sorted runs are merged, the equivalent interactions in different runs
+ * are merged again, and the output is written in the same format and order as writing all the
+ * interactions from memory.
+ *
+ * The interactions are kept on disk with the URIs of their elements, so the model they come from
+ * has to be available until the output is written.
+ */
+public class SortedSIFWriter implements SIFSink
+{
+	/**
+	 * Model that contains the elements of the interactions.
+	 */
+	private final Model model;
+
+	/**
+	 * SIF types by tag, for the types that are not in SIFEnum.
+	 */
+	private final Map<String, SIFType> types;
+
+	/**
+	 * Maximum number of interactions to keep in memory before spilling.
+	 */
+	private final int bufferSize;
+
+	/**
+	 * Directory for the temporary files. Null means the default temporary directory.
+	 */
+	private final File tempDir;
+
+	/**
+	 * Interactions that are not spilled yet.
+	 */
+	private Map<SIFInteraction, SIFInteraction> buffer;
+
+	/**
+	 * Spilled sorted runs.
+	 */
+	private final List<File> runs;
+
+	/**
+	 * Number of spills in progress.
+	 */
+	private int spilling;
+
+	/**
+	 * Constructor with the model and the buffer size.
+	 * @param model model that contains the elements of the interactions
+	 * @param types SIF types by tag, for the types that are not in SIFEnum
+	 * @param bufferSize maximum number of interactions to keep in memory
+	 * @param tempDir directory for the temporary files, or null for the default
+	 */
+	public SortedSIFWriter(Model model, Map<String, SIFType> types, int bufferSize, File tempDir)
+	{
+		if (bufferSize < 1) throw new IllegalArgumentException(
+			"Buffer size has to be positive: " + bufferSize);
+
+		this.model = model;
+		this.types = types;
+		this.bufferSize = bufferSize;
+		this.tempDir = tempDir;
+		this.buffer = new HashMap<SIFInteraction, SIFInteraction>();
+		this.runs = new ArrayList<File>();
+	}
+
+	/**
+	 * Adds the interaction, merging it with an equivalent one in the buffer. If the buffer gets
+	 * full, it is replaced with an empty one, and spilled by the calling thread without holding
+	 * the lock. So the memory holds at most one full buffer per adding thread besides the current
+	 * one.
+	 * @param sif the interaction
+	 */
+	@Override
+	public void add(SIFInteraction sif)
+	{
+		Collection<SIFInteraction> full = null;
+
+		synchronized (this)
+		{
+			SIFInteraction existing = buffer.get(sif);
+			if (existing != null) existing.mergeWith(sif);
+			else buffer.put(sif, sif);
+
+			if (buffer.size() >= bufferSize)
+			{
+				full = buffer.values();
+				buffer = new HashMap<SIFInteraction, SIFInteraction>();
+				spilling++;
+			}
+		}
+
+		if (full != null) spill(full);
+	}
+
+	/**
+	 * @return number of runs spilled to disk so far, including the ones in progress
+	 */
+	public synchronized int getRunCount()
+	{
+		return runs.size() + spilling;
+	}
+
+	/**
+	 * Writes the interactions as a run and records it. The caller has to count the spill in
+	 * progress before calling this.
+	 * @param inters interactions to spill
+	 */
+	private void spill(Collection<SIFInteraction> inters)
+	{
+		File file = null;
+		try
+		{
+			file = writeRun(inters);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Cannot spill SIF interactions", e);
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				if (file != null) runs.add(file);
+				spilling--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the spills in progress are recorded.
+	 */
+	private synchronized void awaitSpills()
+	{
+		while (spilling > 0)
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the interactions to a temporary file, sorted.
+	 * @param inters interactions to write
+	 * @return the file
+	 * @throws IOException if writing fails
+	 */
+	private File writeRun(Collection<SIFInteraction> inters) throws IOException
+	{
+		List<SIFRecord> records = new ArrayList<SIFRecord>(inters.size());
+		for (SIFInteraction sif : inters)
+		{
+			records.add(new SIFRecord(sif));
+		}
+		Collections.sort(records, new Comparator<SIFRecord>()
+		{
+			@Override
+			public int compare(SIFRecord r1, SIFRecord r2)
+			{
+				return r1.getSortKey().compareTo(r2.getSortKey());
+			}
+		});
+
+		File file = File.createTempFile("sif-run", ".txt", tempDir);
+		file.deleteOnExit();
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(file), "UTF-8"));
+		try
+		{
+			for (SIFRecord record : records)
+			{
+				writer.write(record + "\n");
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Writes the interactions in sorted order, one per line. Closes the stream at the end, if
+	 * anything is written.
+	 * @param out stream to write
+	 * @param stt sif to text converter
+	 * @return true if any output produced successfully
+	 */
+	public boolean write(OutputStream out, SIFToText stt)
+	{
+		Merger merger = null;
+		try
+		{
+			merger = finish();
+			if (!merger.hasNext()) return false;
+
+			Writer writer = new OutputStreamWriter(out);
+			boolean first = true;
+			while (merger.hasNext())
+			{
+				if (first) first = false;
+				else writer.write("\n");
+
+				writer.write(stt.convert(merger.next()));
+			}
+			writer.close();
+			return true;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+		finally
+		{
+			if (merger != null) merger.close();
+			dispose();
+		}
+	}
+
+	/**
+	 * Writes the interactions in the Pathway Commons EXTENDED_BINARY_SIF format, as
+	 * ExtendedSIFWriter does. Closes the stream at the end, if anything is written.
+	 * @param out stream to write
+	 * @return true if any output produced successfully
+	 * @see ExtendedSIFWriter#write(Set, OutputStream)
+	 */
+	public boolean writeExtended(OutputStream out)
+	{
+		Merger merger = null;
+		try
+		{
+			merger = finish();
+			if (!merger.hasNext()) return false;
+
+			SIFToText stt = ExtendedSIFWriter.createInteractionFormat();
+			Map<String, Set<BioPAXElement>> participants = new HashMap<String, Set<BioPAXElement>>();
+
+			Writer writer = new OutputStreamWriter(out);
+			writer.write(ExtendedSIFWriter.INTERACTION_HEADER);
+			while (merger.hasNext())
+			{
+				SIFInteraction inter = merger.next();
+				writer.write("\n" + stt.convert(inter));
+
+				addParticipant(participants, inter.sourceID, inter.sourceERs);
+				addParticipant(participants, inter.targetID, inter.targetERs);
+			}
+			writer.write("\n\n");
+			ExtendedSIFWriter.writeSourceAndTargetDetails(participants, writer);
+			writer.close();
+			return true;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+		finally
+		{
+			if (merger != null) merger.close();
+			dispose();
+		}
+	}
+
+	private void addParticipant(Map<String, Set<BioPAXElement>> map, String id,
+		Set<BioPAXElement> ers)
+	{
+		Set<BioPAXElement> set = map.get(id);
+		if (set == null)
+		{
+			set = new HashSet<BioPAXElement>();
+			map.put(id, set);
+		}
+		set.addAll(ers);
+	}
+
+	/**
+	 * Spills the remaining buffer and opens the runs for merging.
+	 * @return iterator over the merged interactions
+	 * @throws IOException if a run cannot be read
+	 */
+	private Merger finish() throws IOException
+	{
+		Collection<SIFInteraction> rest;
+		synchronized (this)
+		{
+			rest = buffer.values();
+			buffer = new HashMap<SIFInteraction, SIFInteraction>();
+			if (!rest.isEmpty()) spilling++;
+		}
+
+		if (!rest.isEmpty()) spill(rest);
+		awaitSpills();
+
+		synchronized (this)
+		{
+			return new Merger(runs);
+		}
+	}
+
+	/**
+	 * Deletes the temporary files.
+	 */
+	public synchronized void dispose()
+	{
+		for (File run : runs)
+		{
+			run.delete();
+		}
+		runs.clear();
+		buffer.clear();
+	}
+
+	/**
+	 * Merges the sorted runs, and merges the equivalent interactions in them.
+	 */
+	private class Merger implements Iterator<SIFInteraction>
+	{
+		/**
+		 * Runs, ordered by their current records.
+		 */
+		private final PriorityQueue<Run> queue;
+
+		/**
+		 * All opened runs.
+		 */
+		private final List<Run> opened;
+
+		/**
+		 * Merged interactions with the current sort key, to be returned.
+		 */
+		private final LinkedList<SIFInteraction> ready;
+
+		Merger(List<File> files) throws IOException
+		{
+			queue = new PriorityQueue<Run>();
+			opened = new ArrayList<Run>();
+			ready = new LinkedList<SIFInteraction>();
+
+			try
+			{
+				for (int i = 0; i < files.size(); i++)
+				{
+					Run run = new Run(files.get(i), i);
+					opened.add(run);
+					if (run.current != null) queue.add(run);
+				}
+			}
+			catch (IOException e)
+			{
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Merges all the records that have the next sort key.
+		 */
+		private void fill() throws IOException
+		{
+			if (!ready.isEmpty() || queue.isEmpty()) return;
+
+			String key = queue.peek().current.getSortKey();
+			Map<SIFInteraction, SIFInteraction> group = new LinkedHashMap<SIFInteraction, SIFInteraction>();
+
+			while (!queue.isEmpty() && queue.peek().current.getSortKey().equals(key))
+			{
+				Run run = queue.poll();
+				SIFInteraction sif = run.current.restore(model, types);
+				SIFInteraction existing = group.get(sif);
+				if (existing != null) existing.mergeWith(sif);
+				else group.put(sif, sif);
+
+				run.advance();
+				if (run.current != null) queue.add(run);
+			}
+			ready.addAll(group.values());
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			try
+			{
+				fill();
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return !ready.isEmpty();
+		}
+
+		@Override
+		public SIFInteraction next()
+		{
+			if (!hasNext()) throw new NoSuchElementException();
+			return ready.removeFirst();
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		void close()
+		{
+			for (Run run : opened)
+			{
+				run.close();
+			}
+		}
+	}
+
+	/**
+	 * Reader of a sorted run.
+	 */
+	private static class Run implements Comparable<Run>
+	{
+		final BufferedReader reader;
+		final int index;
+		SIFRecord current;
+
+		Run(File file, int index) throws IOException
+		{
+			this.reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+			this.index = index;
+			advance();
+		}
+
+		void advance() throws IOException
+		{
+			String line = reader.readLine();
+			current = line == null ? null : SIFRecord.fromString(line);
+		}
+
+		void close()
+		{
+			try
+			{
+				reader.close();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		@Override
+		public int compareTo(Run o)
+		{
+			int c = current.getSortKey().compareTo(o.current.getSortKey());
+			return c != 0 ? c : index - o.index;
+		}
+	}
+}
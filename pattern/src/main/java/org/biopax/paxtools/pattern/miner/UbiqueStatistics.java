@@ -0,0 +1,163 @@
+package org.biopax.paxtools.pattern.miner;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Degree statistics of the molecules in a used-to-produce network, which the blacklist generators
+ * use for detecting ubiquitous molecules. For each molecule, the number of neighbors, and the
+ * numbers of upstream and downstream neighbors that are not also at the other side, are counted.
+ *
+ * The statistics are counted in a single pass while the search finds the interactions, by the
+ * search threads, using concurrent counters. So the interactions are never collected in memory.
+ */
+class UbiqueStatistics implements SIFSink
+{
+	/**
+	 * Flag of a neighbor at upstream.
+	 */
+	private static final int UP = 1;
+
+	/**
+	 * Flag of a neighbor at downstream.
+	 */
+	private static final int DOWN = 2;
+
+	/**
+	 * Counters of the molecules, by their names.
+	 */
+	private final ConcurrentMap<String, Counters> counters =
+		new ConcurrentHashMap<String, Counters>();
+
+	/**
+	 * Counts the interaction. Counting the same interaction again has no effect.
+	 * @param sif a used-to-produce interaction
+	 */
+	@Override
+	public void add(SIFInteraction sif)
+	{
+		getCounters(sif.sourceID).addNeighbor(sif.targetID, DOWN);
+		getCounters(sif.targetID).addNeighbor(sif.sourceID, UP);
+	}
+
+	/**
+	 * Gets the counters of the name, creating them if needed.
+	 * @param name the name
+	 * @return counters of the name
+	 */
+	private Counters getCounters(String name)
+	{
+		Counters c = counters.get(name);
+		if (c == null)
+		{
+			c = new Counters();
+			Counters prev = counters.putIfAbsent(name, c);
+			if (prev != null) c = prev;
+		}
+		return c;
+	}
+
+	/**
+	 * @param name name of the molecule
+	 * @return number of neighbors
+	 */
+	int getNeighborSize(String name)
+	{
+		Counters c = counters.get(name);
+		return c == null ? 0 : c.neighbors.get();
+	}
+
+	/**
+	 * @param name name of the molecule
+	 * @return number of upstream neighbors that are not also at downstream
+	 */
+	int getUpstreamOnly(String name)
+	{
+		Counters c = counters.get(name);
+		return c == null ? 0 : c.upstreamOnly.get();
+	}
+
+	/**
+	 * @param name name of the molecule
+	 * @return number of downstream neighbors that are not also at upstream
+	 */
+	int getDownstreamOnly(String name)
+	{
+		Counters c = counters.get(name);
+		return c == null ? 0 : c.downstreamOnly.get();
+	}
+
+	/**
+	 * @return number of molecules in the network
+	 */
+	int size()
+	{
+		return counters.size();
+	}
+
+	/**
+	 * Neighbors of a molecule, with the sides they are at, and the counts by side.
+	 */
+	private static class Counters
+	{
+		/**
+		 * Side flags of the neighbors.
+		 */
+		final ConcurrentMap<String, AtomicInteger> sides =
+			new ConcurrentHashMap<String, AtomicInteger>();
+
+		/**
+		 * Number of neighbors.
+		 */
+		final AtomicInteger neighbors = new AtomicInteger();
+
+		/**
+		 * Number of neighbors that are only at upstream.
+		 */
+		final AtomicInteger upstreamOnly = new AtomicInteger();
+
+		/**
+		 * Number of neighbors that are only at downstream.
+		 */
+		final AtomicInteger downstreamOnly = new AtomicInteger();
+
+		/**
+		 * Records the neighbor at the given side, and updates the counts if the neighbor is new,
+		 * or if it is now at both sides.
+		 * @param name name of the neighbor
+		 * @param side UP or DOWN
+		 */
+		void addNeighbor(String name, int side)
+		{
+			AtomicInteger flags = sides.get(name);
+			if (flags == null)
+			{
+				flags = new AtomicInteger();
+				AtomicInteger prev = sides.putIfAbsent(name, flags);
+				if (prev != null) flags = prev;
+			}
+
+			while (true)
+			{
+				int old = flags.get();
+				if ((old & side) != 0) return;
+
+				if (flags.compareAndSet(old, old | side))
+				{
+					if (old == 0)
+					{
+						neighbors.incrementAndGet();
+						(side == UP ? upstreamOnly : downstreamOnly).incrementAndGet();
+					}
+					else
+					{
+						// it was only at the other side
+						(side == UP ? downstreamOnly : upstreamOnly).decrementAndGet();
+					}
+					return;
+				}
+			}
+		}
+	}
+}
@@ -42,7 +42,13 @@ public class PhysicalEntityChain
 	 */
 	public PhysicalEntityChain(PhysicalEntity small, PhysicalEntity big)
 	{
-		pes = fillArray(big, small, 1, 0);
+		PhysicalEntityClosureCache cache = PhysicalEntityClosureCache.find(big);
+		if (cache != null)
+		{
+			PhysicalEntity[] chain = cache.getChain(small, big);
+			pes = chain == null ? null : chain.clone();
+		}
+		else pes = link(small, big);
 		
 		if (pes == null)
 		{
@@ -52,6 +58,17 @@ public class PhysicalEntityChain
 		assert !containsNull(pes);
 	}
 
+	/**
+	 * Creates the chain that links the given endpoints, without using a cache.
+	 * @param small member end of the chain
+	 * @param big complex end of the chain
+	 * @return array of entities, or null if they are not linked
+	 */
+	static PhysicalEntity[] link(PhysicalEntity small, PhysicalEntity big)
+	{
+		return fillArray(big, small, 1, 0);
+	}
+
 	/**
 	 * Checks if any element in the chain is null.
 	 * @param pes element array
@@ -74,7 +91,7 @@ public class PhysicalEntityChain
 	 * @param dir current direction to traverse homologies
 	 * @return array of entities
 	 */
-	protected PhysicalEntity[] fillArray(PhysicalEntity parent, PhysicalEntity target, int depth,
+	protected static PhysicalEntity[] fillArray(PhysicalEntity parent, PhysicalEntity target, int depth,
 		int dir)
 	{
 		if (parent == target)
@@ -0,0 +1,371 @@
+package org.biopax.paxtools.pattern.util;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.pattern.ParallelSearcher;
+import org.biopax.paxtools.pattern.constraint.LinkedPE;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Model-level cache of the generic and complex closures of PhysicalEntity objects, as they are
+ * computed by LinkedPE, and of the PhysicalEntityChain arrays between their elements. Closures are
+ * computed once and shared by all patterns that are searched on the model.
+ *
+ * Register a cache with forModel to make LinkedPE and PhysicalEntityChain use it for the entities
+ * of that model. The cache does not follow changes in the model; release it before editing the
+ * model, and register a new one afterwards if needed.
+ */
+public class PhysicalEntityClosureCache
+{
+	/**
+	 * Caches that are registered to their models.
+	 */
+	private static final Map<Model, PhysicalEntityClosureCache> REGISTRY =
+		new WeakHashMap<Model, PhysicalEntityClosureCache>();
+
+	/**
+	 * Snapshot of the registered caches, for the lookups that do not know the model.
+	 */
+	private static volatile PhysicalEntityClosureCache[] registered =
+		new PhysicalEntityClosureCache[0];
+
+	/**
+	 * Marker for the pairs that are not linked with a chain.
+	 */
+	private static final PhysicalEntity[] NO_CHAIN = new PhysicalEntity[0];
+
+	/**
+	 * Cached model.
+	 */
+	private final Model model;
+
+	/**
+	 * Closures, grouped by the linking type and the blacklist used.
+	 */
+	private final ConcurrentMap<Key, ConcurrentMap<PhysicalEntity, Set<BioPAXElement>>> closures;
+
+	/**
+	 * Chains between pairs of entities, in the order of PhysicalEntityChain.
+	 */
+	private final ConcurrentMap<Pair, PhysicalEntity[]> chains;
+
+	/**
+	 * Constructor with the model. Closures are computed when they are first needed, or when build
+	 * is called.
+	 * @param model model of the entities
+	 */
+	public PhysicalEntityClosureCache(Model model)
+	{
+		this.model = model;
+		this.closures = new ConcurrentHashMap<Key, ConcurrentMap<PhysicalEntity, Set<BioPAXElement>>>();
+		this.chains = new ConcurrentHashMap<Pair, PhysicalEntity[]>();
+	}
+
+	/**
+	 * Gets the cache registered for the model, or creates and registers a new one.
+	 * @param model the model
+	 * @return the cache of the model
+	 */
+	public static synchronized PhysicalEntityClosureCache forModel(Model model)
+	{
+		PhysicalEntityClosureCache cache = REGISTRY.get(model);
+		if (cache == null)
+		{
+			cache = new PhysicalEntityClosureCache(model);
+			REGISTRY.put(model, cache);
+			updateSnapshot();
+		}
+		return cache;
+	}
+
+	/**
+	 * Gets the cache registered for the model, without creating one.
+	 * @param model the model
+	 * @return the registered cache, or null if there is none
+	 */
+	public static synchronized PhysicalEntityClosureCache lookup(Model model)
+	{
+		return REGISTRY.get(model);
+	}
+
+	/**
+	 * Unregisters the cache of the model.
+	 * @param model the model
+	 */
+	public static synchronized void release(Model model)
+	{
+		if (REGISTRY.remove(model) != null) updateSnapshot();
+	}
+
+	/**
+	 * Finds the registered cache whose model contains the given entity.
+	 * @param pe the entity
+	 * @return the cache, or null if the entity is not in a model with a registered cache
+	 */
+	public static PhysicalEntityClosureCache find(PhysicalEntity pe)
+	{
+		for (PhysicalEntityClosureCache cache : registered)
+		{
+			if (cache.covers(pe)) return cache;
+		}
+		return null;
+	}
+
+	/**
+	 * Refreshes the snapshot of registered caches.
+	 */
+	private static void updateSnapshot()
+	{
+		registered = REGISTRY.values().toArray(new PhysicalEntityClosureCache[REGISTRY.size()]);
+	}
+
+	/**
+	 * @return the cached model
+	 */
+	public Model getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * Checks if the entity belongs to the cached model.
+	 * @param pe the entity
+	 * @return true if the model contains this entity
+	 */
+	public boolean covers(PhysicalEntity pe)
+	{
+		return pe.getUri() != null && model.getByID(pe.getUri()) == pe;
+	}
+
+	/**
+	 * Computes the closures of all entities in the model, for both linking types, without a
+	 * blacklist and with each of the given blacklists, using the given executor. Pass the
+	 * blacklists that the searched patterns use, since closures are grouped by blacklist instance.
+	 * If the thread is interrupted, the remaining work is cancelled and a RuntimeException is
+	 * thrown, with the interrupt status kept. The closures that are not computed are still
+	 * computed when they are first needed.
+	 * @param blacklists blacklists used by the patterns, may be empty or contain null
+	 * @param executor executor to run the computation
+	 */
+	public void build(Collection<Blacklist> blacklists, ExecutorService executor)
+	{
+		final List<Blacklist> lists = new ArrayList<Blacklist>();
+		lists.add(null);
+		for (Blacklist blacklist : blacklists)
+		{
+			if (!lists.contains(blacklist)) lists.add(blacklist);
+		}
+
+		final List<PhysicalEntity> pes =
+			new ArrayList<PhysicalEntity>(model.getObjects(PhysicalEntity.class));
+
+		int parts = Runtime.getRuntime().availableProcessors();
+		if (parts <= 1 || pes.size() < 2)
+		{
+			for (PhysicalEntity pe : pes)
+			{
+				computeClosures(pe, lists);
+			}
+			return;
+		}
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try
+		{
+			int chunk = (pes.size() + parts - 1) / parts;
+
+			for (int i = 0; i < pes.size(); i += chunk)
+			{
+				final List<PhysicalEntity> part = pes.subList(i, Math.min(i + chunk, pes.size()));
+
+				futures.add(executor.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						for (PhysicalEntity pe : part)
+						{
+							if (Thread.currentThread().isInterrupted()) return;
+							computeClosures(pe, lists);
+						}
+					}
+				}));
+			}
+
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			for (Future<?> future : futures)
+			{
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while computing the closures.", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Computes the closures of the entities in the model, without a blacklist and with the given
+	 * blacklists, using the shared executor of the parallel searches.
+	 * @param blacklists blacklists used by the patterns
+	 * @see #build(Collection, ExecutorService)
+	 */
+	public void build(Blacklist... blacklists)
+	{
+		build(Arrays.asList(blacklists), ParallelSearcher.getSharedExecutor());
+	}
+
+	/**
+	 * Computes the closures of the entity for both linking types and for each blacklist.
+	 * @param pe the entity
+	 * @param blacklists blacklists to use, may contain null
+	 */
+	private void computeClosures(PhysicalEntity pe, List<Blacklist> blacklists)
+	{
+		for (Blacklist blacklist : blacklists)
+		{
+			getLinkedElements(pe, LinkedPE.Type.TO_GENERAL, blacklist);
+			getLinkedElements(pe, LinkedPE.Type.TO_SPECIFIC, blacklist);
+		}
+	}
+
+	/**
+	 * Gets the elements that LinkedPE links to the given entity.
+	 * @param pe the entity
+	 * @param type type of the linking
+	 * @param blacklist the blacklist used in linking, or null
+	 * @return unmodifiable set of linked elements, including the entity itself
+	 */
+	public Set<BioPAXElement> getLinkedElements(PhysicalEntity pe, LinkedPE.Type type,
+		Blacklist blacklist)
+	{
+		Key key = new Key(type, blacklist);
+		ConcurrentMap<PhysicalEntity, Set<BioPAXElement>> map = closures.get(key);
+		if (map == null)
+		{
+			map = new ConcurrentHashMap<PhysicalEntity, Set<BioPAXElement>>();
+			ConcurrentMap<PhysicalEntity, Set<BioPAXElement>> prev = closures.putIfAbsent(key, map);
+			if (prev != null) map = prev;
+		}
+
+		Set<BioPAXElement> set = map.get(pe);
+		if (set == null)
+		{
+			set = Collections.unmodifiableSet(
+				new LinkedPE(type, blacklist).collectLinkedElements(pe));
+			map.put(pe, set);
+		}
+		return set;
+	}
+
+	/**
+	 * Gets the chain of entities that link the given endpoints, in the order that
+	 * PhysicalEntityChain uses.
+	 * @param small member end of the chain
+	 * @param big complex end of the chain
+	 * @return the chain, or null if the entities are not linked. The array is shared, do not
+	 * modify it.
+	 */
+	public PhysicalEntity[] getChain(PhysicalEntity small, PhysicalEntity big)
+	{
+		Pair pair = new Pair(small, big);
+		PhysicalEntity[] chain = chains.get(pair);
+		if (chain == null)
+		{
+			chain = PhysicalEntityChain.link(small, big);
+			if (chain == null) chain = NO_CHAIN;
+			chains.put(pair, chain);
+		}
+		return chain == NO_CHAIN ? null : chain;
+	}
+
+	/**
+	 * @return number of cached closures
+	 */
+	public int getClosureCount()
+	{
+		int cnt = 0;
+		for (Map<PhysicalEntity, Set<BioPAXElement>> map : closures.values())
+		{
+			cnt += map.size();
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return number of cached chains
+	 */
+	public int getChainCount()
+	{
+		return chains.size();
+	}
+
+	/**
+	 * Linking type and blacklist of a group of closures. Blacklists are compared by identity.
+	 */
+	private static class Key
+	{
+		final LinkedPE.Type type;
+		final Blacklist blacklist;
+
+		Key(LinkedPE.Type type, Blacklist blacklist)
+		{
+			this.type = type;
+			this.blacklist = blacklist;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return k.type == type && k.blacklist == blacklist;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return type.hashCode() * 31 + System.identityHashCode(blacklist);
+		}
+	}
+
+	/**
+	 * Endpoints of a chain, compared by identity.
+	 */
+	private static class Pair
+	{
+		final PhysicalEntity small;
+		final PhysicalEntity big;
+
+		Pair(PhysicalEntity small, PhysicalEntity big)
+		{
+			this.small = small;
+			this.big = big;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Pair)) return false;
+			Pair p = (Pair) o;
+			return p.small == small && p.big == big;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(small) * 31 + System.identityHashCode(big);
+		}
+	}
+}
@@ -4,7 +4,11 @@ import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.Named;
+import org.biopax.paxtools.model.level3.SequenceEntity;
+import org.biopax.paxtools.pattern.constraint.AND;
+import org.biopax.paxtools.pattern.constraint.Equality;
 import org.biopax.paxtools.pattern.constraint.NonUbique;
+import org.biopax.paxtools.pattern.constraint.Type;
 import org.biopax.paxtools.pattern.util.Blacklist;
 import org.junit.Assert;
 import org.junit.Before;
@@ -13,6 +17,8 @@ import org.junit.Test;
 
 import java.io.FileInputStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Ozgun Babur
@@ -104,6 +110,284 @@ public class PatternBoxTest
 
 	}
 
+	@Test
+	public void testStreamingSearch() throws Exception
+	{
+		Pattern p = PatternBox.controlsStateChange();
+
+		Set<String> expected = new HashSet<String>();
+		for (Match match : Searcher.searchPlain(model_P53, p))
+		{
+			expected.add(match.toString());
+		}
+		Assert.assertFalse(expected.isEmpty());
+
+		// the sink receives the same matches
+
+		final Set<String> pushed = new HashSet<String>();
+		Assert.assertTrue(Searcher.search(model_P53, p, new MatchSink()
+		{
+			@Override
+			public boolean accept(Match match)
+			{
+				pushed.add(match.toString());
+				return true;
+			}
+		}));
+		Assert.assertEquals(expected, pushed);
+
+		// the sink can stop the search
+
+		final int[] count = new int[]{0};
+		Assert.assertFalse(Searcher.search(model_P53, p, new MatchSink()
+		{
+			@Override
+			public boolean accept(Match match)
+			{
+				return ++count[0] < 3;
+			}
+		}));
+		Assert.assertEquals(3, count[0]);
+
+		// a stream with a small buffer gives the same matches
+
+		Set<String> streamed = new HashSet<String>();
+		MatchStream stream = Searcher.stream(model_P53.getObjects(p.getStartingClass()), p, 2);
+		while (stream.hasNext())
+		{
+			streamed.add(stream.next().toString());
+		}
+		Assert.assertEquals(expected, streamed);
+
+		// and can be closed before reading all
+
+		stream = Searcher.stream(model_P53.getObjects(p.getStartingClass()), p, 1);
+		Assert.assertTrue(stream.hasNext());
+		stream.next();
+		stream.close();
+		Assert.assertFalse(stream.hasNext());
+	}
+
+	@Test
+	public void testParallelSearcher() throws Exception
+	{
+		Pattern p = PatternBox.controlsStateChange();
+
+		final Set<String> expected = new HashSet<String>();
+		Searcher.search(model_P53, p, new MatchSink()
+		{
+			@Override
+			public boolean accept(Match match)
+			{
+				expected.add(match.toString());
+				return true;
+			}
+		});
+
+		// same results with a given executor, dividing every element into small parts
+
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		try
+		{
+			ParallelSearcher searcher = new ParallelSearcher(p);
+			searcher.setExecutor(exec);
+			searcher.setSplitting(0, 1);
+
+			final Set<String> found = Collections.synchronizedSet(new HashSet<String>());
+			SearchReport report = searcher.search(model_P53, new MatchSink()
+			{
+				@Override
+				public boolean accept(Match match)
+				{
+					found.add(match.toString());
+					return true;
+				}
+			});
+
+			Assert.assertTrue(report.isComplete());
+			Assert.assertEquals(model_P53.getObjects(p.getStartingClass()).size(),
+				report.getTotalSeeds());
+			Assert.assertEquals(expected, found);
+
+			// stopping from the sink is reported as incomplete
+
+			report = searcher.search(model_P53, new MatchSink()
+			{
+				@Override
+				public boolean accept(Match match)
+				{
+					return false;
+				}
+			});
+
+			Assert.assertTrue(report.isCancelled());
+			Assert.assertFalse(report.isComplete());
+
+			// so is hitting the deadline
+
+			searcher.setTimeout(50);
+			report = searcher.search(model_P53, new MatchSink()
+			{
+				@Override
+				public boolean accept(Match match)
+				{
+					try
+					{
+						Thread.sleep(20);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+					return true;
+				}
+			});
+
+			Assert.assertTrue(report.isTimedOut());
+			Assert.assertFalse(report.isComplete());
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+	}
+
+	@Test
+	public void testMultiPatternSearcher() throws Exception
+	{
+		List<Pattern> patterns = Arrays.asList(PatternBox.controlsStateChange(),
+			PatternBox.controlsTransport(), PatternBox.controlsPhosphorylation(),
+			PatternBox.controlsStateChangeThroughDegradation(), PatternBox.inComplexWith(),
+			PatternBox.controlsStateChange());
+
+		MultiPatternSearcher searcher = new MultiPatternSearcher(patterns);
+
+		int total = 0;
+		for (Pattern p : patterns)
+		{
+			total += p.getConstraints().size();
+		}
+		Assert.assertTrue(searcher.getSharedConstraintCount() < total);
+
+		List<Set<String>> expected = new ArrayList<Set<String>>();
+		for (Pattern p : patterns)
+		{
+			Set<String> set = new HashSet<String>();
+			for (Match match : Searcher.searchPlain(model_P53, p))
+			{
+				set.add(match.toString());
+			}
+			expected.add(set);
+		}
+		Assert.assertFalse(expected.get(0).isEmpty());
+
+		// once with the default splitting, once dividing every productive element
+
+		for (int split : new int[]{64, 0})
+		{
+			searcher.setSplitting(split, 1);
+
+			List<MatchSink> sinks = new ArrayList<MatchSink>();
+			final List<Set<String>> found = new ArrayList<Set<String>>();
+			for (int i = 0; i < patterns.size(); i++)
+			{
+				final Set<String> set = Collections.synchronizedSet(new HashSet<String>());
+				found.add(set);
+				sinks.add(new MatchSink()
+				{
+					@Override
+					public boolean accept(Match match)
+					{
+						set.add(match.toString());
+						return true;
+					}
+				});
+			}
+
+			SearchReport report = searcher.search(model_P53, sinks);
+			Assert.assertTrue(report.isComplete());
+			Assert.assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	public void testCompiledPattern() throws Exception
+	{
+		Pattern p = PatternBox.controlsStateChange();
+		p.add(new AND(new MappedConst(new Type(SequenceEntity.class), 0),
+			new MappedConst(new Equality(false), 0, 1)), "output simple PE", "input simple PE");
+
+		CompiledPattern compiled = p.compile();
+		Assert.assertEquals(p.getConstraints().size() + 1, compiled.getStepCount());
+
+		// compare with the uncompiled recursive search
+
+		Set<String> expected = new HashSet<String>();
+		for (BioPAXElement ele : model_P53.getObjects(p.getStartingClass()))
+		{
+			for (Match match : Searcher.search(ele, p))
+			{
+				expected.add(match.toString());
+			}
+		}
+		Assert.assertFalse(expected.isEmpty());
+
+		final Set<String> found = new HashSet<String>();
+		compiled.search(model_P53, new MatchSink()
+		{
+			@Override
+			public boolean accept(Match match)
+			{
+				found.add(match.toString());
+				return true;
+			}
+		});
+		Assert.assertEquals(expected, found);
+
+		found.clear();
+		for (Match match : Searcher.searchPlain(model_P53, p))
+		{
+			found.add(match.toString());
+		}
+		Assert.assertEquals(expected, found);
+	}
+
+	@Test
+	public void testConstraintPlanner() throws Exception
+	{
+		for (Pattern p : Arrays.asList(PatternBox.controlsStateChange(),
+			PatternBox.catalysisPrecedes(null)))
+		{
+			Set<String> expected = new HashSet<String>();
+			for (Match match : Searcher.searchPlain(model_P53, p))
+			{
+				expected.add(match.toString());
+			}
+
+			ConstraintPlan plan = p.optimizeConstraintOrder(model_P53);
+
+			// same results after reordering
+
+			Set<String> found = new HashSet<String>();
+			for (Match match : Searcher.searchPlain(model_P53, p))
+			{
+				found.add(match.toString());
+			}
+			Assert.assertEquals(expected, found);
+
+			// measured matches after the last step are the actual results
+
+			Set<? extends BioPAXElement> seeds = model_P53.getObjects(p.getStartingClass());
+			plan.measure(seeds);
+			double[] actual = plan.getActual();
+			Assert.assertEquals(expected.size() / (double) seeds.size(),
+				actual[actual.length - 1], 1e-9);
+
+			Assert.assertEquals(p.getConstraints().size() + 2,
+				plan.explain().split("\n").length);
+		}
+	}
+
 	protected void printMatches(Collection<Match> matches)
 	{
 		if (matches.isEmpty()) return;
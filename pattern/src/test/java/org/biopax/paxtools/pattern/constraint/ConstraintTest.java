@@ -1,15 +1,22 @@
 package org.biopax.paxtools.pattern.constraint;
 
+import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.level3.Complex;
 import org.biopax.paxtools.model.level3.PhysicalEntity;
 import org.biopax.paxtools.model.level3.SimplePhysicalEntity;
 import org.biopax.paxtools.model.level3.SmallMolecule;
 import org.biopax.paxtools.pattern.*;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.pattern.util.PhysicalEntityChain;
+import org.biopax.paxtools.pattern.util.PhysicalEntityClosureCache;
 import org.biopax.paxtools.pattern.util.RelType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Ozgun Babur
@@ -159,4 +166,57 @@ public class ConstraintTest extends TestParent
 			Assert.assertTrue(true);
 		}
 	}
+
+	@Test
+	public void testClosureCache() throws Exception
+	{
+		LinkedPE up = new LinkedPE(LinkedPE.Type.TO_GENERAL);
+		LinkedPE down = new LinkedPE(LinkedPE.Type.TO_SPECIFIC);
+
+		Map<PhysicalEntity, Set<BioPAXElement>> ups = new HashMap<PhysicalEntity, Set<BioPAXElement>>();
+		Map<PhysicalEntity, Set<BioPAXElement>> downs = new HashMap<PhysicalEntity, Set<BioPAXElement>>();
+		for (PhysicalEntity pe : model.getObjects(PhysicalEntity.class))
+		{
+			ups.put(pe, up.getLinkedElements(pe));
+			downs.put(pe, down.getLinkedElements(pe));
+		}
+
+		PhysicalEntityClosureCache cache = PhysicalEntityClosureCache.forModel(model);
+		try
+		{
+			// closures are also computed for the blacklist, and the search uses them
+
+			Blacklist blacklist = new Blacklist();
+			cache.build(blacklist);
+			Assert.assertEquals(4 * ups.size(), cache.getClosureCount());
+			for (PhysicalEntity pe : ups.keySet())
+			{
+				new LinkedPE(LinkedPE.Type.TO_GENERAL, blacklist).getLinkedElements(pe);
+			}
+			Assert.assertEquals(4 * ups.size(), cache.getClosureCount());
+
+			int chains = 0;
+			for (PhysicalEntity pe : ups.keySet())
+			{
+				Assert.assertEquals(ups.get(pe), up.getLinkedElements(pe));
+				Assert.assertEquals(downs.get(pe), down.getLinkedElements(pe));
+
+				// cached chains are the same as the computed ones
+				for (BioPAXElement big : ups.get(pe))
+				{
+					PhysicalEntityChain chain = new PhysicalEntityChain(pe, (PhysicalEntity) big);
+					PhysicalEntityClosureCache.release(model);
+					PhysicalEntityChain computed = new PhysicalEntityChain(pe, (PhysicalEntity) big);
+					PhysicalEntityClosureCache.forModel(model);
+					Assert.assertArrayEquals(computed.pes, chain.pes);
+					chains++;
+				}
+			}
+			Assert.assertTrue(chains > ups.size());
+		}
+		finally
+		{
+			PhysicalEntityClosureCache.release(model);
+		}
+	}
 }
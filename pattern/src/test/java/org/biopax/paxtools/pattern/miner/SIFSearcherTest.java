@@ -1,15 +1,21 @@
 package org.biopax.paxtools.pattern.miner;
 
 import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.BioPAXLevel;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.*;
+import org.biopax.paxtools.model.level3.Process;
 import org.biopax.paxtools.pattern.PatternBoxTest;
 import org.biopax.paxtools.pattern.util.AdjacencyMatrix;
 import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.pattern.util.ChemicalNameNormalizer;
+import org.biopax.paxtools.pattern.util.RelType;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
@@ -23,6 +29,8 @@ import static org.junit.Assert.*;
  */
 public class SIFSearcherTest extends PatternBoxTest
 {
+	private static final Logger log = LoggerFactory.getLogger(SIFSearcherTest.class);
+
 	@Test
 	public void testGetPathways()
 	{
@@ -329,6 +337,368 @@ public class SIFSearcherTest extends PatternBoxTest
 		//TODO more...
 	}
 
+	@Test
+	public void testIncrementalUpdate() throws IOException
+	{
+		SIFSearcher searcher = new SIFSearcher(SIFEnum.CONTROLS_STATE_CHANGE_OF,
+			SIFEnum.IN_COMPLEX_WITH, SIFEnum.CONTROLS_EXPRESSION_OF);
+
+		SIFResultStore store = searcher.createStore(model_P53);
+		assertEquals(sifLines(searcher.searchSIF(model_P53)),
+			sifLines(store.getInteractions(model_P53, new HashMap<String, SIFType>())));
+
+		// persist and restore
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		store.write(bos);
+		store = SIFResultStore.read(new ByteArrayInputStream(bos.toByteArray()));
+		assertTrue(searcher.verifyStore(model_P53, store).isEmpty());
+
+		// remove a control and connect its controller to another conversion
+
+		Control removed = null;
+		for (Control ctrl : model_P53.getObjects(Control.class))
+		{
+			if (!ctrl.getController().isEmpty() && !ctrl.getControlled().isEmpty())
+			{
+				removed = ctrl;
+				break;
+			}
+		}
+		assertNotNull(removed);
+
+		Set<BioPAXElement> changed = new HashSet<BioPAXElement>();
+		Controller controller = removed.getController().iterator().next();
+		for (Controller c : new HashSet<Controller>(removed.getController()))
+		{
+			removed.removeController(c);
+			changed.add(c);
+		}
+		for (Process p : new HashSet<Process>(removed.getControlled()))
+		{
+			removed.removeControlled(p);
+			changed.add(p);
+		}
+		model_P53.remove(removed);
+
+		Conversion target = null;
+		for (Conversion conv : model_P53.getObjects(Conversion.class))
+		{
+			if (!changed.contains(conv) && !conv.getLeft().isEmpty()) target = conv;
+		}
+		assertNotNull(target);
+
+		Catalysis added = model_P53.addNew(Catalysis.class, "http://example.org/added_catalysis");
+		added.addController(controller);
+		added.addControlled(target);
+		changed.add(added);
+
+		Set<SIFInteraction> updated = searcher.updateStore(model_P53, store, changed,
+			Collections.singleton(removed.getUri()));
+
+		assertTrue(searcher.verifyStore(model_P53, store).isEmpty());
+		assertEquals(sifLines(searcher.searchSIF(model_P53)), sifLines(updated));
+	}
+
+	@Test
+	public void testLocalUpdate()
+	{
+		// independent state changes that share a pathway and ubiquitous molecules, which must not
+		// make every starting element a neighbor of every change
+
+		Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
+		Pathway pathway = model.addNew(Pathway.class, "pathway");
+		SmallMoleculeReference atp = model.addNew(SmallMoleculeReference.class, "atp");
+		SmallMoleculeReference adp = model.addNew(SmallMoleculeReference.class, "adp");
+
+		Blacklist blacklist = new Blacklist();
+		blacklist.addEntry(atp.getUri(), 1000, null);
+		blacklist.addEntry(adp.getUri(), 1000, null);
+
+		int n = 20;
+		List<Protein> enzymes = new ArrayList<Protein>();
+		List<Conversion> conversions = new ArrayList<Conversion>();
+		for (int i = 0; i < n; i++)
+		{
+			Protein enzyme = addProtein(model, "enzyme" + i);
+			Protein inactive = addProtein(model, "target" + i);
+			Protein active = model.addNew(Protein.class, "target" + i + "_active");
+			active.setEntityReference(inactive.getEntityReference());
+
+			BiochemicalReaction conv = model.addNew(BiochemicalReaction.class, "reaction" + i);
+			conv.addLeft(inactive);
+			conv.addLeft(addSmallMolecule(model, atp, "atp" + i));
+			conv.addRight(active);
+			conv.addRight(addSmallMolecule(model, adp, "adp" + i));
+			conv.setConversionDirection(ConversionDirectionType.LEFT_TO_RIGHT);
+
+			Catalysis cat = model.addNew(Catalysis.class, "catalysis" + i);
+			cat.addController(enzyme);
+			cat.addControlled(conv);
+
+			pathway.addPathwayComponent(conv);
+			pathway.addPathwayComponent(cat);
+			enzymes.add(enzyme);
+			conversions.add(conv);
+		}
+
+		SIFSearcher searcher = new SIFSearcher(new SimpleIDFetcher(),
+			SIFEnum.CONTROLS_STATE_CHANGE_OF, SIFEnum.IN_COMPLEX_WITH);
+		searcher.setBlacklist(blacklist);
+		SIFResultStore store = searcher.createStore(model);
+
+		// updating an empty store searches every starting element of every miner
+
+		searcher.updateStore(model, new SIFResultStore(), Collections.<BioPAXElement>emptySet(),
+			Collections.<String>emptySet());
+		int total = searcher.getUpdatedStartCount();
+
+		// the first enzyme also catalyzes the second reaction
+
+		Catalysis added = model.addNew(Catalysis.class, "added_catalysis");
+		added.addController(enzymes.get(0));
+		added.addControlled(conversions.get(1));
+
+		Set<SIFInteraction> updated = searcher.updateStore(model, store,
+			Arrays.asList(added, enzymes.get(0), conversions.get(1)),
+			Collections.<String>emptySet());
+
+		assertTrue(searcher.verifyStore(model, store).isEmpty());
+		assertEquals(sifLines(searcher.searchSIF(model)), sifLines(updated));
+
+		// only the two enzymes and their targets are searched again, out of the 2n proteins
+
+		assertTrue(searcher.getUpdatedStartCount() * 2 * n <= 4 * total);
+	}
+
+	private Protein addProtein(Model model, String name)
+	{
+		ProteinReference pr = model.addNew(ProteinReference.class, name + "_ref");
+		Protein protein = model.addNew(Protein.class, name);
+		protein.setEntityReference(pr);
+		return protein;
+	}
+
+	private SmallMolecule addSmallMolecule(Model model, SmallMoleculeReference smr, String uri)
+	{
+		SmallMolecule sm = model.addNew(SmallMolecule.class, uri);
+		sm.setEntityReference(smr);
+		return sm;
+	}
+
+	@Test
+	public void testSpilledOutput() throws IOException
+	{
+		SIFSearcher searcher = new SIFSearcher(SIFEnum.CONTROLS_STATE_CHANGE_OF,
+			SIFEnum.IN_COMPLEX_WITH, SIFEnum.CHEMICAL_AFFECTS);
+		SIFToText stt = new CustomFormat(OutputColumn.Type.MEDIATOR.name());
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		searcher.searchSIF(model_P53, expected, stt);
+		assertTrue(expected.toString().split("\n").length > 3);
+		ByteArrayOutputStream expectedExt = new ByteArrayOutputStream();
+		searcher.searchExtendedSIF(model_P53, expectedExt);
+
+		searcher.setSpilling(3, null);
+
+		ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+		searcher.searchSIF(model_P53, spilled, stt);
+		assertEquals(expected.toString(), spilled.toString());
+
+		// participant details are not sorted, so compare the extended output line by line
+
+		ByteArrayOutputStream spilledExt = new ByteArrayOutputStream();
+		searcher.searchExtendedSIF(model_P53, spilledExt);
+		String[] exp = expectedExt.toString().split("\n\n");
+		String[] act = spilledExt.toString().split("\n\n");
+		assertEquals(2, act.length);
+		assertEquals(exp[0], act[0]);
+		assertEquals(new HashSet<String>(Arrays.asList(exp[1].split("\n"))),
+			new HashSet<String>(Arrays.asList(act[1].split("\n"))));
+	}
+
+	@Test
+	public void testIDCache()
+	{
+		// counts the fetches of each element
+		final Map<BioPAXElement, Integer> fetched = new HashMap<BioPAXElement, Integer>();
+		final IDFetcher common = new CommonIDFetcher();
+		IDFetcher counting = new IDFetcher()
+		{
+			@Override
+			public synchronized Set<String> fetchID(BioPAXElement ele)
+			{
+				Integer cnt = fetched.get(ele);
+				fetched.put(ele, cnt == null ? 1 : cnt + 1);
+				return common.fetchID(ele);
+			}
+		};
+
+		SIFSearcher searcher = new SIFSearcher(counting, SIFEnum.CONTROLS_STATE_CHANGE_OF,
+			SIFEnum.IN_COMPLEX_WITH, SIFEnum.CONTROLS_EXPRESSION_OF);
+		Set<SIFInteraction> sifs = searcher.searchSIF(model_P53);
+		assertFalse(sifs.isEmpty());
+
+		IDCache cache = searcher.getIDCache();
+		assertTrue(cache.getHitCount() > 0);
+		assertEquals(fetched.size(), cache.size());
+		assertEquals(model_P53.getObjects(EntityReference.class).size() + cache.getMissCount(),
+			fetched.size());
+		for (Integer cnt : fetched.values())
+		{
+			assertEquals(1, cnt.intValue());
+		}
+
+		SIFSearcher plain = new SIFSearcher(common, SIFEnum.CONTROLS_STATE_CHANGE_OF,
+			SIFEnum.IN_COMPLEX_WITH, SIFEnum.CONTROLS_EXPRESSION_OF);
+		assertEquals(sifLines(plain.searchSIF(model_P53)), sifLines(sifs));
+	}
+
+	@Test
+	public void testBlacklistStatistics()
+	{
+		// list every molecule that has a neighbor, to compare all the counts
+
+		BlacklistGenerator.Decider decider = new BlacklistGenerator.Decider()
+		{
+			@Override
+			public boolean isUbique(int neighborSize, int upstrOnly, int dwstrOnly)
+			{
+				return neighborSize > 0;
+			}
+
+			@Override
+			public int getScore(int neighborSize, int upstrOnly, int dwstrOnly)
+			{
+				return neighborSize * 10000 + upstrOnly * 100 + dwstrOnly;
+			}
+
+			@Override
+			public RelType getContext(int neighborSize, int upstrOnly, int dwstrOnly)
+			{
+				return upstrOnly > dwstrOnly ? RelType.OUTPUT :
+					dwstrOnly > upstrOnly ? RelType.INPUT : null;
+			}
+		};
+
+		String[] files = new String[]{"UreaCycle.owl", "tca_cycle.owl"};
+		Model[] models = new Model[]{model_urea, model_tca};
+
+		for (int i = 0; i < models.length; i++)
+		{
+			Model model = models[i];
+			BlacklistGenerator gen = new BlacklistGenerator(decider);
+
+			long time = System.currentTimeMillis();
+			Blacklist expected = generateBlacklistSequentially(model, gen, decider);
+			long seqTime = System.currentTimeMillis() - time;
+			assertFalse(expected.getListed().isEmpty());
+
+			time = System.currentTimeMillis();
+			Blacklist blacklist = gen.generateBlacklist(model);
+			time = System.currentTimeMillis() - time;
+			log.info(files[i] + ": blacklist of " + blacklist.getListed().size() +
+				" molecules in " + time + " ms, " + seqTime + " ms with collected interactions");
+
+			assertEquals(blacklistLines(expected), blacklistLines(blacklist));
+
+			// the same from the OWL file
+
+			blacklist = gen.generateBlacklist(PatternBoxTest.class.getResourceAsStream(files[i]));
+			assertEquals(blacklistLines(expected), blacklistLines(blacklist));
+		}
+
+		BlacklistGenerator3 gen3 = new BlacklistGenerator3();
+		assertEquals(blacklistLines(gen3.generateBlacklist(model_tca)), blacklistLines(
+			gen3.generateBlacklist(PatternBoxTest.class.getResourceAsStream("tca_cycle.owl"))));
+	}
+
+	/**
+	 * Generates the blacklist as BlacklistGenerator did before counting the statistics during the
+	 * search: collects the interactions, then counts the neighbors with sets.
+	 */
+	private Blacklist generateBlacklistSequentially(Model model, BlacklistGenerator gen,
+		BlacklistGenerator.Decider decider)
+	{
+		ChemicalNameNormalizer normalizer = new ChemicalNameNormalizer(model);
+		SIFSearcher searcher = new SIFSearcher(gen.new Fetcher(normalizer), SIFEnum.USED_TO_PRODUCE);
+
+		Set<SIFInteraction> sifs = searcher.searchSIF(model);
+
+		// read interactions into maps
+
+		Map<String, Set<String>> upstrMap = new HashMap<String, Set<String>>();
+		Map<String, Set<String>> dwstrMap = new HashMap<String, Set<String>>();
+		Map<String, Set<String>> neighMap = new HashMap<String, Set<String>>();
+
+		for (SIFInteraction sif : sifs)
+		{
+			String source = sif.sourceID;
+			String target = sif.targetID;
+
+			if (!neighMap.containsKey(source)) neighMap.put(source, new HashSet<String>());
+			if (!neighMap.containsKey(target)) neighMap.put(target, new HashSet<String>());
+			if (!dwstrMap.containsKey(source)) dwstrMap.put(source, new HashSet<String>());
+			if (!dwstrMap.containsKey(target)) dwstrMap.put(target, new HashSet<String>());
+			if (!upstrMap.containsKey(source)) upstrMap.put(source, new HashSet<String>());
+			if (!upstrMap.containsKey(target)) upstrMap.put(target, new HashSet<String>());
+
+			neighMap.get(source).add(target);
+			neighMap.get(target).add(source);
+			dwstrMap.get(source).add(target);
+			upstrMap.get(target).add(source);
+		}
+
+		// remove intersection of upstream and downstream
+
+		for (String name : neighMap.keySet())
+		{
+			Set<String> upstr = upstrMap.get(name);
+			Set<String> dwstr = dwstrMap.get(name);
+
+			Set<String> temp = new HashSet<String>(upstr);
+			upstr.removeAll(dwstr);
+			dwstr.removeAll(temp);
+		}
+
+		Blacklist blacklist = new Blacklist();
+
+		for (SmallMoleculeReference smr : model.getObjects(SmallMoleculeReference.class))
+		{
+			String name = normalizer.getName(smr);
+
+			int neighSize = neighMap.containsKey(name) ? neighMap.get(name).size() : 0;
+			int upstrOnly = upstrMap.containsKey(name) ? upstrMap.get(name).size() : 0;
+			int dwstrOnly = dwstrMap.containsKey(name) ? dwstrMap.get(name).size() : 0;
+
+			if (decider.isUbique(neighSize, upstrOnly, dwstrOnly))
+			{
+				blacklist.addEntry(smr.getUri(),
+					decider.getScore(neighSize, upstrOnly, dwstrOnly),
+					decider.getContext(neighSize, upstrOnly, dwstrOnly));
+			}
+		}
+		return blacklist;
+	}
+
+	private Set<String> blacklistLines(Blacklist blacklist)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		blacklist.write(bos);
+		return new HashSet<String>(Arrays.asList(bos.toString().split("\n")));
+	}
+
+	private List<String> sifLines(Set<SIFInteraction> sifs)
+	{
+		List<String> lines = new ArrayList<String>();
+		for (SIFInteraction sif : sifs)
+		{
+			lines.add(sif + "\t" + sif.getMediatorsInString());
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+
 	public static void generate(String inputModelFile, String ubiqueIDFile, String outputFile)
 		throws IOException
 	{
@@ -33,8 +33,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.biopax.paxtools.client.BiopaxValidatorClient;
 import org.biopax.paxtools.client.BiopaxValidatorClient.RetFormat;
-import org.biopax.paxtools.controller.Cloner;
-import org.biopax.paxtools.controller.Completer;
 import org.biopax.paxtools.controller.Fetcher;
 import org.biopax.paxtools.controller.Integrator;
 import org.biopax.paxtools.controller.Merger;
@@ -82,6 +80,7 @@ import org.biopax.paxtools.pattern.miner.SIFSearcher;
 import org.biopax.paxtools.pattern.miner.SIFType;
 import org.biopax.paxtools.pattern.util.Blacklist;
 import org.biopax.paxtools.query.QueryExecuter;
+import org.biopax.paxtools.query.QueryResultWriter;
 import org.biopax.paxtools.query.algorithm.Direction;
 import org.biopax.paxtools.util.ClassFilterSet;
 import org.biopax.validator.jaxb.Behavior;
@@ -175,20 +174,10 @@ public class PaxtoolsMain {
         Set<BioPAXElement> result = QueryExecuter
         		.runNeighborhood(elements, model, 1, Direction.BOTHSTREAM);
 
-        // auto-complete/clone the results in a new model
-        // (this also cuts some less important edges, right?..)
-        Completer c = new Completer(io.getEditorMap());
-        result = c.complete(result, model);
-        Cloner cln = new Cloner(io.getEditorMap(), io.getFactory());
-        model = cln.clone(model, result); // new sub-model
-
-        if (model != null) {
-            log.info("Elements in the result model: " + model.getObjects().size());
-            // export to OWL
-            io.convertToOWL(model, new FileOutputStream(out));
-        } else {
-            log.error("NULL model returned.");
-        }
+        // auto-complete the results and export them directly from the model
+        QueryResultWriter writer = new QueryResultWriter(io);
+        int size = writer.writeOWL(result, model, new FileOutputStream(out));
+        log.info("Elements in the result model: " + size);
     }
 
     public static void fetch(String[] argv) throws IOException {
@@ -91,6 +91,24 @@ public final class ModelUtils
 	 * @exception IllegalBioPAXArgumentException if there is an incompatible type replacement object
 	 */
 	public static void replace(Model model, final Map<? extends BioPAXElement, ? extends BioPAXElement> subs)
+	{
+		replace(new HashSet<BioPAXElement>(model.getObjects()), subs);
+	}
+
+
+	/**
+	 * Replaces BioPAX elements with ones from the map in the object properties
+	 * of the given elements, which do not have to be all in one model (e.g., elements
+	 * that are about to be removed from, or added to, a model can be updated in the same pass).
+	 * 
+	 * @see #replace(Model, Map)
+	 * 
+	 * @param elements biopax objects to update the object properties of
+	 * @param subs the replacements map (many-to-one, old-to-new)
+	 * @exception IllegalBioPAXArgumentException if there is an incompatible type replacement object
+	 */
+	public static void replace(Collection<? extends BioPAXElement> elements,
+		final Map<? extends BioPAXElement, ? extends BioPAXElement> subs)
 	{
 		// update properties
 		Visitor visitor = new Visitor()
@@ -129,7 +147,7 @@ public final class ModelUtils
 		};
 
 		Traverser traverser = new Traverser(em, visitor);
-		for (BioPAXElement bpe : new HashSet<BioPAXElement>(model.getObjects()))
+		for (BioPAXElement bpe : elements)
 		{
 			// update object properties and clear inverse properties using 'subs' map	
 			traverser.traverse(bpe, null); //model is not needed
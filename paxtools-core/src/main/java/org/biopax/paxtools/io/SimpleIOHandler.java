@@ -574,6 +574,46 @@ public final class SimpleIOHandler extends BioPAXIOHandlerAdapter
 	}
 
 
+	/**
+	 * Writes only the given elements of the model into the outputStream, in BioPAX (OWL) format.
+	 * Object property values that refer to elements outside the given set are not written, the
+	 * same way the {@link org.biopax.paxtools.controller.Cloner} drops them; so this is equivalent
+	 * to cloning the elements into a new model and exporting it, without creating the copies.
+	 *
+	 * The model is only used for the xml:base and namespace prefixes. To get a valid sub-model,
+	 * complete the set first with {@link org.biopax.paxtools.controller.Completer}.
+	 *
+	 * @param model model that contains the elements
+	 * @param outputStream output stream into which the output will be written
+	 * @param elements elements to write
+	 * @throws BioPaxIOException in case of I/O problems
+	 */
+	public void convertToOWL(Model model, OutputStream outputStream,
+		Collection<? extends BioPAXElement> elements)
+	{
+		initializeExporter(model);
+
+		Set<? extends BioPAXElement> scope = (elements instanceof Set) ?
+			(Set<? extends BioPAXElement>) elements : new HashSet<BioPAXElement>(elements);
+
+		try
+		{
+			Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+			writeHeader(out);
+			for (BioPAXElement bean : scope)
+			{
+				writeObject(out, bean, scope);
+			}
+			out.write(newline + "</rdf:RDF>");
+			out.close();
+		}
+		catch (IOException e)
+		{
+			throw new BioPaxIOException("Cannot convert to OWL!", e);
+		}
+	}
+
+
 	/**
 	 * Writes the XML representation of individual BioPAX element that
 	 * is BioPAX-like but only for display or debug purpose (incomplete).
@@ -586,6 +626,20 @@ public final class SimpleIOHandler extends BioPAXIOHandlerAdapter
 	 * @throws IOException when the output writer throws
 	 */
 	public void writeObject(Writer out, BioPAXElement bean) throws IOException
+	{
+		writeObject(out, bean, null);
+	}
+
+
+	/**
+	 * Writes the element, skipping the object property values that are not in the scope.
+	 * @param out output
+	 * @param bean BioPAX object
+	 * @param scope elements that can be referred, or null to write all values
+	 * @throws IOException when the output writer throws
+	 */
+	private void writeObject(Writer out, BioPAXElement bean, Set<? extends BioPAXElement> scope)
+		throws IOException
 	{
 		String name = "bp:" + bean.getModelInterface().getSimpleName();
 		writeIDLine(out, bean, name);
@@ -603,7 +657,11 @@ public final class SimpleIOHandler extends BioPAXIOHandlerAdapter
 			Set value = editor.getValueFromBean(bean); //is never null
 			for (Object valueElement : value)
 			{
-				if (!editor.isUnknown(valueElement)) writeStatementFor(bean, editor, valueElement, out);
+				if (editor.isUnknown(valueElement)) continue;
+				if (scope != null && valueElement instanceof BioPAXElement &&
+					!scope.contains(valueElement)) continue;
+
+				writeStatementFor(bean, editor, valueElement, out);
 			}
 		}
 
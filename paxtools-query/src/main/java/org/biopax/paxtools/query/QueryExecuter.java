@@ -8,6 +8,7 @@ import org.biopax.paxtools.query.algorithm.*;
 import org.biopax.paxtools.query.model.Graph;
 import org.biopax.paxtools.query.model.GraphObject;
 import org.biopax.paxtools.query.model.Node;
+import org.biopax.paxtools.query.wrapperL3.EquivalenceIndex;
 import org.biopax.paxtools.query.wrapperL3.Filter;
 import org.biopax.paxtools.query.wrapperL3.GraphL3;
 import org.biopax.paxtools.query.wrapperL3undirected.GraphL3Undirected;
@@ -145,6 +146,57 @@ public class QueryExecuter
 		return convertQueryResult(resultWrappers, graph, true);
 	}
 
+	/**
+	 * Gets the k cheapest paths from a source node to a target node, where the cost of a path is
+	 * the sum of its edge weights.
+	 * @param sourceSet Seeds for start points of paths
+	 * @param targetSet Seeds for end points of paths
+	 * @param model BioPAX model
+	 * @param k Number of paths to find
+	 * @param weight Cost of graph edges, e.g. a DefaultEdgeWeight
+	 * @param maxCost Paths that cost more than this are not searched
+	 * @param filters for filtering graph elements
+	 * @return Paths, cheapest first, each as the list of BioPAX elements from source to target
+	 */
+	public static List<List<BioPAXElement>> runKShortestPaths(
+		Set<BioPAXElement> sourceSet,
+		Set<BioPAXElement> targetSet,
+		Model model,
+		int k,
+		EdgeWeight weight,
+		double maxCost,
+		Filter... filters)
+	{
+		Graph graph;
+
+		if (model.getLevel() == BioPAXLevel.L3)
+		{
+			graph = new GraphL3(model, filters);
+		}
+		else return Collections.emptyList();
+
+		Set<Node> source = prepareSingleNodeSet(sourceSet, graph);
+		Set<Node> target = prepareSingleNodeSet(targetSet, graph);
+
+		KShortestPathsQuery query = new KShortestPathsQuery(source, target, k, weight, maxCost);
+
+		List<List<BioPAXElement>> paths = new ArrayList<List<BioPAXElement>>();
+
+		for (KShortestPathsQuery.Path path : query.run())
+		{
+			List<BioPAXElement> list = new ArrayList<BioPAXElement>();
+			for (Node node : path.getNodes())
+			{
+				for (Object o : graph.getWrappedSet(Collections.singleton(node)))
+				{
+					list.add((BioPAXElement) o);
+				}
+			}
+			paths.add(list);
+		}
+		return paths;
+	}
+
 	/**
 	 * Gets the elements in the common upstream or downstream of the seed
 	 * @param sourceSet Seed to the query
@@ -321,7 +373,8 @@ public class QueryExecuter
 	 */
 	public static Set<Node> prepareSingleNodeSet(Set<BioPAXElement> elements, Graph graph)
 	{
-		Map<BioPAXElement, Set<PhysicalEntity>> map = getRelatedPhysicalEntityMap(elements);
+		Map<BioPAXElement, Set<PhysicalEntity>> map =
+			getRelatedPhysicalEntityMap(elements, getEquivalenceIndex(graph));
 
 		Set<PhysicalEntity> pes = new HashSet<PhysicalEntity>();
 		for (Set<PhysicalEntity> valueSet : map.values())
@@ -351,7 +404,8 @@ public class QueryExecuter
 	{
 		Collection<Set<Node>> sets = new HashSet<Set<Node>>();
 
-		Map<BioPAXElement, Set<PhysicalEntity>> map = getRelatedPhysicalEntityMap(elements);
+		Map<BioPAXElement, Set<PhysicalEntity>> map =
+			getRelatedPhysicalEntityMap(elements, getEquivalenceIndex(graph));
 
 		for (Set<PhysicalEntity> pes : map.values())
 		{
@@ -379,13 +433,28 @@ public class QueryExecuter
 	 */
 	public static Map<BioPAXElement, Set<PhysicalEntity>> getRelatedPhysicalEntityMap(
 		Collection<BioPAXElement> elements)
+	{
+		return getRelatedPhysicalEntityMap(elements, null);
+	}
+
+	/**
+	 * Maps each BioPAXElement to its related PhysicalEntity objects, using the precomputed closures
+	 * if an index is given.
+	 *
+	 * @param elements Elements to map
+	 * @param index Equivalence index of the model. If null, the closures are computed.
+	 * @return The mapping
+	 */
+	public static Map<BioPAXElement, Set<PhysicalEntity>> getRelatedPhysicalEntityMap(
+		Collection<BioPAXElement> elements, EquivalenceIndex index)
 	{
 		replaceXrefsWithRelatedER(elements);
 		Map<BioPAXElement, Set<PhysicalEntity>> map = new HashMap<BioPAXElement, Set<PhysicalEntity>>();
 
 		for (BioPAXElement ele : elements)
 		{
-			Set<PhysicalEntity> ents = getRelatedPhysicalEntities(ele, null);
+			Set<PhysicalEntity> ents = index == null ?
+				getRelatedPhysicalEntities(ele, null) : index.getRelatedPhysicalEntities(ele, null);
 
 			if (!ents.isEmpty())
 			{
@@ -395,6 +464,19 @@ public class QueryExecuter
 		return map;
 	}
 
+	/**
+	 * Gets the equivalence index that the graph uses, if any.
+	 * @param graph Queried graph
+	 * @return The index or null
+	 */
+	private static EquivalenceIndex getEquivalenceIndex(Graph graph)
+	{
+		if (graph instanceof GraphL3) return ((GraphL3) graph).getEquivalenceIndex();
+		if (graph instanceof GraphL3Undirected)
+			return EquivalenceIndex.lookup(((GraphL3Undirected) graph).getModel());
+		return null;
+	}
+
 	/**
 	 * Replaces Xref objects with the related EntityReference objects. This is required for the use
 	 * case when user provides multiple xrefs that point to the same ER.
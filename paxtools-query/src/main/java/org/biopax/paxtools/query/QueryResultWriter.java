@@ -0,0 +1,91 @@
+package org.biopax.paxtools.query;
+
+import org.biopax.paxtools.controller.Completer;
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes the result of a query directly from the queried model in BioPAX format. The result is
+ * completed to a valid sub-model, then written without cloning the elements into a new model,
+ * which is what the usual Completer - Cloner - export sequence does.
+ *
+ * The output is the same as exporting the cloned model: object property values that point out of
+ * the completed result are not written. For SIF output, pass the completed result to
+ * SIFSearcher.searchSIF(Collection, OutputStream, SIFToText) of the pattern module.
+ */
+public class QueryResultWriter
+{
+	/**
+	 * Handler that writes the BioPAX output.
+	 */
+	private final SimpleIOHandler io;
+
+	/**
+	 * Whether to complete the result before writing.
+	 */
+	private boolean complete;
+
+	/**
+	 * Constructor with the default I/O handler.
+	 */
+	public QueryResultWriter()
+	{
+		this(new SimpleIOHandler());
+	}
+
+	/**
+	 * Constructor with the I/O handler to use.
+	 * @param io handler that writes the BioPAX output
+	 */
+	public QueryResultWriter(SimpleIOHandler io)
+	{
+		this.io = io;
+		this.complete = true;
+	}
+
+	/**
+	 * Sets whether the result should be completed before writing. True by default. Set it to
+	 * false if the result is already complete.
+	 * @param complete whether to complete the result
+	 */
+	public void setComplete(boolean complete)
+	{
+		this.complete = complete;
+	}
+
+	/**
+	 * Gets the elements to write for the query result.
+	 * @param result result of the query
+	 * @param editorMap editor map of the model level
+	 * @return completed result
+	 */
+	public Set<BioPAXElement> getCompleted(Collection<BioPAXElement> result, EditorMap editorMap)
+	{
+		if (!complete) return new HashSet<BioPAXElement>(result);
+
+		Completer completer = new Completer(editorMap);
+		return new HashSet<BioPAXElement>(completer.complete(result));
+	}
+
+	/**
+	 * Writes the query result in BioPAX format. Closes the stream at the end.
+	 * @param result result of the query
+	 * @param model the queried model
+	 * @param out stream to write
+	 * @return number of the written elements
+	 */
+	public int writeOWL(Collection<BioPAXElement> result, Model model, OutputStream out)
+	{
+		Set<BioPAXElement> elements = getCompleted(result, SimpleEditorMap.get(model.getLevel()));
+		io.convertToOWL(model, out, elements);
+		return elements.size();
+	}
+}
@@ -0,0 +1,67 @@
+package org.biopax.paxtools.query.algorithm;
+
+import org.biopax.paxtools.query.model.Edge;
+import org.biopax.paxtools.query.model.Node;
+
+/**
+ * Edge weight that measures path length like the BFS based queries do, where only the breadth
+ * nodes add to the length, and optionally penalizes the edges into negative nodes (inhibitory
+ * Controls) and the edges out of ubiquitous molecules.
+ */
+public class DefaultEdgeWeight implements EdgeWeight
+{
+	/**
+	 * Extra cost of traversing a negative edge or an edge into a negative node.
+	 */
+	private double negativePenalty;
+
+	/**
+	 * Extra cost of going further from a ubiquitous node.
+	 */
+	private double ubiquePenalty;
+
+	/**
+	 * Constructor with the penalties.
+	 * @param negativePenalty extra cost for negative edges and edges into negative nodes
+	 * @param ubiquePenalty extra cost for edges that leave a ubiquitous node. Use
+	 * Double.POSITIVE_INFINITY to not traverse ubiquitous nodes, like BFS.
+	 */
+	public DefaultEdgeWeight(double negativePenalty, double ubiquePenalty)
+	{
+		this.negativePenalty = negativePenalty;
+		this.ubiquePenalty = ubiquePenalty;
+	}
+
+	/**
+	 * Constructor for plain path lengths, that does not traverse ubiquitous nodes.
+	 */
+	public DefaultEdgeWeight()
+	{
+		this(0, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Edges to breadth nodes cost 1, others 0, plus the penalties.
+	 * @param edge Edge to traverse
+	 * @return Cost of the edge
+	 */
+	@Override
+	public double getWeight(Edge edge)
+	{
+		Node target = edge.getTargetNode();
+
+		double weight = target.isBreadthNode() ? 1 : 0;
+
+		if (edge.getSign() == Node.NEGATIVE || target.getSign() == Node.NEGATIVE)
+		{
+			weight += negativePenalty;
+		}
+
+		if (edge.getSourceNode().isUbique())
+		{
+			weight += ubiquePenalty;
+		}
+
+		return weight;
+	}
+}
@@ -0,0 +1,18 @@
+package org.biopax.paxtools.query.algorithm;
+
+import org.biopax.paxtools.query.model.Edge;
+
+/**
+ * Assigns a cost to traversing an edge, for the algorithms that search for the cheapest paths
+ * instead of the shortest ones.
+ */
+public interface EdgeWeight
+{
+	/**
+	 * Gets the cost of traversing the edge downstream. Weights should not be negative. An infinite
+	 * weight means the edge should not be traversed.
+	 * @param edge Edge to traverse
+	 * @return Cost of the edge
+	 */
+	double getWeight(Edge edge);
+}
@@ -0,0 +1,482 @@
+package org.biopax.paxtools.query.algorithm;
+
+import org.biopax.paxtools.query.model.Edge;
+import org.biopax.paxtools.query.model.GraphObject;
+import org.biopax.paxtools.query.model.Node;
+
+import java.util.*;
+
+/**
+ * Finds the k cheapest loopless paths from a source set to a target set, where the cost of a path
+ * is the sum of its edge weights. Uses Yen's algorithm: after the cheapest path is found with
+ * Dijkstra's algorithm, each next path is searched as a deviation from the previously found path.
+ *
+ * Like the other queries, the search can also step from a node to its equivalents (generic parents
+ * and members) without a cost, but cannot make two such steps in a row. Such steps appear in the
+ * result paths with a null edge.
+ *
+ * The search terminates early when the next path would exceed the cost limit, and keeps at most as
+ * many candidate paths as still needed, so memory use is bounded by k.
+ */
+public class KShortestPathsQuery
+{
+	/**
+	 * The set of nodes from which the paths should start.
+	 */
+	private Set<Node> sourceSet;
+
+	/**
+	 * The set of nodes at which the paths should end.
+	 */
+	private Set<Node> targetSet;
+
+	/**
+	 * Number of paths to find.
+	 */
+	private int k;
+
+	/**
+	 * Cost of the edges.
+	 */
+	private EdgeWeight weight;
+
+	/**
+	 * Paths that cost more than this are not searched.
+	 */
+	private double maxCost;
+
+	/**
+	 * Counter for ordering the paths and labels with equal costs.
+	 */
+	private long sequence;
+
+	/**
+	 * Constructor with parameters.
+	 * @param sourceSet source set
+	 * @param targetSet target set
+	 * @param k number of paths to find
+	 * @param weight cost of edges
+	 * @param maxCost paths that cost more than this are not searched, use
+	 * Double.POSITIVE_INFINITY for no limit
+	 */
+	public KShortestPathsQuery(Set<Node> sourceSet, Set<Node> targetSet, int k, EdgeWeight weight,
+		double maxCost)
+	{
+		assert weight != null : "weight should be specified";
+
+		this.sourceSet = sourceSet;
+		this.targetSet = targetSet;
+		this.k = k;
+		this.weight = weight;
+		this.maxCost = maxCost;
+	}
+
+	/**
+	 * Constructor for paths with no cost limit.
+	 * @param sourceSet source set
+	 * @param targetSet target set
+	 * @param k number of paths to find
+	 * @param weight cost of edges
+	 */
+	public KShortestPathsQuery(Set<Node> sourceSet, Set<Node> targetSet, int k, EdgeWeight weight)
+	{
+		this(sourceSet, targetSet, k, weight, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Executes the algorithm.
+	 * @return the found paths, cheapest first
+	 */
+	public List<Path> run()
+	{
+		List<Path> accepted = new ArrayList<Path>();
+
+		if (k < 1 || sourceSet.isEmpty() || targetSet.isEmpty()) return accepted;
+
+		Set<Node> none = Collections.emptySet();
+
+		Path first = findCheapest(sourceSet, false, false, none, none, maxCost);
+		if (first == null) return accepted;
+		accepted.add(first);
+
+		// Candidates are ordered by cost
+		TreeSet<Path> candidates = new TreeSet<Path>();
+		Set<List<Node>> seen = new HashSet<List<Node>>();
+		seen.add(first.nodes);
+
+		while (accepted.size() < k)
+		{
+			Path last = accepted.get(accepted.size() - 1);
+
+			// Deviate from each node of the last path. Index -1 stands for deviating at the start,
+			// i.e. starting from another source.
+
+			for (int i = -1; i < last.nodes.size() - 1; i++)
+			{
+				Path spur;
+
+				if (i < 0)
+				{
+					Set<Node> starts = new HashSet<Node>(sourceSet);
+					for (Path p : accepted)
+					{
+						starts.remove(p.nodes.get(0));
+					}
+					spur = findCheapest(starts, false, false, none, none, maxCost);
+				}
+				else
+				{
+					Node spurNode = last.nodes.get(i);
+
+					// The steps that accepted paths with the same root already took are blocked,
+					// and the spur path cannot go back to the root
+
+					Set<Node> blocked = new HashSet<Node>();
+					for (Path p : accepted)
+					{
+						if (p.hasSameRoot(last, i)) blocked.add(p.nodes.get(i + 1));
+					}
+
+					Set<Node> banned = new HashSet<Node>(last.nodes.subList(0, i));
+					boolean jumped = i > 0 && last.edges.get(i - 1) == null;
+
+					spur = findCheapest(Collections.singleton(spurNode), jumped, last.hasEdge(i),
+						banned, blocked, maxCost - last.costs[i]);
+
+					if (spur != null) spur = last.root(i).append(spur);
+				}
+
+				if (spur != null && seen.add(spur.nodes))
+				{
+					candidates.add(spur);
+				}
+			}
+
+			// Only the cheapest candidates can make it to the result
+
+			while (candidates.size() > k - accepted.size())
+			{
+				candidates.pollLast();
+			}
+
+			if (candidates.isEmpty()) break;
+
+			accepted.add(candidates.pollFirst());
+		}
+
+		return accepted;
+	}
+
+	/**
+	 * Finds the cheapest path from the given start nodes to a target, with Dijkstra's algorithm.
+	 * The path does not visit a node twice.
+	 * @param starts Start nodes
+	 * @param startJumped Whether the start node is reached with an equivalence step
+	 * @param startHasEdge Whether the path before the start nodes contains an edge
+	 * @param banned Nodes that cannot be on the path
+	 * @param blocked Nodes that cannot be the second node of the path
+	 * @param bound Cost limit for the path
+	 * @return The cheapest path, or null if no path within the limit
+	 */
+	private Path findCheapest(Set<Node> starts, boolean startJumped, boolean startHasEdge,
+		Set<Node> banned, Set<Node> blocked, double bound)
+	{
+		PriorityQueue<Label> queue = new PriorityQueue<Label>();
+
+		// Nodes are settled separately for whether they are reached with an equivalence step,
+		// since that affects where the search can continue.
+		Set<Node> settled = new HashSet<Node>();
+		Set<Node> settledJumped = new HashSet<Node>();
+
+		for (Node start : starts)
+		{
+			if (!banned.contains(start))
+			{
+				queue.add(new Label(start, null, null, 0, startJumped, startHasEdge));
+			}
+		}
+
+		while (!queue.isEmpty())
+		{
+			Label label = queue.poll();
+
+			if (!(label.jumped ? settledJumped : settled).add(label.node)) continue;
+
+			if (label.hasEdge && targetSet.contains(label.node)) return label.toPath();
+
+			for (Edge edge : label.node.getDownstream())
+			{
+				Node neigh = edge.getTargetNode();
+
+				if (!canStep(label, neigh, banned, blocked) || settled.contains(neigh)) continue;
+
+				double w = weight.getWeight(edge);
+				if (Double.isInfinite(w) || label.cost + w > bound) continue;
+
+				queue.add(new Label(neigh, label, edge, label.cost + w, false, true));
+			}
+
+			if (!label.jumped)
+			{
+				for (Node equiv : getEquivalents(label.node))
+				{
+					if (!canStep(label, equiv, banned, blocked) || settledJumped.contains(equiv))
+						continue;
+
+					queue.add(new Label(equiv, label, null, label.cost, true, label.hasEdge));
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the search can step from the label to the node. The node cannot be banned, or
+	 * already be on the path of the label.
+	 * @param label Current label
+	 * @param next Node to step
+	 * @param banned Nodes that cannot be on the path
+	 * @param blocked Nodes that cannot be the second node of the path
+	 * @return True if the step is allowed
+	 */
+	private boolean canStep(Label label, Node next, Set<Node> banned, Set<Node> blocked)
+	{
+		return !banned.contains(next) && !(label.prev == null && blocked.contains(next)) &&
+			!label.isOnPath(next);
+	}
+
+	/**
+	 * Gets the generic parents and members of the node, recursively.
+	 * @param node Node to get its equivalents
+	 * @return Equivalents of the node
+	 */
+	private Set<Node> getEquivalents(Node node)
+	{
+		Set<Node> equivs = new LinkedHashSet<Node>();
+		collectEquivalents(node, true, equivs);
+		collectEquivalents(node, false, equivs);
+		equivs.remove(node);
+		return equivs;
+	}
+
+	/**
+	 * Collects equivalents of the node towards one direction.
+	 * @param node Node to get its equivalents
+	 * @param up True for parents, false for members
+	 * @param equivs Set to collect
+	 */
+	private void collectEquivalents(Node node, boolean up, Set<Node> equivs)
+	{
+		for (Node equiv : up ? node.getUpperEquivalent() : node.getLowerEquivalent())
+		{
+			if (equivs.add(equiv)) collectEquivalents(equiv, up, equivs);
+		}
+	}
+
+	/**
+	 * A search label in Dijkstra's algorithm, holding the cheapest way found to a node.
+	 */
+	private class Label implements Comparable<Label>
+	{
+		final Node node;
+		final Label prev;
+		final Edge edge;
+		final double cost;
+		final boolean jumped;
+		final boolean hasEdge;
+		final long order;
+
+		Label(Node node, Label prev, Edge edge, double cost, boolean jumped, boolean hasEdge)
+		{
+			this.node = node;
+			this.prev = prev;
+			this.edge = edge;
+			this.cost = cost;
+			this.jumped = jumped;
+			this.hasEdge = hasEdge;
+			this.order = sequence++;
+		}
+
+		@Override
+		public int compareTo(Label o)
+		{
+			if (cost != o.cost) return cost < o.cost ? -1 : 1;
+			return order < o.order ? -1 : order > o.order ? 1 : 0;
+		}
+
+		/**
+		 * @param node Node to check
+		 * @return Whether the node is on the path that leads to this label
+		 */
+		boolean isOnPath(Node node)
+		{
+			for (Label l = this; l != null; l = l.prev)
+			{
+				if (l.node == node) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Generates the path that leads to this label.
+		 * @return The path
+		 */
+		Path toPath()
+		{
+			LinkedList<Label> labels = new LinkedList<Label>();
+			for (Label l = this; l != null; l = l.prev)
+			{
+				labels.addFirst(l);
+			}
+
+			Path path = new Path();
+			path.costs = new double[labels.size()];
+			int i = 0;
+			for (Label l : labels)
+			{
+				path.nodes.add(l.node);
+				if (l.prev != null) path.edges.add(l.edge);
+				path.costs[i++] = l.cost;
+			}
+			return path;
+		}
+	}
+
+	/**
+	 * A path found by the query.
+	 */
+	public class Path implements Comparable<Path>
+	{
+		/**
+		 * Nodes on the path, from source to target.
+		 */
+		private List<Node> nodes = new ArrayList<Node>();
+
+		/**
+		 * Edges between the consecutive nodes. Null for equivalence steps.
+		 */
+		private List<Edge> edges = new ArrayList<Edge>();
+
+		/**
+		 * Cost of the path up to each node.
+		 */
+		private double[] costs;
+
+		/**
+		 * Orders the paths with the same cost.
+		 */
+		private final long order = sequence++;
+
+		/**
+		 * @return Nodes on the path, from source to target
+		 */
+		public List<Node> getNodes()
+		{
+			return Collections.unmodifiableList(nodes);
+		}
+
+		/**
+		 * @return Edges between the consecutive nodes, null for equivalence steps
+		 */
+		public List<Edge> getEdges()
+		{
+			return Collections.unmodifiableList(edges);
+		}
+
+		/**
+		 * @return Total cost of the path
+		 */
+		public double getCost()
+		{
+			return costs[costs.length - 1];
+		}
+
+		/**
+		 * @return Nodes and edges of the path, in order
+		 */
+		public List<GraphObject> getObjects()
+		{
+			List<GraphObject> list = new ArrayList<GraphObject>();
+			for (int i = 0; i < nodes.size(); i++)
+			{
+				if (i > 0 && edges.get(i - 1) != null) list.add(edges.get(i - 1));
+				list.add(nodes.get(i));
+			}
+			return list;
+		}
+
+		/**
+		 * Checks if the other path starts with the same nodes, up to and including the given index.
+		 * @param other Other path
+		 * @param index Last index of the root
+		 * @return True if roots are the same
+		 */
+		boolean hasSameRoot(Path other, int index)
+		{
+			return nodes.size() > index + 1 &&
+				nodes.subList(0, index + 1).equals(other.nodes.subList(0, index + 1));
+		}
+
+		/**
+		 * @param index Node index
+		 * @return Whether the path contains an edge up to the given node
+		 */
+		boolean hasEdge(int index)
+		{
+			for (int i = 0; i < index; i++)
+			{
+				if (edges.get(i) != null) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Gets the beginning of this path, up to and including the given node index.
+		 * @param index Last index of the root
+		 * @return The root path
+		 */
+		Path root(int index)
+		{
+			Path root = new Path();
+			root.nodes.addAll(nodes.subList(0, index + 1));
+			root.edges.addAll(edges.subList(0, index));
+			root.costs = Arrays.copyOf(costs, index + 1);
+			return root;
+		}
+
+		/**
+		 * Creates a new path by appending a path that starts with the last node of this path.
+		 * @param spur Path to append
+		 * @return Combined path
+		 */
+		Path append(Path spur)
+		{
+			Path path = new Path();
+			path.nodes.addAll(nodes);
+			path.nodes.addAll(spur.nodes.subList(1, spur.nodes.size()));
+			path.edges.addAll(edges);
+			path.edges.addAll(spur.edges);
+			path.costs = Arrays.copyOf(costs, path.nodes.size());
+
+			double offset = costs[costs.length - 1];
+			for (int i = 1; i < spur.costs.length; i++)
+			{
+				path.costs[costs.length + i - 1] = offset + spur.costs[i];
+			}
+			return path;
+		}
+
+		@Override
+		public int compareTo(Path o)
+		{
+			if (getCost() != o.getCost()) return getCost() < o.getCost() ? -1 : 1;
+			return order < o.order ? -1 : order > o.order ? 1 : 0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return getCost() + " " + nodes;
+		}
+	}
+}
@@ -0,0 +1,366 @@
+package org.biopax.paxtools.query.algorithm;
+
+import org.biopax.paxtools.query.model.CompiledGraph;
+import org.biopax.paxtools.query.model.Edge;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Removes the edges on unwanted cycles from a result graph, like CycleBreaker, but checks the
+ * edges in parallel on a compiled graph.
+ *
+ * The edges are checked in the same order with CycleBreaker, which checks each edge on the result
+ * of the previous removals. Here a window of the remaining edges is checked in parallel on the
+ * current result, and the checks are then accepted in order, until a check that visited an end of
+ * an edge removed in the same window. That check may give a different answer now, so it is
+ * repeated with the rest of the window in the next round. Removing an edge can make the other
+ * edges on the same cycle safe, so the result is the same with running CycleBreaker on the same
+ * iteration order.
+ */
+public class ParallelCycleBreaker
+{
+	/**
+	 * The result to break cycles in.
+	 */
+	private final ResultGraph result;
+
+	/**
+	 * Search limit.
+	 */
+	private final int limit;
+
+	/**
+	 * Number of worker threads.
+	 */
+	private final int threads;
+
+	/**
+	 * Nodes visited by the checks of the current window, indexed by the edge ordinal.
+	 */
+	private int[][] visited;
+
+	/**
+	 * Constructor with the result graph and search limit. Uses all available processors.
+	 * @param result Result graph to search in
+	 * @param limit Search limit
+	 */
+	public ParallelCycleBreaker(ResultGraph result, int limit)
+	{
+		this(result, limit, ParallelFilter.defaultThreads());
+	}
+
+	/**
+	 * Constructor with the result graph, search limit and number of threads.
+	 * @param result Result graph to search in
+	 * @param limit Search limit
+	 * @param threads Number of worker threads
+	 */
+	public ParallelCycleBreaker(ResultGraph result, int limit, int threads)
+	{
+		this.result = result;
+		this.limit = limit;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Run the algorithm.
+	 * @return Number of removed edges
+	 */
+	public int breakCycles()
+	{
+		final CompiledGraph graph = result.getGraph();
+		final BitSet edges = result.getEdges();
+
+		int[] order = getCheckOrder();
+		visited = new int[graph.getEdgeCount()][];
+
+		ParallelFilter<Search> unsafeFilter = new ParallelFilter<Search>(threads)
+		{
+			@Override
+			Search createScratch()
+			{
+				return new Search(graph.getNodeCount());
+			}
+
+			@Override
+			boolean accept(int edge, Search search)
+			{
+				boolean safe = search.isSafe(edge);
+				visited[edge] = search.getVisited();
+				return !safe;
+			}
+		};
+
+		// A single thread does not need to check ahead
+
+		int window = threads == 1 ? 1 : Math.max(ParallelFilter.MIN_PARALLEL_SIZE, threads * 32);
+
+		BitSet unsafe = new BitSet(graph.getEdgeCount());
+		BitSet touched = new BitSet(graph.getNodeCount());
+		int removed = 0;
+		int next = 0;
+
+		try
+		{
+			while (next < order.length)
+			{
+				int to = Math.min(order.length, next + window);
+
+				unsafe.clear();
+				for (int e : unsafeFilter.run(order, next, to))
+				{
+					unsafe.set(e);
+				}
+
+				touched.clear();
+				int i = next;
+
+				while (i < to && !visitsAny(visited[order[i]], touched))
+				{
+					int e = order[i++];
+
+					if (unsafe.get(e))
+					{
+						edges.clear(e);
+						touched.set(graph.getEdgeSource(e));
+						touched.set(graph.getEdgeTarget(e));
+						removed++;
+					}
+				}
+
+				for (int j = next; j < to; j++)
+				{
+					visited[order[j]] = null;
+				}
+				next = i;
+			}
+		}
+		finally
+		{
+			visited = null;
+		}
+		return removed;
+	}
+
+	/**
+	 * Lists the edges to check in the order CycleBreaker checks them: downstream edges of the
+	 * result nodes, in the iteration order of the result set.
+	 * @return Ordinals of the edges to check
+	 */
+	private int[] getCheckOrder()
+	{
+		CompiledGraph graph = result.getGraph();
+		BitSet edges = result.getEdges();
+		BitSet nodes = result.getNodes();
+
+		int[] order = new int[graph.getEdgeCount()];
+		int size = 0;
+
+		// Result nodes are compiled first, in the iteration order of the result set
+
+		for (int n = nodes.nextSetBit(0); n >= 0; n = nodes.nextSetBit(n + 1))
+		{
+			for (Edge edge : graph.getNode(n).getDownstream())
+			{
+				int e = graph.indexOf(edge);
+				if (e >= 0 && edges.get(e)) order[size++] = e;
+			}
+		}
+		return Arrays.copyOf(order, size);
+	}
+
+	private static boolean visitsAny(int[] nodes, BitSet set)
+	{
+		if (set.isEmpty()) return false;
+
+		for (int node : nodes)
+		{
+			if (set.get(node)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Scratch data of one worker. Does the same search with CycleBreaker.isSafe on ordinals.
+	 */
+	private class Search
+	{
+		final CompiledGraph graph = result.getGraph();
+		final BitSet edges = result.getEdges();
+		final BitSet st = result.getST();
+		final BitSet equivalentOfST = result.getEquivalentOfST();
+
+		/**
+		 * Color and label of a node are valid only if its stamp is the current one.
+		 */
+		final int[] stamp;
+		final int[] color;
+		final int[] label;
+		int current;
+
+		/**
+		 * Nodes labeled by the current check.
+		 */
+		final int[] labeled;
+		int labeledCount;
+
+		/**
+		 * Circular queue that supports adding to both ends.
+		 */
+		final int[] queue;
+		int head;
+		int size;
+
+		Search(int n)
+		{
+			stamp = new int[n];
+			color = new int[n];
+			label = new int[n];
+			labeled = new int[n];
+			queue = new int[n + 1];
+		}
+
+		/**
+		 * @return Nodes labeled by the last check
+		 */
+		int[] getVisited()
+		{
+			return Arrays.copyOf(labeled, labeledCount);
+		}
+
+		int getColor(int node)
+		{
+			return stamp[node] == current ? color[node] : BFS.WHITE;
+		}
+
+		void set(int node, int c, int l)
+		{
+			if (stamp[node] != current) labeled[labeledCount++] = node;
+			stamp[node] = current;
+			color[node] = c;
+			label[node] = l;
+		}
+
+		void addFirst(int node)
+		{
+			head = (head - 1 + queue.length) % queue.length;
+			queue[head] = node;
+			size++;
+		}
+
+		void addLast(int node)
+		{
+			queue[(head + size) % queue.length] = node;
+			size++;
+		}
+
+		int removeFirst()
+		{
+			int node = queue[head];
+			head = (head + 1) % queue.length;
+			size--;
+			return node;
+		}
+
+		/**
+		 * Checks whether an edge is on an unwanted cycle.
+		 * @param edge The edge to check
+		 * @return True if no cycle is detected, false otherwise
+		 */
+		boolean isSafe(int edge)
+		{
+			current++;
+			labeledCount = 0;
+			head = 0;
+			size = 0;
+
+			int node = graph.getEdgeSource(edge);
+
+			set(node, BFS.BLACK, 0);
+			labelEquivRecursive(node, BFS.UPWARD, 0, false, false);
+			labelEquivRecursive(node, BFS.DOWNWARD, 0, false, false);
+
+			int neigh = graph.getEdgeTarget(edge);
+
+			if (getColor(neigh) != BFS.WHITE) return false;
+
+			set(neigh, BFS.GRAY, 0);
+			addLast(neigh);
+
+			labelEquivRecursive(neigh, BFS.UPWARD, 0, true, false);
+			labelEquivRecursive(neigh, BFS.DOWNWARD, 0, true, false);
+
+			while (size > 0)
+			{
+				int cur = removeFirst();
+
+				if (st.get(cur)) return true;
+
+				if (processEdges(cur, true) || processEdges(cur, false)) return true;
+
+				color[cur] = BFS.BLACK;
+			}
+			return false;
+		}
+
+		private boolean processEdges(int cur, boolean downstream)
+		{
+			int degree = downstream ? graph.getOutDegree(cur) : graph.getInDegree(cur);
+
+			for (int i = 0; i < degree; i++)
+			{
+				int e = downstream ? graph.getOutEdge(cur, i) : graph.getInEdge(cur, i);
+
+				if (!edges.get(e)) continue;
+
+				int neigh = downstream ? graph.getEdgeTarget(e) : graph.getEdgeSource(e);
+
+				if (getColor(neigh) == BFS.WHITE)
+				{
+					boolean breadth = graph.isBreadthNode(neigh);
+					int dist = breadth ? label[cur] + 1 : label[cur];
+
+					if (dist == limit || equivalentOfST.get(neigh)) return true;
+
+					set(neigh, BFS.GRAY, dist);
+
+					if (breadth) addLast(neigh);
+					else addFirst(neigh);
+
+					labelEquivRecursive(neigh, BFS.UPWARD, dist, true, !breadth);
+					labelEquivRecursive(neigh, BFS.DOWNWARD, dist, true, !breadth);
+				}
+			}
+			return false;
+		}
+
+		private void labelEquivRecursive(int node, boolean up, int dist, boolean enqueue,
+			boolean toHead)
+		{
+			int count = up ? graph.getUpperCount(node) : graph.getLowerCount(node);
+
+			for (int i = 0; i < count; i++)
+			{
+				int equiv = up ? graph.getUpper(node, i) : graph.getLower(node, i);
+
+				if (getColor(equiv) == BFS.WHITE)
+				{
+					if (enqueue)
+					{
+						set(equiv, BFS.GRAY, dist);
+
+						if (toHead) addFirst(equiv);
+						else addLast(equiv);
+					}
+					else
+					{
+						set(equiv, BFS.BLACK, dist);
+					}
+				}
+
+				labelEquivRecursive(equiv, up, dist, enqueue, toHead);
+			}
+		}
+	}
+}
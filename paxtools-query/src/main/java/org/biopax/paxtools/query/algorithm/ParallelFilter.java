@@ -0,0 +1,222 @@
+package org.biopax.paxtools.query.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a check to a batch of items in parallel and collects the items that pass. The check
+ * must only read shared state. Each worker gets its own scratch object for temporary data, which
+ * it keeps for the following runs of the filter.
+ *
+ * The runs use a shared executor with daemon threads, so filters do not need to be shut down.
+ *
+ * @param <S> Type of the scratch object
+ */
+abstract class ParallelFilter<S>
+{
+	/**
+	 * Batches smaller than this are processed in the calling thread.
+	 */
+	static final int MIN_PARALLEL_SIZE = 256;
+
+	/**
+	 * Executor shared by all filters. Created when first needed.
+	 */
+	private static ExecutorService sharedExecutor;
+
+	/**
+	 * Number of workers.
+	 */
+	private final int threads;
+
+	/**
+	 * Scratch objects of the workers, created when first needed.
+	 */
+	private final Object[] scratches;
+
+	/**
+	 * Constructor with the number of threads.
+	 * @param threads Number of workers. 1 means no parallelism.
+	 */
+	ParallelFilter(int threads)
+	{
+		this.threads = Math.max(1, threads);
+		this.scratches = new Object[this.threads];
+	}
+
+	/**
+	 * @return A new scratch object for a worker
+	 */
+	abstract S createScratch();
+
+	/**
+	 * @param item Item to check
+	 * @param scratch Scratch object of the worker
+	 * @return True if the item passes
+	 */
+	abstract boolean accept(int item, S scratch);
+
+	/**
+	 * Checks the items and returns the ones that pass, in their original order.
+	 * @param items Items to check
+	 * @return Passing items
+	 */
+	int[] run(int[] items)
+	{
+		return run(items, 0, items.length);
+	}
+
+	/**
+	 * Checks the items in the given range and returns the ones that pass, in their original order.
+	 * The calling thread is one of the workers. The others take the chunks of the range from the
+	 * shared executor.
+	 * @param items Items to check
+	 * @param from Start of the range, inclusive
+	 * @param to End of the range, exclusive
+	 * @return Passing items
+	 */
+	int[] run(final int[] items, final int from, final int to)
+	{
+		if (threads == 1 || to - from < MIN_PARALLEL_SIZE)
+		{
+			return filter(items, from, to, getScratch(0));
+		}
+
+		final int chunk = Math.max(1, (to - from) / (threads * 4));
+		final int[][] parts = new int[(to - from + chunk - 1) / chunk][];
+		final AtomicInteger nextPart = new AtomicInteger();
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		ExecutorService exec = getSharedExecutor();
+
+		for (int k = 1; k < threads; k++)
+		{
+			final int worker = k;
+
+			futures.add(exec.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					filterParts(items, from, to, chunk, parts, nextPart, getScratch(worker));
+				}
+			}));
+		}
+
+		try
+		{
+			filterParts(items, from, to, chunk, parts, nextPart, getScratch(0));
+
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while post-processing the query result", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		int[] result = new int[to - from];
+		int size = 0;
+		for (int[] part : parts)
+		{
+			System.arraycopy(part, 0, result, size, part.length);
+			size += part.length;
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Filters the parts of the range that are not taken by other workers yet.
+	 */
+	private void filterParts(int[] items, int from, int to, int chunk, int[][] parts,
+		AtomicInteger nextPart, S scratch)
+	{
+		int p;
+		while ((p = nextPart.getAndIncrement()) < parts.length)
+		{
+			int start = from + p * chunk;
+			parts[p] = filter(items, start, Math.min(to, start + chunk), scratch);
+		}
+	}
+
+	/**
+	 * Gets the scratch object of the worker. Only that worker uses it during a run.
+	 * @param worker Index of the worker
+	 * @return The scratch object
+	 */
+	@SuppressWarnings("unchecked")
+	private S getScratch(int worker)
+	{
+		if (scratches[worker] == null) scratches[worker] = createScratch();
+		return (S) scratches[worker];
+	}
+
+	private int[] filter(int[] items, int from, int to, S scratch)
+	{
+		int[] passed = new int[to - from];
+		int size = 0;
+		for (int i = from; i < to; i++)
+		{
+			if (accept(items[i], scratch)) passed[size++] = items[i];
+		}
+		return Arrays.copyOf(passed, size);
+	}
+
+	/**
+	 * Gets the executor of the parallel runs. Its daemon threads are never shut down.
+	 * @return The shared executor
+	 */
+	private static synchronized ExecutorService getSharedExecutor()
+	{
+		if (sharedExecutor == null)
+		{
+			sharedExecutor = Executors.newFixedThreadPool(defaultThreads(), new ThreadFactory()
+			{
+				final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "query-filter-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * @return Number of available processors
+	 */
+	static int defaultThreads()
+	{
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Lists the set bits of a bitset.
+	 * @param bits The bitset
+	 * @return Indexes of the set bits
+	 */
+	static int[] toArray(java.util.BitSet bits)
+	{
+		int[] array = new int[bits.cardinality()];
+		int k = 0;
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+		{
+			array[k++] = i;
+		}
+		return array;
+	}
+}
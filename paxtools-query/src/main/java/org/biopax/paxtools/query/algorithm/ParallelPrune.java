@@ -0,0 +1,166 @@
+package org.biopax.paxtools.query.algorithm;
+
+import org.biopax.paxtools.query.model.CompiledGraph;
+
+import java.util.BitSet;
+
+/**
+ * Removes the dangling nodes from a result graph, like Prune, but checks the nodes in parallel on
+ * a compiled graph. All nodes are checked first, then only the remaining neighbors of the nodes
+ * removed in the previous step, until no node is removed. The result is the same with Prune.
+ */
+public class ParallelPrune
+{
+	/**
+	 * The result to prune.
+	 */
+	private final ResultGraph result;
+
+	/**
+	 * Number of worker threads.
+	 */
+	private final int threads;
+
+	/**
+	 * Constructor with the result graph. Uses all available processors.
+	 * @param result The result graph
+	 */
+	public ParallelPrune(ResultGraph result)
+	{
+		this(result, ParallelFilter.defaultThreads());
+	}
+
+	/**
+	 * Constructor with the result graph and number of threads.
+	 * @param result The result graph
+	 * @param threads Number of worker threads
+	 */
+	public ParallelPrune(ResultGraph result, int threads)
+	{
+		this.result = result;
+		this.threads = threads;
+	}
+
+	/**
+	 * Executes the algorithm.
+	 * @return Number of removed nodes
+	 */
+	public int run()
+	{
+		final CompiledGraph graph = result.getGraph();
+		final BitSet nodes = result.getNodes();
+		final BitSet edges = result.getEdges();
+		final BitSet st = result.getST();
+
+		ParallelFilter<Object> danglingFilter = new ParallelFilter<Object>(threads)
+		{
+			@Override
+			Object createScratch()
+			{
+				return null;
+			}
+
+			@Override
+			boolean accept(int node, Object scratch)
+			{
+				return isDangling(graph, nodes, edges, st, node);
+			}
+		};
+
+		return prune(danglingFilter);
+	}
+
+	private int prune(ParallelFilter<Object> danglingFilter)
+	{
+		CompiledGraph graph = result.getGraph();
+		BitSet nodes = result.getNodes();
+		BitSet edges = result.getEdges();
+
+		int removed = 0;
+		BitSet frontier = (BitSet) nodes.clone();
+
+		while (!frontier.isEmpty())
+		{
+			int[] dangling = danglingFilter.run(ParallelFilter.toArray(frontier));
+			if (dangling.length == 0) break;
+
+			for (int node : dangling)
+			{
+				nodes.clear(node);
+
+				for (int i = 0; i < graph.getInDegree(node); i++)
+				{
+					edges.clear(graph.getInEdge(node, i));
+				}
+				for (int i = 0; i < graph.getOutDegree(node); i++)
+				{
+					edges.clear(graph.getOutEdge(node, i));
+				}
+			}
+			removed += dangling.length;
+
+			frontier = new BitSet(graph.getNodeCount());
+			for (int node : dangling)
+			{
+				for (int i = 0; i < graph.getInDegree(node); i++)
+				{
+					frontier.set(graph.getEdgeSource(graph.getInEdge(node, i)));
+				}
+				for (int i = 0; i < graph.getOutDegree(node); i++)
+				{
+					frontier.set(graph.getEdgeTarget(graph.getOutEdge(node, i)));
+				}
+				for (int i = 0; i < graph.getUpperCount(node); i++)
+				{
+					frontier.set(graph.getUpper(node, i));
+				}
+				for (int i = 0; i < graph.getLowerCount(node); i++)
+				{
+					frontier.set(graph.getLower(node, i));
+				}
+			}
+			frontier.and(nodes);
+		}
+		return removed;
+	}
+
+	/**
+	 * Checks if the node is dangling. Same rules with Prune.
+	 */
+	private static boolean isDangling(CompiledGraph graph, BitSet nodes, BitSet edges, BitSet st,
+		int node)
+	{
+		if (!nodes.get(node)) return false;
+		if (st.get(node)) return false;
+
+		boolean hasIncoming = false;
+		for (int i = 0; i < graph.getInDegree(node) && !hasIncoming; i++)
+		{
+			hasIncoming = edges.get(graph.getInEdge(node, i));
+		}
+
+		boolean hasOutgoing = false;
+		for (int i = 0; i < graph.getOutDegree(node) && !hasOutgoing; i++)
+		{
+			hasOutgoing = edges.get(graph.getOutEdge(node, i));
+		}
+
+		if (hasIncoming && hasOutgoing) return false;
+
+		boolean hasParent = false;
+		for (int i = 0; i < graph.getUpperCount(node) && !hasParent; i++)
+		{
+			hasParent = nodes.get(graph.getUpper(node, i));
+		}
+
+		if (hasParent && (hasIncoming || hasOutgoing)) return false;
+
+		boolean hasChild = false;
+		for (int i = 0; i < graph.getLowerCount(node) && !hasChild; i++)
+		{
+			hasChild = nodes.get(graph.getLower(node, i));
+		}
+
+		return !(hasChild && (hasIncoming || hasOutgoing || hasParent));
+	}
+}
@@ -78,11 +78,10 @@ public class PathsBetweenQuery
 			sources.addAll(set);
 		}
 
-		CycleBreaker breaker = new CycleBreaker(result, sources, limit);
-		breaker.breakCycles();
-
-		Prune prune = new Prune(result, sources);
-		prune.run();
+		ResultGraph resultGraph = new ResultGraph(result, sources);
+		new ParallelCycleBreaker(resultGraph, limit).breakCycles();
+		new ParallelPrune(resultGraph).run();
+		resultGraph.retainIn(result);
 
 		return result;
 	}
@@ -179,11 +179,10 @@ public class PathsFromToQuery
 		Set<Node> ST = new HashSet<Node>(sourceSet);
 		ST.addAll(targetSet);
 
-		CycleBreaker breaker = new CycleBreaker(result, ST, limit);
-		breaker.breakCycles();
-
-		Prune prune = new Prune(result, ST);
-		prune.run();
+		ResultGraph resultGraph = new ResultGraph(result, ST);
+		new ParallelCycleBreaker(resultGraph, limit).breakCycles();
+		new ParallelPrune(resultGraph).run();
+		resultGraph.retainIn(result);
 
 		return result;
 	}
@@ -0,0 +1,622 @@
+package org.biopax.paxtools.query.algorithm;
+
+import org.biopax.paxtools.query.model.CompiledGraph;
+import org.biopax.paxtools.query.model.Node;
+
+import java.util.*;
+
+/**
+ * Precomputed index for answering whether a node can reach another downstream, and with which
+ * path signs, without running a paths query.
+ *
+ * The index works on a state graph where each node of the compiled graph appears with each path
+ * sign (positive, negative, neutral) and with the way it was entered (through an edge, or while
+ * climbing up or down the equivalence hierarchy, like BFS does). Strongly connected components of
+ * the state graph are condensed into a DAG, and each component gets a few interval labels from
+ * randomized depth-first traversals. A state can only reach another if all labels of the target
+ * are contained in the labels of the source, so most negative queries are answered from the labels
+ * alone, and positive ones by a search that the labels prune.
+ *
+ * Queries with a distance limit run a bounded search on the state graph, pruned by the labels.
+ * Distance is measured like in BFS, in number of breadth nodes. Ubiquitous nodes are not traversed.
+ *
+ * The index is a snapshot of the compiled graph. When the model changes, build a new index on a
+ * newly compiled graph; building is linear in the size of the graph.
+ */
+public class ReachabilityIndex
+{
+	/**
+	 * The indexed graph.
+	 */
+	private final CompiledGraph graph;
+
+	/**
+	 * Number of states per node: 3 signs times 3 entering modes.
+	 */
+	private static final int STATES = 9;
+
+	/**
+	 * Entering modes.
+	 */
+	private static final int BY_EDGE = 0;
+	private static final int GOING_UP = 1;
+	private static final int GOING_DOWN = 2;
+
+	/**
+	 * Signs in the order of sign indexes.
+	 */
+	private static final int[] SIGNS = {Node.POSITIVE, Node.NEGATIVE, Node.NEUTRAL};
+
+	/**
+	 * Component of each state.
+	 */
+	private int[] comp;
+
+	/**
+	 * Children of each component in the condensed DAG.
+	 */
+	private int[] childStart;
+	private int[] children;
+
+	/**
+	 * Interval labels of components, one pair of arrays per label.
+	 */
+	private int[][] low;
+	private int[][] post;
+
+	/**
+	 * Constructor with the graph to index. Uses 3 labels.
+	 * @param graph The compiled graph
+	 */
+	public ReachabilityIndex(CompiledGraph graph)
+	{
+		this(graph, 3, 0);
+	}
+
+	/**
+	 * Constructor with the graph to index and label parameters.
+	 * @param graph The compiled graph
+	 * @param labelCount Number of interval labels. More labels use more memory but prune better.
+	 * @param seed Seed for randomizing the label traversals
+	 */
+	public ReachabilityIndex(CompiledGraph graph, int labelCount, long seed)
+	{
+		this.graph = graph;
+		findComponents();
+		buildDAG();
+		buildLabels(Math.max(1, labelCount), new Random(seed));
+	}
+
+	/**
+	 * @return The indexed graph
+	 */
+	public CompiledGraph getGraph()
+	{
+		return graph;
+	}
+
+	//--- Queries ---------------------------------------------------------------------------------|
+
+	/**
+	 * Checks if the source can reach the target downstream with any sign.
+	 * @param source Source node
+	 * @param target Target node
+	 * @return True if there is a path
+	 */
+	public boolean isReachable(Node source, Node target)
+	{
+		return !getPathSigns(source, target).isEmpty();
+	}
+
+	/**
+	 * Gets the signs of the paths from the source to the target.
+	 * @param source Source node
+	 * @param target Target node
+	 * @return Signs of the paths, as Node.POSITIVE, Node.NEGATIVE and Node.NEUTRAL
+	 */
+	public Set<Integer> getPathSigns(Node source, Node target)
+	{
+		return getPathSigns(Collections.singleton(source), Collections.singleton(target), -1);
+	}
+
+	/**
+	 * Checks if the source can affect the target with the given sign, within the distance limit.
+	 * @param source Source node
+	 * @param target Target node
+	 * @param sign Node.POSITIVE, Node.NEGATIVE or Node.NEUTRAL
+	 * @param limit Distance limit, negative for no limit
+	 * @return True if there is a path with the sign
+	 */
+	public boolean canAffect(Node source, Node target, int sign, int limit)
+	{
+		return getPathSigns(Collections.singleton(source), Collections.singleton(target), limit)
+			.contains(sign);
+	}
+
+	/**
+	 * Gets the signs of the paths from any source to any target, within the distance limit.
+	 * @param sources Source nodes
+	 * @param targets Target nodes
+	 * @param limit Distance limit, negative for no limit
+	 * @return Signs of the paths, as Node.POSITIVE, Node.NEGATIVE and Node.NEUTRAL
+	 */
+	public Set<Integer> getPathSigns(Set<Node> sources, Set<Node> targets, int limit)
+	{
+		Set<Integer> signs = new HashSet<Integer>();
+
+		List<Integer> sourceStates = new ArrayList<Integer>();
+		for (Node node : sources)
+		{
+			int n = graph.indexOf(node);
+			if (n >= 0) sourceStates.add(state(n, 0, BY_EDGE));
+		}
+
+		// Target components for each sign
+
+		List<Set<Integer>> targetComps = new ArrayList<Set<Integer>>();
+		for (int s = 0; s < SIGNS.length; s++)
+		{
+			targetComps.add(new HashSet<Integer>());
+		}
+		for (Node node : targets)
+		{
+			int n = graph.indexOf(node);
+			if (n < 0) continue;
+
+			for (int s = 0; s < SIGNS.length; s++)
+			{
+				for (int mode = 0; mode < 3; mode++)
+				{
+					targetComps.get(s).add(comp[state(n, s, mode)]);
+				}
+			}
+		}
+
+		if (sourceStates.isEmpty()) return signs;
+
+		if (limit < 0)
+		{
+			for (int s = 0; s < SIGNS.length; s++)
+			{
+				if (reachesAny(sourceStates, targetComps.get(s))) signs.add(SIGNS[s]);
+			}
+		}
+		else
+		{
+			Set<Integer> targetNodes = new HashSet<Integer>();
+			for (Node node : targets)
+			{
+				int n = graph.indexOf(node);
+				if (n >= 0) targetNodes.add(n);
+			}
+			boundedSearch(sourceStates, targetNodes, targetComps, limit, signs);
+		}
+
+		return signs;
+	}
+
+	/**
+	 * Checks if any of the source states reach any of the target components in the DAG.
+	 * @param sourceStates Source states
+	 * @param targets Target components
+	 * @return True if reachable
+	 */
+	private boolean reachesAny(List<Integer> sourceStates, Set<Integer> targets)
+	{
+		if (targets.isEmpty()) return false;
+
+		Set<Integer> visited = new HashSet<Integer>();
+		LinkedList<Integer> stack = new LinkedList<Integer>();
+
+		for (int st : sourceStates)
+		{
+			int c = comp[st];
+			if (mayReachAny(c, targets) && visited.add(c)) stack.add(c);
+		}
+
+		while (!stack.isEmpty())
+		{
+			int c = stack.removeLast();
+			if (targets.contains(c)) return true;
+
+			for (int i = childStart[c]; i < childStart[c + 1]; i++)
+			{
+				int child = children[i];
+				if (mayReachAny(child, targets) && visited.add(child)) stack.add(child);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Runs a 0-1 breadth-first search on the state graph from the sources, up to the distance
+	 * limit, and collects the signs of the target states it meets.
+	 * @param sourceStates Source states
+	 * @param targetNodes Target node ordinals
+	 * @param targetComps Target components for each sign, for pruning
+	 * @param limit Distance limit
+	 * @param signs Collected signs
+	 */
+	private void boundedSearch(List<Integer> sourceStates, Set<Integer> targetNodes,
+		List<Set<Integer>> targetComps, int limit, Set<Integer> signs)
+	{
+		Set<Integer> allTargets = new HashSet<Integer>();
+		for (Set<Integer> set : targetComps)
+		{
+			allTargets.addAll(set);
+		}
+
+		Map<Integer, Integer> dist = new HashMap<Integer, Integer>();
+		LinkedList<Integer> deque = new LinkedList<Integer>();
+
+		for (int st : sourceStates)
+		{
+			if (mayReachAny(comp[st], allTargets))
+			{
+				dist.put(st, 0);
+				deque.add(st);
+			}
+		}
+
+		int[] succ = new int[2];
+
+		while (!deque.isEmpty() && signs.size() < SIGNS.length)
+		{
+			int st = deque.removeFirst();
+			int d = dist.get(st);
+			int node = st / STATES;
+
+			if (targetNodes.contains(node)) signs.add(SIGNS[(st % STATES) / 3]);
+
+			int degree = degree(st);
+			for (int i = 0; i < degree; i++)
+			{
+				if (!successor(st, i, succ)) continue;
+
+				int next = succ[0];
+				int nd = d + succ[1];
+
+				if (nd > limit || !mayReachAny(comp[next], allTargets)) continue;
+
+				Integer old = dist.get(next);
+				if (old == null || old > nd)
+				{
+					dist.put(next, nd);
+					if (succ[1] == 0) deque.addFirst(next);
+					else deque.addLast(next);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the labels to see if the component may reach any of the targets.
+	 * @param c Component
+	 * @param targets Target components
+	 * @return False if none of the targets can be reached
+	 */
+	private boolean mayReachAny(int c, Set<Integer> targets)
+	{
+		for (int t : targets)
+		{
+			if (mayReach(c, t)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the labels to see if a component may reach another.
+	 * @param c Source component
+	 * @param t Target component
+	 * @return False if the target certainly cannot be reached
+	 */
+	private boolean mayReach(int c, int t)
+	{
+		if (c == t) return true;
+
+		for (int i = 0; i < low.length; i++)
+		{
+			if (low[i][t] < low[i][c] || post[i][t] >= post[i][c]) return false;
+		}
+		return true;
+	}
+
+	//--- State graph -----------------------------------------------------------------------------|
+
+	/**
+	 * @param node Node ordinal
+	 * @param sign Sign index
+	 * @param mode Entering mode
+	 * @return State ordinal
+	 */
+	private static int state(int node, int sign, int mode)
+	{
+		return node * STATES + sign * 3 + mode;
+	}
+
+	/**
+	 * Gets the number of possible transitions from the state. Some of them may be invalid for the
+	 * entering mode of the state.
+	 * @param st The state
+	 * @return Number of transitions to check
+	 */
+	private int degree(int st)
+	{
+		int node = st / STATES;
+		if (graph.isUbique(node)) return 0;
+		return graph.getOutDegree(node) + graph.getUpperCount(node) + graph.getLowerCount(node);
+	}
+
+	/**
+	 * Gets the i-th transition of the state.
+	 * @param st The state
+	 * @param i Index of the transition
+	 * @param result Receives the next state and the distance increment
+	 * @return False if the transition is not valid for the state
+	 */
+	private boolean successor(int st, int i, int[] result)
+	{
+		int node = st / STATES;
+		int sign = (st % STATES) / 3;
+		int mode = st % 3;
+
+		int out = graph.getOutDegree(node);
+		if (i < out)
+		{
+			int e = graph.getOutEdge(node, i);
+			int target = graph.getEdgeTarget(e);
+			int s = SIGNS[sign] * graph.getEdgeSign(e) * graph.getSign(target);
+			result[0] = state(target, signIndex(s), BY_EDGE);
+			result[1] = graph.isBreadthNode(target) ? 1 : 0;
+			return true;
+		}
+		i -= out;
+
+		int up = graph.getUpperCount(node);
+		if (i < up)
+		{
+			if (mode == GOING_DOWN) return false;
+			result[0] = state(graph.getUpper(node, i), sign, GOING_UP);
+			result[1] = 0;
+			return true;
+		}
+		i -= up;
+
+		if (mode == GOING_UP) return false;
+		result[0] = state(graph.getLower(node, i), sign, GOING_DOWN);
+		result[1] = 0;
+		return true;
+	}
+
+	private static int signIndex(int sign)
+	{
+		return sign > 0 ? 0 : sign < 0 ? 1 : 2;
+	}
+
+	//--- Building --------------------------------------------------------------------------------|
+
+	/**
+	 * Finds strongly connected components of the state graph with an iterative Tarjan's
+	 * algorithm. Components are numbered in reverse topological order.
+	 */
+	private void findComponents()
+	{
+		int size = graph.getNodeCount() * STATES;
+		comp = new int[size];
+		Arrays.fill(comp, -1);
+
+		int[] index = new int[size];
+		Arrays.fill(index, -1);
+		int[] lowlink = new int[size];
+		int[] iter = new int[size];
+		boolean[] onStack = new boolean[size];
+		int[] stack = new int[size];
+		int[] callStack = new int[size];
+		int[] succ = new int[2];
+
+		int sp = 0;
+		int counter = 0;
+		int compCount = 0;
+
+		for (int root = 0; root < size; root++)
+		{
+			if (index[root] >= 0) continue;
+
+			int csp = 0;
+			callStack[csp++] = root;
+			index[root] = lowlink[root] = counter++;
+			stack[sp++] = root;
+			onStack[root] = true;
+
+			while (csp > 0)
+			{
+				int v = callStack[csp - 1];
+
+				if (iter[v] < degree(v))
+				{
+					int i = iter[v]++;
+					if (!successor(v, i, succ)) continue;
+					int w = succ[0];
+
+					if (index[w] < 0)
+					{
+						index[w] = lowlink[w] = counter++;
+						stack[sp++] = w;
+						onStack[w] = true;
+						callStack[csp++] = w;
+					}
+					else if (onStack[w])
+					{
+						lowlink[v] = Math.min(lowlink[v], index[w]);
+					}
+				}
+				else
+				{
+					csp--;
+
+					if (lowlink[v] == index[v])
+					{
+						int w;
+						do
+						{
+							w = stack[--sp];
+							onStack[w] = false;
+							comp[w] = compCount;
+						}
+						while (w != v);
+						compCount++;
+					}
+
+					if (csp > 0)
+					{
+						int parent = callStack[csp - 1];
+						lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+					}
+				}
+			}
+		}
+
+		childStart = new int[compCount + 1];
+	}
+
+	/**
+	 * Builds the condensed DAG of components.
+	 */
+	private void buildDAG()
+	{
+		int compCount = childStart.length - 1;
+		List<Set<Integer>> sets = new ArrayList<Set<Integer>>(compCount);
+		for (int c = 0; c < compCount; c++)
+		{
+			sets.add(null);
+		}
+
+		int[] succ = new int[2];
+		int total = 0;
+
+		for (int st = 0; st < comp.length; st++)
+		{
+			int c = comp[st];
+			int degree = degree(st);
+
+			for (int i = 0; i < degree; i++)
+			{
+				if (!successor(st, i, succ)) continue;
+				int d = comp[succ[0]];
+				if (d == c) continue;
+
+				Set<Integer> set = sets.get(c);
+				if (set == null) sets.set(c, set = new HashSet<Integer>());
+				if (set.add(d)) total++;
+			}
+		}
+
+		children = new int[total];
+		int k = 0;
+		for (int c = 0; c < compCount; c++)
+		{
+			childStart[c] = k;
+			if (sets.get(c) != null)
+			{
+				for (int d : sets.get(c))
+				{
+					children[k++] = d;
+				}
+			}
+		}
+		childStart[compCount] = k;
+	}
+
+	/**
+	 * Generates the interval labels with randomized post-order traversals of the DAG. For each
+	 * component, post is its post-order rank and low is the smallest rank among its descendants.
+	 * @param labelCount Number of labels
+	 * @param random Randomizer for the traversal order
+	 */
+	private void buildLabels(int labelCount, Random random)
+	{
+		int compCount = childStart.length - 1;
+		low = new int[labelCount][compCount];
+		post = new int[labelCount][compCount];
+
+		int[] order = new int[compCount];
+		for (int c = 0; c < compCount; c++)
+		{
+			order[c] = c;
+		}
+
+		int[] stack = new int[compCount];
+		int[] iter = new int[compCount];
+		int[] childOrder = children.clone();
+
+		for (int l = 0; l < labelCount; l++)
+		{
+			shuffle(order, 0, compCount, random);
+			for (int c = 0; c < compCount; c++)
+			{
+				shuffle(childOrder, childStart[c], childStart[c + 1], random);
+			}
+
+			int[] lowL = low[l];
+			int[] postL = post[l];
+			Arrays.fill(postL, -1);
+			Arrays.fill(iter, 0);
+			int rank = 0;
+
+			for (int root : order)
+			{
+				if (postL[root] >= 0 || iter[root] > 0) continue;
+
+				int sp = 0;
+				stack[sp++] = root;
+				iter[root] = 0;
+				lowL[root] = Integer.MAX_VALUE;
+
+				while (sp > 0)
+				{
+					int c = stack[sp - 1];
+					int pos = childStart[c] + iter[c];
+
+					if (pos < childStart[c + 1])
+					{
+						iter[c]++;
+						int child = childOrder[pos];
+
+						if (postL[child] < 0)
+						{
+							lowL[child] = Integer.MAX_VALUE;
+							stack[sp++] = child;
+						}
+						else
+						{
+							lowL[c] = Math.min(lowL[c], lowL[child]);
+						}
+					}
+					else
+					{
+						sp--;
+						postL[c] = rank++;
+						lowL[c] = Math.min(lowL[c], postL[c]);
+
+						if (sp > 0)
+						{
+							int parent = stack[sp - 1];
+							lowL[parent] = Math.min(lowL[parent], lowL[c]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static void shuffle(int[] array, int from, int to, Random random)
+	{
+		for (int i = to - 1; i > from; i--)
+		{
+			int j = from + random.nextInt(i - from + 1);
+			int tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+}
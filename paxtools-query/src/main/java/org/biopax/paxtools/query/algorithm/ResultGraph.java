@@ -0,0 +1,152 @@
+package org.biopax.paxtools.query.algorithm;
+
+import org.biopax.paxtools.query.model.CompiledGraph;
+import org.biopax.paxtools.query.model.Edge;
+import org.biopax.paxtools.query.model.GraphObject;
+import org.biopax.paxtools.query.model.Node;
+
+import java.util.*;
+
+/**
+ * A query result on a compiled graph, with the result nodes and edges kept as bitsets over the
+ * ordinals of the compiled graph. ParallelCycleBreaker and ParallelPrune work on this
+ * representation.
+ */
+public class ResultGraph
+{
+	/**
+	 * Compiled graph of the result nodes and edges, together with the equivalents of the nodes.
+	 */
+	private final CompiledGraph graph;
+
+	/**
+	 * Nodes in the result.
+	 */
+	private final BitSet nodes;
+
+	/**
+	 * Edges in the result.
+	 */
+	private final BitSet edges;
+
+	/**
+	 * Source and target nodes.
+	 */
+	private final BitSet st;
+
+	/**
+	 * Nodes that are, or have an equivalent, in the source and target nodes.
+	 */
+	private final BitSet equivalentOfST;
+
+	/**
+	 * Compiles the result set.
+	 * @param result Result of a query
+	 * @param ST Source and target nodes
+	 */
+	public ResultGraph(Set<GraphObject> result, Set<Node> ST)
+	{
+		List<Node> nodeList = new ArrayList<Node>();
+		List<Edge> edgeList = new ArrayList<Edge>();
+
+		for (GraphObject go : result)
+		{
+			if (go instanceof Node) nodeList.add((Node) go);
+			else if (go instanceof Edge) edgeList.add((Edge) go);
+		}
+
+		graph = new CompiledGraph(nodeList, edgeList);
+
+		nodes = new BitSet(graph.getNodeCount());
+		for (Node node : nodeList)
+		{
+			nodes.set(graph.indexOf(node));
+		}
+
+		edges = new BitSet(graph.getEdgeCount());
+		edges.set(0, graph.getEdgeCount());
+
+		st = new BitSet(graph.getNodeCount());
+		for (Node node : ST)
+		{
+			int i = graph.indexOf(node);
+			if (i >= 0) st.set(i);
+		}
+
+		equivalentOfST = new BitSet(graph.getNodeCount());
+		for (int i = 0; i < graph.getNodeCount(); i++)
+		{
+			if (st.get(i) || hasEquivalentInST(i, true) || hasEquivalentInST(i, false))
+			{
+				equivalentOfST.set(i);
+			}
+		}
+	}
+
+	private boolean hasEquivalentInST(int node, boolean up)
+	{
+		int count = up ? graph.getUpperCount(node) : graph.getLowerCount(node);
+		for (int i = 0; i < count; i++)
+		{
+			int eq = up ? graph.getUpper(node, i) : graph.getLower(node, i);
+			if (st.get(eq) || hasEquivalentInST(eq, up)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the nodes and edges that are no longer in this result from the given result set.
+	 * @param result Result set to update
+	 */
+	public void retainIn(Set<GraphObject> result)
+	{
+		for (int i = 0; i < graph.getNodeCount(); i++)
+		{
+			if (!nodes.get(i)) result.remove(graph.getNode(i));
+		}
+		for (int i = 0; i < graph.getEdgeCount(); i++)
+		{
+			if (!edges.get(i)) result.remove(graph.getEdge(i));
+		}
+	}
+
+	/**
+	 * @return The compiled graph
+	 */
+	public CompiledGraph getGraph()
+	{
+		return graph;
+	}
+
+	/**
+	 * @return Nodes in the result, modifiable
+	 */
+	public BitSet getNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * @return Edges in the result, modifiable
+	 */
+	public BitSet getEdges()
+	{
+		return edges;
+	}
+
+	/**
+	 * @return Source and target nodes
+	 */
+	public BitSet getST()
+	{
+		return st;
+	}
+
+	/**
+	 * @return Nodes that are, or have an equivalent, in the source and target nodes
+	 */
+	public BitSet getEquivalentOfST()
+	{
+		return equivalentOfST;
+	}
+}
@@ -0,0 +1,440 @@
+package org.biopax.paxtools.query.model;
+
+import java.util.*;
+
+/**
+ * An immutable, int-indexed snapshot of a queried graph. Nodes and edges get consecutive ordinals,
+ * and adjacency is stored in compressed arrays, so algorithms can work on primitive arrays and
+ * bitsets instead of maps of wrappers.
+ *
+ * The snapshot contains the given nodes and every node reachable from them through edges or
+ * equivalence relations. It does not follow changes in the model; compile a new one from a new
+ * graph instead.
+ */
+public class CompiledGraph
+{
+	/**
+	 * Nodes by ordinal.
+	 */
+	private final Node[] nodes;
+
+	/**
+	 * Edges by ordinal.
+	 */
+	private final Edge[] edges;
+
+	/**
+	 * Ordinals of nodes.
+	 */
+	private final Map<Node, Integer> nodeIndex;
+
+	/**
+	 * Ordinals of edges.
+	 */
+	private final Map<Edge, Integer> edgeIndex;
+
+	/**
+	 * Source node of each edge.
+	 */
+	private final int[] edgeSource;
+
+	/**
+	 * Target node of each edge.
+	 */
+	private final int[] edgeTarget;
+
+	/**
+	 * Outgoing edges, grouped by node. Edges of node n are between outStart[n] and outStart[n+1].
+	 */
+	private final int[] outStart;
+	private final int[] outEdges;
+
+	/**
+	 * Incoming edges, grouped by node.
+	 */
+	private final int[] inStart;
+	private final int[] inEdges;
+
+	/**
+	 * Direct parent equivalents, grouped by node.
+	 */
+	private final int[] upperStart;
+	private final int[] upper;
+
+	/**
+	 * Direct child equivalents, grouped by node.
+	 */
+	private final int[] lowerStart;
+	private final int[] lower;
+
+	/**
+	 * Node properties.
+	 */
+	private final boolean[] breadth;
+	private final boolean[] ubique;
+	private final int[] nodeSign;
+
+	/**
+	 * Edge signs.
+	 */
+	private final int[] edgeSign;
+
+	/**
+	 * Compiles the graph that contains the given nodes and everything reachable from them.
+	 * @param seeds Nodes to start from
+	 */
+	public CompiledGraph(Collection<? extends Node> seeds)
+	{
+		this(seeds, null);
+	}
+
+	/**
+	 * Compiles a subgraph that contains only the given edges. Nodes are the given nodes, the ends
+	 * of the given edges, and their equivalents. This is useful for compiling query results.
+	 * @param seeds Nodes to include
+	 * @param edgeSet Edges to include. If null, all reachable edges are included.
+	 */
+	public CompiledGraph(Collection<? extends Node> seeds, Collection<? extends Edge> edgeSet)
+	{
+		// Collect nodes
+
+		nodeIndex = new HashMap<Node, Integer>();
+		List<Node> nodeList = new ArrayList<Node>();
+		LinkedList<Node> queue = new LinkedList<Node>();
+
+		edgeIndex = new HashMap<Edge, Integer>();
+		List<Edge> edgeList = new ArrayList<Edge>();
+
+		List<Node> start = new ArrayList<Node>(seeds);
+
+		if (edgeSet != null)
+		{
+			for (Edge edge : edgeSet)
+			{
+				if (!edgeIndex.containsKey(edge))
+				{
+					edgeIndex.put(edge, edgeList.size());
+					edgeList.add(edge);
+					start.add(edge.getSourceNode());
+					start.add(edge.getTargetNode());
+				}
+			}
+		}
+
+		for (Node seed : start)
+		{
+			if (seed != null && !nodeIndex.containsKey(seed))
+			{
+				nodeIndex.put(seed, nodeList.size());
+				nodeList.add(seed);
+				queue.add(seed);
+			}
+		}
+
+		while (!queue.isEmpty())
+		{
+			Node node = queue.removeFirst();
+
+			List<Node> neighbors = new ArrayList<Node>();
+
+			if (edgeSet == null)
+			{
+				for (Edge edge : node.getDownstream())
+				{
+					if (!edgeIndex.containsKey(edge))
+					{
+						edgeIndex.put(edge, edgeList.size());
+						edgeList.add(edge);
+					}
+					neighbors.add(edge.getTargetNode());
+				}
+				for (Edge edge : node.getUpstream())
+				{
+					neighbors.add(edge.getSourceNode());
+				}
+			}
+			neighbors.addAll(node.getUpperEquivalent());
+			neighbors.addAll(node.getLowerEquivalent());
+
+			for (Node neigh : neighbors)
+			{
+				if (neigh != null && !nodeIndex.containsKey(neigh))
+				{
+					nodeIndex.put(neigh, nodeList.size());
+					nodeList.add(neigh);
+					queue.add(neigh);
+				}
+			}
+		}
+
+		nodes = nodeList.toArray(new Node[nodeList.size()]);
+		edges = edgeList.toArray(new Edge[edgeList.size()]);
+
+		int n = nodes.length;
+		int m = edges.length;
+
+		// Edge endpoints and signs
+
+		edgeSource = new int[m];
+		edgeTarget = new int[m];
+		edgeSign = new int[m];
+
+		for (int e = 0; e < m; e++)
+		{
+			edgeSource[e] = nodeIndex.get(edges[e].getSourceNode());
+			edgeTarget[e] = nodeIndex.get(edges[e].getTargetNode());
+			edgeSign[e] = edges[e].getSign();
+		}
+
+		// Adjacency
+
+		outStart = new int[n + 1];
+		inStart = new int[n + 1];
+		for (int e = 0; e < m; e++)
+		{
+			outStart[edgeSource[e] + 1]++;
+			inStart[edgeTarget[e] + 1]++;
+		}
+		for (int i = 0; i < n; i++)
+		{
+			outStart[i + 1] += outStart[i];
+			inStart[i + 1] += inStart[i];
+		}
+
+		outEdges = new int[m];
+		inEdges = new int[m];
+		int[] outPos = Arrays.copyOf(outStart, n);
+		int[] inPos = Arrays.copyOf(inStart, n);
+		for (int e = 0; e < m; e++)
+		{
+			outEdges[outPos[edgeSource[e]]++] = e;
+			inEdges[inPos[edgeTarget[e]]++] = e;
+		}
+
+		// Equivalences and node properties
+
+		upperStart = new int[n + 1];
+		lowerStart = new int[n + 1];
+		List<Integer> upperList = new ArrayList<Integer>();
+		List<Integer> lowerList = new ArrayList<Integer>();
+
+		breadth = new boolean[n];
+		ubique = new boolean[n];
+		nodeSign = new int[n];
+
+		for (int i = 0; i < n; i++)
+		{
+			for (Node eq : nodes[i].getUpperEquivalent())
+			{
+				upperList.add(nodeIndex.get(eq));
+			}
+			for (Node eq : nodes[i].getLowerEquivalent())
+			{
+				lowerList.add(nodeIndex.get(eq));
+			}
+			upperStart[i + 1] = upperList.size();
+			lowerStart[i + 1] = lowerList.size();
+
+			breadth[i] = nodes[i].isBreadthNode();
+			ubique[i] = nodes[i].isUbique();
+			nodeSign[i] = nodes[i].getSign();
+		}
+
+		upper = toArray(upperList);
+		lower = toArray(lowerList);
+	}
+
+	private static int[] toArray(List<Integer> list)
+	{
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+		{
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * @return Number of nodes
+	 */
+	public int getNodeCount()
+	{
+		return nodes.length;
+	}
+
+	/**
+	 * @return Number of edges
+	 */
+	public int getEdgeCount()
+	{
+		return edges.length;
+	}
+
+	/**
+	 * @param ordinal Node ordinal
+	 * @return The node
+	 */
+	public Node getNode(int ordinal)
+	{
+		return nodes[ordinal];
+	}
+
+	/**
+	 * @param ordinal Edge ordinal
+	 * @return The edge
+	 */
+	public Edge getEdge(int ordinal)
+	{
+		return edges[ordinal];
+	}
+
+	/**
+	 * @param node The node
+	 * @return Ordinal of the node, or -1 if it is not in the graph
+	 */
+	public int indexOf(Node node)
+	{
+		Integer i = nodeIndex.get(node);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @param edge The edge
+	 * @return Ordinal of the edge, or -1 if it is not in the graph
+	 */
+	public int indexOf(Edge edge)
+	{
+		Integer i = edgeIndex.get(edge);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @param edge Edge ordinal
+	 * @return Ordinal of the source node
+	 */
+	public int getEdgeSource(int edge)
+	{
+		return edgeSource[edge];
+	}
+
+	/**
+	 * @param edge Edge ordinal
+	 * @return Ordinal of the target node
+	 */
+	public int getEdgeTarget(int edge)
+	{
+		return edgeTarget[edge];
+	}
+
+	/**
+	 * @param edge Edge ordinal
+	 * @return Sign of the edge
+	 */
+	public int getEdgeSign(int edge)
+	{
+		return edgeSign[edge];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @return Number of downstream edges
+	 */
+	public int getOutDegree(int node)
+	{
+		return outStart[node + 1] - outStart[node];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @param i Index among the downstream edges of the node
+	 * @return Edge ordinal
+	 */
+	public int getOutEdge(int node, int i)
+	{
+		return outEdges[outStart[node] + i];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @return Number of upstream edges
+	 */
+	public int getInDegree(int node)
+	{
+		return inStart[node + 1] - inStart[node];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @param i Index among the upstream edges of the node
+	 * @return Edge ordinal
+	 */
+	public int getInEdge(int node, int i)
+	{
+		return inEdges[inStart[node] + i];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @return Number of direct parent equivalents
+	 */
+	public int getUpperCount(int node)
+	{
+		return upperStart[node + 1] - upperStart[node];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @param i Index among the parent equivalents
+	 * @return Ordinal of the parent equivalent
+	 */
+	public int getUpper(int node, int i)
+	{
+		return upper[upperStart[node] + i];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @return Number of direct child equivalents
+	 */
+	public int getLowerCount(int node)
+	{
+		return lowerStart[node + 1] - lowerStart[node];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @param i Index among the child equivalents
+	 * @return Ordinal of the child equivalent
+	 */
+	public int getLower(int node, int i)
+	{
+		return lower[lowerStart[node] + i];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @return Whether the node is a breadth node
+	 */
+	public boolean isBreadthNode(int node)
+	{
+		return breadth[node];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @return Whether the node is ubiquitous
+	 */
+	public boolean isUbique(int node)
+	{
+		return ubique[node];
+	}
+
+	/**
+	 * @param node Node ordinal
+	 * @return Sign of the node
+	 */
+	public int getSign(int node)
+	{
+		return nodeSign[node];
+	}
+}
@@ -0,0 +1,578 @@
+package org.biopax.paxtools.query.wrapperL3;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+
+import java.util.*;
+
+/**
+ * Model-level index of the PhysicalEntity closures that the queries use for mapping seed elements
+ * to graph nodes. For each PhysicalEntity it stores the related entities that
+ * QueryExecuter.getRelatedPhysicalEntities would collect (parent complexes, and the complexes of
+ * generic parents and members), and the transitive generic parents and members. Closures are kept
+ * as sorted int arrays of entity ordinals, computed once and shared by all queries on the model.
+ *
+ * After the model is edited, the index can be kept consistent with the update method, which only
+ * invalidates the closures that depend on the changed entities.
+ *
+ * Register an index with forModel to make it used by the graphs that are later created for that
+ * model.
+ */
+public class EquivalenceIndex
+{
+	/**
+	 * Indexes that are registered to their models.
+	 */
+	private static final Map<Model, EquivalenceIndex> REGISTRY =
+		new WeakHashMap<Model, EquivalenceIndex>();
+
+	/**
+	 * Indexed model.
+	 */
+	private final Model model;
+
+	/**
+	 * Ordinals of the indexed physical entities.
+	 */
+	private final Map<PhysicalEntity, Integer> ordinals;
+
+	/**
+	 * Physical entities by their ordinals. Removed entities leave a null here.
+	 */
+	private final List<PhysicalEntity> entities;
+
+	/**
+	 * Related entity closures, by ordinal. Null means not computed yet.
+	 */
+	private int[][] related;
+
+	/**
+	 * Entities that were visited while computing the related closures. A closure has to be
+	 * recomputed when any of these entities change.
+	 */
+	private int[][] relatedDeps;
+
+	/**
+	 * Transitive generic parents (memberPhysicalEntityOf), by ordinal.
+	 */
+	private int[][] upper;
+
+	/**
+	 * Transitive generic members (memberPhysicalEntity), by ordinal.
+	 */
+	private int[][] lower;
+
+	/**
+	 * Stamps for marking the ordinals that are collected in the current closure computation.
+	 */
+	private int[] resultMark;
+
+	/**
+	 * Stamps for marking the ordinals that are visited in the current closure computation.
+	 */
+	private int[] depMark;
+
+	/**
+	 * Stamps for marking the entities whose generic parents are already traversed.
+	 */
+	private int[] upMark;
+
+	/**
+	 * Stamps for marking the entities whose generic members are already traversed.
+	 */
+	private int[] downMark;
+
+	/**
+	 * Current stamp. Incremented at each closure computation, so that the marks do not need to
+	 * be cleared.
+	 */
+	private int stamp;
+
+	/**
+	 * Constructor with the model. Ordinals are assigned to the physical entities in the model but
+	 * closures are not computed until they are needed, or until build is called.
+	 * @param model Level 3 model to index
+	 */
+	public EquivalenceIndex(Model model)
+	{
+		if (model.getLevel() != BioPAXLevel.L3) throw new IllegalArgumentException(
+			"Only level 3 models can be indexed.");
+
+		this.model = model;
+		this.ordinals = new HashMap<PhysicalEntity, Integer>();
+		this.entities = new ArrayList<PhysicalEntity>();
+
+		Set<PhysicalEntity> pes = model.getObjects(PhysicalEntity.class);
+		int size = Math.max(pes.size(), 16);
+		related = new int[size][];
+		relatedDeps = new int[size][];
+		upper = new int[size][];
+		lower = new int[size][];
+		resultMark = new int[size];
+		depMark = new int[size];
+		upMark = new int[size];
+		downMark = new int[size];
+
+		for (PhysicalEntity pe : pes)
+		{
+			ordinal(pe);
+		}
+	}
+
+	/**
+	 * Gets the index registered for the model, or creates and registers a new one. Graphs that are
+	 * created for the model afterwards use the registered index.
+	 * @param model Level 3 model
+	 * @return The index of the model
+	 */
+	public static synchronized EquivalenceIndex forModel(Model model)
+	{
+		EquivalenceIndex index = REGISTRY.get(model);
+		if (index == null)
+		{
+			index = new EquivalenceIndex(model);
+			REGISTRY.put(model, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the index registered for the model, without creating one.
+	 * @param model The model
+	 * @return The registered index, or null if there is none
+	 */
+	public static synchronized EquivalenceIndex lookup(Model model)
+	{
+		return REGISTRY.get(model);
+	}
+
+	/**
+	 * Unregisters the index of the model.
+	 * @param model The model
+	 */
+	public static synchronized void release(Model model)
+	{
+		REGISTRY.remove(model);
+	}
+
+	/**
+	 * @return The indexed model
+	 */
+	public Model getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * Computes all closures that are not computed yet.
+	 */
+	public synchronized void build()
+	{
+		for (int i = 0; i < entities.size(); i++)
+		{
+			if (entities.get(i) != null)
+			{
+				getRelatedOrdinals(i);
+				getEquivalentOrdinals(i, true);
+				getEquivalentOrdinals(i, false);
+			}
+		}
+	}
+
+	/**
+	 * Gets the ordinal of the physical entity. Entities that are not indexed yet get a new
+	 * ordinal.
+	 * @param pe The physical entity
+	 * @return Ordinal of the entity
+	 */
+	public synchronized int ordinal(PhysicalEntity pe)
+	{
+		Integer ord = ordinals.get(pe);
+
+		if (ord == null)
+		{
+			ord = entities.size();
+			entities.add(pe);
+			ordinals.put(pe, ord);
+			ensureCapacity(entities.size());
+		}
+		return ord;
+	}
+
+	/**
+	 * Gets the physical entity with the given ordinal.
+	 * @param ordinal Ordinal of the entity
+	 * @return The entity, or null if it was removed
+	 */
+	public synchronized PhysicalEntity getPhysicalEntity(int ordinal)
+	{
+		return entities.get(ordinal);
+	}
+
+	/**
+	 * Gets ordinals of the related physical entities, including the entity itself.
+	 * @param pe Physical entity to get the related entities
+	 * @return Sorted ordinals of related entities. Callers should not modify the array.
+	 */
+	public synchronized int[] getRelatedOrdinals(PhysicalEntity pe)
+	{
+		return getRelatedOrdinals(ordinal(pe));
+	}
+
+	/**
+	 * Gets the related PhysicalEntity objects of the given BioPAXElement. This gives the same
+	 * result with QueryExecuter.getRelatedPhysicalEntities, using the precomputed closures.
+	 * @param element Element to get related PhysicalEntity objects
+	 * @param pes Result set. If not supplied, a new set will be initialized.
+	 * @return Related PhysicalEntity objects
+	 */
+	public synchronized Set<PhysicalEntity> getRelatedPhysicalEntities(BioPAXElement element,
+		Set<PhysicalEntity> pes)
+	{
+		if (pes == null) pes = new HashSet<PhysicalEntity>();
+
+		if (element instanceof PhysicalEntity)
+		{
+			for (int ord : getRelatedOrdinals(ordinal((PhysicalEntity) element)))
+			{
+				pes.add(entities.get(ord));
+			}
+		}
+		else if (element instanceof Xref)
+		{
+			for (XReferrable xrable : ((Xref) element).getXrefOf())
+			{
+				getRelatedPhysicalEntities(xrable, pes);
+			}
+		}
+		else if (element instanceof EntityReference)
+		{
+			EntityReference er = (EntityReference) element;
+
+			for (SimplePhysicalEntity spe : er.getEntityReferenceOf())
+			{
+				getRelatedPhysicalEntities(spe, pes);
+			}
+
+			for (EntityReference parentER : er.getMemberEntityReferenceOf())
+			{
+				getRelatedPhysicalEntities(parentER, pes);
+			}
+		}
+
+		return pes;
+	}
+
+	/**
+	 * Gets the generic parents of the entity, recursively (memberPhysicalEntityOf*).
+	 * @param pe The physical entity
+	 * @return Transitive generic parents
+	 */
+	public synchronized Set<PhysicalEntity> getUpperEquivalents(PhysicalEntity pe)
+	{
+		return toSet(getEquivalentOrdinals(ordinal(pe), true));
+	}
+
+	/**
+	 * Gets the generic members of the entity, recursively (memberPhysicalEntity*).
+	 * @param pe The physical entity
+	 * @return Transitive generic members
+	 */
+	public synchronized Set<PhysicalEntity> getLowerEquivalents(PhysicalEntity pe)
+	{
+		return toSet(getEquivalentOrdinals(ordinal(pe), false));
+	}
+
+	/**
+	 * Updates the index after the given elements are added to, removed from, or modified in the
+	 * model. Physical entities that are no longer in the model are removed from the index. Only
+	 * the closures that depend on the given entities are invalidated, and they are recomputed when
+	 * next needed. For a changed link between two entities, it is enough to provide one end.
+	 * @param elements Changed elements. Elements other than physical entities are ignored since
+	 * they do not take part in the stored closures.
+	 */
+	public synchronized void update(Collection<? extends BioPAXElement> elements)
+	{
+		Set<Integer> changed = new HashSet<Integer>();
+
+		for (BioPAXElement ele : elements)
+		{
+			if (!(ele instanceof PhysicalEntity)) continue;
+
+			PhysicalEntity pe = (PhysicalEntity) ele;
+
+			if (model.contains(pe))
+			{
+				changed.add(ordinal(pe));
+
+				// The other ends of new links may have not been given, so we mark the current
+				// neighbors as changed too.
+
+				for (PhysicalEntity neigh : getNeighbors(pe))
+				{
+					Integer ord = ordinals.get(neigh);
+					if (ord != null) changed.add(ord);
+				}
+			}
+			else
+			{
+				Integer ord = ordinals.remove(pe);
+				if (ord != null)
+				{
+					changed.add(ord);
+					entities.set(ord, null);
+				}
+			}
+		}
+
+		if (changed.isEmpty()) return;
+
+		for (int i = 0; i < entities.size(); i++)
+		{
+			if (changed.contains(i) || dependsOn(relatedDeps[i], changed))
+			{
+				related[i] = null;
+				relatedDeps[i] = null;
+			}
+			if (changed.contains(i) || dependsOn(upper[i], changed)) upper[i] = null;
+			if (changed.contains(i) || dependsOn(lower[i], changed)) lower[i] = null;
+		}
+	}
+
+	/**
+	 * Gets the entities that are directly linked to the given entity by the relations that the
+	 * closures use.
+	 * @param pe The physical entity
+	 * @return Neighbor entities
+	 */
+	private Collection<PhysicalEntity> getNeighbors(PhysicalEntity pe)
+	{
+		List<PhysicalEntity> list = new ArrayList<PhysicalEntity>();
+		list.addAll(pe.getComponentOf());
+		list.addAll(pe.getMemberPhysicalEntity());
+		list.addAll(pe.getMemberPhysicalEntityOf());
+		if (pe instanceof Complex) list.addAll(((Complex) pe).getComponent());
+		return list;
+	}
+
+	/**
+	 * Checks if any of the given ordinals is in the sorted array.
+	 * @param deps Sorted dependency ordinals, may be null
+	 * @param changed Ordinals to look for
+	 * @return True if a changed ordinal is in the array
+	 */
+	private boolean dependsOn(int[] deps, Set<Integer> changed)
+	{
+		if (deps == null) return false;
+
+		for (Integer ord : changed)
+		{
+			if (Arrays.binarySearch(deps, ord) >= 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets or computes the related closure of the entity with the given ordinal.
+	 * @param ord Ordinal of the entity
+	 * @return Sorted ordinals of related entities
+	 */
+	private int[] getRelatedOrdinals(int ord)
+	{
+		if (related[ord] == null)
+		{
+			nextStamp();
+			IntList result = new IntList();
+			IntList deps = new IntList();
+			collectRelated(entities.get(ord), result, deps);
+			related[ord] = result.toSortedArray();
+			relatedDeps[ord] = deps.toSortedArray();
+		}
+		return related[ord];
+	}
+
+	/**
+	 * Gets or computes the transitive generic parents or members of the entity.
+	 * @param ord Ordinal of the entity
+	 * @param up True for parents, false for members
+	 * @return Sorted ordinals of the equivalents
+	 */
+	private int[] getEquivalentOrdinals(int ord, boolean up)
+	{
+		int[][] store = up ? upper : lower;
+
+		if (store[ord] == null)
+		{
+			nextStamp();
+			IntList result = new IntList();
+			collectEquivalents(entities.get(ord), up, result);
+			store[ord] = result.toSortedArray();
+		}
+		return store[ord];
+	}
+
+	/**
+	 * Collects the related entities of the given entity, following the logic of
+	 * QueryExecuter.getRelatedPhysicalEntities.
+	 * @param pe Entity to collect its related entities
+	 * @param result Collected ordinals
+	 * @param deps Ordinals of the visited entities
+	 */
+	private void collectRelated(PhysicalEntity pe, IntList result, IntList deps)
+	{
+		int ord = ordinal(pe);
+		markDep(ord, deps);
+
+		if (resultMark[ord] == stamp) return;
+		resultMark[ord] = stamp;
+		result.add(ord);
+
+		for (Complex cmp : pe.getComponentOf())
+		{
+			collectRelated(cmp, result, deps);
+		}
+
+		// Complexes of the generic parents and members are related as well, since the members
+		// cannot be addressed in the graph.
+		collectEquivalentsComplexes(pe, true, result, deps);
+		collectEquivalentsComplexes(pe, false, result, deps);
+	}
+
+	/**
+	 * Collects the related entities of the complexes that the equivalents of the given entity
+	 * belong to. Traverses homologies only to one direction.
+	 * @param pe The physical entity
+	 * @param outer True if towards parents, false if to the children
+	 * @param result Collected ordinals
+	 * @param deps Ordinals of the visited entities
+	 */
+	private void collectEquivalentsComplexes(PhysicalEntity pe, boolean outer, IntList result,
+		IntList deps)
+	{
+		int ord = ordinal(pe);
+		int[] mark = outer ? upMark : downMark;
+		if (mark[ord] == stamp) return;
+		mark[ord] = stamp;
+
+		for (PhysicalEntity eq : outer ?
+			pe.getMemberPhysicalEntityOf() : pe.getMemberPhysicalEntity())
+		{
+			markDep(ordinal(eq), deps);
+
+			for (Complex cmp : eq.getComponentOf())
+			{
+				collectRelated(cmp, result, deps);
+			}
+
+			collectEquivalentsComplexes(eq, outer, result, deps);
+		}
+	}
+
+	/**
+	 * Collects the generic parents or members of the entity, recursively.
+	 * @param pe The physical entity
+	 * @param up True for parents, false for members
+	 * @param result Collected ordinals
+	 */
+	private void collectEquivalents(PhysicalEntity pe, boolean up, IntList result)
+	{
+		for (PhysicalEntity eq : up ? pe.getMemberPhysicalEntityOf() : pe.getMemberPhysicalEntity())
+		{
+			int ord = ordinal(eq);
+			if (resultMark[ord] == stamp) continue;
+			resultMark[ord] = stamp;
+			result.add(ord);
+			collectEquivalents(eq, up, result);
+		}
+	}
+
+	/**
+	 * Records the ordinal as a dependency of the current closure.
+	 * @param ord Ordinal of a visited entity
+	 * @param deps Dependencies of the current closure
+	 */
+	private void markDep(int ord, IntList deps)
+	{
+		if (depMark[ord] != stamp)
+		{
+			depMark[ord] = stamp;
+			deps.add(ord);
+		}
+	}
+
+	/**
+	 * Starts a new closure computation.
+	 */
+	private void nextStamp()
+	{
+		stamp++;
+
+		// On overflow clear the marks and restart
+		if (stamp == Integer.MAX_VALUE)
+		{
+			Arrays.fill(resultMark, 0);
+			Arrays.fill(depMark, 0);
+			Arrays.fill(upMark, 0);
+			Arrays.fill(downMark, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Makes sure that the arrays can hold the given number of entities.
+	 * @param size Number of entities
+	 */
+	private void ensureCapacity(int size)
+	{
+		if (size <= related.length) return;
+
+		int newSize = Math.max(size, related.length * 2);
+		related = Arrays.copyOf(related, newSize);
+		relatedDeps = Arrays.copyOf(relatedDeps, newSize);
+		upper = Arrays.copyOf(upper, newSize);
+		lower = Arrays.copyOf(lower, newSize);
+		resultMark = Arrays.copyOf(resultMark, newSize);
+		depMark = Arrays.copyOf(depMark, newSize);
+		upMark = Arrays.copyOf(upMark, newSize);
+		downMark = Arrays.copyOf(downMark, newSize);
+	}
+
+	/**
+	 * Converts ordinals to a set of entities.
+	 * @param ords Ordinals
+	 * @return Entities
+	 */
+	private Set<PhysicalEntity> toSet(int[] ords)
+	{
+		Set<PhysicalEntity> set = new HashSet<PhysicalEntity>();
+		for (int ord : ords)
+		{
+			set.add(entities.get(ord));
+		}
+		return set;
+	}
+
+	/**
+	 * A minimal growable list of primitive ints.
+	 */
+	private static class IntList
+	{
+		int[] values = new int[8];
+		int size;
+
+		void add(int value)
+		{
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int[] toSortedArray()
+		{
+			int[] array = Arrays.copyOf(values, size);
+			Arrays.sort(array);
+			return array;
+		}
+	}
+}
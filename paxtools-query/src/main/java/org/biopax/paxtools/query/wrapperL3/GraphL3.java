@@ -5,6 +5,7 @@ import org.biopax.paxtools.model.BioPAXLevel;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.*;
 import org.biopax.paxtools.query.model.AbstractGraph;
+import org.biopax.paxtools.query.model.CompiledGraph;
 import org.biopax.paxtools.query.model.GraphObject;
 import org.biopax.paxtools.query.model.Node;
 import org.slf4j.Logger;
@@ -26,6 +27,11 @@ public class GraphL3 extends AbstractGraph
 
 	protected List<Filter> filters;
 
+	/**
+	 * Precomputed closures of physical entities. May be null.
+	 */
+	protected EquivalenceIndex equivalenceIndex;
+
 	/**
 	 * Log for logging.
 	 */
@@ -41,6 +47,7 @@ public class GraphL3 extends AbstractGraph
 	{
 		assert model.getLevel() == BioPAXLevel.L3;
 		this.model = model;
+		this.equivalenceIndex = EquivalenceIndex.lookup(model);
 
 		if (filters.length > 0)
 		{
@@ -194,6 +201,27 @@ public class GraphL3 extends AbstractGraph
 		return objects;
 	}
 
+	/**
+	 * Wraps every traversable element of the model and compiles the resulting graph into an
+	 * int-indexed snapshot.
+	 * @return The compiled graph
+	 */
+	public CompiledGraph compile()
+	{
+		List<Node> nodes = new ArrayList<Node>();
+
+		for (BioPAXElement ele : model.getObjects())
+		{
+			if (ele instanceof PhysicalEntity || ele instanceof Conversion ||
+				ele instanceof TemplateReaction || ele instanceof Control)
+			{
+				Node node = (Node) getGraphObject(ele);
+				if (node != null) nodes.add(node);
+			}
+		}
+		return new CompiledGraph(nodes);
+	}
+
 	/**
 	 * @return Wrapped model
 	 */
@@ -201,4 +229,22 @@ public class GraphL3 extends AbstractGraph
 	{
 		return model;
 	}
+
+	/**
+	 * @return Equivalence index of the model, or null if not used
+	 */
+	public EquivalenceIndex getEquivalenceIndex()
+	{
+		return equivalenceIndex;
+	}
+
+	/**
+	 * Sets the equivalence index to use while mapping elements to the graph. By default the index
+	 * that is registered to the model is used.
+	 * @param equivalenceIndex Equivalence index of the model
+	 */
+	public void setEquivalenceIndex(EquivalenceIndex equivalenceIndex)
+	{
+		this.equivalenceIndex = equivalenceIndex;
+	}
 }
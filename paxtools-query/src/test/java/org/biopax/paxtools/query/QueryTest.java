@@ -8,23 +8,52 @@ import org.biopax.paxtools.io.SimpleIOHandler;
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.BioPAXLevel;
 import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Complex;
+import org.biopax.paxtools.model.level3.Conversion;
+import org.biopax.paxtools.model.level3.EntityReference;
 import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+import org.biopax.paxtools.pattern.miner.SIFInteraction;
+import org.biopax.paxtools.pattern.miner.SIFSearcher;
+import org.biopax.paxtools.pattern.miner.SIFToText;
+import org.biopax.paxtools.query.algorithm.CycleBreaker;
+import org.biopax.paxtools.query.algorithm.DefaultEdgeWeight;
 import org.biopax.paxtools.query.algorithm.Direction;
+import org.biopax.paxtools.query.algorithm.KShortestPathsQuery;
 import org.biopax.paxtools.query.algorithm.LimitType;
+import org.biopax.paxtools.query.algorithm.ParallelCycleBreaker;
+import org.biopax.paxtools.query.algorithm.ParallelPrune;
+import org.biopax.paxtools.query.algorithm.Prune;
+import org.biopax.paxtools.query.algorithm.ReachabilityIndex;
+import org.biopax.paxtools.query.algorithm.ResultGraph;
+import org.biopax.paxtools.query.model.CompiledGraph;
+import org.biopax.paxtools.query.model.Edge;
+import org.biopax.paxtools.query.model.GraphObject;
+import org.biopax.paxtools.query.model.Node;
 import org.biopax.paxtools.query.wrapperL3.DataSourceFilter;
+import org.biopax.paxtools.query.wrapperL3.EquivalenceIndex;
 import org.biopax.paxtools.query.wrapperL3.Filter;
+import org.biopax.paxtools.query.wrapperL3.GraphL3;
 import org.biopax.paxtools.query.wrapperL3.OrganismFilter;
 import org.biopax.paxtools.query.wrapperL3.UbiqueFilter;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -228,4 +257,436 @@ public class QueryTest
 
 		assertTrue(result.isEmpty());
 	}
+
+	@Test
+	public void testEquivalenceIndex()
+	{
+		Model model = handler.convertFromOWL(this.getClass().getResourceAsStream(
+			"raf_map_kinase_cascade_reactome.owl"));
+
+		EquivalenceIndex index = new EquivalenceIndex(model);
+		index.build();
+
+		for (PhysicalEntity pe : model.getObjects(PhysicalEntity.class))
+		{
+			assertEquals(QueryExecuter.getRelatedPhysicalEntities(pe, null),
+				index.getRelatedPhysicalEntities(pe, null));
+		}
+
+		for (EntityReference er : model.getObjects(EntityReference.class))
+		{
+			assertEquals(QueryExecuter.getRelatedPhysicalEntities(er, null),
+				index.getRelatedPhysicalEntities(er, null));
+		}
+
+		// put a protein (MEK2) into a new complex and check that the index follows the change
+
+		PhysicalEntity mek2 = (PhysicalEntity) model.getByID(
+			"HTTP://WWW.REACTOME.ORG/BIOPAX/48887#PROTEIN2360_1_9606");
+		Complex cpx = model.addNew(Complex.class, "http://example.org/test#new_complex");
+		cpx.addComponent(mek2);
+
+		assertFalse(index.getRelatedPhysicalEntities(mek2, null).contains(cpx));
+		index.update(Arrays.asList(cpx));
+		assertTrue(index.getRelatedPhysicalEntities(mek2, null).contains(cpx));
+
+		for (PhysicalEntity pe : model.getObjects(PhysicalEntity.class))
+		{
+			assertEquals(QueryExecuter.getRelatedPhysicalEntities(pe, null),
+				index.getRelatedPhysicalEntities(pe, null));
+		}
+
+		// remove the complex again
+
+		cpx.removeComponent(mek2);
+		model.remove(cpx);
+		index.update(Arrays.asList(cpx));
+		assertFalse(index.getRelatedPhysicalEntities(mek2, null).contains(cpx));
+
+		// queries give the same result when the index is registered to the model
+
+		Set<BioPAXElement> source = findElements(model,
+			"HTTP://WWW.REACTOME.ORG/BIOPAX/48887#PROTEIN1630_1_9606", //phospho-Cdc2
+			"HTTP://WWW.REACTOME.ORG/BIOPAX/48887#PROTEIN2359_1_9606"); //MEK
+
+		Set<BioPAXElement> expected = QueryExecuter.runCommonStream(
+			new HashSet<BioPAXElement>(source), model, Direction.DOWNSTREAM, 3);
+
+		EquivalenceIndex.forModel(model);
+		Set<BioPAXElement> result = QueryExecuter.runCommonStream(
+			new HashSet<BioPAXElement>(source), model, Direction.DOWNSTREAM, 3);
+		EquivalenceIndex.release(model);
+
+		assertEquals(expected, result);
+	}
+
+	@Test
+	public void testKShortestPaths()
+	{
+		Model model = handler.convertFromOWL(this.getClass().getResourceAsStream(
+			"raf_map_kinase_cascade_reactome.owl"));
+
+		Set<BioPAXElement> source = findElements(model,
+			"HTTP://WWW.REACTOME.ORG/BIOPAX/48887#PROTEIN2360_1_9606"); //MEK2
+		Set<BioPAXElement> target = findElements(model,
+			"HTTP://WWW.REACTOME.ORG/BIOPAX/48887#PROTEIN1631_1_9606"); //ERK1
+
+		GraphL3 graph = new GraphL3(model);
+		Set<Node> sourceNodes = QueryExecuter.prepareSingleNodeSet(source, graph);
+		Set<Node> targetNodes = QueryExecuter.prepareSingleNodeSet(target, graph);
+
+		List<KShortestPathsQuery.Path> paths = new KShortestPathsQuery(
+			sourceNodes, targetNodes, 5, new DefaultEdgeWeight()).run();
+
+		assertFalse(paths.isEmpty());
+		assertTrue(paths.size() <= 5);
+
+		// the cheapest path is as long as the shortest path
+		assertEquals(2, paths.get(0).getCost(), 0);
+
+		double prev = 0;
+		for (KShortestPathsQuery.Path path : paths)
+		{
+			assertTrue(path.getCost() >= prev);
+			prev = path.getCost();
+			assertTrue(sourceNodes.contains(path.getNodes().get(0)));
+			assertTrue(targetNodes.contains(path.getNodes().get(path.getNodes().size() - 1)));
+			assertEquals(path.getNodes().size(), new HashSet<Node>(path.getNodes()).size());
+		}
+
+		// cost limit terminates the search
+
+		paths = new KShortestPathsQuery(
+			sourceNodes, targetNodes, 5, new DefaultEdgeWeight(), 1).run();
+		assertTrue(paths.isEmpty());
+
+		List<List<BioPAXElement>> result = QueryExecuter.runKShortestPaths(
+			source, target, model, 1, new DefaultEdgeWeight(), 2);
+		assertEquals(1, result.size());
+		assertTrue(QueryExecuter.runPathsFromTo(source, target, model, LimitType.NORMAL, 2)
+			.containsAll(result.get(0)));
+	}
+
+	@Test
+	public void testKShortestPathsAreSimple()
+	{
+		Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
+
+		org.biopax.paxtools.model.level3.Protein a = addProtein(model, "A");
+		org.biopax.paxtools.model.level3.Protein generic = addProtein(model, "G");
+		generic.addMemberPhysicalEntity(a);
+		org.biopax.paxtools.model.level3.Protein x = addProtein(model, "X");
+		org.biopax.paxtools.model.level3.Protein y = addProtein(model, "Y");
+		org.biopax.paxtools.model.level3.Protein t = addProtein(model, "T");
+
+		// the cheapest deviation from the direct path goes back to A through its generic parent
+
+		addConversion(model, a, generic);
+		addConversion(model, a, t);
+		addConversion(model, a, x);
+		addConversion(model, x, y);
+		addConversion(model, y, t);
+
+		GraphL3 graph = new GraphL3(model);
+		Set<Node> source = QueryExecuter.prepareSingleNodeSet(
+			Collections.<BioPAXElement>singleton(a), graph);
+		Set<Node> target = QueryExecuter.prepareSingleNodeSet(
+			Collections.<BioPAXElement>singleton(t), graph);
+
+		List<KShortestPathsQuery.Path> paths = new KShortestPathsQuery(
+			source, target, 3, new DefaultEdgeWeight()).run();
+
+		assertEquals(2, paths.size());
+		for (KShortestPathsQuery.Path path : paths)
+		{
+			assertEquals(path.getNodes().size(), new HashSet<Node>(path.getNodes()).size());
+		}
+		assertTrue(paths.get(1).getNodes().contains(graph.getGraphObject(y)));
+	}
+
+	private org.biopax.paxtools.model.level3.Protein addProtein(Model model, String name)
+	{
+		org.biopax.paxtools.model.level3.Protein p =
+			model.addNew(org.biopax.paxtools.model.level3.Protein.class, name);
+		p.setStandardName(name);
+		return p;
+	}
+
+	private void addConversion(Model model, PhysicalEntity left, PhysicalEntity right)
+	{
+		Conversion conv = model.addNew(org.biopax.paxtools.model.level3.BiochemicalReaction.class,
+			left.getUri() + "_to_" + right.getUri());
+		conv.addLeft(left);
+		conv.addRight(right);
+		conv.setConversionDirection(
+			org.biopax.paxtools.model.level3.ConversionDirectionType.LEFT_TO_RIGHT);
+	}
+
+	@Test
+	public void testReachabilityIndex()
+	{
+		Model model = handler.convertFromOWL(this.getClass().getResourceAsStream(
+			"raf_map_kinase_cascade_reactome.owl"));
+
+		GraphL3 graph = new GraphL3(model);
+		CompiledGraph compiled = graph.compile();
+		ReachabilityIndex index = new ReachabilityIndex(compiled);
+
+		// the index agrees with the paths query for every pair of proteins
+
+		Set<BioPAXElement> proteins = new HashSet<BioPAXElement>(
+			model.getObjects(org.biopax.paxtools.model.level3.Protein.class));
+
+		for (BioPAXElement s : proteins)
+		{
+			Set<Node> source = QueryExecuter.prepareSingleNodeSet(Collections.singleton(s), graph);
+
+			for (BioPAXElement t : proteins)
+			{
+				if (s == t) continue;
+
+				Set<Node> target = QueryExecuter.prepareSingleNodeSet(
+					Collections.singleton(t), graph);
+
+				for (int limit = 1; limit <= 2; limit++)
+				{
+					boolean found = !index.getPathSigns(source, target, limit).isEmpty();
+					boolean expected = !QueryExecuter.runPathsFromTo(Collections.singleton(s),
+						Collections.singleton(t), model, LimitType.NORMAL, limit).isEmpty();
+
+					assertEquals(expected, found);
+				}
+
+				// unbounded reachability covers the bounded one
+				if (!index.getPathSigns(source, target, 2).isEmpty())
+				{
+					assertFalse(index.getPathSigns(source, target, -1).isEmpty());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallelCycleBreakerAndPrune()
+	{
+		Model raf = handler.convertFromOWL(this.getClass().getResourceAsStream(
+			"raf_map_kinase_cascade_reactome.owl"));
+
+		for (Model model : Arrays.asList(raf, createCyclicModel(60, 4)))
+		{
+			GraphL3 graph = new GraphL3(model);
+			CompiledGraph compiled = graph.compile();
+			Set<GraphObject> all = getAllObjects(compiled);
+			Set<Node> ST = pickSourcesAndTargets(model, graph);
+
+			// parallel prune gives the same result with the sequential one
+
+			Set<GraphObject> expected = new HashSet<GraphObject>(all);
+			new Prune(expected, ST).run();
+
+			Set<GraphObject> pruned = new HashSet<GraphObject>(all);
+			ResultGraph rg = new ResultGraph(pruned, ST);
+			new ParallelPrune(rg, 4).run();
+			rg.retainIn(pruned);
+
+			assertEquals(expected, pruned);
+
+			// parallel cycle breaking removes the same edges with the sequential one
+
+			for (int limit = 1; limit <= 3; limit++)
+			{
+				Set<GraphObject> sequential = new LinkedHashSet<GraphObject>(all);
+				new CycleBreaker(sequential, ST, limit).breakCycles();
+
+				Set<GraphObject> single = new LinkedHashSet<GraphObject>(all);
+				rg = new ResultGraph(single, ST);
+				new ParallelCycleBreaker(rg, limit, 1).breakCycles();
+				rg.retainIn(single);
+
+				Set<GraphObject> multi = new LinkedHashSet<GraphObject>(all);
+				rg = new ResultGraph(multi, ST);
+				int removed = new ParallelCycleBreaker(rg, limit, 4).breakCycles();
+				rg.retainIn(multi);
+
+				assertEquals(countEdges(sequential), countEdges(multi));
+				assertEquals(sequential, multi);
+				assertEquals(single, multi);
+				assertEquals(all.size() - removed, multi.size());
+			}
+		}
+	}
+
+	@Test
+	@Ignore
+	public void testParallelCycleBreakerPerformance()
+	{
+		Model raf = handler.convertFromOWL(this.getClass().getResourceAsStream(
+			"raf_map_kinase_cascade_reactome.owl"));
+
+		for (Model model : Arrays.asList(raf, createCyclicModel(2000, 5)))
+		{
+			GraphL3 graph = new GraphL3(model);
+			Set<GraphObject> all = getAllObjects(graph.compile());
+			Set<Node> ST = pickSourcesAndTargets(model, graph);
+			int limit = 3;
+
+			Set<GraphObject> result = new HashSet<GraphObject>(all);
+			long time = System.currentTimeMillis();
+			new CycleBreaker(result, ST, limit).breakCycles();
+			new Prune(result, ST).run();
+			System.out.println("sequential: " + (System.currentTimeMillis() - time) +
+				" msecs, result size = " + result.size() + " / " + all.size());
+
+			result = new HashSet<GraphObject>(all);
+			time = System.currentTimeMillis();
+			ResultGraph rg = new ResultGraph(result, ST);
+			new ParallelCycleBreaker(rg, limit).breakCycles();
+			new ParallelPrune(rg).run();
+			rg.retainIn(result);
+			System.out.println("parallel: " + (System.currentTimeMillis() - time) +
+				" msecs, result size = " + result.size() + " / " + all.size());
+		}
+	}
+
+	private int countEdges(Set<GraphObject> result)
+	{
+		int count = 0;
+		for (GraphObject go : result)
+		{
+			if (go instanceof Edge) count++;
+		}
+		return count;
+	}
+
+	private Set<GraphObject> getAllObjects(CompiledGraph compiled)
+	{
+		Set<GraphObject> all = new HashSet<GraphObject>();
+		for (int i = 0; i < compiled.getNodeCount(); i++)
+		{
+			all.add(compiled.getNode(i));
+		}
+		for (int i = 0; i < compiled.getEdgeCount(); i++)
+		{
+			all.add(compiled.getEdge(i));
+		}
+		return all;
+	}
+
+	private Set<Node> pickSourcesAndTargets(Model model, GraphL3 graph)
+	{
+		List<PhysicalEntity> pes = new ArrayList<PhysicalEntity>(
+			model.getObjects(org.biopax.paxtools.model.level3.Protein.class));
+		Collections.sort(pes, new java.util.Comparator<PhysicalEntity>()
+		{
+			@Override
+			public int compare(PhysicalEntity o1, PhysicalEntity o2)
+			{
+				return o1.getUri().compareTo(o2.getUri());
+			}
+		});
+
+		Set<BioPAXElement> picked = new HashSet<BioPAXElement>();
+		for (int i = 0; i < pes.size(); i += 7)
+		{
+			picked.add(pes.get(i));
+		}
+		return QueryExecuter.prepareSingleNodeSet(picked, graph);
+	}
+
+	/**
+	 * Creates a model with cascades from the A proteins to the Z reaction, and feedback from Z back
+	 * to the A reactions, so that there are many cycles to break.
+	 */
+	private Model createCyclicModel(int cascades, int length)
+	{
+		Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
+
+		ModelBuilder.createStateChange("Z", model);
+		Conversion last = (Conversion) model.getByID("Z-1" + ModelBuilder.REACTION_ARROW + "Z-2");
+		org.biopax.paxtools.model.level3.Protein z2 =
+			(org.biopax.paxtools.model.level3.Protein) model.getByID("Z-2");
+
+		for (int i = 0; i < cascades; i++)
+		{
+			String a = "A" + i;
+			ModelBuilder.createStateChange(a, model);
+			ModelBuilder.createCascadeBetween(
+				(org.biopax.paxtools.model.level3.Protein) model.getByID(a + "-2"), last,
+				"B" + i + "_", length, model);
+
+			ModelBuilder.createControl(z2,
+				(Conversion) model.getByID(a + "-1" + ModelBuilder.REACTION_ARROW + a + "-2"),
+				org.biopax.paxtools.model.level3.Catalysis.class,
+				i % 3 == 0 ? org.biopax.paxtools.model.level3.ControlType.INHIBITION :
+					org.biopax.paxtools.model.level3.ControlType.ACTIVATION, model);
+		}
+		return model;
+	}
+
+	@Test
+	public void testQueryResultWriter() throws IOException
+	{
+		Model model = handler.convertFromOWL(this.getClass().getResourceAsStream(
+			"raf_map_kinase_cascade_reactome.owl"));
+
+		Set<BioPAXElement> source = findElements(model,
+			"HTTP://WWW.REACTOME.ORG/BIOPAX/48887#PROTEIN2360_1_9606"); //MEK2
+
+		Set<BioPAXElement> result = QueryExecuter.runNeighborhood(
+			source, model, 2, Direction.BOTHSTREAM);
+
+		// BioPAX output is the same with exporting the cloned sub-model
+
+		SimpleIOHandler io = new SimpleIOHandler();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		int size = new QueryResultWriter(io).writeOWL(result, model, bos);
+		Model written = io.convertFromOWL(new ByteArrayInputStream(bos.toByteArray()));
+
+		Model cloned = excise(model, result);
+		bos = new ByteArrayOutputStream();
+		io.convertToOWL(cloned, bos);
+		Model expected = io.convertFromOWL(new ByteArrayInputStream(bos.toByteArray()));
+
+		assertEquals(expected.getObjects().size(), size);
+		assertEquals(expected.getObjects().size(), written.getObjects().size());
+
+		for (BioPAXElement ele : expected.getObjects())
+		{
+			BioPAXElement other = written.getByID(ele.getUri());
+			assertTrue(other != null);
+			assertEquals(getSortedLines(io, ele), getSortedLines(io, other));
+		}
+
+		// and so is the SIF output
+
+		SIFSearcher searcher = new SIFSearcher(SIFEnum.CONTROLS_STATE_CHANGE_OF,
+			SIFEnum.IN_COMPLEX_WITH, SIFEnum.NEIGHBOR_OF);
+
+		bos = new ByteArrayOutputStream();
+		Set<BioPAXElement> completed = new QueryResultWriter(io).getCompleted(result,
+			SimpleEditorMap.L3);
+		searcher.searchSIF(completed, bos, new SIFToText()
+		{
+			@Override
+			public String convert(SIFInteraction inter)
+			{
+				return inter.toString();
+			}
+		});
+
+		ByteArrayOutputStream expectedSIF = new ByteArrayOutputStream();
+		searcher.searchSIF(cloned, expectedSIF);
+
+		assertTrue(expectedSIF.size() > 0);
+		assertEquals(expectedSIF.toString(), bos.toString());
+	}
+
+	private List<String> getSortedLines(SimpleIOHandler io, BioPAXElement ele) throws IOException
+	{
+		StringWriter writer = new StringWriter();
+		io.writeObject(writer, ele);
+		List<String> lines = new ArrayList<String>(Arrays.asList(writer.toString().split("\n")));
+		Collections.sort(lines);
+		return lines;
+	}
 }
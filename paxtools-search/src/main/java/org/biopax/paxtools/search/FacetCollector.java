@@ -0,0 +1,110 @@
+package org.biopax.paxtools.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * Counts the values of SortedSet DocValues fields
+ * (e.g., type, datasource, organism, pathway URIs) over all the hits.
+ *
+ * It is meant to be combined with a top docs collector
+ * (using {@link org.apache.lucene.search.MultiCollector}),
+ * so that the facets are computed in the same pass over the hits.
+ * Values are counted by per-segment ordinal and turned into
+ * strings once per segment.
+ */
+public class FacetCollector extends Collector {
+
+	private final String[] fields;
+	private final Map<String, Map<String, Long>> counts;
+
+	//current segment's values and counts per ordinal
+	private final SortedSetDocValues[] values;
+	private final int[][] ordCounts;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param fields names of the SortedSet DocValues fields to count
+	 */
+	public FacetCollector(String... fields) {
+		this.fields = fields;
+		this.values = new SortedSetDocValues[fields.length];
+		this.ordCounts = new int[fields.length][];
+		this.counts = new LinkedHashMap<String, Map<String, Long>>();
+		for(String field : fields)
+			counts.put(field, new HashMap<String, Long>());
+	}
+
+	@Override
+	public void setScorer(Scorer scorer) throws IOException {
+		//scores are not used
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		for(int i = 0; i < fields.length; i++) {
+			SortedSetDocValues dv = values[i];
+			if(dv == null)
+				continue;
+			dv.setDocument(doc);
+			for(long ord = dv.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = dv.nextOrd())
+				ordCounts[i][(int) ord]++;
+		}
+	}
+
+	@Override
+	public void setNextReader(AtomicReaderContext context) throws IOException {
+		flush();
+		for(int i = 0; i < fields.length; i++) {
+			values[i] = context.reader().getSortedSetDocValues(fields[i]);
+			ordCounts[i] = (values[i] == null) ? null : new int[(int) values[i].getValueCount()];
+		}
+	}
+
+	@Override
+	public boolean acceptsDocsOutOfOrder() {
+		return true;
+	}
+
+	/**
+	 * Gets the counts of the values of each field
+	 * (fields in the constructor's order, values sorted).
+	 *
+	 * @return map: field -> (value -> no. hits)
+	 */
+	public Map<String, Map<String, Long>> getCounts() {
+		flush();
+		Map<String, Map<String, Long>> result = new LinkedHashMap<String, Map<String, Long>>();
+		for(String field : fields)
+			result.put(field, new TreeMap<String, Long>(counts.get(field)));
+		return result;
+	}
+
+	// adds the current segment's counts to the totals
+	private void flush() {
+		for(int i = 0; i < fields.length; i++) {
+			if(values[i] == null)
+				continue;
+			Map<String, Long> fieldCounts = counts.get(fields[i]);
+			int[] c = ordCounts[i];
+			for(int ord = 0; ord < c.length; ord++) {
+				if(c[ord] > 0) {
+					String v = values[i].lookupOrd(ord).utf8ToString();
+					Long n = fieldCounts.get(v);
+					fieldCounts.put(v, (n == null) ? c[ord] : n + c[ord]);
+				}
+			}
+			values[i] = null;
+			ordCounts[i] = null;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package org.biopax.paxtools.search;
+
+import org.biopax.paxtools.model.BioPAXElement;
+
+/**
+ * Receives search hits one by one (see SearchEngine.export).
+ */
+public interface HitSink {
+	/**
+	 * Accepts a hit.
+	 * 
+	 * @param hit BioPAX object
+	 * @return false to stop the search
+	 */
+	boolean accept(BioPAXElement hit);
+}
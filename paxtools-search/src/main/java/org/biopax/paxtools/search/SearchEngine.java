@@ -1,17 +1,30 @@
 package org.biopax.paxtools.search;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.text.BreakIterator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
@@ -22,40 +35,59 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherLifetimeManager;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.BooleanClause.Occur;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
-import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.search.postingshighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.postingshighlight.Passage;
+import org.apache.lucene.search.postingshighlight.PassageFormatter;
+import org.apache.lucene.search.postingshighlight.PostingsHighlighter;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
 import org.biopax.paxtools.controller.DataPropertyEditor;
 import org.biopax.paxtools.controller.Fetcher;
 import org.biopax.paxtools.controller.ModelUtils;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
 import org.biopax.paxtools.controller.SimpleEditorMap;
 import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.Model;
@@ -73,15 +105,16 @@ import org.slf4j.LoggerFactory;
  *
  * @author rodche
  */
-public class SearchEngine implements Indexer, Searcher {
+public class SearchEngine implements Indexer, Searcher, Closeable {
 	private static final Logger LOG = LoggerFactory.getLogger(SearchEngine.class);
 	
 	// search fields
-	public static final String FIELD_URI = "uri";
+	public static final String FIELD_URI = "uri"; //indexed as is, to update or delete the object's document
 	public static final String FIELD_KEYWORD = "keyword"; //anything, e.g., names, terms, comments, incl. - from child elements 
 	public static final String FIELD_NAME = "name";
 	public static final String FIELD_XREFID = "xrefid"; //xref.id
 	public static final String FIELD_PATHWAY = "pathway"; //parent/owner pathways; to be inferred from the whole biopax model
+	static final String FIELD_PATHWAY_URI = "pathwayuri"; //parent pathway URIs (internal, for incremental updates)
 	public static final String FIELD_N_PARTICIPANTS = "participants"; // num. of PEs or Genes in a process or Complex
 	public static final String FIELD_N_PROCESSES = "processes"; // is same as 'size' used to be before cPath2 v7
 	public static final String FIELD_N = "n"; // also num. of processes, but indexed to use in range queries, e.g., n:>3
@@ -92,6 +125,19 @@ public class SearchEngine implements Indexer, Searcher {
 	public static final String FIELD_DATASOURCE = "datasource";
 	public static final String FIELD_TYPE = "type";
 	
+	//Fields to count values (URIs; class names for the 'type') over all hits; see SearchResult.getFacets()
+	//stored fields to load to make a search hit
+	private static final Set<String> HIT_FIELDS = new HashSet<String>(Arrays.asList(
+			FIELD_URI, FIELD_ORGANISM, FIELD_DATASOURCE, FIELD_PATHWAY, FIELD_N_PARTICIPANTS, FIELD_N_PROCESSES));
+	
+	public final static String[] FACET_FIELDS = 
+	{
+			FIELD_TYPE,
+			FIELD_DATASOURCE,
+			FIELD_ORGANISM,
+			FIELD_PATHWAY,
+	};
+	
 	//Default fields to use with the MultiFieldQueryParser;
 	//one can still search in other fields directly, e.g.,
 	//pathway:some_keywords datasource:"pid", etc.
@@ -123,10 +169,76 @@ public class SearchEngine implements Indexer, Searcher {
 	private int maxHitsPerPage;
 	private final Analyzer analyzer;
 	private final File indexFile;
+	//in-memory mode: the index and the writer that near-real-time searchers are opened from
+	private final Directory ramDirectory;
+	private IndexWriter nrtWriter;
 	private SearcherManager searcherManager;
+	//keeps the index states (searchers) that search cursors refer to
+	private SearcherLifetimeManager searcherLifetimeManager = new SearcherLifetimeManager();
+	private int indexThreads = Runtime.getRuntime().availableProcessors();
+	private int indexBatchSize = 500;
+	private int indexShards = 1;
+	private int indexQueueSize = 10000;
+	private List<StageMetrics> indexMetrics = Collections.emptyList();
+	//name/ID completion and ID lookup (not in the index)
+	private volatile Suggester suggester = new Suggester();
+	
+	private boolean highlight = true;
+	private int resultCacheSize = DEFAULT_RESULT_CACHE_SIZE;
+	//recent search results, by normalized query, filters and page
+	private final Map<String, CachedResult> resultCache = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+			return size() > resultCacheSize;
+		}
+	};
+	
+	//recently used filters, which cache doc id sets per index segment
+	private final Map<String, Filter> filterCache = new LinkedHashMap<String, Filter>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Filter> eldest) {
+			return size() > MAX_CACHED_FILTERS;
+		}
+	};
 
 	public final static int DEFAULT_MAX_HITS_PER_PAGE = 100;
 	
+	public final static int MAX_CACHED_FILTERS = 100;
+	
+	public final static int DEFAULT_RESULT_CACHE_SIZE = 100;
+	
+	public final static int CURSOR_TIMEOUT_SECONDS = 600;
+
+	//analyzed, stored, with term offsets in the postings (for the highlighter)
+	private static final FieldType KEYWORD_TYPE = new FieldType(TextField.TYPE_STORED);
+	static {
+		KEYWORD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		KEYWORD_TYPE.freeze();
+	}
+
+	private static final org.biopax.paxtools.util.Filter<DataPropertyEditor> dataPropertiesToConsider
+			= new org.biopax.paxtools.util.Filter<DataPropertyEditor>() {
+		@Override
+		public boolean filter(DataPropertyEditor editor) {
+			final String prop = editor.getProperty();
+			//to include in the index, as keywords, only the following properties
+			// (basically, to exclude float type properties, embedded xml, db names, etc.):
+			return (prop.equalsIgnoreCase("author") || prop.equalsIgnoreCase("availability")
+					|| prop.equalsIgnoreCase("chemicalFormula") || prop.equalsIgnoreCase("comment")
+					|| prop.equalsIgnoreCase("controlType") || prop.equalsIgnoreCase("conversionDirection")
+					|| prop.equalsIgnoreCase("eCNumber") || prop.equalsIgnoreCase("id")
+					|| prop.equalsIgnoreCase("name") || prop.equalsIgnoreCase("displayName")
+					|| prop.equalsIgnoreCase("standardName") || prop.equalsIgnoreCase("sequence")
+					|| prop.equalsIgnoreCase("source") || prop.equalsIgnoreCase("year")
+					|| prop.equalsIgnoreCase("term") || prop.equalsIgnoreCase("stepDirection")
+					|| prop.equalsIgnoreCase("structureData") || prop.equalsIgnoreCase("templateDirection")
+					|| prop.equalsIgnoreCase("title") || prop.equalsIgnoreCase("url")
+			);
+		}
+	};
+	
 	/**
 	 * Main Constructor.
 	 *
@@ -136,23 +248,116 @@ public class SearchEngine implements Indexer, Searcher {
 	public SearchEngine(Model model, String indexLocation) {
 		this.model = model;
 		this.indexFile = new File(indexLocation);
+		this.ramDirectory = null;
 		initSearcherManager();
+		File suggesterFile = getSuggesterFile();
+		if(suggesterFile.exists()) {
+			try {
+				this.suggester = Suggester.load(suggesterFile);
+			} catch (IOException e) {
+				LOG.warn("Could not read " + suggesterFile.getPath() + ": " + e);
+			}
+		}
+		this.maxHitsPerPage = DEFAULT_MAX_HITS_PER_PAGE;
+		this.analyzer = new StandardAnalyzer();
+	}
+
+	/**
+	 * In-memory (near-real-time) mode constructor,
+	 * for small models, sub-models, tests, etc.
+	 * 
+	 * The index is kept in memory and never written to disk.
+	 * Searchers are opened from the index writer, so the documents 
+	 * become searchable while {@link #index()} is still adding them, 
+	 * and updates are visible without re-opening the index. 
+	 * Call {@link #close()} to release the index.
+	 *
+	 * @param model BioPAX object model to be indexed or searched.
+	 */
+	public SearchEngine(Model model) {
+		this.model = model;
+		this.indexFile = null;
+		this.ramDirectory = new RAMDirectory();
 		this.maxHitsPerPage = DEFAULT_MAX_HITS_PER_PAGE;
 		this.analyzer = new StandardAnalyzer();
+		initSearcherManager();
 	}
 
 	private void initSearcherManager() {
 		try {
-			if(indexFile.exists()) 
+			if(ramDirectory != null) {
+				//(re-)open the writer (e.g., after a rollback) and get the searchers from it
+				if(searcherManager != null)
+					searcherManager.close();
+				nrtWriter = new IndexWriter(ramDirectory, new IndexWriterConfig(Version.LATEST, analyzer));
+				this.searcherManager = new SearcherManager(nrtWriter, true, new SearcherFactory());
+			} else if(indexFile.exists()) {
 				this.searcherManager = 
 					new SearcherManager(MMapDirectory.open(indexFile), new SearcherFactory());
-			else 
+			} else {
 				LOG.info(indexFile.getPath() + " does not exist.");
+				return;
+			}
+			//cached results are out of date when the index changes
+			searcherManager.addListener(new ReferenceManager.RefreshListener() {
+				public void beforeRefresh() {
+				}
+				public void afterRefresh(boolean didRefresh) {
+					if(didRefresh)
+						clearResultCache();
+				}
+			});
 		} catch (IOException e) {
 			LOG.warn("Could not create a searcher: " + e);
 		}
 	}
 
+	//beside the index directory
+	private File getSuggesterFile() {
+		return new File(indexFile.getPath() + ".suggest");
+	}
+
+	/**
+	 * Whether the index is kept in memory (see {@link #SearchEngine(Model)}).
+	 * 
+	 * @return true when in the in-memory (near-real-time) mode
+	 */
+	public boolean isInMemory() {
+		return ramDirectory != null;
+	}
+
+	/**
+	 * Closes the searchers and search cursors;
+	 * in the in-memory mode, also discards the index.
+	 * The search engine cannot be used after this.
+	 */
+	public synchronized void close() {
+		try {
+			searcherLifetimeManager.close();
+			if(searcherManager != null) {
+				searcherManager.close();
+				searcherManager = null;
+			}
+			if(nrtWriter != null) {
+				nrtWriter.rollback(); //nothing to save
+				nrtWriter = null;
+				ramDirectory.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("Failed to close the index: " + e);
+		}
+		clearResultCache();
+		synchronized (filterCache) {
+			filterCache.clear();
+		}
+	}
+
+	private void clearResultCache() {
+		synchronized (resultCache) {
+			resultCache.clear();
+		}
+	}
+
 	/**
 	 * Sets the maximum no. hits per search results page (pagination).
 	 *
@@ -170,71 +375,218 @@ public class SearchEngine implements Indexer, Searcher {
 		return maxHitsPerPage;
 	}
 
+	/**
+	 * Prefix completion of names and xref IDs, e.g., for a search box, 
+	 * without running wildcard queries on the index.
+	 * 
+	 * Completions with a higher weight come first: the no. processes in a pathway
+	 * or interaction (as the 'processes' field), or the no. interactions that a physical entity
+	 * (or the entity reference's physical entities) directly take part in.
+	 * The completions are collected by {@link #index()} and do not follow {@link #update(Collection, Collection)}.
+	 * 
+	 * @param prefix beginning of a name or ID (case-insensitive)
+	 * @param n max. number of completions
+	 * @return names or IDs
+	 */
+	public List<String> suggest(String prefix, int n) {
+		return suggester.suggest(prefix, n);
+	}
+
+	/**
+	 * Finds the objects by xref ID (exact, case-insensitive), without querying the index;
+	 * same as 'xrefid:' query (includes parent entities of the objects that have the ID), 
+	 * as of the last {@link #index()}, except for the objects no longer in the model.
+	 * 
+	 * @param id xref ID
+	 * @return URIs
+	 */
+	public Set<String> lookup(String id) {
+		Set<String> uris = new TreeSet<String>();
+		for(String uri : suggester.lookup(id))
+			if(model.containsID(uri))
+				uris.add(uri);
+		return uris;
+	}
+
 	public SearchResult search(String query, int page,
 			Class<? extends BioPAXElement> filterByType, String[] datasources,
 			String[] organisms) 
+	{
+		return search(query, page, null, filterByType, datasources, organisms);
+	}
+
+	/**
+	 * Full-text search for BioPAX elements, page by page, using cursors.
+	 * Unlike {@link #search(String, int, Class, String[], String[])} with page > 0,
+	 * this does not collect the hits of the previous pages again.
+	 * 
+	 * The same query and filters must be used with the cursor as with the search that
+	 * returned it. Cursors stay valid for {@link #CURSOR_TIMEOUT_SECONDS} after 
+	 * the index changes (if not re-indexed); then, the current index is used.
+	 * 
+	 * @param query String (keywords or Lucene query string)
+	 * @param cursor null (first page) or {@link SearchResult#getCursor()} of the previous page
+	 * @param filterByType - class filter
+	 * @param datasources  - filter by datasource
+	 * @param organisms - filter by organism
+	 * @return the next page of hits, with the cursor to the following page
+	 */
+	public SearchResult searchAfter(String query, String cursor,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms) 
+	{
+		return search(query, 0, cursor, filterByType, datasources, organisms);
+	}
+
+	private SearchResult search(String query, int page, String cursor,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms) 
+	{
+		if(resultCacheSize == 0)
+			return doSearch(query, page, cursor, filterByType, datasources, organisms);
+		
+		//normalized query, filters, page
+		final String key = StringUtils.normalizeSpace(query) + "|" + page + "|" + cursor 
+			+ "|" + filterByType + "|" + sortedValues(datasources) + "|" + sortedValues(organisms) 
+			+ "|" + maxHitsPerPage + "|" + highlight;
+		
+		CachedResult cached;
+		synchronized (resultCache) {
+			cached = resultCache.get(key);
+		}
+		if(cached == null) {
+			cached = new CachedResult(doSearch(query, page, cursor, filterByType, datasources, organisms));
+			synchronized (resultCache) {
+				resultCache.put(key, cached);
+			}
+		} else {
+			LOG.debug("search: cached result for " + key);
+		}
+		
+		return cached.get();
+	}
+	
+	private static String sortedValues(String[] values) {
+		if(values == null)
+			return "";
+		String[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return StringUtils.join(sorted, ",");
+	}
+	
+	/**
+	 * A search result and its hits' annotations, which are 
+	 * re-set when the result is reused (other searches may change them).
+	 */
+	private static final class CachedResult {
+		final SearchResult result;
+		final List<Map<String,Object>> annotations;
+		
+		CachedResult(SearchResult result) {
+			this.result = result;
+			this.annotations = new ArrayList<Map<String,Object>>();
+			for(BioPAXElement bpe : result.getHits()) {
+				Map<String,Object> hitAnnotations = new HashMap<String,Object>();
+				for(HitAnnotation a : HitAnnotation.values()) {
+					if(bpe.getAnnotations().containsKey(a.name()))
+						hitAnnotations.put(a.name(), bpe.getAnnotations().get(a.name()));
+				}
+				annotations.add(hitAnnotations);
+			}
+		}
+		
+		SearchResult get() {
+			SearchResult copy = new SearchResult();
+			copy.setHits(new ArrayList<BioPAXElement>(result.getHits()));
+			copy.setTotalHits(result.getTotalHits());
+			copy.setMaxHitsPerPage(result.getMaxHitsPerPage());
+			copy.setPage(result.getPage());
+			copy.setFacets(result.getFacets());
+			copy.setCursor(result.getCursor());
+			for(int i = 0; i < annotations.size(); i++) {
+				Map<String,Object> hitAnnotations = copy.getHits().get(i).getAnnotations();
+				for(HitAnnotation a : HitAnnotation.values())
+					hitAnnotations.remove(a.name());
+				hitAnnotations.putAll(annotations.get(i));
+			}
+			return copy;
+		}
+	}
+
+	private SearchResult doSearch(String query, int page, String cursor,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms) 
 	{
 		SearchResult response = null;
 		
-		LOG.debug("search: " + query + ", page: " + page 
+		LOG.debug("search: " + query + ", page: " + page + ", cursor: " + cursor 
 			+ ", filterBy: " + filterByType
 			+ "; extra filters: ds in (" + Arrays.toString(datasources)
 			+ "), org. in (" + Arrays.toString(organisms) + ")");
 		
+		// cursor: searcher version, page, last hit (doc, score)
+		ScoreDoc after = null;
+		long version = -1;
+		if(cursor != null) {
+			String[] parts = cursor.split("\\.");
+			try {
+				version = Long.parseLong(parts[0], 36);
+				page = Integer.parseInt(parts[1], 36);
+				after = new ScoreDoc(Integer.parseInt(parts[2], 36), 
+						Float.intBitsToFloat((int) Long.parseLong(parts[3], 16)));
+			} catch (RuntimeException e) { //NumberFormatException, ArrayIndexOutOfBoundsException
+				throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+			}
+		}
+		
 		IndexSearcher searcher = null;
+		boolean recorded = false;
 	
 		try {	
-			QueryParser queryParser = new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
-			queryParser.setAllowLeadingWildcard(true);//TODO do we really want leading wildcards (e.g. *sulin)?
-			
-			searcher = searcherManager.acquire();	
+			//use the same index state as for the previous page, if possible
+			if(after != null) {
+				searcher = searcherLifetimeManager.acquire(version);
+				recorded = (searcher != null);
+			}
+			if(searcher == null)
+				searcher = searcherManager.acquire();
 			
-			//find and transform top docs to search hits (beans), considering pagination...
+			Filter filter;
+			Query luceneQuery;
+			boolean highlight;
 			if(!query.trim().equals("*")) { //if not "*" query, which is not supported out-of-the-box, then
 				//create the lucene query
-				Query luceneQuery = queryParser.parse(query);
-//do NOT (Lucene 4.1), or scoring/highlighting won't work for wildcard queries...				
-//luceneQuery = searcher.rewrite(luceneQuery); 
-				LOG.debug("parsed lucene query is " + luceneQuery.getClass().getSimpleName());
-				
+				luceneQuery = parse(query);
 				//create filter: type AND (d OR d...) AND (o OR o...)
-				Filter filter = createFilter(filterByType, datasources, organisms);
-				
-				//get the first page of top hits
-				TopDocs topDocs = searcher.search(luceneQuery, filter, maxHitsPerPage);
-				//get the required hits page if page>0
-				if(page>0) {
-					TopScoreDocCollector collector = TopScoreDocCollector.create(maxHitsPerPage*(page+1), true);  
-					searcher.search(luceneQuery, filter, collector);
-					topDocs = collector.topDocs(page * maxHitsPerPage, maxHitsPerPage);
-				}
-				
-				//transform docs to hits, use a highlighter to get excerpts
-				response = transform(luceneQuery, searcher, true, topDocs);
-	
+				filter = createFilter(filterByType, datasources, organisms);
+				//use a highlighter to get excerpts
+				highlight = this.highlight;
 			} else { //find ALL objects of a particular BioPAX class (+ filters by organism, datasource)
-				if(filterByType==null) 
-					filterByType = Level3Element.class;
-
-				//replace q="*" with a search for the class or its sub-class name in the TYPE field
-				BooleanQuery luceneQuery = new BooleanQuery();
-				for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(filterByType)) {
-					luceneQuery.add(new TermQuery(new Term(FIELD_TYPE, subType.getSimpleName().toLowerCase())), Occur.SHOULD);
-				}
-				Filter filter = createFilter(null, datasources, organisms);
-				
-				//get the first page of top hits
-				TopDocs topDocs = searcher.search(luceneQuery, filter, maxHitsPerPage);
-				//get the required hits page if page>0
-				if(page>0) {
-					TopScoreDocCollector collector = TopScoreDocCollector.create(maxHitsPerPage*(page+1), true);  
-					searcher.search(luceneQuery, filter, collector);
-					topDocs = collector.topDocs(page * maxHitsPerPage, maxHitsPerPage);	
-				}
-				
-				//convert
-				response = transform(luceneQuery, searcher, false, topDocs);			
-			}	
+				luceneQuery = typeQuery(filterByType);
+				filter = createFilter(null, datasources, organisms);
+				highlight = false;
+			}
+			
+			//get the required hits page and count facets in one pass
+			FacetCollector facets = new FacetCollector(FACET_FIELDS);
+			TopDocs topDocs = (after != null) 
+					? searchAfter(searcher, luceneQuery, filter, after, facets) 
+					: searchPage(searcher, luceneQuery, filter, page, facets);
+			
+			//transform docs to hits
+			response = transform(luceneQuery, searcher, highlight, topDocs);
+			response.setFacets(facets.getCounts());
+			
+			//cursor to the next page, if there are more hits
+			int n = topDocs.scoreDocs.length;
+			if(n > 0 && (long) page * maxHitsPerPage + n < topDocs.totalHits) {
+				ScoreDoc last = topDocs.scoreDocs[n-1];
+				long token = searcherLifetimeManager.record(searcher);
+				searcherLifetimeManager.prune(new SearcherLifetimeManager.PruneByAge(CURSOR_TIMEOUT_SECONDS));
+				response.setCursor(Long.toString(token, 36) + "." + Integer.toString(page + 1, 36)
+					+ "." + Integer.toString(last.doc, 36) 
+					+ "." + Long.toHexString(Float.floatToIntBits(last.score) & 0xffffffffL));
+			}
 			
 		} catch (ParseException e) {
 			throw new RuntimeException("getTopDocs: failed to parse the query string.", e);
@@ -243,7 +595,10 @@ public class SearchEngine implements Indexer, Searcher {
 		} finally {
 			try {
 				if(searcher!=null) {
-					searcherManager.release(searcher);
+					if(recorded)
+						searcherLifetimeManager.release(searcher);
+					else
+						searcherManager.release(searcher);
 					searcher = null;
 				}
 			} catch (IOException e) {}	
@@ -254,6 +609,144 @@ public class SearchEngine implements Indexer, Searcher {
 		return response;
 	}
 
+	/**
+	 * Finds all the hits, in no particular order, and passes them to the sink
+	 * one by one, until it returns false. Hits are not scored, 
+	 * nor collected, nor annotated (unlike search results). 
+	 * 
+	 * @param query String (keywords or Lucene query string)
+	 * @param filterByType - class filter
+	 * @param datasources  - filter by datasource
+	 * @param organisms - filter by organism
+	 * @param sink receiver of the hits (BioPAX objects)
+	 * @return number of hits passed to the sink
+	 */
+	public long export(String query, Class<? extends BioPAXElement> filterByType, 
+			String[] datasources, String[] organisms, final HitSink sink) 
+	{
+		LOG.debug("export: " + query + ", filterBy: " + filterByType
+			+ "; extra filters: ds in (" + Arrays.toString(datasources)
+			+ "), org. in (" + Arrays.toString(organisms) + ")");
+		
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			
+			Query luceneQuery;
+			Filter filter;
+			if(!query.trim().equals("*")) {
+				luceneQuery = parse(query);
+				filter = createFilter(filterByType, datasources, organisms);
+			} else {
+				luceneQuery = typeQuery(filterByType);
+				filter = createFilter(null, datasources, organisms);
+			}
+			
+			ExportCollector collector = new ExportCollector(sink);
+			searcher.search(new ConstantScoreQuery(luceneQuery), filter, collector);
+			return collector.count;
+			
+		} catch (ParseException e) {
+			throw new RuntimeException("export: failed to parse the query string.", e);
+		} catch (IOException e) {
+			throw new RuntimeException("export: failed.", e);
+		} finally {
+			try {
+				if(searcher!=null)
+					searcherManager.release(searcher);
+			} catch (IOException e) {}	
+		}
+	}
+	
+	/**
+	 * Passes the hits to a sink, getting their URIs from the doc values,
+	 * and stops when the sink returns false.
+	 */
+	private class ExportCollector extends Collector {
+		final HitSink sink;
+		long count = 0;
+		boolean stopped = false;
+		BinaryDocValues uris;
+		
+		ExportCollector(HitSink sink) {
+			this.sink = sink;
+		}
+		
+		@Override
+		public void setScorer(Scorer scorer) {
+		}
+		
+		@Override
+		public void collect(int doc) {
+			if(stopped)
+				throw new CollectionTerminatedException(); //skips the rest of the segment
+			String uri = uris.get(doc).utf8ToString();
+			BioPAXElement bpe = model.getByID(uri);
+			if(bpe == null) {
+				LOG.warn("export: not in the model: " + uri);
+				return;
+			}
+			count++;
+			stopped = !sink.accept(bpe);
+		}
+		
+		@Override
+		public void setNextReader(AtomicReaderContext context) throws IOException {
+			uris = context.reader().getBinaryDocValues(FIELD_URI);
+			if(uris == null) //index created before URI doc values were added
+				throw new IllegalStateException("No URI doc values; run index() again.");
+		}
+		
+		@Override
+		public boolean acceptsDocsOutOfOrder() {
+			return true;
+		}
+	}
+
+	private Query parse(String query) throws ParseException {
+		QueryParser queryParser = new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
+		queryParser.setAllowLeadingWildcard(true);//TODO do we really want leading wildcards (e.g. *sulin)?
+		Query luceneQuery = queryParser.parse(query);
+//do NOT (Lucene 4.1), or scoring/highlighting won't work for wildcard queries...				
+//luceneQuery = searcher.rewrite(luceneQuery); 
+		LOG.debug("parsed lucene query is " + luceneQuery.getClass().getSimpleName());
+		return luceneQuery;
+	}
+	
+	//replaces q="*" with a search for the class or its sub-class name in the TYPE field
+	private Query typeQuery(Class<? extends BioPAXElement> filterByType) {
+		if(filterByType==null) 
+			filterByType = Level3Element.class;
+		BooleanQuery luceneQuery = new BooleanQuery();
+		for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(filterByType)) {
+			luceneQuery.add(new TermQuery(new Term(FIELD_TYPE, subType.getSimpleName().toLowerCase())), Occur.SHOULD);
+		}
+		return luceneQuery;
+	}
+	
+	/**
+	 * Collects the top hits up to the given page, and the facet counts 
+	 * over all the hits, in one pass.
+	 */
+	private TopDocs searchPage(IndexSearcher searcher, Query query, Filter filter, 
+			int page, Collector facets) throws IOException 
+	{
+		TopScoreDocCollector collector = TopScoreDocCollector.create(maxHitsPerPage*(page+1), true);
+		searcher.search(query, filter, MultiCollector.wrap(collector, facets));
+		return collector.topDocs(page * maxHitsPerPage, maxHitsPerPage);
+	}
+	
+	/**
+	 * Collects the top hits that follow the given one (one page), 
+	 * and the facet counts over all the hits, in one pass.
+	 */
+	private TopDocs searchAfter(IndexSearcher searcher, Query query, Filter filter, 
+			ScoreDoc after, Collector facets) throws IOException 
+	{
+		TopScoreDocCollector collector = TopScoreDocCollector.create(maxHitsPerPage, after, true);
+		searcher.search(query, filter, MultiCollector.wrap(collector, facets));
+		return collector.topDocs();
+	}
 	
 	/**
 	 * Returns a SearchResult
@@ -269,41 +762,28 @@ public class SearchEngine implements Indexer, Searcher {
 		response.setMaxHitsPerPage(maxHitsPerPage);
 		response.setHits(hits);
 		
-		for(ScoreDoc scoreDoc : topDocs.scoreDocs) {			
-			Document doc = searcher.doc(scoreDoc.doc);
+		// use the highlighter (get matching fragments) for all the hits at once
+		String[] excerpts = null;
+		if(highlight) {
+			int[] docIds = new int[topDocs.scoreDocs.length];
+			for(int i = 0; i < docIds.length; i++)
+				docIds[i] = topDocs.scoreDocs[i].doc;
+			excerpts = highlight(query, searcher, docIds);
+		}
+		
+		for(int i = 0; i < topDocs.scoreDocs.length; i++) {
+			ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+			//load only the stored fields used here (not all the keywords)
+			Document doc = searcher.doc(scoreDoc.doc, HIT_FIELDS);
 			String uri = doc.get(FIELD_URI);
 			BioPAXElement bpe = model.getByID(uri);			
 			LOG.debug("transform: doc:" + scoreDoc.doc + ", uri:" + uri);
 			
-			// use the highlighter (get matching fragments)
-			// for this to work, all keywords were stored in the index field
-			if (highlight && doc.get(FIELD_KEYWORD) != null) {				
-				// use a Highlighter (store.YES must be enabled for 'keyword' field)
-				QueryScorer scorer = new QueryScorer(query, FIELD_KEYWORD); 
-				//this fixes scoring/highlighting for all-field wildcard queries like q=insulin* 
-				//but not for term/prefix queries, i.e, q=name:insulin*, q=pathway:brca2. TODO
-				scorer.setExpandMultiTermQuery(true);	
-				
-				//TODO try PostingsHighlighter once it's stable...
-				// (see http://lucene.apache.org/core/4_10_0/highlighter/org/apache/lucene/search/postingshighlight/PostingsHighlighter.html)
-				SimpleHTMLFormatter formatter = new SimpleHTMLFormatter("<span class='hitHL'>", "</span>");
-				Highlighter highlighter = new Highlighter(formatter, scorer);
-				highlighter.setTextFragmenter(new SimpleSpanFragmenter(scorer, 80));
-										
-				final String text = StringUtils.join(doc.getValues(FIELD_KEYWORD), " ");
-				try {
-					TokenStream tokenStream = analyzer.tokenStream("", new StringReader(text));
-					String res = highlighter.getBestFragments(tokenStream, text, 7, "...");
-
-					if(res != null && !res.isEmpty()) {
-						bpe.getAnnotations().put(HitAnnotation.HIT_EXCERPT.name(), res);
-					}
-
-				} catch (Exception e) {throw new RuntimeException(e);}
-
-			} else if(highlight) {
-				LOG.warn("Highlighter skipped, because KEYWORD field was null; hit: " 
-						+ uri + ", " + bpe.getModelInterface().getSimpleName());
+			//replace the excerpt from a previous search, if any
+			if (excerpts != null && excerpts[i] != null && !excerpts[i].isEmpty()) {
+				bpe.getAnnotations().put(HitAnnotation.HIT_EXCERPT.name(), excerpts[i]);
+			} else {
+				bpe.getAnnotations().remove(HitAnnotation.HIT_EXCERPT.name());
 			}
 
 			// extract organisms (URI only) if not done before
@@ -360,127 +840,443 @@ public class SearchEngine implements Indexer, Searcher {
 	}
 
 
-	public void index() {
+	/**
+	 * Highlights the query terms in the 'keyword' field values of the documents,
+	 * using the term offsets stored in the index (postings).
+	 * 
+	 * @return excerpts in the order of the documents (null when nothing matched)
+	 */
+	private String[] highlight(Query query, IndexSearcher searcher, int[] docIds) throws IOException {
+		final String[] excerpts = new String[docIds.length];
+		if(docIds.length == 0)
+			return excerpts;
+		
+		PostingsHighlighter highlighter = new PostingsHighlighter() {
+			@Override
+			protected PassageFormatter getFormatter(String field) {
+				return new DefaultPassageFormatter("<span class='hitHL'>", "</span>", "...", false);
+			}
+			@Override
+			protected char getMultiValuedSeparator(String field) {
+				return '\u2029'; //paragraph separator - to make each keyword a passage
+			}
+			@Override
+			protected Analyzer getIndexAnalyzer(String field) {
+				return analyzer; //to highlight wildcard/prefix query matches
+			}
+			@Override
+			protected Passage[] getEmptyHighlight(String fieldName, BreakIterator bi, int maxPassages) {
+				return new Passage[0]; //no excerpt if nothing matched
+			}
+		};
+		
+		try {
+			String[] res = highlighter.highlightFields(new String[]{FIELD_KEYWORD}, 
+					query, searcher, docIds, new int[]{7}).get(FIELD_KEYWORD);
+			System.arraycopy(res, 0, excerpts, 0, res.length);
+		} catch (IllegalArgumentException e) {
+			//e.g., the index was created without offsets
+			LOG.warn("Highlighter skipped: " + e.getMessage());
+		}
+		
+		return excerpts;
+	}
+	
+	/**
+	 * Highlights the query terms in the hits that were found 
+	 * without highlighting (see {@link #setHighlight(boolean)}),
+	 * e.g., only the ones to display, and sets their 
+	 * {@link HitAnnotation#HIT_EXCERPT} annotation.
+	 * 
+	 * @param query same query string that found the hits
+	 * @param hits search hits (BioPAX objects)
+	 */
+	public void highlight(String query, List<? extends BioPAXElement> hits) {
+		if(query.trim().equals("*") || hits.isEmpty())
+			return; //nothing to highlight
+		
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			final List<BioPAXElement> found = new ArrayList<BioPAXElement>();
+			final List<Integer> docs = new ArrayList<Integer>();
+			for(BioPAXElement bpe : hits) {
+				TopDocs topDocs = searcher.search(new TermQuery(new Term(FIELD_URI, bpe.getUri())), 1);
+				if(topDocs.scoreDocs.length > 0) {
+					found.add(bpe);
+					docs.add(topDocs.scoreDocs[0].doc);
+				}
+			}
+			int[] docIds = new int[docs.size()];
+			for(int i = 0; i < docIds.length; i++)
+				docIds[i] = docs.get(i);
+			
+			String[] excerpts = highlight(parse(query), searcher, docIds);
+			for(int i = 0; i < excerpts.length; i++) {
+				if(excerpts[i] != null && !excerpts[i].isEmpty())
+					found.get(i).getAnnotations().put(HitAnnotation.HIT_EXCERPT.name(), excerpts[i]);
+			}
+		} catch (ParseException e) {
+			throw new RuntimeException("highlight: failed to parse the query string.", e);
+		} catch (IOException e) {
+			throw new RuntimeException("highlight: failed.", e);
+		} finally {
+			try {
+				if(searcher!=null)
+					searcherManager.release(searcher);
+			} catch (IOException e) {}	
+		}
+	}
+	
+	/**
+	 * Sets the no. search results to cache (by query, filters and page); 
+	 * 0 - disables the cache. The cache is cleared when the index changes.
+	 * 
+	 * @param resultCacheSize non-negative int value
+	 */
+	public void setResultCacheSize(int resultCacheSize) {
+		if(resultCacheSize < 0)
+			throw new IllegalArgumentException("resultCacheSize must not be negative");
+		synchronized (resultCache) {
+			this.resultCacheSize = resultCacheSize;
+			resultCache.clear();
+		}
+	}
+
+	public int getResultCacheSize() {
+		return resultCacheSize;
+	}
+	
+	/**
+	 * Sets whether to highlight the query terms in the search hits 
+	 * (HIT_EXCERPT annotation); if not, {@link #highlight(String, List)} 
+	 * can be used later for some of the hits.
+	 * 
+	 * @param highlight true (default) - to highlight hits
+	 */
+	public void setHighlight(boolean highlight) {
+		this.highlight = highlight;
+	}
+
+	public boolean isHighlight() {
+		return highlight;
+	}
+	
+	/**
+	 * Sets the no. threads to use in each parallel stage
+	 * (values inference, documents creation) of the indexing pipeline.
+	 *
+	 * @param indexThreads positive int value
+	 */
+	public void setIndexThreads(int indexThreads) {
+		if(indexThreads < 1)
+			throw new IllegalArgumentException("indexThreads must be positive");
+		this.indexThreads = indexThreads;
+	}
+
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+
+	/**
+	 * Sets the no. index shards, i.e., writers (each in its own thread and directory)
+	 * that {@link #index()} distributes documents to, and then merges.
+	 *
+	 * @param indexShards positive int value; 1 (default) - a single index writer
+	 */
+	public void setIndexShards(int indexShards) {
+		if(indexShards < 1)
+			throw new IllegalArgumentException("indexShards must be positive");
+		this.indexShards = indexShards;
+	}
+
+	public int getIndexShards() {
+		return indexShards;
+	}
+
+	/**
+	 * Sets the max. no. documents to add to the index at once.
+	 *
+	 * @param indexBatchSize positive int value
+	 */
+	public void setIndexBatchSize(int indexBatchSize) {
+		if(indexBatchSize < 1)
+			throw new IllegalArgumentException("indexBatchSize must be positive");
+		this.indexBatchSize = indexBatchSize;
+	}
+
+	public int getIndexBatchSize() {
+		return indexBatchSize;
+	}
+
+	/**
+	 * Sets the capacity of each queue between the indexing pipeline stages,
+	 * which limits the no. objects and documents held in memory at once.
+	 *
+	 * @param indexQueueSize positive int value
+	 */
+	public void setIndexQueueSize(int indexQueueSize) {
+		if(indexQueueSize < 1)
+			throw new IllegalArgumentException("indexQueueSize must be positive");
+		this.indexQueueSize = indexQueueSize;
+	}
+
+	public int getIndexQueueSize() {
+		return indexQueueSize;
+	}
+
+	/**
+	 * Gets the throughput of the indexing pipeline stages 
+	 * ('annotate', 'document', 'write'; and 'merge' - when there are several shards)
+	 * of the last {@link #index()} call.
+	 *
+	 * @return stage metrics (empty list if the index has not been built)
+	 */
+	public List<StageMetrics> getIndexMetrics() {
+		return indexMetrics;
+	}
+
+	/**
+	 * Re-builds the index from the model using a pipeline of stages
+	 * connected with bounded queues: infer values to index from the model 
+	 * (parallel), create documents (parallel), and add documents to the index 
+	 * in batches (single thread per shard). The model (incl. objects' annotations) is not modified.
+	 * 
+	 * With several shards (see {@link #setIndexShards(int)}), documents are distributed
+	 * by URI hash to separate index writers and directories, which are then merged
+	 * into the index with IndexWriter.addIndexes (the shard directories are deleted).
+	 * 
+	 * In the in-memory mode, the previous index can be searched until the new one is complete:
+	 * the searcher is not refreshed while indexing, so the deletion of the old documents and 
+	 * all the new documents become visible together, after the final commit.
+	 */
+	public synchronized void index() {
 		final int numObjects =  model.getObjects().size();
 		LOG.info("index(), there are " + numObjects + " BioPAX objects to be (re-)indexed.");		
 		IndexWriter iw;		
 		try {
-			//close the searcher manager if the old index exists
-			if(searcherManager != null) {
-				searcherManager.close();
-				searcherManager = null;
+			//cursors expire
+			searcherLifetimeManager.close();
+			searcherLifetimeManager = new SearcherLifetimeManager();
+			if(nrtWriter != null) {
+				//in-memory: the old index is searched until the refresh after the final commit,
+				//and is back if this fails
+				iw = nrtWriter;
+				iw.deleteAll();
+			} else {
+				//close the searcher manager if the old index exists
+				if(searcherManager != null) {
+					searcherManager.close();
+					searcherManager = null;
+				}
+				IndexWriterConfig conf = new IndexWriterConfig(Version.LATEST, analyzer);
+				iw = new IndexWriter(FSDirectory.open(indexFile), conf);
+				//cleanup
+				iw.deleteAll();
+				iw.commit();
 			}
-			IndexWriterConfig conf = new IndexWriterConfig(Version.LATEST, analyzer);
-			iw = new IndexWriter(FSDirectory.open(indexFile), conf);
-			//cleanup
-			iw.deleteAll();
-			iw.commit();
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to create a new IndexWriter.", e);
 		}		
 		final IndexWriter indexWriter = iw;
 
-		ExecutorService exec = Executors.newFixedThreadPool(30);
+		final Fetcher fetcher = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter);
+		fetcher.setSkipSubPathways(true);
+
+		final int nThreads = indexThreads;
+		final int batchSize = indexBatchSize;
+		final int nShards = indexShards;
+		final BlockingQueue<IndexItem> objects = new ArrayBlockingQueue<IndexItem>(indexQueueSize);
+		final BlockingQueue<IndexItem> annotated = new ArrayBlockingQueue<IndexItem>(indexQueueSize);
+		final List<BlockingQueue<IndexItem>> documents = new ArrayList<BlockingQueue<IndexItem>>();
+		for(int i = 0; i < nShards; i++)
+			documents.add(new ArrayBlockingQueue<IndexItem>(indexQueueSize));
+		final Suggester.Entries suggestions = new Suggester.Entries();
+		final StageMetrics annotating = new StageMetrics("annotate");
+		final StageMetrics building = new StageMetrics("document");
+		final StageMetrics writing = new StageMetrics("write");
+		final AtomicInteger annotators = new AtomicInteger(nThreads);
+		final AtomicInteger builders = new AtomicInteger(nThreads);
+		final AtomicInteger writers = new AtomicInteger(nShards);
 		
-		final AtomicInteger numLeft = new AtomicInteger(numObjects);
+		//one writer per shard; a single shard is the index itself
+		final List<IndexWriter> shardWriters = new ArrayList<IndexWriter>();
+		final List<Directory> shardDirs = new ArrayList<Directory>();
+		if(nShards == 1) {
+			shardWriters.add(indexWriter);
+		} else {
+			try {
+				for(int i = 0; i < nShards; i++) {
+					Directory dir = (ramDirectory != null) ? new RAMDirectory()
+						: FSDirectory.open(new File(indexFile.getPath() + ".shard" + i));
+					shardDirs.add(dir);
+					IndexWriterConfig conf = new IndexWriterConfig(Version.LATEST, analyzer);
+					conf.setOpenMode(OpenMode.CREATE);
+					shardWriters.add(new IndexWriter(dir, conf));
+				}
+			} catch (IOException e) {
+				for(IndexWriter w : shardWriters)
+					rollback(w);
+				deleteShards(shardDirs);
+				rollback(indexWriter);
+				initSearcherManager();
+				throw new RuntimeException("Failed to create shard IndexWriters.", e);
+			}
+		}
 
-		final org.biopax.paxtools.util.Filter<DataPropertyEditor> dataPropertiesToConsider
-				= new org.biopax.paxtools.util.Filter<DataPropertyEditor>() {
-			@Override
-			public boolean filter(DataPropertyEditor editor) {
-				final String prop = editor.getProperty();
-				//to include in the index, as keywords, only the following properties
-				// (basically, to exclude float type properties, embedded xml, db names, etc.):
-				return (prop.equalsIgnoreCase("author") || prop.equalsIgnoreCase("availability")
-						|| prop.equalsIgnoreCase("chemicalFormula") || prop.equalsIgnoreCase("comment")
-						|| prop.equalsIgnoreCase("controlType") || prop.equalsIgnoreCase("conversionDirection")
-						|| prop.equalsIgnoreCase("eCNumber") || prop.equalsIgnoreCase("id")
-						|| prop.equalsIgnoreCase("name") || prop.equalsIgnoreCase("displayName")
-						|| prop.equalsIgnoreCase("standardName") || prop.equalsIgnoreCase("sequence")
-						|| prop.equalsIgnoreCase("source") || prop.equalsIgnoreCase("year")
-						|| prop.equalsIgnoreCase("term") || prop.equalsIgnoreCase("stepDirection")
-						|| prop.equalsIgnoreCase("structureData") || prop.equalsIgnoreCase("templateDirection")
-						|| prop.equalsIgnoreCase("title") || prop.equalsIgnoreCase("url")
-				);
+		ExecutorService exec = Executors.newFixedThreadPool(2 * nThreads + nShards + 1);
+		CompletionService<Void> tasks = new ExecutorCompletionService<Void>(exec);
+		int numTasks = 0;
+
+		// feed the model objects (followed by one end marker per annotator)
+		tasks.submit(new Callable<Void>() {
+			public Void call() throws InterruptedException {
+				for(BioPAXElement bpe : model.getObjects())
+					objects.put(new IndexItem(bpe));
+				for(int i = 0; i < nThreads; i++)
+					objects.put(IndexItem.END);
+				return null;
 			}
-		};
+		});
+		numTasks++;
 
-		final Fetcher fetcher = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter);
-		fetcher.setSkipSubPathways(true);
+		// infer the values to index from this, child or parent objects
+		for(int t = 0; t < nThreads; t++) {
+			tasks.submit(new Callable<Void>() {
+				public Void call() throws InterruptedException {
+					for(IndexItem item = objects.take(); item != IndexItem.END; item = objects.take()) {
+						long start = System.nanoTime();
+						item.values = annotate(item.bpe, fetcher);
+						addSuggestions(item.bpe, item.values, suggestions);
+						annotating.add(1, System.nanoTime() - start);
+						annotated.put(item);
+					}
+					if(annotators.decrementAndGet() == 0) { //the last one
+						annotating.finish();
+						for(int i = 0; i < nThreads; i++)
+							annotated.put(IndexItem.END);
+					}
+					return null;
+				}
+			});
+			numTasks++;
+		}
 
-		for(final BioPAXElement bpe : model.getObjects()) {	
-			// prepare & index each element in a separate thread
-			exec.execute(new Runnable() {
-				public void run() {					
-					// get or infer some important values if possible from this, child or parent objects:
-					Set<String> keywords = ModelUtils.getKeywords(bpe, 3, dataPropertiesToConsider);
-					// a hack to remove special (debugging) biopax comments
-					for(String s : new HashSet<String>(keywords)) {
-						//exclude additional comments generated by normalizer, merger, etc.
-						if(s.startsWith("REPLACED ") || s.contains("ADDED"))
-							keywords.remove(s);
+		// create documents
+		for(int t = 0; t < nThreads; t++) {
+			tasks.submit(new Callable<Void>() {
+				public Void call() throws InterruptedException {
+					for(IndexItem item = annotated.take(); item != IndexItem.END; item = annotated.take()) {
+						long start = System.nanoTime();
+						item.doc = createDocument(item.bpe, item.values);
+						item.values = null;
+						building.add(1, System.nanoTime() - start);
+						//to a shard by URI hash
+						documents.get((item.bpe.getUri().hashCode() & Integer.MAX_VALUE) % nShards).put(item);
 					}
-					
-					bpe.getAnnotations().put(FIELD_KEYWORD, keywords);
-					bpe.getAnnotations().put(FIELD_DATASOURCE, ModelUtils.getDatasources(bpe));
-					bpe.getAnnotations().put(FIELD_ORGANISM, ModelUtils.getOrganisms(bpe));
-					bpe.getAnnotations().put(FIELD_PATHWAY, ModelUtils.getParentPathways(bpe));
-					//- includes itself if bpe is a pathway
-
-					//set <numparticipants> (PEs/Genes), <numprocesses> (interactions/pathways) index fields:
-					if(bpe instanceof org.biopax.paxtools.model.level3.Process) {
-						int numProc = fetcher.fetch(bpe, Process.class).size(); //except itself
-						int numPeAndG = fetcher.fetch(bpe, PhysicalEntity.class).size()
-								+ fetcher.fetch(bpe, Gene.class).size();
-						bpe.getAnnotations().put(FIELD_N_PARTICIPANTS, Integer.toString(numPeAndG));
-						bpe.getAnnotations().put(FIELD_N_PROCESSES, Integer.toString(numProc));
-					} else if(bpe instanceof Complex) {
-						int numPEs = fetcher.fetch(bpe, PhysicalEntity.class).size();
-						bpe.getAnnotations().put(FIELD_N_PARTICIPANTS, Integer.toString(numPEs));
+					if(builders.decrementAndGet() == 0) {
+						building.finish();
+						for(BlockingQueue<IndexItem> queue : documents)
+							queue.put(IndexItem.END);
 					}
+					return null;
+				}
+			});
+			numTasks++;
+		}
 
-					//add IDs of uni. and rel. xrefs of this element and its children
-					if(bpe instanceof Entity || bpe instanceof EntityReference)
-					{
-						final Set<String> ids = new HashSet<String>();
-
-						//fetch all children of (implicit) type XReferrable, which means - either
-						//BioSource or ControlledVocabulary or Evidence or Provenance or Entity or EntityReference
-						//(we actually want only the latter two types and their sub-types; will skip the rest later on):
-						Set<XReferrable> children = fetcher.fetch(bpe, XReferrable.class);
-						//include itself (- for fetcher only gets child elements)
-						children.add((XReferrable) bpe);
-						for(XReferrable child : children) {
-							//skip IDs of Evidence,CV,Provenance (included into 'keyword' field anyway)
-							if(!(child instanceof Entity || child instanceof EntityReference))
-								continue;
-							// collect standard bio IDs (skip publications); try/use id-mapping to associate more IDs:
-							for(Xref x : child.getXref()) {
-								if (!(x instanceof PublicationXref) && x.getId()!=null && x.getDb()!=null) {
-									ids.add(x.getId());
-								}
-							}
+		// add documents to the index (shards) in batches
+		for(int t = 0; t < nShards; t++) {
+			final BlockingQueue<IndexItem> shardDocuments = documents.get(t);
+			final IndexWriter shardWriter = shardWriters.get(t);
+			tasks.submit(new Callable<Void>() {
+				public Void call() throws InterruptedException, IOException {
+					final List<IndexItem> batch = new ArrayList<IndexItem>(batchSize);
+					final List<Document> docs = new ArrayList<Document>(batchSize);
+					boolean done = false;
+					while(!done) {
+						batch.add(shardDocuments.take());
+						shardDocuments.drainTo(batch, batchSize - 1);
+						for(IndexItem item : batch) {
+							if(item == IndexItem.END)
+								done = true;
+							else
+								docs.add(item.doc);
 						}
-						if(!ids.isEmpty()) {
-							bpe.getAnnotations().put(SearchEngine.FIELD_XREFID, ids);
+						if(!docs.isEmpty()) {
+							long start = System.nanoTime();
+							shardWriter.addDocuments(docs);
+							writing.add(docs.size(), System.nanoTime() - start);
+							//log a progress message
+							long left = numObjects - writing.getCount();
+							if(left / 10000 != (left + docs.size()) / 10000)
+								LOG.info("index(), biopax objects left to index: " + left);
 						}
+						batch.clear();
+						docs.clear();
 					}
-
-					index(bpe, indexWriter);
-					
-					//count, log a progress message
-					int left = numLeft.decrementAndGet();
-					if(left % 10000 == 0)
-						LOG.info("index(), biopax objects left to index: " + left);
+					if(shardWriter != indexWriter)
+						shardWriter.close(); //commit the shard
+					if(writers.decrementAndGet() == 0)
+						writing.finish();
+					return null;
 				}
 			});
+			numTasks++;
 		}
-		
-		exec.shutdown(); //stop accepting new tasks	
-		try { //wait
-			exec.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+
+		try { //wait; stop all the stages if any fails
+			for(int i = 0; i < numTasks; i++)
+				tasks.take().get();
 		} catch (InterruptedException e) {
+			exec.shutdownNow();
+			abortIndex(indexWriter, shardWriters, shardDirs);
 			throw new RuntimeException("Interrupted!", e);
+		} catch (ExecutionException e) {
+			exec.shutdownNow();
+			abortIndex(indexWriter, shardWriters, shardDirs);
+			throw new RuntimeException("Failed to index.", e.getCause());
+		} finally {
+			exec.shutdownNow();
+		}
+
+		List<StageMetrics> metrics = new ArrayList<StageMetrics>(Arrays.asList(annotating, building, writing));
+		if(nShards > 1) {
+			// merge the shards into the index (copies the segments, does not re-index)
+			StageMetrics merging = new StageMetrics("merge");
+			long start = System.nanoTime();
+			try {
+				indexWriter.addIndexes(shardDirs.toArray(new Directory[nShards]));
+			} catch (IOException e) {
+				abortIndex(indexWriter, shardWriters, shardDirs);
+				throw new RuntimeException("Failed to merge the index shards.", e);
+			}
+			merging.add(numObjects, System.nanoTime() - start);
+			merging.finish();
+			metrics.add(merging);
+			deleteShards(shardDirs);
+		}
+		indexMetrics = Collections.unmodifiableList(metrics);
+		for(StageMetrics m : indexMetrics)
+			LOG.info("index(), " + m);
+		
+		try {
+			suggester = suggestions.build();
+			if(ramDirectory == null)
+				suggester.save(getSuggesterFile());
+		} catch (IOException e) {
+			LOG.warn("Failed to build or save the suggester: " + e);
+		}
+		
+		if(nrtWriter != null) {
+			try {
+				indexWriter.commit(); //in memory, but a rollback will come back here
+				searcherManager.maybeRefreshBlocking();
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to commit the in-memory index.", e);
+			}
+			clearResultCache();
+			return;
 		}
 		
 		try {
@@ -490,22 +1286,313 @@ public class SearchEngine implements Indexer, Searcher {
 		} 
 		
 		//finally, create a new searcher manager
+		clearResultCache();
 		initSearcherManager();
 	}
+
+
+	/**
+	 * Updates the existing index after some objects in the model
+	 * were modified, added or removed, without re-indexing the whole model.
+	 * 
+	 * Documents of the changed objects are replaced (or added) using the 'uri' term,
+	 * and documents of the removed objects are deleted. As some index fields are
+	 * inferred from other objects, the documents of the following objects are re-created too:
+	 * parents of the changed and removed objects (keywords, organisms, xref IDs and counts
+	 * come from child objects); their child processes, physical entities, entity references, etc.,
+	 * and the objects indexed with a changed or removed pathway (parent pathways); and entity
+	 * references of the affected physical entities (data sources). Former parents of a removed
+	 * object (no longer linked to it) should be passed as changed objects.
+	 * 
+	 * All the changes are committed at once. Searches use the previous state of the index
+	 * until the commit is done, or if the update fails (then the changes are rolled back).
+	 * The index must have been created by {@link #index()} of this version (with the
+	 * indexed 'uri' field), or documents will be added instead of being replaced.
+	 * 
+	 * @param changed new or modified objects (in the model)
+	 * @param removed objects removed from the model
+	 * @return number of documents updated, added or deleted
+	 */
+	public synchronized int update(Collection<? extends BioPAXElement> changed,
+			Collection<? extends BioPAXElement> removed) 
+	{
+		if(searcherManager == null)
+			throw new IllegalStateException("No index found"
+				+ ((indexFile != null) ? " at " + indexFile.getPath() : "") + "; run index() first.");
+		
+		final Set<BioPAXElement> seeds = new HashSet<BioPAXElement>(changed);
+		seeds.addAll(removed);
+		
+		//collect the objects whose documents depend on the seeds
+		final Set<BioPAXElement> affected = new HashSet<BioPAXElement>(seeds);
+		final Fetcher childFetcher = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter);
+		for(BioPAXElement bpe : seeds) {
+			affected.addAll(getAncestors(bpe));
+			for(BioPAXElement child : childFetcher.fetch(bpe)) {
+				//only these types get the 'pathway' field (see ModelUtils.getParentPathways)
+				if(child instanceof Process || child instanceof PathwayStep || child instanceof PhysicalEntity
+						|| child instanceof EntityReference || child instanceof Gene)
+					affected.add(child);
+			}
+		}
+		affected.addAll(findByPathway(seeds));
+		
+		//entity references inherit data sources from their physical entities and parent ERs
+		final LinkedList<BioPAXElement> queue = new LinkedList<BioPAXElement>(affected);
+		while(!queue.isEmpty()) {
+			BioPAXElement bpe = queue.poll();
+			if(bpe instanceof SimplePhysicalEntity) {
+				EntityReference er = ((SimplePhysicalEntity) bpe).getEntityReference();
+				if(er != null && affected.add(er))
+					queue.add(er);
+			} else if(bpe instanceof EntityReference) {
+				for(EntityReference er : ((EntityReference) bpe).getMemberEntityReference())
+					if(affected.add(er))
+						queue.add(er);
+			}
+		}
+		
+		//split into the documents to re-create and to delete
+		final List<BioPAXElement> toIndex = new ArrayList<BioPAXElement>();
+		final Set<String> toDelete = new HashSet<String>();
+		for(BioPAXElement bpe : affected) {
+			BioPAXElement e = model.getByID(bpe.getUri());
+			if(e != null)
+				toIndex.add(e);
+			else
+				toDelete.add(bpe.getUri());
+		}
+		LOG.info("update(), " + seeds.size() + " changed or removed objects; documents to update: " 
+				+ toIndex.size() + ", to delete: " + toDelete.size());
+		
+		final Fetcher fetcher = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter);
+		fetcher.setSkipSubPathways(true);
+		
+		//the searcher manager stays open and serves the last committed state
+		IndexWriter iw = nrtWriter; //in-memory mode
+		try {
+			if(iw == null) {
+				IndexWriterConfig conf = new IndexWriterConfig(Version.LATEST, analyzer);
+				conf.setOpenMode(OpenMode.APPEND);
+				iw = new IndexWriter(FSDirectory.open(indexFile), conf);
+			}
+			for(String uri : toDelete) {
+				iw.deleteDocuments(new Term(FIELD_URI, uri));
+			}
+			for(BioPAXElement bpe : toIndex) {
+				iw.updateDocument(new Term(FIELD_URI, bpe.getUri()), 
+						createDocument(bpe, annotate(bpe, fetcher)));
+			}
+			iw.commit();
+			if(iw != nrtWriter)
+				iw.close();
+		} catch (IOException e) {
+			abortUpdate(iw);
+			throw new RuntimeException("Failed to update the index.", e);
+		} catch (RuntimeException e) {
+			abortUpdate(iw);
+			throw e;
+		}
+		
+		//switch to the new state
+		try {
+			searcherManager.maybeRefreshBlocking();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to refresh the searcher.", e);
+		}
+		
+		return toIndex.size() + toDelete.size();
+	}
 	
 	
 	// internal methods
 	
+	//discards the new index and shards
+	private void abortIndex(IndexWriter indexWriter, List<IndexWriter> shardWriters, List<Directory> shardDirs) {
+		for(IndexWriter w : shardWriters)
+			if(w != indexWriter)
+				rollback(w);
+		deleteShards(shardDirs);
+		rollback(indexWriter);
+		initSearcherManager();
+	}
+	
+	//discards the uncommitted changes; re-opens the in-memory index writer
+	private void abortUpdate(IndexWriter iw) {
+		boolean nrt = (iw != null && iw == nrtWriter);
+		rollback(iw);
+		if(nrt)
+			initSearcherManager();
+	}
+	
+	private void deleteShards(List<Directory> shardDirs) {
+		for(Directory dir : shardDirs) {
+			try {
+				for(String file : dir.listAll())
+					dir.deleteFile(file);
+				File path = (dir instanceof FSDirectory) ? ((FSDirectory) dir).getDirectory() : null;
+				dir.close();
+				if(path != null)
+					path.delete();
+			} catch (IOException e) {
+				LOG.warn("Failed to delete index shard " + dir + ": " + e);
+			}
+		}
+	}
+	
+	private static void rollback(IndexWriter iw) {
+		if(iw != null) {
+			try {
+				iw.rollback(); //discard the uncommitted changes, close
+			} catch (IOException e) {
+				LOG.error("Failed to roll back the index changes.", e);
+			}
+		}
+	}
+	
+	/**
+	 * Collects all the parents of the biopax element recursively,
+	 * traversing the inverse object properties (except for 'nextStep').
+	 * 
+	 * @param biopaxElement biopax object
+	 * @return parent objects
+	 */
+	private static Set<BioPAXElement> getAncestors(BioPAXElement biopaxElement) {
+		final Set<BioPAXElement> ancestors = new HashSet<BioPAXElement>();
+		final LinkedList<BioPAXElement> queue = new LinkedList<BioPAXElement>();
+		queue.add(biopaxElement);
+		while(!queue.isEmpty()) {
+			BioPAXElement bpe = queue.poll();
+			Set<ObjectPropertyEditor> editors = SimpleEditorMap.L3.getInverseEditorsOf(bpe);
+			if(editors == null)
+				continue;
+			for(ObjectPropertyEditor editor : editors) {
+				if(!Fetcher.nextStepFilter.filter(editor))
+					continue;
+				for(Object parent : editor.getInverseAccessor().getValueFromBean(bpe)) {
+					if(parent instanceof BioPAXElement && ancestors.add((BioPAXElement) parent))
+						queue.add((BioPAXElement) parent);
+				}
+			}
+		}
+		return ancestors;
+	}
+	
+	/**
+	 * Finds, in the current index, the objects that have
+	 * any of the given pathways in the 'pathway' field
+	 * (the ones in the model).
+	 * 
+	 * @param elements biopax objects (other than pathways are ignored)
+	 * @return objects indexed with the pathways
+	 */
+	private Set<BioPAXElement> findByPathway(Collection<? extends BioPAXElement> elements) {
+		final Set<BioPAXElement> found = new HashSet<BioPAXElement>();
+		IndexSearcher searcher = null;
+		try {
+			searcher = searcherManager.acquire();
+			final int max = Math.max(1, searcher.getIndexReader().maxDoc());
+			for(BioPAXElement pw : elements) {
+				if(!(pw instanceof Pathway))
+					continue;
+				TopDocs topDocs = searcher.search(new TermQuery(new Term(FIELD_PATHWAY_URI, pw.getUri())), max);
+				for(ScoreDoc scoreDoc : topDocs.scoreDocs) {
+					BioPAXElement bpe = model.getByID(searcher.doc(scoreDoc.doc).get(FIELD_URI));
+					if(bpe != null)
+						found.add(bpe);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("findByPathway: failed.", e);
+		} finally {
+			try {
+				if(searcher!=null)
+					searcherManager.release(searcher);
+			} catch (IOException e) {}
+		}
+		return found;
+	}
+	
+	/**
+	 * Infers the values to index (keywords, data sources, organisms, parent pathways, 
+	 * the numbers of participants and processes, xref IDs) from this, child or parent objects.
+	 * The values are returned in a new map (by index field name), not stored in the model.
+	 * 
+	 * @param bpe BioPAX object
+	 * @param fetcher child elements fetcher that skips sub-pathways
+	 * @return values to index
+	 */
+	private Map<String,Object> annotate(BioPAXElement bpe, Fetcher fetcher) {
+		final Map<String,Object> values = new HashMap<String,Object>();
+		
+		// get or infer some important values if possible from this, child or parent objects:
+		Set<String> keywords = ModelUtils.getKeywords(bpe, 3, dataPropertiesToConsider);
+		// a hack to remove special (debugging) biopax comments
+		for(String s : new HashSet<String>(keywords)) {
+			//exclude additional comments generated by normalizer, merger, etc.
+			if(s.startsWith("REPLACED ") || s.contains("ADDED"))
+				keywords.remove(s);
+		}
+		
+		values.put(FIELD_KEYWORD, keywords);
+		values.put(FIELD_DATASOURCE, ModelUtils.getDatasources(bpe));
+		values.put(FIELD_ORGANISM, ModelUtils.getOrganisms(bpe));
+		values.put(FIELD_PATHWAY, ModelUtils.getParentPathways(bpe));
+		//- includes itself if bpe is a pathway
+
+		//set <numparticipants> (PEs/Genes), <numprocesses> (interactions/pathways) index fields:
+		if(bpe instanceof org.biopax.paxtools.model.level3.Process) {
+			int numProc = fetcher.fetch(bpe, Process.class).size(); //except itself
+			int numPeAndG = fetcher.fetch(bpe, PhysicalEntity.class).size()
+					+ fetcher.fetch(bpe, Gene.class).size();
+			values.put(FIELD_N_PARTICIPANTS, Integer.toString(numPeAndG));
+			values.put(FIELD_N_PROCESSES, Integer.toString(numProc));
+		} else if(bpe instanceof Complex) {
+			int numPEs = fetcher.fetch(bpe, PhysicalEntity.class).size();
+			values.put(FIELD_N_PARTICIPANTS, Integer.toString(numPEs));
+		}
+
+		//add IDs of uni. and rel. xrefs of this element and its children
+		if(bpe instanceof Entity || bpe instanceof EntityReference)
+		{
+			final Set<String> ids = new HashSet<String>();
+
+			//fetch all children of (implicit) type XReferrable, which means - either
+			//BioSource or ControlledVocabulary or Evidence or Provenance or Entity or EntityReference
+			//(we actually want only the latter two types and their sub-types; will skip the rest later on):
+			Set<XReferrable> children = fetcher.fetch(bpe, XReferrable.class);
+			//include itself (- for fetcher only gets child elements)
+			children.add((XReferrable) bpe);
+			for(XReferrable child : children) {
+				//skip IDs of Evidence,CV,Provenance (included into 'keyword' field anyway)
+				if(!(child instanceof Entity || child instanceof EntityReference))
+					continue;
+				// collect standard bio IDs (skip publications); try/use id-mapping to associate more IDs:
+				for(Xref x : child.getXref()) {
+					if (!(x instanceof PublicationXref) && x.getId()!=null && x.getDb()!=null) {
+						ids.add(x.getId());
+					}
+				}
+			}
+			if(!ids.isEmpty()) {
+				values.put(SearchEngine.FIELD_XREFID, ids);
+			}
+		}
+		
+		return values;
+	}
+	
 	/**
 	 * Creates a new Lucene Document that corresponds to a BioPAX object.
 	 * It does not check whether the document exists (should not be there,
-	 * because the {@link #index()} method cleans up the index)
+	 * because the {@link #index()} method cleans up the index;
+	 * see {@link #update(Collection, Collection)} for replacing documents)
 	 * 
 	 * Some fields also include biopax data type property values not only from 
 	 * the biopax object but also from its child elements, up to some depth 
-	 * (using key-value pairs in the pre-computed bpe.annotations map):
+	 * (using key-value pairs in the pre-computed values map):
 	 * 
-	 *  'uri' - biopax object's absolute URI, analyze=no, store=yes;
+	 *  'uri' - biopax object's absolute URI, index=yes, analyze=no, store=yes;
 	 * 
 	 *  'name' - names, analyze=yes, store=yes; boosted;
 	 * 
@@ -521,66 +1608,68 @@ public class SearchEngine implements Indexer, Searcher {
 	 *  'size' - number of child processes, an integer as string; analyze=no, store=yes
 	 * 
 	 * @param bpe BioPAX object
-	 * @param indexWriter index writer
+	 * @param values pre-calculated/inferred values (see {@link #annotate(BioPAXElement, Fetcher)})
+	 * @return new document
 	*/
-	void index(BioPAXElement bpe, IndexWriter indexWriter) {		
+	Document createDocument(BioPAXElement bpe, Map<String,Object> values) {
 		// create a new document
 		final Document doc = new Document();
 		
-		// save URI (not indexed field)
-		Field field = new StoredField(FIELD_URI, bpe.getUri());
+		// save and index URI (not analyzed) - required to update/delete the document
+		Field field = new StringField(FIELD_URI, bpe.getUri(), Field.Store.YES);
 		doc.add(field);
+		// and as doc values - to export hits without loading stored fields
+		doc.add(new BinaryDocValuesField(FIELD_URI, new BytesRef(bpe.getUri())));
 		
 		// index and store but not analyze/tokenize the biopax class name:
 		field = new StringField(FIELD_TYPE, bpe.getModelInterface().getSimpleName().toLowerCase(), Field.Store.YES);
 		doc.add(field);
+		// and for faceting
+		doc.add(new SortedSetDocValuesField(FIELD_TYPE, new BytesRef(bpe.getModelInterface().getSimpleName().toLowerCase())));
 		
-		// make index fields from the annotations map (of pre-calculated/inferred values)
-		if(!bpe.getAnnotations().isEmpty()) {
-			if(bpe.getAnnotations().containsKey(FIELD_PATHWAY)) {
-				addPathways((Set<Pathway>)bpe.getAnnotations().get(FIELD_PATHWAY), doc);
+		// make index fields from the map of pre-calculated/inferred values
+		if(!values.isEmpty()) {
+			if(values.containsKey(FIELD_PATHWAY)) {
+				addPathways((Set<Pathway>)values.get(FIELD_PATHWAY), doc);
 			}
-			if(bpe.getAnnotations().containsKey(FIELD_ORGANISM)) {
-				addOrganisms((Set<BioSource>)bpe.getAnnotations().get(FIELD_ORGANISM), doc);
+			if(values.containsKey(FIELD_ORGANISM)) {
+				addOrganisms((Set<BioSource>)values.get(FIELD_ORGANISM), doc);
 			}
-			if(bpe.getAnnotations().containsKey(FIELD_DATASOURCE)) {
-				addDatasources((Set<Provenance>)bpe.getAnnotations().get(FIELD_DATASOURCE), doc);
+			if(values.containsKey(FIELD_DATASOURCE)) {
+				addDatasources((Set<Provenance>)values.get(FIELD_DATASOURCE), doc);
 			}
-			if(bpe.getAnnotations().containsKey(FIELD_KEYWORD)) {
-				addKeywords((Set<String>)bpe.getAnnotations().get(FIELD_KEYWORD), doc);
+			if(values.containsKey(FIELD_KEYWORD)) {
+				addKeywords((Set<String>)values.get(FIELD_KEYWORD), doc);
 			}
-			if(bpe.getAnnotations().containsKey(FIELD_N_PARTICIPANTS)) {
+			if(values.containsKey(FIELD_N_PARTICIPANTS)) {
 				field = new StoredField(FIELD_N_PARTICIPANTS,
-						Integer.parseInt((String)bpe.getAnnotations().get(FIELD_N_PARTICIPANTS)));
+						Integer.parseInt((String)values.get(FIELD_N_PARTICIPANTS)));
 				doc.add(field);
+				//per-document value, e.g., to sort hits by
+				doc.add(new NumericDocValuesField(FIELD_N_PARTICIPANTS,
+						Integer.parseInt((String)values.get(FIELD_N_PARTICIPANTS))));
 			}
-			if(bpe.getAnnotations().containsKey(FIELD_N_PROCESSES)) {
+			if(values.containsKey(FIELD_N_PROCESSES)) {
 				field = new IntField(FIELD_N,
-						Integer.parseInt((String)bpe.getAnnotations().get(FIELD_N_PROCESSES)), Field.Store.NO);
+						Integer.parseInt((String)values.get(FIELD_N_PROCESSES)), Field.Store.NO);
 				doc.add(field);
 				field = new StoredField(FIELD_N_PROCESSES,
-						Integer.parseInt((String)bpe.getAnnotations().get(FIELD_N_PROCESSES)));
+						Integer.parseInt((String)values.get(FIELD_N_PROCESSES)));
 				doc.add(field);
+				doc.add(new NumericDocValuesField(FIELD_N_PROCESSES,
+						Integer.parseInt((String)values.get(FIELD_N_PROCESSES))));
 			}
-			if(bpe.getAnnotations().containsKey(FIELD_XREFID)) {
+			if(values.containsKey(FIELD_XREFID)) {
 				//index biological IDs as keywords
-				addKeywords((Set<String>)bpe.getAnnotations().get(FIELD_XREFID), doc);
+				addKeywords((Set<String>)values.get(FIELD_XREFID), doc);
 
 				//index all IDs using "xrefid" fields
-				for (String id : (Set<String>)bpe.getAnnotations().get(FIELD_XREFID)) {
+				for (String id : (Set<String>)values.get(FIELD_XREFID)) {
 					Field f = new StringField(FIELD_XREFID, id.toLowerCase(), Field.Store.NO);
 					doc.add(f);
 				}
 			}
 		}
-		bpe.getAnnotations().remove(FIELD_KEYWORD);
-		bpe.getAnnotations().remove(FIELD_DATASOURCE);
-		bpe.getAnnotations().remove(FIELD_ORGANISM);
-		bpe.getAnnotations().remove(FIELD_PATHWAY);
-		bpe.getAnnotations().remove(FIELD_N_PARTICIPANTS);
-		bpe.getAnnotations().remove(FIELD_N_PROCESSES);
-		bpe.getAnnotations().remove(FIELD_XREFID);
-
 		// name
 		if(bpe instanceof Named) {
 			Named named = (Named) bpe;
@@ -603,17 +1692,40 @@ public class SearchEngine implements Indexer, Searcher {
 			}
 		}
 
-		// write
-		try {
-			indexWriter.addDocument(doc);
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to index; " + bpe.getUri(), e);
+		return doc;
+	}
+
+	//names and IDs to complete, and IDs to look up
+	private static void addSuggestions(BioPAXElement bpe, Map<String,Object> values, Suggester.Entries suggestions) {
+		long weight = 0;
+		if(values.containsKey(FIELD_N_PROCESSES)) {
+			weight = Long.parseLong((String) values.get(FIELD_N_PROCESSES));
+		} else if(bpe instanceof PhysicalEntity) {
+			weight = numInteractions((PhysicalEntity) bpe);
+		} else if(bpe instanceof EntityReference) {
+			for(SimplePhysicalEntity spe : ((EntityReference) bpe).getEntityReferenceOf())
+				weight += numInteractions(spe);
+		}
+		
+		if(bpe instanceof Named) {
+			for(String name : ((Named) bpe).getName())
+				suggestions.addCompletion(name, weight);
 		}
+		if(values.containsKey(FIELD_XREFID)) {
+			for(String id : (Set<String>) values.get(FIELD_XREFID)) {
+				suggestions.addCompletion(id, weight);
+				suggestions.addId(id, bpe.getUri());
+			}
+		}
+	}
+	
+	private static int numInteractions(PhysicalEntity pe) {
+		return pe.getParticipantOf().size() + pe.getControllerOf().size();
 	}
 
 	private void addKeywords(Set<String> keywords, Document doc) {
 		for (String keyword : keywords) {
-			Field f = new TextField(FIELD_KEYWORD, keyword.toLowerCase(), Field.Store.YES);
+			Field f = new Field(FIELD_KEYWORD, keyword.toLowerCase(), KEYWORD_TYPE);
 			doc.add(f);
 		}
 	}
@@ -623,6 +1735,7 @@ public class SearchEngine implements Indexer, Searcher {
 			// Index and store URI (untokinized) - 
 			// required to accurately calculate no. entities or to filter by data source (diff. datasources may share same names)
 			doc.add(new StringField(FIELD_DATASOURCE, p.getUri(), Field.Store.YES));
+			doc.add(new SortedSetDocValuesField(FIELD_DATASOURCE, new BytesRef(p.getUri())));
 			// index names as well
 			for (String s : p.getName())
 				doc.add(new TextField(FIELD_DATASOURCE, s.toLowerCase(), Field.Store.NO));
@@ -633,6 +1746,7 @@ public class SearchEngine implements Indexer, Searcher {
 		for(BioSource bs : set) {
 			// store URI as is (not indexed, untokinized)
 			doc.add(new StoredField(FIELD_ORGANISM, bs.getUri()));
+			doc.add(new SortedSetDocValuesField(FIELD_ORGANISM, new BytesRef(bs.getUri())));
 				
 			// add organism names
 			for(String s : bs.getName()) {
@@ -662,20 +1776,22 @@ public class SearchEngine implements Indexer, Searcher {
 		for(Pathway pw : set) {
 			//add URI as is (do not lowercase; do not index; store=yes - required to report hits, e.g., as xml)
 			doc.add(new StoredField(FIELD_PATHWAY, pw.getUri()));
+			//index URI (not analyzed, not stored) in a separate field (not to affect 'pathway' scoring)
+			//to find the documents to update when the pathway changes
+			doc.add(new StringField(FIELD_PATHWAY_URI, pw.getUri(), Field.Store.NO));
+			doc.add(new SortedSetDocValuesField(FIELD_PATHWAY, new BytesRef(pw.getUri())));
 			
-			// add names to the 'pathway' (don't store) and 'keywords' (store, don't index) fields
+			// add names to the 'pathway' field (don't store);
+			// not to 'keyword' (stored values there must all be indexed, with offsets, for highlighting)
 			for (String s : pw.getName()) {
 				doc.add(new TextField(FIELD_PATHWAY, s.toLowerCase(), Field.Store.NO));
-				doc.add(new StoredField(FIELD_KEYWORD, s.toLowerCase()));//for highlighting only, not indexed
 			}
 			
 			// add unification xref IDs too
 			for (UnificationXref x : new ClassFilterSet<Xref, UnificationXref>(
 					pw.getXref(), UnificationXref.class)) {
 				if (x.getId() != null) {
-					// index in both 'pathway' (don't store) and 'keywords' (store, don't index)
 					doc.add(new TextField(FIELD_PATHWAY, x.getId().toLowerCase(), Field.Store.NO));
-					doc.add(new StoredField(FIELD_KEYWORD, x.getId().toLowerCase()));//for highlighting only, not indexed
 				}
 			}
 		}
@@ -717,8 +1833,17 @@ public class SearchEngine implements Indexer, Searcher {
 		}
 		
 		if(!filterQuery.clauses().isEmpty()) {
-			LOG.debug("filterQuery: " + filterQuery.toString());
-			return new CachingWrapperFilter( new QueryWrapperFilter(filterQuery) ); //TODO why CachingWrapperFilter, QueryWrapperFilter?
+			final String key = filterQuery.toString();
+			LOG.debug("filterQuery: " + key);
+			//reuse the filter (its cached per-segment doc id sets) for the same filter values
+			synchronized (filterCache) {
+				Filter filter = filterCache.get(key);
+				if(filter == null) {
+					filter = new CachingWrapperFilter(new QueryWrapperFilter(filterQuery));
+					filterCache.put(key, filter);
+				}
+				return filter;
+			}
 		} else 
 			return null;
 	}
@@ -772,4 +1897,20 @@ public class SearchEngine implements Indexer, Searcher {
 		return query;
 	}
 
+	/**
+	 * A model object with its values to index or its document,
+	 * passed between the indexing pipeline stages.
+	 */
+	private static final class IndexItem {
+		static final IndexItem END = new IndexItem(null); //marks the end of a stage's output
+		
+		final BioPAXElement bpe;
+		Map<String,Object> values;
+		Document doc;
+		
+		IndexItem(BioPAXElement bpe) {
+			this.bpe = bpe;
+		}
+	}
+
 }
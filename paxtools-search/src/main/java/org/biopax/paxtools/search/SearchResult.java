@@ -1,6 +1,7 @@
 package org.biopax.paxtools.search;
 
 import java.util.List;
+import java.util.Map;
 
 import org.biopax.paxtools.model.BioPAXElement;
 
@@ -11,6 +12,8 @@ public class SearchResult {
 	private long totalHits;
 	private long maxHitsPerPage = 100;
 	private int page = 0;
+	private Map<String, Map<String, Long>> facets;
+	private String cursor;
 	
 	public SearchResult() {
 	}
@@ -54,5 +57,38 @@ public class SearchResult {
 	public void setPage(int page) {
 		this.page = page;
 	}
+
+
+	/**
+	 * Gets the numbers of all hits (not only this page's)
+	 * by facet field (see SearchEngine.FACET_FIELDS) and value,
+	 * e.g., by data source URI.
+	 * 
+	 * @return map: field -> (value -> no. hits)
+	 */
+	public Map<String, Map<String, Long>> getFacets() {
+		return facets;
+	}
+
+
+	public void setFacets(Map<String, Map<String, Long>> facets) {
+		this.facets = facets;
+	}
+
+
+	/**
+	 * Gets the cursor to get the next page of hits with
+	 * (see SearchEngine.searchAfter).
+	 * 
+	 * @return opaque cursor, or null if there are no more hits
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
 	
 }
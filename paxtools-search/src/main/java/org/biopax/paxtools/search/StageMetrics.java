@@ -0,0 +1,91 @@
+package org.biopax.paxtools.search;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of a stage of the indexing pipeline
+ * (see {@link SearchEngine#index()}).
+ *
+ * Counts are updated by the stage's threads while the index is being built.
+ */
+public class StageMetrics {
+
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong busyNanos = new AtomicLong();
+	private final long startNanos;
+	private volatile long endNanos;
+
+	public StageMetrics(String name) {
+		this.name = name;
+		this.startNanos = System.nanoTime();
+	}
+
+
+	public String getName() {
+		return name;
+	}
+
+
+	/**
+	 * Records the documents processed by a thread of this stage.
+	 *
+	 * @param docs number of documents
+	 * @param nanos time spent processing them
+	 */
+	void add(int docs, long nanos) {
+		count.addAndGet(docs);
+		busyNanos.addAndGet(nanos);
+	}
+
+
+	/**
+	 * Marks the stage as completed.
+	 */
+	void finish() {
+		endNanos = System.nanoTime();
+	}
+
+
+	/**
+	 * @return number of documents processed so far
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+
+	/**
+	 * @return time since the pipeline started, until the stage
+	 * has completed (or until now), in seconds
+	 */
+	public double getElapsedSeconds() {
+		long end = (endNanos == 0) ? System.nanoTime() : endNanos;
+		return (end - startNanos) / 1e9;
+	}
+
+
+	/**
+	 * @return time the stage's threads spent processing documents
+	 * (not waiting for the other stages), summed over the threads, in seconds
+	 */
+	public double getBusySeconds() {
+		return busyNanos.get() / 1e9;
+	}
+
+
+	/**
+	 * @return documents per second of elapsed time
+	 */
+	public double getDocsPerSecond() {
+		double s = getElapsedSeconds();
+		return (s > 0) ? getCount() / s : 0;
+	}
+
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d docs, %.1f docs/s (elapsed %.2f s, busy %.2f s)",
+			name, getCount(), getDocsPerSecond(), getElapsedSeconds(), getBusySeconds());
+	}
+}
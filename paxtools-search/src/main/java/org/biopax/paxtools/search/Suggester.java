@@ -0,0 +1,289 @@
+package org.biopax.paxtools.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+/**
+ * Prefix completion of names and xref IDs, and exact xref ID to URI lookup,
+ * using two finite state transducers (FST) kept apart from the full-text index.
+ *
+ * Completions are case-insensitive; each completion has a weight
+ * (see {@link SearchEngine#suggest(String, int)}), and the ones with higher weight come first.
+ * A suggester is immutable; it is built by {@link SearchEngine#index()}.
+ */
+public class Suggester {
+
+	//completions are ordered by the FST output, which is the cost (the lower, the better)
+	private static final long MAX_WEIGHT = Integer.MAX_VALUE;
+	//separates the lower case key from the original text in the completion FST inputs
+	private static final int SEPARATOR = 0;
+
+	private static final Comparator<Long> COST_ORDER = new Comparator<Long>() {
+		public int compare(Long o1, Long o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	private final FST<Long> completions; //(lower case key, 0, text) -> cost
+	private final FST<Long> ids; //lower case id -> ordinal
+	private final String[][] uris; //ordinal -> URIs
+
+	/**
+	 * An empty suggester.
+	 */
+	public Suggester() {
+		this(null, null, new String[0][]);
+	}
+
+	private Suggester(FST<Long> completions, FST<Long> ids, String[][] uris) {
+		this.completions = completions;
+		this.ids = ids;
+		this.uris = uris;
+	}
+
+	/**
+	 * Gets the names or IDs that start with the prefix (case-insensitive),
+	 * in the order of their weight.
+	 *
+	 * @param prefix beginning of the name or ID
+	 * @param n max. number of completions
+	 * @return completions (in the original case)
+	 */
+	public List<String> suggest(String prefix, int n) {
+		if(completions == null || n < 1)
+			return Collections.emptyList();
+
+		try {
+			//follow the prefix
+			final BytesRef key = new BytesRef(prefix.toLowerCase());
+			final FST.BytesReader reader = completions.getBytesReader();
+			final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+			FST.Arc<Long> arc = completions.getFirstArc(new FST.Arc<Long>());
+			Long cost = outputs.getNoOutput();
+			for(int i = 0; i < key.length; i++) {
+				if(completions.findTargetArc(key.bytes[key.offset + i] & 0xff, arc, arc, reader) == null)
+					return Collections.emptyList();
+				cost = outputs.add(cost, arc.output);
+			}
+
+			//the cheapest (highest weight) paths from there
+			final List<String> result = new ArrayList<String>(n);
+			final BytesRefBuilder suffix = new BytesRefBuilder();
+			for(Util.Result<Long> path : Util.shortestPaths(completions, arc, cost, COST_ORDER, n, false)) {
+				Util.toBytesRef(path.input, suffix);
+				//the original text follows the separator
+				int start = 0;
+				while(suffix.byteAt(start) != SEPARATOR)
+					start++;
+				result.add(new BytesRef(suffix.bytes(), start + 1, suffix.length() - start - 1).utf8ToString());
+			}
+			return result;
+		} catch (IOException e) { //it's in memory
+			throw new RuntimeException("Failed to read the completions FST.", e);
+		}
+	}
+
+	/**
+	 * Gets the URIs of the objects that have the xref ID,
+	 * including those with a child that has (same as the 'xrefid' index field).
+	 *
+	 * @param id xref ID (case-insensitive)
+	 * @return URIs (empty set if none)
+	 */
+	public Set<String> lookup(String id) {
+		if(ids == null)
+			return Collections.emptySet();
+
+		try {
+			Long ord = Util.get(ids, new BytesRef(id.toLowerCase()));
+			if(ord == null)
+				return Collections.emptySet();
+			Set<String> result = new TreeSet<String>();
+			Collections.addAll(result, uris[ord.intValue()]);
+			return result;
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to read the IDs FST.", e);
+		}
+	}
+
+	/**
+	 * @return number of IDs that can be looked up
+	 */
+	public int getIdCount() {
+		return uris.length;
+	}
+
+	/**
+	 * @return memory used by the FSTs, in bytes
+	 */
+	public long ramBytesUsed() {
+		return ((completions == null) ? 0 : completions.ramBytesUsed())
+				+ ((ids == null) ? 0 : ids.ramBytesUsed());
+	}
+
+	/**
+	 * Writes the suggester to a file.
+	 *
+	 * @param file to write to (overwritten)
+	 * @throws IOException when cannot write to the file
+	 */
+	public void save(File file) throws IOException {
+		OutputStreamDataOutput out = new OutputStreamDataOutput(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			save(completions, out);
+			save(ids, out);
+			out.writeVInt(uris.length);
+			for(String[] u : uris) {
+				out.writeVInt(u.length);
+				for(String uri : u)
+					out.writeString(uri);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a suggester from a file written by {@link #save(File)}.
+	 *
+	 * @param file to read
+	 * @return suggester
+	 * @throws IOException when cannot read the file
+	 */
+	public static Suggester load(File file) throws IOException {
+		InputStreamDataInput in = new InputStreamDataInput(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			FST<Long> completions = load(in);
+			FST<Long> ids = load(in);
+			String[][] uris = new String[in.readVInt()][];
+			for(int i = 0; i < uris.length; i++) {
+				uris[i] = new String[in.readVInt()];
+				for(int j = 0; j < uris[i].length; j++)
+					uris[i][j] = in.readString();
+			}
+			return new Suggester(completions, ids, uris);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void save(FST<Long> fst, DataOutput out) throws IOException {
+		out.writeByte((byte) ((fst == null) ? 0 : 1));
+		if(fst != null)
+			fst.save(out);
+	}
+
+	private static FST<Long> load(DataInput in) throws IOException {
+		return (in.readByte() == 0) ? null : new FST<Long>(in, PositiveIntOutputs.getSingleton());
+	}
+
+
+	/**
+	 * Collects the completions and IDs (from several threads),
+	 * then builds the suggester.
+	 */
+	static class Entries {
+		//lower case key -> the text and weight of the completion with the highest weight
+		private final Map<String, Object[]> completions = new HashMap<String, Object[]>();
+		//lower case id -> URIs
+		private final Map<String, Set<String>> ids = new HashMap<String, Set<String>>();
+
+		/**
+		 * Adds a completion; of those that only differ by case,
+		 * the one with the highest weight is kept.
+		 *
+		 * @param text name or ID
+		 * @param weight non-negative
+		 */
+		synchronized void addCompletion(String text, long weight) {
+			text = text.trim();
+			if(text.isEmpty())
+				return;
+			weight = Math.min(Math.max(weight, 0), MAX_WEIGHT);
+			String key = text.toLowerCase();
+			Object[] c = completions.get(key);
+			if(c == null || (Long) c[1] < weight)
+				completions.put(key, new Object[] {text, weight});
+		}
+
+		/**
+		 * Associates the xref ID with the object.
+		 *
+		 * @param id xref ID
+		 * @param uri of a BioPAX object
+		 */
+		synchronized void addId(String id, String uri) {
+			String key = id.toLowerCase();
+			Set<String> u = ids.get(key);
+			if(u == null) {
+				u = new TreeSet<String>();
+				ids.put(key, u);
+			}
+			u.add(uri);
+		}
+
+		/**
+		 * @return the suggester
+		 * @throws IOException (not expected, the FSTs are built in memory)
+		 */
+		synchronized Suggester build() throws IOException {
+			final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+			final IntsRefBuilder scratch = new IntsRefBuilder();
+
+			//FST inputs must be added in (unsigned byte) order
+			final TreeMap<BytesRef, Long> sorted = new TreeMap<BytesRef, Long>();
+			for(Map.Entry<String, Object[]> e : completions.entrySet()) {
+				BytesRefBuilder input = new BytesRefBuilder();
+				input.copyChars(e.getKey());
+				input.append((byte) SEPARATOR);
+				input.append(new BytesRef((String) e.getValue()[0]));
+				sorted.put(input.get(), MAX_WEIGHT - (Long) e.getValue()[1]);
+			}
+			Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs);
+			for(Map.Entry<BytesRef, Long> e : sorted.entrySet())
+				builder.add(Util.toIntsRef(e.getKey(), scratch), e.getValue());
+			FST<Long> completionsFst = builder.finish();
+
+			final TreeMap<BytesRef, Set<String>> sortedIds = new TreeMap<BytesRef, Set<String>>();
+			for(Map.Entry<String, Set<String>> e : ids.entrySet())
+				sortedIds.put(new BytesRef(e.getKey()), e.getValue());
+			final String[][] uris = new String[sortedIds.size()][];
+			builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs);
+			int ord = 0;
+			for(Map.Entry<BytesRef, Set<String>> e : sortedIds.entrySet()) {
+				uris[ord] = e.getValue().toArray(new String[e.getValue().size()]);
+				builder.add(Util.toIntsRef(e.getKey(), scratch), (long) ord++);
+			}
+			FST<Long> idsFst = builder.finish();
+
+			return new Suggester(completionsFst, idsFst, uris);
+		}
+	}
+}
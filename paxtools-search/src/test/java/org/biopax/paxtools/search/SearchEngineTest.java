@@ -7,6 +7,12 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 import org.biopax.paxtools.io.SimpleIOHandler;
@@ -15,6 +21,7 @@ import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.Interaction;
 import org.biopax.paxtools.model.level3.Pathway;
 import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.Protein;
 import org.biopax.paxtools.model.level3.Provenance;
 import org.biopax.paxtools.model.level3.SmallMoleculeReference;
 import org.biopax.paxtools.search.SearchEngine.HitAnnotation;
@@ -190,4 +197,292 @@ public class SearchEngineTest {
 		//check the top pathway is the main one (parent)
 		assertEquals("http://purl.org/pc2/7/Pathway_3f75176b9a6272a62f9257f0540dc63b", response.getHits().get(0).getUri());
 	}
+	
+	@Test
+	public final void testUpdate() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(getClass().getResourceAsStream("/pathwaydata1.owl"));
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "index3");
+		searchEngine.index();
+		
+		//rename the pathway; its members are re-indexed with the new name in the 'pathway' field
+		Pathway pw = model.getObjects(Pathway.class).iterator().next();
+		pw.addName("frobnication");
+		searchEngine.update(Collections.singleton(pw), Collections.<BioPAXElement>emptySet());
+		SearchResult response = searchEngine.search("pathway:frobnication", 0, SmallMoleculeReference.class, null, null);
+		assertEquals(5, response.getHits().size());
+		response = searchEngine.search("frobnication", 0, Pathway.class, null, null);
+		assertEquals(1, response.getHits().size());
+		//documents were replaced, not added
+		assertEquals(50, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		
+		//add a new object
+		Protein p = model.addNew(Protein.class, "http://biopax.org/test/Protein_frobnicase");
+		p.setDisplayName("frobnicase");
+		assertEquals(1, searchEngine.update(Collections.singleton(p), Collections.<BioPAXElement>emptySet()));
+		response = searchEngine.search("frobnicase", 0, Protein.class, null, null);
+		assertEquals(1, response.getHits().size());
+		assertEquals(51, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		
+		//remove it
+		model.remove(p);
+		assertEquals(1, searchEngine.update(Collections.<BioPAXElement>emptySet(), Collections.singleton(p)));
+		assertTrue(searchEngine.search("frobnicase", 0, Protein.class, null, null).getHits().isEmpty());
+		assertEquals(50, searchEngine.search("*", 0, null, null, null).getTotalHits());
+	}
+	
+	@Test
+	public final void testIndexPipeline() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(getClass().getResourceAsStream("/pathwaydata1.owl"));
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "index4");
+		//small queues and batches, to make the stages wait for each other
+		searchEngine.setIndexThreads(3);
+		searchEngine.setIndexQueueSize(2);
+		searchEngine.setIndexBatchSize(7);
+		searchEngine.index();
+		
+		assertEquals(3, searchEngine.getIndexMetrics().size());
+		for(StageMetrics m : searchEngine.getIndexMetrics()) {
+			log.info(m.toString());
+			assertEquals(model.getObjects().size(), m.getCount());
+			assertTrue(m.getDocsPerSecond() > 0);
+		}
+		//the model is not modified
+		for(BioPAXElement bpe : model.getObjects())
+			assertTrue(bpe.getAnnotations().isEmpty());
+		
+		assertEquals(50, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		assertEquals(7, searchEngine.search("ATP", 0, null, null, null).getTotalHits());
+	}
+	
+	@Test
+	public final void testFacets() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(getClass().getResourceAsStream("/pathwaydata1.owl"));
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "index5");
+		searchEngine.index();
+		searchEngine.setMaxHitsPerPage(3);
+		
+		//facets count all the hits, not only the page
+		SearchResult response = searchEngine.search("ATP", 0, null, null, null);
+		assertEquals(3, response.getHits().size());
+		Map<String, Map<String, Long>> facets = response.getFacets();
+		assertEquals(SearchEngine.FACET_FIELDS.length, facets.size());
+		long total = 0;
+		for(Long n : facets.get(SearchEngine.FIELD_TYPE).values())
+			total += n;
+		assertEquals(7, total);
+		assertEquals(Long.valueOf(1), facets.get(SearchEngine.FIELD_TYPE).get("pathway"));
+		
+		response = searchEngine.search("*", 0, PhysicalEntity.class, null, new String[] {"562"});
+		facets = response.getFacets();
+		assertEquals(Long.valueOf(2), facets.get(SearchEngine.FIELD_ORGANISM).get("http://identifiers.org/taxonomy/562"));
+		
+		response = searchEngine.search("*", 0, Provenance.class, null, null);
+		assertEquals(2, response.getFacets().get(SearchEngine.FIELD_DATASOURCE).size());
+		
+		//the same filter is used again
+		response = searchEngine.search("*", 1, PhysicalEntity.class, null, new String[] {"562"});
+		assertTrue(response.getHits().isEmpty());
+		assertEquals(Long.valueOf(2), response.getFacets().get(SearchEngine.FIELD_ORGANISM).get("http://identifiers.org/taxonomy/562"));
+	}
+	
+	@Test
+	public final void testCursorAndExport() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(getClass().getResourceAsStream("/pathwaydata1.owl"));
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "index6");
+		searchEngine.index();
+		searchEngine.setMaxHitsPerPage(10);
+		
+		//cursor pages are the same as numbered pages
+		List<String> uris = new ArrayList<String>();
+		SearchResult response = searchEngine.searchAfter("*", null, null, null, null);
+		int page = 0;
+		while(true) {
+			assertEquals(page, response.getPage());
+			SearchResult same = searchEngine.search("*", page, null, null, null);
+			assertEquals(same.getHits(), response.getHits());
+			assertEquals(50, response.getTotalHits());
+			for(BioPAXElement bpe : response.getHits())
+				uris.add(bpe.getUri());
+			if(response.getCursor() == null)
+				break;
+			response = searchEngine.searchAfter("*", response.getCursor(), null, null, null);
+			page++;
+		}
+		assertEquals(4, page);
+		assertEquals(50, uris.size());
+		assertEquals(50, new HashSet<String>(uris).size());
+		
+		//scored query, fewer hits than a page
+		response = searchEngine.searchAfter("ATP", null, null, null, null);
+		assertEquals(7, response.getHits().size());
+		assertNull(response.getCursor());
+		
+		//export all the hits (not scored)
+		final Set<BioPAXElement> exported = new HashSet<BioPAXElement>();
+		assertEquals(50, searchEngine.export("*", null, null, null, new HitSink() {
+			public boolean accept(BioPAXElement hit) {
+				return exported.add(hit);
+			}
+		}));
+		assertEquals(new HashSet<BioPAXElement>(model.getObjects()), exported);
+		
+		assertEquals(7, searchEngine.export("ATP", null, null, null, new HitSink() {
+			public boolean accept(BioPAXElement hit) {
+				return true;
+			}
+		}));
+		
+		//stop early
+		assertEquals(5, searchEngine.export("*", null, null, null, new HitSink() {
+			int n = 0;
+			public boolean accept(BioPAXElement hit) {
+				return ++n < 5;
+			}
+		}));
+	}
+	
+	@Test
+	public final void testCacheAndHighlight() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(getClass().getResourceAsStream("/pathwaydata1.owl"));
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "index7");
+		searchEngine.index();
+		
+		SearchResult response = searchEngine.search("ATP", 0, null, null, null);
+		assertEquals(7, response.getHits().size());
+		String excerpt = (String) response.getHits().get(0).getAnnotations().get(HitAnnotation.HIT_EXCERPT.name());
+		assertTrue(excerpt.contains("<span class='hitHL'>"));
+		
+		//cached (same normalized query); annotations are restored
+		response.getHits().get(0).getAnnotations().remove(HitAnnotation.HIT_EXCERPT.name());
+		SearchResult cached = searchEngine.search("  ATP ", 0, null, null, null);
+		assertNotSame(response, cached);
+		assertEquals(response.getHits(), cached.getHits());
+		assertEquals(excerpt, cached.getHits().get(0).getAnnotations().get(HitAnnotation.HIT_EXCERPT.name()));
+		
+		//no highlighting; then, lazy highlighting of some hits
+		searchEngine.setHighlight(false);
+		response = searchEngine.search("ATP", 0, SmallMoleculeReference.class, null, null);
+		assertFalse(response.getHits().isEmpty());
+		BioPAXElement hit = response.getHits().get(0);
+		assertFalse(((String) hit.getAnnotations().get(HitAnnotation.HIT_EXCERPT.name())).contains("hitHL"));
+		searchEngine.highlight("ATP", response.getHits().subList(0, 1));
+		assertTrue(((String) hit.getAnnotations().get(HitAnnotation.HIT_EXCERPT.name())).contains("<span class='hitHL'>"));
+		
+		//the cache is cleared when the index changes
+		searchEngine.setHighlight(true);
+		Protein p = model.addNew(Protein.class, "http://biopax.org/test/Protein_atpase");
+		p.setDisplayName("ATP");
+		searchEngine.update(Collections.singleton(p), Collections.<BioPAXElement>emptySet());
+		assertEquals(8, searchEngine.search("ATP", 0, null, null, null).getHits().size());
+	}
+	
+	@Test
+	public final void testShards() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(new GZIPInputStream(
+				getClass().getResourceAsStream("/three-bmp-pathways.owl.gz")));
+		SearchEngine single = new SearchEngine(model, indexLocation + "index8");
+		single.index();
+		SearchEngine sharded = new SearchEngine(model, indexLocation + "index9");
+		sharded.setIndexShards(4);
+		sharded.index();
+		assertEquals(4, sharded.getIndexMetrics().size());
+		assertFalse(new File(indexLocation + "index9.shard0").exists());
+		
+		//same hits and facets as with a single index writer
+		String[] queries = {"*", "signaling by bmp", "\"signaling by bmp\"", "pathway:\"bmp receptor signaling\"", "bmp*", "xrefid:P12643"};
+		for(String q : queries) {
+			SearchResult expected = single.search(q, 0, null, null, null);
+			SearchResult actual = sharded.search(q, 0, null, null, null);
+			assertEquals(q, expected.getTotalHits(), actual.getTotalHits());
+			assertEquals(q, expected.getFacets(), actual.getFacets());
+			final Set<BioPAXElement> expectedHits = new HashSet<BioPAXElement>();
+			final Set<BioPAXElement> actualHits = new HashSet<BioPAXElement>();
+			single.export(q, null, null, null, new HitSink() {
+				public boolean accept(BioPAXElement hit) {
+					return expectedHits.add(hit);
+				}
+			});
+			sharded.export(q, null, null, null, new HitSink() {
+				public boolean accept(BioPAXElement hit) {
+					return actualHits.add(hit);
+				}
+			});
+			assertEquals(q, expectedHits, actualHits);
+		}
+		//ordered by score
+		SearchResult expected = single.search("signaling by bmp", 0, Pathway.class, null, null);
+		SearchResult actual = sharded.search("signaling by bmp", 0, Pathway.class, null, null);
+		assertEquals(expected.getHits(), actual.getHits());
+	}
+	
+	@Test
+	public final void testInMemory() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(getClass().getResourceAsStream("/pathwaydata1.owl"));
+		SearchEngine searchEngine = new SearchEngine(model);
+		assertTrue(searchEngine.isInMemory());
+		//searchable (empty) before indexing
+		assertEquals(0, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		
+		searchEngine.setIndexBatchSize(7);
+		searchEngine.index();
+		assertEquals(50, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		assertEquals(7, searchEngine.search("ATP", 0, null, null, null).getTotalHits());
+		
+		//re-indexing replaces the documents
+		searchEngine.index();
+		assertEquals(50, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		
+		//updates are searchable at once
+		Protein p = model.addNew(Protein.class, "http://biopax.org/test/Protein_frobnicase");
+		p.setDisplayName("frobnicase");
+		assertEquals(1, searchEngine.update(Collections.singleton(p), Collections.<BioPAXElement>emptySet()));
+		assertEquals(1, searchEngine.search("frobnicase", 0, Protein.class, null, null).getHits().size());
+		assertEquals(51, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		
+		//sharded, in memory
+		searchEngine.setIndexShards(3);
+		searchEngine.index();
+		assertEquals(51, searchEngine.search("*", 0, null, null, null).getTotalHits());
+		
+		searchEngine.close();
+	}
+	
+	@Test
+	public final void testSuggest() throws IOException {
+		SimpleIOHandler reader = new SimpleIOHandler();
+		Model model = reader.convertFromOWL(getClass().getResourceAsStream("/pathwaydata1.owl"));
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "index10");
+		searchEngine.index();
+		
+		//the pathway (has processes) comes first
+		List<String> suggestions = searchEngine.suggest("GLUCOSE", 10);
+		assertEquals("glucose degradation", suggestions.get(0));
+		assertTrue(suggestions.contains("glucose-6-phosphate isomerase"));
+		for(String s : suggestions)
+			assertTrue(s.toLowerCase().startsWith("glucose"));
+		assertEquals(2, searchEngine.suggest("glucose", 2).size());
+		assertTrue(searchEngine.suggest("p2779", 10).contains("P27797"));
+		assertTrue(searchEngine.suggest("frobnication", 10).isEmpty());
+		
+		//same as the xrefid query
+		Set<String> uris = new HashSet<String>();
+		for(BioPAXElement hit : searchEngine.search("xrefid:P27797", 0, null, null, null).getHits())
+			uris.add(hit.getUri());
+		assertFalse(uris.isEmpty());
+		assertEquals(uris, searchEngine.lookup("p27797"));
+		assertTrue(searchEngine.lookup("frobnication").isEmpty());
+		
+		//saved beside the index
+		assertTrue(new File(indexLocation + "index10.suggest").exists());
+		searchEngine = new SearchEngine(model, indexLocation + "index10");
+		assertEquals(uris, searchEngine.lookup("P27797"));
+		assertEquals(suggestions, searchEngine.suggest("glucose", 10));
+	}
 }